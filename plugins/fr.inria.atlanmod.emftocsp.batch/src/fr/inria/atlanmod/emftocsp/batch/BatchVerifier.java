@@ -0,0 +1,352 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp.batch;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EOperation;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.resource.Resource;
+
+import com.parctechnologies.eclipse.CompoundTerm;
+
+import fr.inria.atlanmod.emftocsp.IModelReader;
+import fr.inria.atlanmod.emftocsp.IModelToCspSolver;
+import fr.inria.atlanmod.emftocsp.PipelineMetrics;
+import fr.inria.atlanmod.emftocsp.ProcessingException;
+import fr.inria.atlanmod.emftocsp.SolverVerdict;
+import fr.inria.atlanmod.emftocsp.eclipsecs.EclipseEnginePool;
+import fr.inria.atlanmod.emftocsp.eclipsecs.EclipseSolver;
+import fr.inria.atlanmod.emftocsp.emf.impl.EAssociation;
+import fr.inria.atlanmod.emftocsp.emf.impl.EmfModelToCspSolverFactory;
+import fr.inria.atlanmod.emftocsp.emftoecl.EmfToEclCodeGenerator;
+import fr.inria.atlanmod.emftocsp.impl.FileLogger;
+
+/**
+ * Verifies models from the command line, without starting OSGi nor any
+ * workspace. Every job writes its code, instances and log to a directory of
+ * its own, and all the jobs share the same pool of ECLiPSe engines.
+ */
+public class BatchVerifier {
+  private static final String USAGE = "Usage: BatchVerifier -eclipse <dir> -libs <dir> [-graphviz <dir>] [-out <dir>] [-timeout <ms>] [-jobs <n>] <model> [<properties>] ..."; //$NON-NLS-1$
+
+  private final EclipseEnginePool enginePool;
+  private final String graphvizPath;
+  private final List<File> libs;
+  private File outputDirectory = new File("emftocsp-results"); //$NON-NLS-1$
+  private long timeout = 0;
+  private int parallelism = 1;
+  private boolean incremental = false;
+
+  public BatchVerifier(EclipseEnginePool enginePool, String graphvizPath, File libsDirectory) {
+    this.enginePool = enginePool;
+    this.graphvizPath = graphvizPath;
+    this.libs = getLibraries(libsDirectory);
+  }
+
+  public File getOutputDirectory() {
+    return outputDirectory;
+  }
+
+  public void setOutputDirectory(File outputDirectory) {
+    this.outputDirectory = outputDirectory;
+  }
+
+  public long getTimeout() {
+    return timeout;
+  }
+
+  /**
+   * Sets the time each job may take to solve, in milliseconds. Jobs running
+   * out of time end UNKNOWN. 0 means no limit.
+   */
+  public void setTimeout(long timeout) {
+    this.timeout = timeout;
+  }
+
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Sets how many jobs run at the same time.
+   */
+  public void setParallelism(int parallelism) {
+    if (parallelism < 1)
+      throw new IllegalArgumentException("The number of parallel jobs must be positive"); //$NON-NLS-1$
+    this.parallelism = parallelism;
+  }
+
+  public boolean isIncremental() {
+    return incremental;
+  }
+
+  /**
+   * When set, the translations of the jobs are incremental, so that
+   * verifying a model again only translates what changed since. The
+   * translation caches are stored in the temporary directory of the system.
+   */
+  public void setIncremental(boolean incremental) {
+    this.incremental = incremental;
+  }
+
+  /**
+   * Runs the jobs and returns their results in the same order. A job which
+   * fails does not stop the other ones, its result holds the error instead.
+   */
+  public List<Result> verifyAll(List<VerificationJob> jobs) {
+    List<Result> results = new ArrayList<Result>();
+    if (parallelism == 1) {
+      for (VerificationJob job : jobs)
+        results.add(verifySafely(job));
+      return results;
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+    try {
+      List<Future<Result>> futures = new ArrayList<Future<Result>>();
+      for (final VerificationJob job : jobs)
+        futures.add(executor.submit(new Callable<Result>() {
+          @Override
+          public Result call() {
+            return verifySafely(job);
+          }
+        }));
+      for (Future<Result> future : futures)
+        results.add(future.get());
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    catch (ExecutionException e) {
+      throw new ProcessingException(e.getCause());
+    }
+    finally {
+      executor.shutdownNow();
+    }
+    return results;
+  }
+
+  private Result verifySafely(VerificationJob job) {
+    long start = System.currentTimeMillis();
+    try {
+      return verify(job);
+    }
+    catch (RuntimeException e) {
+      return new Result(job, SolverVerdict.UNKNOWN, System.currentTimeMillis() - start, null, null, e);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  public Result verify(VerificationJob job) throws ProcessingException {
+    long start = System.currentTimeMillis();
+    File resultDirectory = getResultDirectory(job);
+    if (!resultDirectory.isDirectory() && !resultDirectory.mkdirs())
+      throw new ProcessingException("Unable to create the directory " + resultDirectory.getAbsolutePath()); //$NON-NLS-1$
+    String logFileName = new File(resultDirectory, job.getModelFile().getName() + ".log").getAbsolutePath(); //$NON-NLS-1$
+
+    EclipseSolver solver = new EclipseSolver(enginePool, graphvizPath);
+    solver.setTimeout(timeout);
+    IModelToCspSolver<Resource, CompoundTerm> modelSolver = new EmfModelToCspSolverFactory().getModelToCspSolver();
+    modelSolver.setModelFileName(job.getModelFile().getName());
+    modelSolver.setModel(job.loadModel());
+    modelSolver.setSolver(solver);
+    EmfToEclCodeGenerator codeGenerator = new EmfToEclCodeGenerator(modelSolver);
+    codeGenerator.setSearchConfiguration(job.getSearchConfiguration());
+    codeGenerator.setIncremental(incremental);
+    codeGenerator.setSlicing(job.isSlicing());
+    codeGenerator.setDecomposing(job.isDecomposing());
+    modelSolver.setCspCodeGenerator(codeGenerator);
+    modelSolver.setLogger(new FileLogger());
+    modelSolver.getLogger().writeInfoMessage(this.getClass().toString(), "Starting EMFtoCSP batch job " + job.getName()); //$NON-NLS-1$
+    modelSolver.getBuilder();
+    modelSolver.setConstraintsFile(job.getOclFile());
+    modelSolver.setModelProperties(job.getModelProperties());
+    modelSolver.setMaxScope(job.getMaxScope());
+    modelSolver.setCardinalityPreSolving(job.isCardinalityPreSolving());
+    modelSolver.setInstanceRequired(job.isInstanceRequired());
+    modelSolver.setMetricsWritten(job.isMetricsWritten());
+    modelSolver.setResultDirectory(resultDirectory);
+    modelSolver.setModelElementsDomain(job.getModelElementsDomain((IModelReader<Resource, EPackage, EClass, EAssociation, EAttribute, EOperation>) modelSolver.getModelReader()));
+    try {
+      modelSolver.solveModel(libs);
+    }
+    finally {
+      codeGenerator.dispose();
+      modelSolver.getLogger().writeInfoMessage(this.getClass().toString(), "Closing EMFtoCSP"); //$NON-NLS-1$
+      modelSolver.getLogger().close(logFileName);
+    }
+    Object image = modelSolver.getVerdict() == SolverVerdict.SAT ? modelSolver.getSolverEvaluationResult() : null;
+    return new Result(job, modelSolver.getVerdict(), System.currentTimeMillis() - start, image instanceof File ? (File) image : null, modelSolver.getMetrics(), null);
+  }
+
+  /**
+   * Returns the directory where the job writes its code, instances and log.
+   */
+  public File getResultDirectory(VerificationJob job) {
+    return new File(outputDirectory, job.getName());
+  }
+
+  private static List<File> getLibraries(File libsDirectory) {
+    File[] files = libsDirectory.listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.matches(".*\\.ecl$"); //$NON-NLS-1$
+      }
+    });
+    if (files == null)
+      throw new ProcessingException("No ECLiPSe libraries found in " + libsDirectory.getAbsolutePath()); //$NON-NLS-1$
+    Arrays.sort(files);
+    return Arrays.asList(files);
+  }
+
+  /**
+   * The verdict of a job, or the error which stopped it.
+   */
+  public static class Result {
+    private final VerificationJob job;
+    private final SolverVerdict verdict;
+    private final long millis;
+    private final File image;
+    private final PipelineMetrics metrics;
+    private final Exception error;
+
+    public Result(VerificationJob job, SolverVerdict verdict, long millis, File image, PipelineMetrics metrics, Exception error) {
+      this.job = job;
+      this.verdict = verdict;
+      this.millis = millis;
+      this.image = image;
+      this.metrics = metrics;
+      this.error = error;
+    }
+
+    public VerificationJob getJob() {
+      return job;
+    }
+
+    public SolverVerdict getVerdict() {
+      return verdict;
+    }
+
+    public long getMillis() {
+      return millis;
+    }
+
+    /**
+     * Returns the image of the instance found, or null if the model is not
+     * satisfiable or Graphviz is not available.
+     */
+    public File getImage() {
+      return image;
+    }
+
+    /**
+     * Returns the phases of the verification, or null if the job failed
+     * before verifying.
+     */
+    public PipelineMetrics getMetrics() {
+      return metrics;
+    }
+
+    public Exception getError() {
+      return error;
+    }
+
+    @Override
+    public String toString() {
+      if (error != null)
+        return job.getName() + "\tERROR\t" + error.getMessage(); //$NON-NLS-1$
+      return job.getName() + "\t" + verdict + "\t" + millis + "ms"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    }
+  }
+
+  /**
+   * Prints one line per job, and exits with 1 if any job failed, 2 if the
+   * arguments are wrong.
+   */
+  public static void main(String[] args) {
+    String eclipsePath = null;
+    String graphvizPath = ""; //$NON-NLS-1$
+    File libsDirectory = null;
+    File outputDirectory = null;
+    long timeout = 0;
+    int parallelism = 1;
+    List<VerificationJob> jobs = new ArrayList<VerificationJob>();
+    try {
+      for (int i = 0; i < args.length; i++) {
+        String arg = args[i];
+        if (arg.equals("-eclipse")) //$NON-NLS-1$
+          eclipsePath = args[++i];
+        else if (arg.equals("-graphviz")) //$NON-NLS-1$
+          graphvizPath = args[++i];
+        else if (arg.equals("-libs")) //$NON-NLS-1$
+          libsDirectory = new File(args[++i]);
+        else if (arg.equals("-out")) //$NON-NLS-1$
+          outputDirectory = new File(args[++i]);
+        else if (arg.equals("-timeout")) //$NON-NLS-1$
+          timeout = Long.parseLong(args[++i]);
+        else if (arg.equals("-jobs")) //$NON-NLS-1$
+          parallelism = Integer.parseInt(args[++i]);
+        else if (arg.startsWith("-")) //$NON-NLS-1$
+          throw new IllegalArgumentException("Unknown option " + arg); //$NON-NLS-1$
+        else {
+          File modelFile = new File(arg);
+          File propertiesFile;
+          if (i + 1 < args.length && args[i + 1].endsWith(".properties")) //$NON-NLS-1$
+            propertiesFile = new File(args[++i]);
+          else
+            propertiesFile = new File(arg + ".properties"); //$NON-NLS-1$
+          jobs.add(new VerificationJob(modelFile, propertiesFile));
+        }
+      }
+      if (eclipsePath == null || libsDirectory == null || jobs.isEmpty())
+        throw new IllegalArgumentException("Missing arguments"); //$NON-NLS-1$
+    }
+    catch (IOException e) {
+      System.err.println(e.getMessage());
+      System.exit(2);
+    }
+    catch (RuntimeException e) {
+      System.err.println(e.getMessage());
+      System.err.println(USAGE);
+      System.exit(2);
+    }
+
+    EclipseEnginePool enginePool = new EclipseEnginePool(eclipsePath, parallelism, EclipseEnginePool.DEFAULT_MAX_JOBS_PER_ENGINE);
+    boolean failed = false;
+    try {
+      BatchVerifier verifier = new BatchVerifier(enginePool, graphvizPath, libsDirectory);
+      if (outputDirectory != null)
+        verifier.setOutputDirectory(outputDirectory);
+      verifier.setTimeout(timeout);
+      verifier.setParallelism(parallelism);
+      for (Result result : verifier.verifyAll(jobs)) {
+        System.out.println(result);
+        failed |= result.getError() != null;
+      }
+    }
+    finally {
+      enginePool.shutdown();
+    }
+    System.exit(failed ? 1 : 0);
+  }
+}
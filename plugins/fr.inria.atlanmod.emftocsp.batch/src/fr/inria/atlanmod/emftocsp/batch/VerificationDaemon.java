@@ -0,0 +1,289 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp.batch;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fr.inria.atlanmod.emftocsp.eclipsecs.EclipseEnginePool;
+
+/**
+ * Verifies models sent over a socket bound to the loopback interface, so
+ * that the JVM, EMF and the ECLiPSe engines are started once for all the
+ * jobs. Jobs are queued and run by a fixed number of workers sharing the
+ * engines of a {@link BatchVerifier}.
+ * <p>
+ * The protocol is line based, with tab separated fields:
+ * <ul>
+ * <li><code>VERIFY model [properties]</code> queues a job described as for
+ * {@link BatchVerifier} and answers <code>QUEUED id</code>, or
+ * <code>BUSY</code> when the queue is full. Once the job ends, the daemon
+ * sends <code>RESULT id verdict millis directory [image]</code> or
+ * <code>ERROR id message</code> on the same connection.</li>
+ * <li><code>STATUS</code> answers <code>STATUS running queued</code>.</li>
+ * <li><code>SHUTDOWN</code> stops the daemon once the queued jobs end.</li>
+ * </ul>
+ * Malformed requests are answered with <code>ERROR - message</code>.
+ */
+public class VerificationDaemon {
+  public static final int DEFAULT_PORT = 4242;
+  public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+  private static final String USAGE = "Usage: VerificationDaemon -eclipse <dir> -libs <dir> [-graphviz <dir>] [-out <dir>] [-timeout <ms>] [-workers <n>] [-port <n>] [-queue <n>]"; //$NON-NLS-1$
+  private static final String SEPARATOR = "\t"; //$NON-NLS-1$
+
+  private final BatchVerifier verifier;
+  private final ThreadPoolExecutor workers;
+  private final AtomicLong lastJobId = new AtomicLong();
+  private ServerSocket serverSocket;
+
+  /**
+   * Creates a daemon running at most <code>workers</code> jobs at the same
+   * time and keeping at most <code>queueCapacity</code> jobs waiting.
+   */
+  public VerificationDaemon(BatchVerifier verifier, int workers, int queueCapacity) {
+    if (workers < 1 || queueCapacity < 1)
+      throw new IllegalArgumentException("The number of workers and the queue capacity must be positive"); //$NON-NLS-1$
+    this.verifier = verifier;
+    this.workers = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity));
+  }
+
+  /**
+   * Listens on the port of the loopback interface, 0 for any free port, and
+   * serves the connections until the daemon is stopped.
+   */
+  public void serve(int port) throws IOException {
+    synchronized (this) {
+      serverSocket = new ServerSocket(port, 50, InetAddress.getByName(null));
+    }
+    try {
+      while (true) {
+        final Socket socket;
+        try {
+          socket = serverSocket.accept();
+        }
+        catch (SocketException e) {
+          if (serverSocket.isClosed())
+            break;
+          throw e;
+        }
+        Thread thread = new Thread(new Runnable() {
+          @Override
+          public void run() {
+            handle(socket);
+          }
+        }, "VerificationDaemon connection"); //$NON-NLS-1$
+        thread.setDaemon(true);
+        thread.start();
+      }
+    }
+    finally {
+      workers.shutdown();
+      try {
+        workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Returns the port the daemon listens on, or -1 if it is not serving.
+   */
+  public synchronized int getPort() {
+    return serverSocket == null ? -1 : serverSocket.getLocalPort();
+  }
+
+  /**
+   * Stops accepting connections. The queued jobs still run and their
+   * results are still sent.
+   */
+  public synchronized void stop() {
+    if (serverSocket == null)
+      return;
+    try {
+      serverSocket.close();
+    }
+    catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  private void handle(Socket socket) {
+    try {
+      BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8")); //$NON-NLS-1$
+      PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8"), true); //$NON-NLS-1$
+      String line;
+      while ((line = in.readLine()) != null) {
+        String[] fields = line.split(SEPARATOR);
+        String command = fields[0].trim();
+        if (command.length() == 0)
+          continue;
+        if (command.equals("VERIFY")) //$NON-NLS-1$
+          submit(fields, out);
+        else if (command.equals("STATUS")) //$NON-NLS-1$
+          send(out, "STATUS", String.valueOf(workers.getActiveCount()), String.valueOf(workers.getQueue().size())); //$NON-NLS-1$
+        else if (command.equals("SHUTDOWN")) { //$NON-NLS-1$
+          send(out, "BYE"); //$NON-NLS-1$
+          stop();
+        }
+        else
+          send(out, "ERROR", "-", "Unknown command " + command); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+      }
+    }
+    catch (IOException e) {
+      // the client went away, its pending results are dropped
+    }
+    finally {
+      try {
+        socket.close();
+      }
+      catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+  }
+
+  private void submit(String[] fields, final PrintWriter out) {
+    if (fields.length < 2 || fields.length > 3) {
+      send(out, "ERROR", "-", "VERIFY expects a model and an optional properties file"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+      return;
+    }
+    File modelFile = new File(fields[1]);
+    File propertiesFile = new File(fields.length == 3 ? fields[2] : fields[1] + ".properties"); //$NON-NLS-1$
+    final VerificationJob job;
+    try {
+      job = new VerificationJob(modelFile, propertiesFile);
+    }
+    catch (IOException e) {
+      send(out, "ERROR", "-", "Unable to read " + propertiesFile.getPath()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+      return;
+    }
+    final String id = String.valueOf(lastJobId.incrementAndGet());
+    // QUEUED must reach the client before the result, so hold the writer
+    synchronized (out) {
+      try {
+        workers.execute(new Runnable() {
+          @Override
+          public void run() {
+            report(id, job, out);
+          }
+        });
+      }
+      catch (RejectedExecutionException e) {
+        send(out, "BUSY"); //$NON-NLS-1$
+        return;
+      }
+      send(out, "QUEUED", id); //$NON-NLS-1$
+    }
+  }
+
+  private void report(String id, VerificationJob job, PrintWriter out) {
+    long start = System.currentTimeMillis();
+    try {
+      BatchVerifier.Result result = verifier.verify(job);
+      String directory = verifier.getResultDirectory(job).getAbsolutePath();
+      if (result.getImage() != null)
+        send(out, "RESULT", id, result.getVerdict().toString(), String.valueOf(result.getMillis()), directory, result.getImage().getAbsolutePath()); //$NON-NLS-1$
+      else
+        send(out, "RESULT", id, result.getVerdict().toString(), String.valueOf(result.getMillis()), directory); //$NON-NLS-1$
+    }
+    catch (RuntimeException e) {
+      String message = e.getMessage() == null ? e.toString() : e.getMessage();
+      send(out, "ERROR", id, message.replace('\n', ' ').replace('\t', ' ') + " (" + (System.currentTimeMillis() - start) + "ms)"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    }
+  }
+
+  private static void send(PrintWriter out, String... fields) {
+    StringBuilder line = new StringBuilder();
+    for (int i = 0; i < fields.length; i++) {
+      if (i > 0)
+        line.append(SEPARATOR);
+      line.append(fields[i]);
+    }
+    synchronized (out) {
+      out.println(line);
+    }
+  }
+
+  public static void main(String[] args) {
+    String eclipsePath = null;
+    String graphvizPath = ""; //$NON-NLS-1$
+    File libsDirectory = null;
+    File outputDirectory = null;
+    long timeout = 0;
+    int workers = 1;
+    int port = DEFAULT_PORT;
+    int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    try {
+      for (int i = 0; i < args.length; i++) {
+        String arg = args[i];
+        if (arg.equals("-eclipse")) //$NON-NLS-1$
+          eclipsePath = args[++i];
+        else if (arg.equals("-graphviz")) //$NON-NLS-1$
+          graphvizPath = args[++i];
+        else if (arg.equals("-libs")) //$NON-NLS-1$
+          libsDirectory = new File(args[++i]);
+        else if (arg.equals("-out")) //$NON-NLS-1$
+          outputDirectory = new File(args[++i]);
+        else if (arg.equals("-timeout")) //$NON-NLS-1$
+          timeout = Long.parseLong(args[++i]);
+        else if (arg.equals("-workers")) //$NON-NLS-1$
+          workers = Integer.parseInt(args[++i]);
+        else if (arg.equals("-port")) //$NON-NLS-1$
+          port = Integer.parseInt(args[++i]);
+        else if (arg.equals("-queue")) //$NON-NLS-1$
+          queueCapacity = Integer.parseInt(args[++i]);
+        else
+          throw new IllegalArgumentException("Unknown option " + arg); //$NON-NLS-1$
+      }
+      if (eclipsePath == null || libsDirectory == null)
+        throw new IllegalArgumentException("Missing arguments"); //$NON-NLS-1$
+    }
+    catch (RuntimeException e) {
+      System.err.println(e.getMessage());
+      System.err.println(USAGE);
+      System.exit(2);
+    }
+
+    EclipseEnginePool enginePool = new EclipseEnginePool(eclipsePath, workers, EclipseEnginePool.DEFAULT_MAX_JOBS_PER_ENGINE);
+    try {
+      BatchVerifier verifier = new BatchVerifier(enginePool, graphvizPath, libsDirectory);
+      if (outputDirectory != null)
+        verifier.setOutputDirectory(outputDirectory);
+      verifier.setTimeout(timeout);
+      VerificationDaemon daemon = new VerificationDaemon(verifier, workers, queueCapacity);
+      daemon.serve(port);
+    }
+    catch (IOException e) {
+      System.err.println(e.getMessage());
+      System.exit(1);
+    }
+    finally {
+      enginePool.shutdown();
+    }
+    System.exit(0);
+  }
+}
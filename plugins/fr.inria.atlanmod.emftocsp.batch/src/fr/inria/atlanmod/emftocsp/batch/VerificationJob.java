@@ -0,0 +1,280 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp.batch;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EOperation;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EcorePackage;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.emf.ecore.xmi.impl.EcoreResourceFactoryImpl;
+import org.eclipse.emf.ecore.xmi.impl.XMIResourceFactoryImpl;
+import org.eclipse.uml2.uml.UMLPackage;
+import org.eclipse.uml2.uml.resource.UMLResource;
+import org.eclipse.uml2.uml.resources.util.UMLResourcesUtil;
+
+import fr.inria.atlanmod.emftocsp.IModelProperty;
+import fr.inria.atlanmod.emftocsp.IModelReader;
+import fr.inria.atlanmod.emftocsp.ProcessingException;
+import fr.inria.atlanmod.emftocsp.adapters.umlImpl.EResourceUMLAdapter;
+import fr.inria.atlanmod.emftocsp.emf.impl.EAssociation;
+import fr.inria.atlanmod.emftocsp.emftoecl.SearchConfiguration;
+import fr.inria.atlanmod.emftocsp.impl.LackOfConstraintsRedundanciesModelProperty;
+import fr.inria.atlanmod.emftocsp.impl.LackOfConstraintsSubsumptionsModelProperty;
+import fr.inria.atlanmod.emftocsp.impl.LivelinessModelProperty;
+import fr.inria.atlanmod.emftocsp.impl.StrongSatisfiabilityModelProperty;
+import fr.inria.atlanmod.emftocsp.impl.WeakSatisfiabilityModelProperty;
+
+/**
+ * The verification of a model as described by a properties file, in the
+ * format written by the validation wizard: the OCL document, the properties
+ * to check and the domains of the model elements. Elements without a domain
+ * in the file get the defaults of the wizard.
+ */
+public class VerificationJob {
+  private static final String DEFAULT_CLASS_DOMAIN = "0..5"; //$NON-NLS-1$
+  private static final String DEFAULT_BOOLEAN_DOMAIN = "0..1"; //$NON-NLS-1$
+  private static final String DEFAULT_STRING_LENGTH = "0..10"; //$NON-NLS-1$
+  private static final String DEFAULT_STRING_DOMAIN = ""; //$NON-NLS-1$
+  private static final String DEFAULT_ATTRIBUTE_DOMAIN = "[1,10,20]"; //$NON-NLS-1$
+  private static final String DEFAULT_ASSOCIATION_DOMAIN = "0..10"; //$NON-NLS-1$
+
+  private final File modelFile;
+  private final File propertiesFile;
+  private final Properties properties = new Properties();
+
+  public VerificationJob(File modelFile, File propertiesFile) throws IOException {
+    this.modelFile = modelFile;
+    this.propertiesFile = propertiesFile;
+    InputStream in = new FileInputStream(propertiesFile);
+    try {
+      properties.load(in);
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  public File getModelFile() {
+    return modelFile;
+  }
+
+  public File getPropertiesFile() {
+    return propertiesFile;
+  }
+
+  /**
+   * Returns the name of the job, which is the name of its properties file
+   * without extension.
+   */
+  public String getName() {
+    String name = propertiesFile.getName();
+    return name.endsWith(".properties") ? name.substring(0, name.length() - ".properties".length()) : name; //$NON-NLS-1$ //$NON-NLS-2$
+  }
+
+  /**
+   * Returns the OCL document, looked up next to the properties file and then
+   * next to the model, or null if the model has no external constraints.
+   */
+  public File getOclFile() {
+    String oclFile = properties.getProperty("oclFile", "").trim(); //$NON-NLS-1$ //$NON-NLS-2$
+    if (oclFile.length() == 0)
+      return null;
+    File file = new File(oclFile);
+    if (file.isAbsolute())
+      return file;
+    file = new File(propertiesFile.getAbsoluteFile().getParentFile(), oclFile);
+    if (file.isFile())
+      return file;
+    return new File(modelFile.getAbsoluteFile().getParentFile(), oclFile);
+  }
+
+  public List<IModelProperty> getModelProperties() {
+    List<IModelProperty> modelProperties = new ArrayList<IModelProperty>();
+    if (isSet("strongSatisfiability")) //$NON-NLS-1$
+      modelProperties.add(new StrongSatisfiabilityModelProperty());
+    if (isSet("weakSatisfiability")) //$NON-NLS-1$
+      modelProperties.add(new WeakSatisfiabilityModelProperty());
+    if (isSet("liveliness")) { //$NON-NLS-1$
+      List<String> targets = new ArrayList<String>();
+      targets.add(properties.getProperty("livelinessClass")); //$NON-NLS-1$
+      modelProperties.add(new LivelinessModelProperty(targets));
+    }
+    if (isSet("lackOfConstraintsSubsumptions")) { //$NON-NLS-1$
+      List<String> targets = new ArrayList<String>();
+      targets.add(properties.getProperty("lackOfConstraintsSubsumptions1") + "," + properties.getProperty("lackOfConstraintsSubsumptions2")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+      modelProperties.add(new LackOfConstraintsSubsumptionsModelProperty(targets));
+    }
+    // older versions of the wizard misspell this key
+    if (isSet("lackOfConstraintsRedundancies") || isSet("lackOfConstraintsRedundanciess")) { //$NON-NLS-1$ //$NON-NLS-2$
+      List<String> targets = new ArrayList<String>();
+      targets.add(properties.getProperty("lackOfConstraintsRedundancies1") + "," + properties.getProperty("lackOfConstraintsRedundancies2")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+      modelProperties.add(new LackOfConstraintsRedundanciesModelProperty(targets));
+    }
+    return modelProperties;
+  }
+
+  /**
+   * Returns the largest scope of the automatic bounds mode, or 0 if the
+   * domains of the file are used as they are.
+   */
+  public int getMaxScope() {
+    String maxScope = properties.getProperty("maxScope", "0").trim(); //$NON-NLS-1$ //$NON-NLS-2$
+    try {
+      return Math.max(0, Integer.parseInt(maxScope));
+    }
+    catch (NumberFormatException e) {
+      throw new ProcessingException("Invalid maxScope " + maxScope + " in " + propertiesFile.getPath()); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+  }
+
+  /**
+   * Returns true if the cardinalities of the model must be solved alone
+   * before generating its code.
+   */
+  public boolean isCardinalityPreSolving() {
+    return isSet("cardinalityPreSolving"); //$NON-NLS-1$
+  }
+
+  /**
+   * Returns true if an instance must be generated for a satisfiable model,
+   * even when its cardinalities alone prove it satisfiable.
+   */
+  public boolean isInstanceRequired() {
+    return isSet("instanceRequired"); //$NON-NLS-1$
+  }
+
+  /**
+   * Returns true if only the slice of the model the verification depends on
+   * must be translated.
+   */
+  public boolean isSlicing() {
+    return isSet("slicing"); //$NON-NLS-1$
+  }
+
+  /**
+   * Returns true if the model must be split into independent components
+   * solved concurrently.
+   */
+  public boolean isDecomposing() {
+    return isSet("decomposing"); //$NON-NLS-1$
+  }
+
+  /**
+   * Returns true if the metrics of the verification must be written next to
+   * the generated code.
+   */
+  public boolean isMetricsWritten() {
+    return isSet("metrics"); //$NON-NLS-1$
+  }
+
+  /**
+   * Returns the search of the labeling phases, read from the search.* entries
+   * of the file, or null if it has none.
+   */
+  public SearchConfiguration getSearchConfiguration() {
+    boolean configured = false;
+    for (String key : properties.stringPropertyNames())
+      if (key.startsWith("search.")) //$NON-NLS-1$
+        configured = true;
+    if (!configured)
+      return null;
+    SearchConfiguration searchConfiguration = new SearchConfiguration();
+    try {
+      searchConfiguration.read(properties);
+    }
+    catch (IllegalArgumentException e) {
+      throw new ProcessingException("Invalid search configuration in " + propertiesFile.getPath() + ": " + e.getMessage()); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+    return searchConfiguration;
+  }
+
+  private boolean isSet(String key) {
+    return Boolean.valueOf(properties.getProperty(key, "false").trim()); //$NON-NLS-1$
+  }
+
+  /**
+   * Returns the domain of every class, attribute and association of the
+   * model read by the reader.
+   */
+  public Map<String, String> getModelElementsDomain(IModelReader<Resource, EPackage, EClass, EAssociation, EAttribute, EOperation> modelReader) {
+    Map<String, String> domain = new HashMap<String, String>();
+    for (EClass c : modelReader.getClasses()) {
+      String cKey = c.getEPackage().getName() + "." + c.getName(); //$NON-NLS-1$
+      domain.put(cKey, getDomain(cKey, DEFAULT_CLASS_DOMAIN));
+      for (EAttribute at : modelReader.getClassAttributes(c)) {
+        String atKey = at.getEContainingClass().getName() + "." + at.getName(); //$NON-NLS-1$
+        String typeName = at.getEAttributeType().getName();
+        if (typeName.equalsIgnoreCase("boolean") || typeName.equalsIgnoreCase("eboolean")) //$NON-NLS-1$ //$NON-NLS-2$
+          domain.put(atKey, getDomain(atKey, DEFAULT_BOOLEAN_DOMAIN));
+        else if (typeName.equalsIgnoreCase("string") || typeName.equalsIgnoreCase("estring")) { //$NON-NLS-1$ //$NON-NLS-2$
+          domain.put(atKey + ".length", getDomain(atKey + ".length", DEFAULT_STRING_LENGTH)); //$NON-NLS-1$ //$NON-NLS-2$
+          domain.put(atKey + ".domain", getDomain(atKey + ".domain", DEFAULT_STRING_DOMAIN)); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        else
+          domain.put(atKey, getDomain(atKey, DEFAULT_ATTRIBUTE_DOMAIN));
+      }
+    }
+    for (String asName : modelReader.getAssociationsNames())
+      domain.put(asName, getDomain(asName, DEFAULT_ASSOCIATION_DOMAIN));
+    return domain;
+  }
+
+  private String getDomain(String key, String defaultDomain) {
+    return properties.getProperty(key, defaultDomain).trim();
+  }
+
+  /**
+   * Loads the model in a resource set of its own, without any workspace.
+   * UML models are wrapped in the EMF adapter the code generator expects.
+   */
+  public Resource loadModel() throws ProcessingException {
+    URI uri = URI.createFileURI(modelFile.getAbsolutePath());
+    ResourceSet rSet = new ResourceSetImpl();
+    if (uri.fileExtension() != null && uri.fileExtension().equals(UMLResource.FILE_EXTENSION)) {
+      UMLResourcesUtil.init(rSet);
+      rSet.getPackageRegistry().put(UMLPackage.eNS_URI, UMLPackage.eINSTANCE);
+      rSet.getResourceFactoryRegistry().getExtensionToFactoryMap().put(UMLResource.FILE_EXTENSION, UMLResource.Factory.INSTANCE);
+      UMLResource resource = (UMLResource) rSet.getResource(uri, true);
+      EcoreUtil.resolveAll(resource);
+      return new EResourceUMLAdapter(resource);
+    }
+    rSet.getPackageRegistry().put(EcorePackage.eNS_URI, EcorePackage.eINSTANCE);
+    rSet.getResourceFactoryRegistry().getExtensionToFactoryMap().put("ecore", new EcoreResourceFactoryImpl()); //$NON-NLS-1$
+    rSet.getResourceFactoryRegistry().getExtensionToFactoryMap().put(Resource.Factory.Registry.DEFAULT_EXTENSION, new XMIResourceFactoryImpl());
+    try {
+      return rSet.getResource(uri, true);
+    }
+    catch (RuntimeException e) {
+      throw new ProcessingException("Unable to load the model " + modelFile.getPath(), e); //$NON-NLS-1$
+    }
+  }
+
+  @Override
+  public String toString() {
+    return getName();
+  }
+}
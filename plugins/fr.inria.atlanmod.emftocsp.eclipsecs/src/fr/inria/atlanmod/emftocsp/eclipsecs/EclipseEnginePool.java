@@ -0,0 +1,520 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp.eclipsecs;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+import com.parctechnologies.eclipse.Atom;
+import com.parctechnologies.eclipse.CompoundTerm;
+import com.parctechnologies.eclipse.CompoundTermImpl;
+import com.parctechnologies.eclipse.EclipseEngineOptions;
+import com.parctechnologies.eclipse.EclipseException;
+import com.parctechnologies.eclipse.OutOfProcessEclipse;
+
+import fr.inria.atlanmod.emftocsp.ILogger;
+import fr.inria.atlanmod.emftocsp.ProcessingException;
+
+/**
+ * Bounded pool of ECLiPSe processes that already have the constraint
+ * libraries used by the generated code loaded. Every job borrowed from the
+ * pool runs in a module of its own which is erased when the job is released,
+ * so the predicates of one generated program never leak into the next one.
+ * An engine is destroyed and replaced once it has served
+ * <code>maxJobsPerEngine</code> jobs or when it stops answering.
+ * <p>
+ * The EMFtoCSP libraries call the predicates of the generated programs, so
+ * they are compiled into the job module too. Each engine loads them into
+ * its next module when it starts and, in the background, as soon as a job
+ * gives it back, so that a job finds them already loaded as long as it uses
+ * the same libraries as the previous one.
+ */
+public class EclipseEnginePool {
+  public static final int DEFAULT_MAX_JOBS_PER_ENGINE = 50;
+
+  private static final String WARM_UP_GOAL = "lib(ic),lib(ic_global),lib(ic_global_gac),lib(apply),lib(apply_macros),lib(lists),lib(ordset),lib(ech)"; //$NON-NLS-1$
+  private static final String JOB_MODULE_PREFIX = "emftocsp_job"; //$NON-NLS-1$
+
+  private static final Map<String, EclipseEnginePool> sharedPools = new HashMap<String, EclipseEnginePool>();
+
+  private final EclipseEngineOptions engineOptions;
+  private final LinkedList<PooledEngine> idleEngines = new LinkedList<PooledEngine>();
+  private final List<PooledEngine> engines = new ArrayList<PooledEngine>();
+  private int maxSize;
+  private int maxJobsPerEngine;
+  private int starting = 0;
+  private boolean shutdown = false;
+  private List<File> libraries = Collections.emptyList();
+  private ExecutorService preparer = null;
+
+  public EclipseEnginePool(String solverPath, int maxSize, int maxJobsPerEngine) {
+    if (maxSize < 1 || maxJobsPerEngine < 1)
+      throw new IllegalArgumentException("The pool size and the number of jobs per engine must be positive"); //$NON-NLS-1$
+    this.maxSize = maxSize;
+    this.maxJobsPerEngine = maxJobsPerEngine;
+    engineOptions = new EclipseEngineOptions(new File(solverPath));
+    engineOptions.setUseQueues(false);
+  }
+
+  /**
+   * Returns the pool shared by all the solvers using the ECLiPSe installation
+   * found at <code>solverPath</code>. Shared pools are shut down when the
+   * virtual machine exits.
+   */
+  public static EclipseEnginePool getSharedPool(String solverPath) {
+    String key = new File(solverPath).getAbsolutePath();
+    synchronized (sharedPools) {
+      EclipseEnginePool pool = sharedPools.get(key);
+      if (pool == null) {
+        final EclipseEnginePool newPool = new EclipseEnginePool(solverPath, Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_JOBS_PER_ENGINE);
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+          @Override
+          public void run() {
+            newPool.shutdown();
+          }
+        });
+        sharedPools.put(key, newPool);
+        pool = newPool;
+      }
+      return pool;
+    }
+  }
+
+  public synchronized int getMaxSize() {
+    return maxSize;
+  }
+
+  public synchronized void setMaxSize(int maxSize) {
+    if (maxSize < 1)
+      throw new IllegalArgumentException("The pool size must be positive"); //$NON-NLS-1$
+    this.maxSize = maxSize;
+    notifyAll();
+  }
+
+  public synchronized int getMaxJobsPerEngine() {
+    return maxJobsPerEngine;
+  }
+
+  public synchronized void setMaxJobsPerEngine(int maxJobsPerEngine) {
+    if (maxJobsPerEngine < 1)
+      throw new IllegalArgumentException("The number of jobs per engine must be positive"); //$NON-NLS-1$
+    this.maxJobsPerEngine = maxJobsPerEngine;
+  }
+
+  /**
+   * Returns the libraries the engines load ahead of their jobs, which are
+   * the ones used by the last job.
+   */
+  public synchronized List<File> getLibraries() {
+    return libraries;
+  }
+
+  private synchronized void setLibraries(List<File> libraries) {
+    this.libraries = Collections.unmodifiableList(new ArrayList<File>(libraries));
+  }
+
+  /**
+   * Starts engines until the pool is full, with the given libraries loaded,
+   * so that the first jobs pay neither for the process startup nor for the
+   * compilation of the libraries.
+   */
+  public void warmUp(List<File> libs) throws ProcessingException {
+    setLibraries(libs);
+    warmUp();
+  }
+
+  /**
+   * Starts engines until the pool is full, so that the first jobs do not pay
+   * for the process startup.
+   */
+  public void warmUp() throws ProcessingException {
+    while (true) {
+      synchronized (this) {
+        if (shutdown || engines.size() + starting >= maxSize)
+          return;
+        starting++;
+      }
+      PooledEngine engine = null;
+      try {
+        engine = startEngine();
+      }
+      finally {
+        synchronized (this) {
+          starting--;
+          if (engine != null) {
+            engines.add(engine);
+            idleEngines.addLast(engine);
+          }
+          notifyAll();
+        }
+      }
+    }
+  }
+
+  /**
+   * Borrows an engine from the pool, waiting for one to be released if the
+   * pool is full. The returned job owns a fresh module of that engine until
+   * it is given back with {@link #release(Job)} or {@link #discard(Job)}.
+   */
+  public Job acquire() throws ProcessingException {
+    return acquire(null);
+  }
+
+  /**
+   * Borrows an engine from the pool as {@link #acquire()} does. The failures
+   * of the engine are reported to the logger from then on.
+   */
+  public Job acquire(ILogger logger) throws ProcessingException {
+    PooledEngine engine = null;
+    boolean mustStart = false;
+    synchronized (this) {
+      while (engine == null && !mustStart) {
+        if (shutdown)
+          throw new ProcessingException("The ECLiPSe engine pool has been shut down"); //$NON-NLS-1$
+        if (!idleEngines.isEmpty())
+          engine = idleEngines.removeFirst();
+        else if (engines.size() + starting < maxSize) {
+          starting++;
+          mustStart = true;
+        }
+        else
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProcessingException(e);
+          }
+      }
+    }
+    if (mustStart) {
+      try {
+        engine = startEngine();
+      }
+      finally {
+        synchronized (this) {
+          starting--;
+          if (engine != null)
+            engines.add(engine);
+          notifyAll();
+        }
+      }
+    }
+    engine.logger = logger;
+    Job job = new Job(this, engine);
+    try {
+      job.open();
+    }
+    catch (Exception e) {
+      discard(job);
+      throw new ProcessingException(e);
+    }
+    return job;
+  }
+
+  /**
+   * Erases the module of the job and gives its engine back to the pool once
+   * the libraries are loaded into its next module. The engine is destroyed
+   * instead if it has already served its quota of jobs.
+   */
+  public void release(Job job) {
+    final PooledEngine engine = job.engine;
+    try {
+      job.close();
+    }
+    catch (Exception e) {
+      discard(job);
+      return;
+    }
+    boolean retire;
+    synchronized (this) {
+      retire = shutdown || engine.jobs >= maxJobsPerEngine;
+      if (retire) {
+        engines.remove(engine);
+        notifyAll();
+      }
+    }
+    if (retire) {
+      engine.destroy();
+      return;
+    }
+    final List<File> libs = getLibraries();
+    try {
+      getPreparer().execute(new Runnable() {
+        @Override
+        public void run() {
+          prepare(engine, libs);
+        }
+      });
+    }
+    catch (RejectedExecutionException e) {
+      retire(engine);
+    }
+  }
+
+  /**
+   * Opens the next module of an engine given back by a job and makes the
+   * engine idle again, or destroys it if it does not answer anymore.
+   */
+  private void prepare(PooledEngine engine, List<File> libs) {
+    boolean prepared = false;
+    try {
+      engine.prepare(libs);
+      prepared = true;
+    }
+    catch (Exception e) {
+      engine.log("Unable to prepare the ECLiPSe engine: " + e.getMessage()); //$NON-NLS-1$
+    }
+    synchronized (this) {
+      if (prepared && !shutdown) {
+        idleEngines.addFirst(engine);
+        notifyAll();
+        return;
+      }
+    }
+    retire(engine);
+  }
+
+  private void retire(PooledEngine engine) {
+    synchronized (this) {
+      engines.remove(engine);
+      notifyAll();
+    }
+    engine.destroy();
+  }
+
+  private synchronized ExecutorService getPreparer() {
+    if (shutdown)
+      throw new RejectedExecutionException();
+    if (preparer == null)
+      preparer = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "EclipseEnginePool preparer"); //$NON-NLS-1$
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    return preparer;
+  }
+
+  /**
+   * Destroys the engine of a job that crashed or was interrupted. A new
+   * engine will be started on demand to take its place.
+   */
+  public void discard(Job job) {
+    retire(job.engine);
+  }
+
+  public void shutdown() {
+    List<PooledEngine> toDestroy;
+    synchronized (this) {
+      shutdown = true;
+      toDestroy = new ArrayList<PooledEngine>(idleEngines);
+      engines.removeAll(idleEngines);
+      idleEngines.clear();
+      if (preparer != null)
+        preparer.shutdown();
+      notifyAll();
+    }
+    for (PooledEngine engine : toDestroy)
+      engine.destroy();
+  }
+
+  private PooledEngine startEngine() throws ProcessingException {
+    OutOfProcessEclipse process = null;
+    try {
+      process = new OutOfProcessEclipse(engineOptions);
+      process.rpc(WARM_UP_GOAL);
+      PooledEngine engine = new PooledEngine(process);
+      engine.prepare(getLibraries());
+      return engine;
+    }
+    catch (Exception e) {
+      if (process != null)
+        try {
+          process.destroy();
+        } catch (IOException ignored) {
+        }
+      throw new ProcessingException("Unable to start the ECLiPSe engine", e); //$NON-NLS-1$
+    }
+  }
+
+  /**
+   * Returns what tells whether the libraries changed since they were loaded.
+   */
+  private static List<String> getSignature(List<File> libs) {
+    List<String> signature = new ArrayList<String>();
+    for (File lib : libs)
+      signature.add(lib.getAbsolutePath() + "@" + lib.lastModified()); //$NON-NLS-1$
+    return signature;
+  }
+
+  private static class PooledEngine {
+    private final OutOfProcessEclipse process;
+    private int jobs = 0;
+    private int modules = 0;
+    private Atom module = null;
+    private List<String> librariesSignature = Collections.emptyList();
+    private volatile ILogger logger = null;
+    private boolean destroyed = false;
+
+    PooledEngine(OutOfProcessEclipse process) {
+      this.process = process;
+    }
+
+    /**
+     * Opens the next module of the engine, where the libraries are loaded.
+     * If they cannot be compiled, the module is left empty, and the job
+     * reports the error when it loads them itself.
+     */
+    void prepare(List<File> libs) throws EclipseException, IOException {
+      openModule();
+      try {
+        load(libs);
+      }
+      catch (EclipseException e) {
+        log("Unable to load the libraries into the ECLiPSe engine: " + e.getMessage()); //$NON-NLS-1$
+        closeModule();
+        openModule();
+      }
+    }
+
+    void openModule() throws EclipseException, IOException {
+      modules++;
+      module = new Atom(JOB_MODULE_PREFIX + modules);
+      librariesSignature = Collections.emptyList();
+      process.rpc(new CompoundTermImpl("create_module", module)); //$NON-NLS-1$
+    }
+
+    void closeModule() throws EclipseException, IOException {
+      Atom erased = module;
+      module = null;
+      librariesSignature = Collections.emptyList();
+      process.rpc(new CompoundTermImpl("erase_module", erased)); //$NON-NLS-1$
+    }
+
+    void load(List<File> libs) throws EclipseException, IOException {
+      for (File lib : libs)
+        compile(lib);
+      librariesSignature = getSignature(libs);
+    }
+
+    void compile(File file) throws EclipseException, IOException {
+      CompoundTermImpl compile = new CompoundTermImpl("compile", process.getPath(file)); //$NON-NLS-1$
+      process.rpc(new CompoundTermImpl("@", compile, module)); //$NON-NLS-1$
+    }
+
+    void log(String message) {
+      ILogger engineLogger = logger;
+      if (engineLogger != null)
+        engineLogger.writeWarningMessage(EclipseEnginePool.class.toString(), message);
+    }
+
+    void destroy() {
+      synchronized (this) {
+        if (destroyed)
+          return;
+        destroyed = true;
+      }
+      try {
+        process.destroy();
+      }
+      catch (Exception e) {
+        log("Unable to destroy the ECLiPSe engine: " + e.getMessage()); //$NON-NLS-1$
+      }
+    }
+  }
+
+  /**
+   * A single use of a pooled engine. Everything compiled or called through
+   * the job lives in the job module.
+   */
+  public static class Job {
+    private final EclipseEnginePool pool;
+    private final PooledEngine engine;
+
+    Job(EclipseEnginePool pool, PooledEngine engine) {
+      this.pool = pool;
+      this.engine = engine;
+    }
+
+    void open() throws EclipseException, IOException {
+      engine.jobs++;
+      if (engine.module == null)
+        engine.openModule();
+    }
+
+    void close() throws EclipseException, IOException {
+      engine.closeModule();
+    }
+
+    public OutOfProcessEclipse getEngine() {
+      return engine.process;
+    }
+
+    /**
+     * Destroys the engine of the job, which makes the call it is running, if
+     * any, fail at once. May be called from any thread. The job must then be
+     * given back with {@link EclipseEnginePool#discard(Job)}.
+     */
+    public void abort() {
+      engine.destroy();
+    }
+
+    public String getModuleName() {
+      return engine.module.functor();
+    }
+
+    /**
+     * Loads the libraries into the job module, unless the engine already
+     * loaded them ahead of the job. They must be loaded before the program,
+     * and become the libraries the engines load ahead of their next jobs.
+     */
+    public void loadLibraries(List<File> libs) throws EclipseException, IOException {
+      pool.setLibraries(libs);
+      if (engine.librariesSignature.equals(getSignature(libs)))
+        return;
+      if (!engine.librariesSignature.isEmpty()) {
+        engine.closeModule();
+        engine.openModule();
+      }
+      engine.load(libs);
+    }
+
+    public void compile(File file) throws EclipseException, IOException {
+      engine.compile(file);
+    }
+
+    /**
+     * Calls the goal in the job module and returns it with its variables
+     * bound to the first solution found.
+     */
+    public CompoundTerm rpc(String goal) throws EclipseException, IOException {
+      CompoundTerm qualified = engine.process.rpc(engine.module.functor() + ":(" + goal + ")"); //$NON-NLS-1$ //$NON-NLS-2$
+      return (CompoundTerm) qualified.arg(2);
+    }
+
+    public CompoundTerm rpc(CompoundTerm goal) throws EclipseException, IOException {
+      CompoundTerm qualified = engine.process.rpc(new CompoundTermImpl(":", engine.module, goal)); //$NON-NLS-1$
+      return (CompoundTerm) qualified.arg(2);
+    }
+  }
+}
@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp.eclipsecs;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+
+import com.parctechnologies.eclipse.Atom;
+import com.parctechnologies.eclipse.CompoundTerm;
+import com.parctechnologies.eclipse.CompoundTermImpl;
+import com.parctechnologies.eclipse.EclipseException;
+
+import fr.inria.atlanmod.emftocsp.ProcessingException;
+
+/**
+ * Keeps the ECLiPSe runtime libraries (libs/*.ecl) compiled into ECLiPSe
+ * object files (.eco). Compiled files are stored under a directory named
+ * after the library, the compilation mode and a digest of the library
+ * contents and of the ECLiPSe version, so a library is compiled again as
+ * soon as its source changes and the outdated object file is removed.
+ */
+public class EclipseLibraryCache {
+  private static final String SOURCE_EXTENSION = ".ecl"; //$NON-NLS-1$
+  private static final String OBJECT_EXTENSION = ".eco"; //$NON-NLS-1$
+
+  private final File cacheDir;
+  private boolean optimized;
+  private String eclipseVersion = null;
+
+  public EclipseLibraryCache(File cacheDir, boolean optimized) {
+    this.cacheDir = cacheDir;
+    this.optimized = optimized;
+  }
+
+  /**
+   * Returns a cache located in the temporary directory of the system.
+   */
+  public static EclipseLibraryCache getDefaultCache() {
+    return new EclipseLibraryCache(new File(System.getProperty("java.io.tmpdir"), "emftocsp-eco"), false); //$NON-NLS-1$ //$NON-NLS-2$
+  }
+
+  public File getCacheDir() {
+    return cacheDir;
+  }
+
+  public synchronized boolean isOptimized() {
+    return optimized;
+  }
+
+  /**
+   * When set, libraries are compiled without debug information, which makes
+   * them smaller and faster but hides them from the ECLiPSe tracer.
+   */
+  public synchronized void setOptimized(boolean optimized) {
+    this.optimized = optimized;
+  }
+
+  /**
+   * Compiles ahead of time the libraries that are not in the cache yet.
+   */
+  public void precompile(EclipseEnginePool enginePool, List<File> libs) throws ProcessingException {
+    EclipseEnginePool.Job job = enginePool.acquire();
+    boolean engineAlive = true;
+    try {
+      for (File lib : libs)
+        getCompiledLibrary(job, lib);
+    }
+    catch (EclipseException e) {
+      throw new ProcessingException(e);
+    }
+    catch (IOException e) {
+      engineAlive = false;
+      throw new ProcessingException(e);
+    }
+    finally {
+      if (engineAlive)
+        enginePool.release(job);
+      else
+        enginePool.discard(job);
+    }
+  }
+
+  /**
+   * Returns the object file of the given library, compiling it with the
+   * engine of the job if it is not cached or if the cached file is outdated.
+   * Files which are not ECLiPSe sources are returned unchanged.
+   */
+  public File getCompiledLibrary(EclipseEnginePool.Job job, File lib) throws EclipseException, IOException {
+    if (!lib.getName().endsWith(SOURCE_EXTENSION))
+      return lib;
+    boolean optimizedMode = isOptimized();
+    File objectFile = getObjectFile(lib, getEclipseVersion(job), optimizedMode);
+    if (objectFile.isFile())
+      return objectFile;
+    File entryDir = objectFile.getParentFile();
+    String name = getLibraryName(lib);
+
+    File buildDir = new File(cacheDir, entryDir.getName() + ".tmp" + System.nanoTime()); //$NON-NLS-1$
+    if (!buildDir.mkdirs())
+      throw new IOException("Unable to create the directory " + buildDir.getAbsolutePath()); //$NON-NLS-1$
+    try {
+      List<CompoundTerm> options = Arrays.<CompoundTerm>asList(
+          new CompoundTermImpl(":", new Atom("output"), new Atom("eco")), //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+          new CompoundTermImpl(":", new Atom("outdir"), job.getEngine().getPath(buildDir)), //$NON-NLS-1$ //$NON-NLS-2$
+          new CompoundTermImpl(":", new Atom("debug"), new Atom(optimizedMode ? "off" : "on"))); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+      job.rpc(new CompoundTermImpl("compile", job.getEngine().getPath(lib), options)); //$NON-NLS-1$
+      File builtFile = new File(buildDir, name + OBJECT_EXTENSION);
+      if (!builtFile.isFile())
+        throw new IOException("ECLiPSe did not produce " + builtFile.getAbsolutePath()); //$NON-NLS-1$
+      entryDir.mkdirs();
+      if (!builtFile.renameTo(objectFile) && !objectFile.isFile())
+        throw new IOException("Unable to store " + objectFile.getAbsolutePath()); //$NON-NLS-1$
+    }
+    finally {
+      delete(buildDir);
+    }
+    removeOutdatedEntries(objectFile);
+    return objectFile;
+  }
+
+  /**
+   * Returns where the object file of the library is cached for the given
+   * ECLiPSe version and compilation mode. The location changes with the
+   * contents of the library, the version and the mode.
+   */
+  public File getObjectFile(File lib, String eclipseVersion, boolean optimizedMode) throws IOException {
+    String name = getLibraryName(lib);
+    File entryDir = new File(cacheDir, getEntryPrefix(name, optimizedMode) + digest(lib, eclipseVersion, optimizedMode));
+    return new File(entryDir, name + OBJECT_EXTENSION);
+  }
+
+  /**
+   * Removes the object files cached for the other contents of the library
+   * of the given object file, or for other ECLiPSe versions, in the same
+   * compilation mode.
+   */
+  public void removeOutdatedEntries(File objectFile) {
+    File currentEntry = objectFile.getParentFile();
+    String entryName = currentEntry.getName();
+    String prefix = entryName.substring(0, entryName.lastIndexOf('-') + 1);
+    File[] entries = cacheDir.listFiles();
+    if (entries == null)
+      return;
+    for (File entry : entries)
+      if (entry.isDirectory() && entry.getName().startsWith(prefix) && !entry.getName().contains(".tmp") && !entry.equals(currentEntry)) //$NON-NLS-1$
+        delete(entry);
+  }
+
+  private static String getLibraryName(File lib) {
+    String name = lib.getName();
+    return name.endsWith(SOURCE_EXTENSION) ? name.substring(0, name.length() - SOURCE_EXTENSION.length()) : name;
+  }
+
+  private static String getEntryPrefix(String name, boolean optimizedMode) {
+    return name + "-" + (optimizedMode ? "opt" : "dbg") + "-"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+  }
+
+  private synchronized String getEclipseVersion(EclipseEnginePool.Job job) throws EclipseException, IOException {
+    if (eclipseVersion == null) {
+      CompoundTerm result = job.getEngine().rpc("get_flag(version,V)"); //$NON-NLS-1$
+      eclipseVersion = String.valueOf(result.arg(2));
+    }
+    return eclipseVersion;
+  }
+
+  private static String digest(File lib, String eclipseVersion, boolean optimizedMode) throws IOException {
+    MessageDigest md;
+    try {
+      md = MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new ProcessingException(e);
+    }
+    InputStream in = new FileInputStream(lib);
+    try {
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = in.read(buffer)) != -1)
+        md.update(buffer, 0, read);
+    }
+    finally {
+      in.close();
+    }
+    md.update((eclipseVersion + "/" + optimizedMode).getBytes("UTF-8")); //$NON-NLS-1$ //$NON-NLS-2$
+    StringBuilder hex = new StringBuilder();
+    for (byte b : md.digest())
+      hex.append(String.format("%02x", b)); //$NON-NLS-1$
+    return hex.toString();
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null)
+      for (File child : children)
+        delete(child);
+    file.delete();
+  }
+}
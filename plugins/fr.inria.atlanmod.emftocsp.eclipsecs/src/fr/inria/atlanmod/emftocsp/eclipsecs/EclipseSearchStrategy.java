@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp.eclipsecs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The variable selection and value choice methods of search/6 used to label
+ * the variables of a generated program. The search itself is always
+ * complete, so every strategy gives the same verdict and only the time it
+ * takes to reach it (and the instance found) differ.
+ */
+public class EclipseSearchStrategy {
+  /**
+   * The strategy of labeling/1, which generated programs use by default.
+   */
+  public static final EclipseSearchStrategy DEFAULT = new EclipseSearchStrategy("input_order", "indomain"); //$NON-NLS-1$ //$NON-NLS-2$
+
+  private static final List<String> SELECTIONS = Arrays.asList("input_order", "first_fail", "anti_first_fail", "smallest", "largest", "occurrence", "most_constrained", "max_regret"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$
+  private static final List<String> CHOICES = Arrays.asList("indomain", "indomain_min", "indomain_max", "indomain_middle", "indomain_median", "indomain_split", "indomain_reverse_split", "indomain_random", "indomain_interval"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$
+
+  private final String selection;
+  private final String choice;
+
+  public EclipseSearchStrategy(String selection, String choice) {
+    if (!SELECTIONS.contains(selection))
+      throw new IllegalArgumentException("Unknown variable selection method " + selection); //$NON-NLS-1$
+    if (!CHOICES.contains(choice))
+      throw new IllegalArgumentException("Unknown value choice method " + choice); //$NON-NLS-1$
+    this.selection = selection;
+    this.choice = choice;
+  }
+
+  /**
+   * Returns strategies that behave differently enough to be raced against
+   * each other: the default one, the usual fail-first heuristics, and a
+   * randomized value choice, which explores another part of the search tree
+   * on every run.
+   */
+  public static List<EclipseSearchStrategy> getPortfolio() {
+    List<EclipseSearchStrategy> strategies = new ArrayList<EclipseSearchStrategy>();
+    strategies.add(DEFAULT);
+    strategies.add(new EclipseSearchStrategy("first_fail", "indomain_min")); //$NON-NLS-1$ //$NON-NLS-2$
+    strategies.add(new EclipseSearchStrategy("most_constrained", "indomain_split")); //$NON-NLS-1$ //$NON-NLS-2$
+    strategies.add(new EclipseSearchStrategy("occurrence", "indomain_max")); //$NON-NLS-1$ //$NON-NLS-2$
+    strategies.add(new EclipseSearchStrategy("first_fail", "indomain_random")); //$NON-NLS-1$ //$NON-NLS-2$
+    strategies.add(new EclipseSearchStrategy("anti_first_fail", "indomain_middle")); //$NON-NLS-1$ //$NON-NLS-2$
+    return Collections.unmodifiableList(strategies);
+  }
+
+  public String getSelection() {
+    return selection;
+  }
+
+  public String getChoice() {
+    return choice;
+  }
+
+  /**
+   * Returns the goal selecting this strategy for the next call to the
+   * program, see ModelToEcl#genSearchStrategySection. The program must be
+   * generated with a search configuration or with telemetry, which
+   * EclipseSolver checks once the program is compiled.
+   */
+  public String getGoal() {
+    return "setval(search_strategy, strategy(" + selection + ", " + choice + "))"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof EclipseSearchStrategy))
+      return false;
+    EclipseSearchStrategy other = (EclipseSearchStrategy) obj;
+    return selection.equals(other.selection) && choice.equals(other.choice);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * selection.hashCode() + choice.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return selection + "/" + choice; //$NON-NLS-1$
+  }
+}
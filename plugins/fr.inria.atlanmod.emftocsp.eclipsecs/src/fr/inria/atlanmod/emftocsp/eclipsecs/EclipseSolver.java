@@ -10,20 +10,48 @@
  *******************************************************************************/
 package fr.inria.atlanmod.emftocsp.eclipsecs;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
+import com.parctechnologies.eclipse.Atom;
 import com.parctechnologies.eclipse.CompoundTerm;
-import com.parctechnologies.eclipse.EclipseEngine;
-import com.parctechnologies.eclipse.EclipseEngineOptions;
+import com.parctechnologies.eclipse.CompoundTermImpl;
+import com.parctechnologies.eclipse.EXDRInputStream;
+import com.parctechnologies.eclipse.EXDROutputStream;
 import com.parctechnologies.eclipse.EclipseException;
+import com.parctechnologies.eclipse.EclipseTerminatedException;
 import com.parctechnologies.eclipse.Fail;
-import com.parctechnologies.eclipse.OutOfProcessEclipse;
+import com.parctechnologies.eclipse.FromEclipseQueue;
+import com.parctechnologies.eclipse.QueueListener;
 import com.parctechnologies.eclipse.Throw;
+import com.parctechnologies.eclipse.ToEclipseQueue;
 
+import fr.inria.atlanmod.emftocsp.ICspSolutionIterator;
 import fr.inria.atlanmod.emftocsp.ICspSolver;
+import fr.inria.atlanmod.emftocsp.ICspSolverSession;
+import fr.inria.atlanmod.emftocsp.ILogger;
+import fr.inria.atlanmod.emftocsp.ISolverProgressListener;
+import fr.inria.atlanmod.emftocsp.PipelineMetrics;
+import fr.inria.atlanmod.emftocsp.PipelinePhase;
 import fr.inria.atlanmod.emftocsp.ProcessingException;
+import fr.inria.atlanmod.emftocsp.SolverProgressEvent;
+import fr.inria.atlanmod.emftocsp.SolverStatistics;
+import fr.inria.atlanmod.emftocsp.SolverVerdict;
 
 
 /**
@@ -33,9 +61,29 @@ import fr.inria.atlanmod.emftocsp.ProcessingException;
 public class EclipseSolver implements ICspSolver <CompoundTerm>{
   private String imgGeneratorPath = ""; //$NON-NLS-1$
   private File imgResult;
-  private EclipseEngineOptions engineOptions = null;
-  private EclipseEngine engine = null; 
+  private EclipseEnginePool enginePool = null;
+  private EclipseLibraryCache libraryCache = EclipseLibraryCache.getDefaultCache();
   private CompoundTerm solution = null;
+  private SolverVerdict verdict = null;
+  private SolverStatistics statistics = null;
+  private volatile long timeout = 0;
+  private volatile ISolverProgressListener progressListener = null;
+  private volatile PipelineMetrics metrics = null;
+  private volatile ILogger logger = null;
+  private EclipseSearchStrategy searchStrategy = null;
+  private final List<SolverRun> runs = new ArrayList<SolverRun>();
+  private int cancellations = 0;
+
+  private static final long POLL_MILLIS = 200;
+
+  private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread thread = new Thread(r, "EclipseSolver watchdog"); //$NON-NLS-1$
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
   
   @Override
   public CompoundTerm getSolution(){
@@ -43,9 +91,28 @@ public class EclipseSolver implements ICspSolver <CompoundTerm>{
   }
 
   public EclipseSolver(String solverPath, String imgGeneratorPath) {
+    this(EclipseEnginePool.getSharedPool(solverPath), imgGeneratorPath);
+  }
+
+  public EclipseSolver(EclipseEnginePool enginePool, String imgGeneratorPath) {
     this.imgGeneratorPath = imgGeneratorPath;
-    engineOptions = new EclipseEngineOptions(new File(solverPath));
-    engineOptions.setUseQueues(false);    
+    this.enginePool = enginePool;
+  }
+
+  public EclipseEnginePool getEnginePool() {
+    return enginePool;
+  }
+
+  public EclipseLibraryCache getLibraryCache() {
+    return libraryCache;
+  }
+
+  /**
+   * Sets the cache of precompiled runtime libraries. When it is null the
+   * libraries are compiled from source on every solve.
+   */
+  public void setLibraryCache(EclipseLibraryCache libraryCache) {
+    this.libraryCache = libraryCache;
   }
 
   @Override
@@ -53,40 +120,616 @@ public class EclipseSolver implements ICspSolver <CompoundTerm>{
     return solveCSP(srcFile, null);
   }  
   
+  public EclipseSearchStrategy getSearchStrategy() {
+    return searchStrategy;
+  }
+
+  /**
+   * Sets the strategy the variables are labeled with. When it is null the
+   * strategy of the generated program is kept. Otherwise the program must be
+   * generated with its search section, that is with a search configuration
+   * or with telemetry, or the solves fail with a ProcessingException.
+   */
+  public void setSearchStrategy(EclipseSearchStrategy searchStrategy) {
+    this.searchStrategy = searchStrategy;
+  }
+
+  @Override
+  public SolverStatistics getStatistics() {
+    return statistics;
+  }
+
+  @Override
+  public void setProgressListener(ISolverProgressListener listener) {
+    this.progressListener = listener;
+  }
+
+  @Override
+  public void setLogger(ILogger logger) {
+    this.logger = logger;
+  }
+
+  /**
+   * The compilation is measured with the libraries, the solving from the
+   * call to the entry point of the program until its first answer.
+   */
+  @Override
+  public void setMetrics(PipelineMetrics metrics) {
+    this.metrics = metrics;
+  }
+
   @Override
   public boolean solveCSP(File srcFile, List<File> libs) throws ProcessingException  {
+    File dotFile = createDotFile(srcFile);
+    if (!search(srcFile, libs, dotFile))
+      return false;
+    String imgFilePath = srcFile.getAbsolutePath() + ".png"; //$NON-NLS-1$
+    setResult(generateImage(imgFilePath, dotFile));
+    return true;
+  }
+
+  /**
+   * Searches a solution of the program and draws it into the dot file,
+   * without generating its image.
+   */
+  boolean search(File srcFile, List<File> libs, File dotFile) throws ProcessingException {
+    solution = null;
+    verdict = SolverVerdict.UNKNOWN;
+    statistics = null;
+    int startCancellations = getCancellations();
+    SolverRun run = new SolverRun(enginePool.acquire(logger), startCancellations);
+    boolean engineAlive = true;
+    FromEclipseQueue telemetryQueue = null;
+    PipelineMetrics.Measurement solving = null;
     try {
-      createEngineProcess();
-      compile(srcFile, libs);
-      File dotFile = File.createTempFile(srcFile.getName(), ".dot"); //$NON-NLS-1$
-      dotFile.deleteOnExit();
-      StringBuilder query = new StringBuilder();
-      query.append("findSolutions(I),gviz_draw_object_diagram(\""); //$NON-NLS-1$
-      query.append(dotFile.getAbsolutePath().replaceAll("\\\\", "\\\\\\\\")); //$NON-NLS-1$ //$NON-NLS-2$
-      query.append("\",I)"); //$NON-NLS-1$
-      solution = engine.rpc(query.toString());    
+      compile(run.job, srcFile, libs);
+      telemetryQueue = openTelemetry(run.job);
+      solving = startMeasurement(PipelinePhase.SOLVING);
+      solution = getEntryAnswer(run.job.rpc(getQuery("findSolutions(I)", dotFile))); //$NON-NLS-1$
+      statistics = getTelemetryStatistics(run.job);
       System.out.println();
-      disposeEngineProcess();
-      String imgFilePath = srcFile.getAbsolutePath() + ".png"; //$NON-NLS-1$
-      setResult(generateImage(imgFilePath, dotFile));
-      return true;
     }
     catch (Throw th) {
-      disposeEngineProcess(); 
+      if (run.isStopped())
+        return false;
       throw new ProcessingException("Unexpected problem. Please consult the executed generated CLP code (.ecl file)",th);
     }
     catch (Fail fail) {
-        disposeEngineProcess(); 
+        verdict = SolverVerdict.UNSAT;
+        statistics = getTelemetryStatistics(run.job);
         return false;
+    } catch (EclipseTerminatedException e) {
+        engineAlive = false;
+        if (run.isStopped())
+          return false;
+        throw new ProcessingException("Unexpected problem. Please consult the executed generated CLP code (.ecl file)",e);
     } catch (EclipseException e) {
-        disposeEngineProcess(); 
+        if (run.isStopped())
+          return false;
         throw new ProcessingException("Unexpected problem. Please consult the executed generated CLP code (.ecl file)",e);
 	} catch (IOException e) {
-		disposeEngineProcess();
+		engineAlive = false;
+        if (run.isStopped())
+          return false;
         throw new ProcessingException("Unexpected problem. Please consult the executed generated CLP code (.ecl file)",e);
+	} finally {
+	    stopSolving(solving, statistics);
+	    closeQueue(telemetryQueue);
+	    run.finish();
+	    if (engineAlive && !run.isStopped())
+	      enginePool.release(run.job);
+	    else
+	      enginePool.discard(run.job);
 	}
+    verdict = SolverVerdict.SAT;
+    return true;
   }
   
+  @Override
+  public SolverVerdict getVerdict() {
+    return verdict;
+  }
+
+  @Override
+  public long getTimeout() {
+    return timeout;
+  }
+
+  @Override
+  public void setTimeout(long timeoutMillis) {
+    if (timeoutMillis < 0)
+      throw new IllegalArgumentException("The timeout must not be negative"); //$NON-NLS-1$
+    this.timeout = timeoutMillis;
+  }
+
+  @Override
+  public void cancel() {
+    List<SolverRun> toStop;
+    synchronized (runs) {
+      cancellations++;
+      toStop = new ArrayList<SolverRun>(runs);
+    }
+    for (SolverRun run : toStop)
+      run.stop();
+  }
+
+  /**
+   * A job of the pool used by a solve or by a query of a session. The run is
+   * stopped by destroying the engine of its job, which makes the pending
+   * call fail at once, either when its timeout expires or when the solver is
+   * cancelled. A run is stopped as soon as it starts if the solver was
+   * cancelled while it was waiting for its job.
+   */
+  private class SolverRun {
+    private final EclipseEnginePool.Job job;
+    private volatile boolean stopped = false;
+    private ScheduledFuture<?> deadline = null;
+
+    SolverRun(EclipseEnginePool.Job job, int startCancellations) {
+      this.job = job;
+      synchronized (runs) {
+        runs.add(this);
+        stopped = cancellations != startCancellations;
+      }
+      if (stopped) {
+        job.abort();
+        return;
+      }
+      restartDeadline();
+    }
+
+    /**
+     * Gives the run the whole timeout of the solver again, from now on.
+     */
+    synchronized void restartDeadline() {
+      suspendDeadline();
+      long runTimeout = timeout;
+      if (runTimeout > 0)
+        deadline = WATCHDOG.schedule(new Runnable() {
+          @Override
+          public void run() {
+            stop();
+          }
+        }, runTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops counting the time until the deadline is restarted, while the
+     * run waits for its caller rather than for the engine.
+     */
+    synchronized void suspendDeadline() {
+      if (deadline != null)
+        deadline.cancel(false);
+      deadline = null;
+    }
+
+    void stop() {
+      stopped = true;
+      job.abort();
+    }
+
+    boolean isStopped() {
+      return stopped;
+    }
+
+    void finish() {
+      suspendDeadline();
+      synchronized (runs) {
+        runs.remove(this);
+      }
+    }
+  }
+
+  /**
+   * The program is compiled by the first query of the session, and again by
+   * the query following a stopped one, since stopping a query destroys its
+   * engine.
+   */
+  @Override
+  public EclipseSolverSession openSession(File srcFile, List<File> libs) throws ProcessingException {
+    return new EclipseSolverSession(srcFile, libs);
+  }
+
+  private int getCancellations() {
+    synchronized (runs) {
+      return cancellations;
+    }
+  }
+
+  /**
+   * Keeps the job holding the compiled program until the session is closed.
+   * Every query draws its solution into a dot file of its own.
+   */
+  class EclipseSolverSession implements ICspSolverSession<CompoundTerm> {
+    private final File srcFile;
+    private final List<File> libs;
+    private EclipseEnginePool.Job job = null;
+    private boolean compiled = false;
+    private boolean closed = false;
+    private int queries = 0;
+    private CompoundTerm sessionSolution = null;
+    private File sessionResult = null;
+    private SolverVerdict sessionVerdict = null;
+    private SolverStatistics sessionStatistics = null;
+    private int scope = -1;
+
+    EclipseSolverSession(File srcFile, List<File> libs) {
+      this.srcFile = srcFile;
+      this.libs = libs;
+    }
+
+    @Override
+    public boolean solve(String propertyParameter) throws ProcessingException {
+      File dotFile = createDotFile(srcFile);
+      if (!search(propertyParameter, dotFile))
+        return false;
+      sessionResult = generateImage(srcFile.getAbsolutePath() + "." + queries + ".png", dotFile); //$NON-NLS-1$ //$NON-NLS-2$
+      return true;
+    }
+
+    /**
+     * Runs the query and draws its solution into the dot file, without
+     * generating its image.
+     */
+    boolean search(String propertyParameter, File dotFile) throws ProcessingException {
+      if (closed)
+        throw new ProcessingException("The solver session is closed"); //$NON-NLS-1$
+      sessionSolution = null;
+      sessionResult = null;
+      sessionVerdict = SolverVerdict.UNKNOWN;
+      sessionStatistics = null;
+      queries++;
+      int startCancellations = getCancellations();
+      if (job == null)
+        job = enginePool.acquire(logger);
+      SolverRun run = new SolverRun(job, startCancellations);
+      boolean engineAlive = true;
+      FromEclipseQueue telemetryQueue = null;
+      PipelineMetrics.Measurement solving = null;
+      try {
+        if (!compiled) {
+          compile(job, srcFile, libs);
+          compiled = true;
+        }
+        if (scope >= 0)
+          job.rpc("setval(scope_bound, " + scope + ")"); //$NON-NLS-1$ //$NON-NLS-2$
+        else
+          job.rpc("(current_predicate(boundScope/1) -> setval(scope_bound, -1) ; true)"); //$NON-NLS-1$
+        telemetryQueue = openTelemetry(job);
+        String entryGoal = propertyParameter == null ? "findSolutions(I)" : "findSolutions(I," + propertyParameter + ")"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        solving = startMeasurement(PipelinePhase.SOLVING);
+        sessionSolution = getEntryAnswer(job.rpc(getQuery(entryGoal, dotFile)));
+        sessionStatistics = getTelemetryStatistics(job);
+      }
+      catch (Throw th) {
+        if (run.isStopped())
+          return false;
+        throw new ProcessingException("Unexpected problem. Please consult the executed generated CLP code (.ecl file)",th);
+      }
+      catch (Fail fail) {
+        sessionVerdict = SolverVerdict.UNSAT;
+        sessionStatistics = getTelemetryStatistics(job);
+        return false;
+      }
+      catch (EclipseTerminatedException e) {
+        engineAlive = false;
+        if (run.isStopped())
+          return false;
+        throw new ProcessingException("Unexpected problem. Please consult the executed generated CLP code (.ecl file)",e);
+      }
+      catch (EclipseException e) {
+        if (run.isStopped())
+          return false;
+        throw new ProcessingException("Unexpected problem. Please consult the executed generated CLP code (.ecl file)",e);
+      }
+      catch (IOException e) {
+        engineAlive = false;
+        if (run.isStopped())
+          return false;
+        throw new ProcessingException("Unexpected problem. Please consult the executed generated CLP code (.ecl file)",e);
+      }
+      finally {
+        stopSolving(solving, sessionStatistics);
+        closeQueue(telemetryQueue);
+        run.finish();
+        if (!engineAlive || run.isStopped()) {
+          enginePool.discard(job);
+          job = null;
+          compiled = false;
+        }
+      }
+      sessionVerdict = SolverVerdict.SAT;
+      return true;
+    }
+
+    @Override
+    public void setScope(int scope) {
+      this.scope = scope < 0 ? -1 : scope;
+    }
+
+    @Override
+    public int getScope() {
+      return scope;
+    }
+
+    @Override
+    public CompoundTerm getSolution() {
+      return sessionSolution;
+    }
+
+    @Override
+    public SolverStatistics getStatistics() {
+      return sessionStatistics;
+    }
+
+    @Override
+    public Object getResult() {
+      return sessionResult;
+    }
+
+    @Override
+    public SolverVerdict getVerdict() {
+      return sessionVerdict;
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+      if (job == null)
+        return;
+      enginePool.release(job);
+      job = null;
+    }
+  }
+
+  /**
+   * Runs the program on a thread of its own, which backtracks into the
+   * entry point each time a solution is pulled.
+   */
+  @Override
+  public EclipseSolutionIterator iterateSolutions(File srcFile, List<File> libs) throws ProcessingException {
+    EclipseSolutionIterator iterator = new EclipseSolutionIterator(srcFile, libs);
+    Thread thread = new Thread(iterator, "EclipseSolver solutions"); //$NON-NLS-1$
+    thread.setDaemon(true);
+    thread.start();
+    return iterator;
+  }
+
+  /**
+   * Streams the solutions of the program through a pair of queues of the
+   * engine. The program writes each solution to the solutions queue and
+   * then reads the demand queue: answering "next" makes it backtrack into
+   * the search, answering "stop" ends the call. The engine is therefore
+   * suspended, and its run out of the timeout, whenever the consumer is one
+   * solution behind.
+   */
+  class EclipseSolutionIterator implements ICspSolutionIterator<CompoundTerm>, Runnable {
+    private final Object END = new Object();
+    private final File srcFile;
+    private final List<File> libs;
+    private final BlockingQueue<Object> solutions = new ArrayBlockingQueue<Object>(1);
+    private volatile boolean closed = false;
+    private volatile boolean searching = false;
+    private volatile boolean exhausted = false;
+    private volatile int found = 0;
+    private volatile SolverRun run = null;
+    private volatile PipelineMetrics.Measurement solving = null;
+    private volatile ProcessingException error = null;
+    private Object next = null;
+    private boolean ended = false;
+
+    EclipseSolutionIterator(File srcFile, List<File> libs) {
+      this.srcFile = srcFile;
+      this.libs = libs;
+    }
+
+    @Override
+    public void run() {
+      int startCancellations = getCancellations();
+      EclipseEnginePool.Job job;
+      try {
+        job = enginePool.acquire(logger);
+      }
+      catch (ProcessingException e) {
+        error = e;
+        end();
+        return;
+      }
+      run = new SolverRun(job, startCancellations);
+      boolean engineAlive = true;
+      FromEclipseQueue solutionsQueue = null;
+      ToEclipseQueue demandQueue = null;
+      FromEclipseQueue telemetryQueue = null;
+      try {
+        compile(job, srcFile, libs);
+        telemetryQueue = openTelemetry(job);
+        String solutionsQueueName = job.getModuleName() + "_solutions"; //$NON-NLS-1$
+        String demandQueueName = job.getModuleName() + "_demand"; //$NON-NLS-1$
+        solutionsQueue = job.getEngine().getFromEclipseQueue(solutionsQueueName);
+        demandQueue = job.getEngine().getToEclipseQueue(demandQueueName);
+        final EXDRInputStream solutionsReader = new EXDRInputStream(solutionsQueue);
+        final EXDROutputStream demandWriter = new EXDROutputStream(demandQueue);
+        solutionsQueue.setListener(new QueueListener() {
+          @Override
+          public void dataAvailable(Object source) {
+            try {
+              offer(solutionsReader.readTerm());
+            }
+            catch (IOException e) {
+              fail(e);
+            }
+          }
+
+          @Override
+          public void dataRequest(Object source) {
+          }
+        });
+        demandQueue.setListener(new QueueListener() {
+          @Override
+          public void dataAvailable(Object source) {
+          }
+
+          @Override
+          public void dataRequest(Object source) {
+            try {
+              demand(demandWriter);
+            }
+            catch (IOException e) {
+              fail(e);
+            }
+          }
+        });
+        searching = true;
+        solving = startMeasurement(PipelinePhase.SOLVING);
+        job.rpc(getStreamQuery(solutionsQueueName, demandQueueName));
+        exhausted = !closed && !run.isStopped();
+      }
+      catch (Fail fail) {
+        exhausted = true;
+      }
+      catch (EclipseTerminatedException e) {
+        engineAlive = false;
+        if (!run.isStopped())
+          error = new ProcessingException("Unexpected problem. Please consult the executed generated CLP code (.ecl file)",e);
+      }
+      catch (EclipseException e) {
+        if (!run.isStopped())
+          error = new ProcessingException("Unexpected problem. Please consult the executed generated CLP code (.ecl file)",e);
+      }
+      catch (IOException e) {
+        engineAlive = false;
+        if (!run.isStopped())
+          error = new ProcessingException("Unexpected problem. Please consult the executed generated CLP code (.ecl file)",e);
+      }
+      catch (ProcessingException e) {
+        error = e;
+      }
+      finally {
+        searching = false;
+        stopSolving(solving, null);
+        closeQueue(solutionsQueue);
+        closeQueue(demandQueue);
+        closeQueue(telemetryQueue);
+        run.finish();
+        if (engineAlive && !run.isStopped())
+          enginePool.release(job);
+        else
+          enginePool.discard(job);
+        verdict = getVerdict();
+        end();
+      }
+    }
+
+    /**
+     * Hands a solution over to the consumer, waiting until the previous one
+     * has been taken.
+     */
+    private void offer(Object instance) {
+      searching = false;
+      run.suspendDeadline();
+      stopSolving(solving, null);
+      found++;
+      Object solution = new CompoundTermImpl(",", new CompoundTermImpl("findSolutions", instance), new Atom("true")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+      try {
+        while (!closed && !solutions.offer(solution, POLL_MILLIS, TimeUnit.MILLISECONDS))
+          ;
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        closed = true;
+      }
+    }
+
+    private void demand(EXDROutputStream demandWriter) throws IOException {
+      if (closed)
+        demandWriter.write("stop"); //$NON-NLS-1$
+      else {
+        searching = true;
+        run.restartDeadline();
+        demandWriter.write("next"); //$NON-NLS-1$
+      }
+      demandWriter.flush();
+    }
+
+    private void fail(IOException e) {
+      if (error == null)
+        error = new ProcessingException(e);
+      run.stop();
+    }
+
+    private void end() {
+      try {
+        while (!closed && !solutions.offer(END, POLL_MILLIS, TimeUnit.MILLISECONDS))
+          ;
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (next != null)
+        return true;
+      if (ended || closed)
+        return false;
+      try {
+        next = solutions.take();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        close();
+        return false;
+      }
+      if (next == END) {
+        next = null;
+        ended = true;
+        if (error != null)
+          throw error;
+        return false;
+      }
+      return true;
+    }
+
+    @Override
+    public CompoundTerm next() {
+      if (!hasNext())
+        throw new NoSuchElementException();
+      CompoundTerm solution = (CompoundTerm) next;
+      next = null;
+      return solution;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public SolverVerdict getVerdict() {
+      if (found > 0)
+        return SolverVerdict.SAT;
+      return exhausted ? SolverVerdict.UNSAT : SolverVerdict.UNKNOWN;
+    }
+
+    @Override
+    public boolean isExhausted() {
+      return exhausted;
+    }
+
+    /**
+     * The search is stopped at once if the engine is busy looking for a
+     * solution, which costs the engine, or else when the program next reads
+     * the demand queue.
+     */
+    @Override
+    public void close() {
+      closed = true;
+      SolverRun currentRun = run;
+      if (searching && currentRun != null)
+        currentRun.stop();
+    }
+  }
 
 @Override
   public Object getResult() {
@@ -97,14 +740,226 @@ public class EclipseSolver implements ICspSolver <CompoundTerm>{
     imgResult = result;
   }
     
-  private void compile(File srcFile, List<File> libs) throws EclipseException, IOException {   
-    engine.compile(srcFile);
-    if (libs != null)
-      for (File importFile : libs)
-        engine.compile(importFile);    
+  /**
+   * Loads the libraries before the program, which the engine may already
+   * have done ahead of the job, and checks that the program reads the search
+   * strategy if there is one.
+   */
+  private void compile(EclipseEnginePool.Job job, File srcFile, List<File> libs) throws EclipseException, IOException, ProcessingException {   
+    PipelineMetrics.Measurement measurement = startMeasurement(PipelinePhase.COMPILATION);
+    try {
+      List<File> compiledLibs = new ArrayList<File>();
+      if (libs != null)
+        for (File importFile : libs)
+          compiledLibs.add(getCompiledLibrary(job, importFile));
+      job.loadLibraries(compiledLibs);
+      measurement.count("libraries", compiledLibs.size()); //$NON-NLS-1$
+      job.compile(srcFile);
+      measurement.count("bytes", srcFile.length()); //$NON-NLS-1$
+    }
+    finally {
+      measurement.stop();
+    }
+    if (searchStrategy != null)
+      checkSearchStrategy(job, srcFile);
+  }
+
+  /**
+   * Fails unless the compiled program labels its variables by
+   * searchVariables/2, the only predicate reading the search strategy.
+   * Without it every strategy would run the same search.
+   */
+  private void checkSearchStrategy(EclipseEnginePool.Job job, File srcFile) throws EclipseException, IOException, ProcessingException {
+    try {
+      job.rpc("current_predicate(searchVariables/2)"); //$NON-NLS-1$
+    }
+    catch (Fail fail) {
+      throw new ProcessingException("The search strategy " + searchStrategy + " cannot be applied to " + srcFile.getName() + ", which was generated with neither a search configuration nor telemetry"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    }
+  }
+
+  /**
+   * Starts measuring the phase in the report of the solver, or in a report
+   * of its own when there is none.
+   */
+  private PipelineMetrics.Measurement startMeasurement(PipelinePhase phase) {
+    PipelineMetrics runMetrics = metrics;
+    return (runMetrics != null ? runMetrics : new PipelineMetrics()).start(phase);
+  }
+
+  /**
+   * Stops measuring a solving, if it started, with the backtracks of the
+   * search when they are known.
+   */
+  private static void stopSolving(PipelineMetrics.Measurement solving, SolverStatistics solvingStatistics) {
+    if (solving == null)
+      return;
+    if (solvingStatistics != null)
+      solving.count("backtracks", solvingStatistics.getBacktracks()); //$NON-NLS-1$
+    solving.stop();
   }
   
-  private File generateImage(String imgFilePath, File dotFile) throws ProcessingException {
+  /**
+   * Points the telemetry_queue global variable of the program to a queue
+   * reporting its events to the progress listener, or to none when there is
+   * no listener. Programs generated without telemetry are left unchanged.
+   * Returns the queue, or null.
+   */
+  private FromEclipseQueue openTelemetry(EclipseEnginePool.Job job) throws EclipseException, IOException {
+    final ISolverProgressListener listener = progressListener;
+    if (listener == null) {
+      job.rpc("(current_predicate(telemetryEvent/1) -> setval(telemetry_queue, none) ; true)"); //$NON-NLS-1$
+      return null;
+    }
+    String telemetryQueueName = job.getModuleName() + "_telemetry"; //$NON-NLS-1$
+    FromEclipseQueue telemetryQueue = job.getEngine().getFromEclipseQueue(telemetryQueueName);
+    final EXDRInputStream telemetryReader = new EXDRInputStream(telemetryQueue);
+    telemetryQueue.setListener(new QueueListener() {
+      @Override
+      public void dataAvailable(Object source) {
+        try {
+          listener.progressed(toProgressEvent((CompoundTerm) telemetryReader.readTerm()));
+        }
+        catch (IOException e) {
+          // the event is lost, the search goes on
+        }
+      }
+
+      @Override
+      public void dataRequest(Object source) {
+      }
+    });
+    job.rpc("(current_predicate(telemetryEvent/1) -> setval(telemetry_queue, " + telemetryQueueName + ") ; true)"); //$NON-NLS-1$ //$NON-NLS-2$
+    return telemetryQueue;
+  }
+
+  /**
+   * Returns the statistics of the last call to the entry point of the
+   * program, or null if the program does not keep them.
+   */
+  private static SolverStatistics getTelemetryStatistics(EclipseEnginePool.Job job) {
+    try {
+      CompoundTerm answer = job.rpc("current_predicate(telemetryStatistics/1), telemetryStatistics(S)"); //$NON-NLS-1$
+      return toStatistics((CompoundTerm) ((CompoundTerm) answer.arg(2)).arg(1));
+    }
+    catch (EclipseException e) {
+      return null;
+    }
+    catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Reads an event(Event, Statistics) term written by telemetryEvent/1,
+   * where Event is phase(Phase), cardinalities(Names, Values) or backtracks.
+   */
+  private static SolverProgressEvent toProgressEvent(CompoundTerm term) {
+    SolverStatistics stats = toStatistics((CompoundTerm) term.arg(2));
+    CompoundTerm event = (CompoundTerm) term.arg(1);
+    if ("phase".equals(event.functor())) //$NON-NLS-1$
+      return new SolverProgressEvent(SolverProgressEvent.Kind.PHASE, ((CompoundTerm) event.arg(1)).functor(), null, stats);
+    if ("cardinalities".equals(event.functor())) { //$NON-NLS-1$
+      Map<String, Integer> cardinalities = new LinkedHashMap<String, Integer>();
+      Iterator<?> values = ((Collection<?>) event.arg(2)).iterator();
+      for (Object name : (Collection<?>) event.arg(1))
+        cardinalities.put(name.toString(), ((Number) values.next()).intValue());
+      return new SolverProgressEvent(SolverProgressEvent.Kind.CARDINALITIES, null, cardinalities, stats);
+    }
+    return new SolverProgressEvent(SolverProgressEvent.Kind.BACKTRACKS, null, null, stats);
+  }
+
+  private static SolverStatistics toStatistics(CompoundTerm term) {
+    return new SolverStatistics(((Number) term.arg(1)).doubleValue(), ((Number) term.arg(2)).longValue(), ((Number) term.arg(3)).longValue(), ((Number) term.arg(4)).longValue());
+  }
+
+  private static void closeQueue(Closeable queue) {
+    if (queue == null)
+      return;
+    try {
+      queue.close();
+    }
+    catch (IOException e) {
+      // the engine is gone, and its queues with it
+    }
+  }
+
+  /**
+   * Returns the object file of the library, or the library itself if there
+   * is no cache or if ECLiPSe cannot compile it, which is logged.
+   */
+  private File getCompiledLibrary(EclipseEnginePool.Job job, File lib) throws IOException {
+    if (libraryCache == null)
+      return lib;
+    try {
+      return libraryCache.getCompiledLibrary(job, lib);
+    }
+    catch (EclipseException e) {
+      ILogger solverLogger = logger;
+      if (solverLogger != null)
+        solverLogger.writeWarningMessage(this.getClass().toString(), "Unable to compile " + lib.getName() + " into the library cache, the source is loaded instead: " + e); //$NON-NLS-1$ //$NON-NLS-2$
+      return lib;
+    }
+  }
+
+  static File createDotFile(File srcFile) throws ProcessingException {
+    try {
+      File dotFile = File.createTempFile(srcFile.getName(), ".dot"); //$NON-NLS-1$
+      dotFile.deleteOnExit();
+      return dotFile;
+    } catch (IOException e) {
+      throw new ProcessingException(e);
+    }
+  }
+
+  /**
+   * Returns the part of the answer to a query of {@link #getQuery(String, File)}
+   * holding the call to the entry point, followed by the drawing goal.
+   */
+  private CompoundTerm getEntryAnswer(CompoundTerm answer) {
+    if (searchStrategy == null)
+      return answer;
+    return (CompoundTerm) answer.arg(2);
+  }
+
+  /**
+   * Returns the goal enumerating the solutions of the program through the
+   * queues, see {@link EclipseSolutionIterator}. The goal always succeeds.
+   */
+  private String getStreamQuery(String solutionsQueue, String demandQueue) {
+    StringBuilder query = new StringBuilder();
+    if (searchStrategy != null) {
+      query.append(searchStrategy.getGoal());
+      query.append(","); //$NON-NLS-1$
+    }
+    query.append("(findSolutions(I),write_exdr("); //$NON-NLS-1$
+    query.append(solutionsQueue);
+    query.append(",I),flush("); //$NON-NLS-1$
+    query.append(solutionsQueue);
+    query.append("),read_exdr("); //$NON-NLS-1$
+    query.append(demandQueue);
+    query.append(",Demand),Demand==\"stop\"->true;true)"); //$NON-NLS-1$
+    return query.toString();
+  }
+
+  /**
+   * Returns the goal selecting the search strategy, calling the entry point
+   * of the program and drawing the instances it finds into the dot file.
+   */
+  private String getQuery(String entryGoal, File dotFile) {
+    StringBuilder query = new StringBuilder();
+    if (searchStrategy != null) {
+      query.append(searchStrategy.getGoal());
+      query.append(","); //$NON-NLS-1$
+    }
+    query.append(entryGoal);
+    query.append(",gviz_draw_object_diagram(\""); //$NON-NLS-1$
+    query.append(dotFile.getAbsolutePath().replaceAll("\\\\", "\\\\\\\\")); //$NON-NLS-1$ //$NON-NLS-2$
+    query.append("\",I)"); //$NON-NLS-1$
+    return query.toString();
+  }
+
+  File generateImage(String imgFilePath, File dotFile) throws ProcessingException {
     StringBuilder cmd = new StringBuilder();
     
     if (dotFile == null)
@@ -118,6 +973,7 @@ public class EclipseSolver implements ICspSolver <CompoundTerm>{
     cmd.append(" "); //$NON-NLS-1$
     cmd.append(dotFile.getAbsolutePath());    
     Process proc;
+    PipelineMetrics.Measurement measurement = startMeasurement(PipelinePhase.IMAGE_GENERATION);
 	try {
 		proc = Runtime.getRuntime().exec(cmd.toString());
 	    proc.waitFor();
@@ -125,32 +981,10 @@ public class EclipseSolver implements ICspSolver <CompoundTerm>{
 		throw new ProcessingException(e);
 	} catch (InterruptedException e) {
 		throw new ProcessingException(e);
+	} finally {
+		measurement.stop();
 	}
     return imgFile;
   }
-
-  private void disposeEngineProcess() {
-    try {
-      ((OutOfProcessEclipse)engine).destroy();
-    } 
-    catch (Exception e) {
-      e.printStackTrace();
-    } 
-    finally {
-      engine = null;
-    }
-  }
-  
-  private void createEngineProcess() {
-    try {
-      engine = new OutOfProcessEclipse(engineOptions);
-    } 
-    catch (IOException e) {
-      e.printStackTrace();
-    } 
-    catch (EclipseException e) {
-      e.printStackTrace();
-    }
-  }
   
 }
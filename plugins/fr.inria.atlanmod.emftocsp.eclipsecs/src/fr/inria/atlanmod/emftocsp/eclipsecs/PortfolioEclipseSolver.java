@@ -0,0 +1,365 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp.eclipsecs;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import com.parctechnologies.eclipse.CompoundTerm;
+
+import fr.inria.atlanmod.emftocsp.ICspSolutionIterator;
+import fr.inria.atlanmod.emftocsp.ICspSolver;
+import fr.inria.atlanmod.emftocsp.ICspSolverSession;
+import fr.inria.atlanmod.emftocsp.ILogger;
+import fr.inria.atlanmod.emftocsp.ISolverProgressListener;
+import fr.inria.atlanmod.emftocsp.PipelineMetrics;
+import fr.inria.atlanmod.emftocsp.ProcessingException;
+import fr.inria.atlanmod.emftocsp.SolverStatistics;
+import fr.inria.atlanmod.emftocsp.SolverVerdict;
+
+/**
+ * Solves a program with several search strategies at once, each in an
+ * engine of its own. The first strategy to reach a verdict wins and the
+ * other ones are cancelled, so a solve takes the time of the best strategy
+ * for the model as long as there are enough processors.
+ * <p>
+ * At most as many strategies as the engine pool can run at the same time
+ * are raced, in the order they are given.
+ * <p>
+ * The strategies only take effect on programs labeling their variables by
+ * searchVariables/2, which ModelToEcl generates when it is given a search
+ * configuration or telemetry. Other programs are rejected with a
+ * ProcessingException once compiled, since every racer would run the same
+ * search.
+ */
+public class PortfolioEclipseSolver implements ICspSolver<CompoundTerm> {
+  private static final ExecutorService RACERS = Executors.newCachedThreadPool(new ThreadFactory() {
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread thread = new Thread(r, "EclipseSolver portfolio"); //$NON-NLS-1$
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  private final EclipseEnginePool enginePool;
+  private final List<EclipseSolver> solvers = new ArrayList<EclipseSolver>();
+  private EclipseSolver winner = null;
+  private File imgResult = null;
+  private long timeout = 0;
+
+  public PortfolioEclipseSolver(String solverPath, String imgGeneratorPath) {
+    this(EclipseEnginePool.getSharedPool(solverPath), imgGeneratorPath, EclipseSearchStrategy.getPortfolio());
+  }
+
+  public PortfolioEclipseSolver(EclipseEnginePool enginePool, String imgGeneratorPath, List<EclipseSearchStrategy> strategies) {
+    if (strategies.isEmpty())
+      throw new IllegalArgumentException("The portfolio needs at least one search strategy"); //$NON-NLS-1$
+    this.enginePool = enginePool;
+    for (EclipseSearchStrategy strategy : strategies) {
+      EclipseSolver solver = new EclipseSolver(enginePool, imgGeneratorPath);
+      solver.setSearchStrategy(strategy);
+      solvers.add(solver);
+    }
+  }
+
+  public EclipseEnginePool getEnginePool() {
+    return enginePool;
+  }
+
+  /**
+   * Returns the strategy of the last solve that reached a verdict, or null.
+   */
+  public EclipseSearchStrategy getWinningStrategy() {
+    return winner == null ? null : winner.getSearchStrategy();
+  }
+
+  /**
+   * Sets the cache of precompiled runtime libraries of every strategy.
+   */
+  public void setLibraryCache(EclipseLibraryCache libraryCache) {
+    for (EclipseSolver solver : solvers)
+      solver.setLibraryCache(libraryCache);
+  }
+
+  @Override
+  public boolean solveCSP(File srcFile) throws ProcessingException {
+    return solveCSP(srcFile, null);
+  }
+
+  @Override
+  public boolean solveCSP(final File srcFile, final List<File> libs) throws ProcessingException {
+    winner = null;
+    imgResult = null;
+    List<EclipseSolver> racers = getRacers();
+    final List<File> dotFiles = new ArrayList<File>();
+    List<Callable<Boolean>> searches = new ArrayList<Callable<Boolean>>();
+    for (final EclipseSolver solver : racers) {
+      final File dotFile = EclipseSolver.createDotFile(srcFile);
+      dotFiles.add(dotFile);
+      searches.add(new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws Exception {
+          solver.search(srcFile, libs, dotFile);
+          return solver.getVerdict() != SolverVerdict.UNKNOWN;
+        }
+      });
+    }
+    int first = race(racers, searches);
+    if (first < 0)
+      return false;
+    winner = racers.get(first);
+    if (winner.getVerdict() != SolverVerdict.SAT)
+      return false;
+    imgResult = winner.generateImage(srcFile.getAbsolutePath() + ".png", dotFiles.get(first)); //$NON-NLS-1$
+    return true;
+  }
+
+  /**
+   * Runs the searches, one per racer, until one of them reaches a verdict,
+   * cancels the other ones and waits for them to stop. Returns the index of
+   * the winning search, or -1 if none of them reached a verdict.
+   */
+  private int race(List<EclipseSolver> racers, List<Callable<Boolean>> searches) throws ProcessingException {
+    CompletionService<Boolean> completion = new ExecutorCompletionService<Boolean>(RACERS);
+    List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+    for (Callable<Boolean> search : searches)
+      futures.add(completion.submit(search));
+    int first = -1;
+    ProcessingException error = null;
+    boolean interrupted = false;
+    for (int done = 0; done < futures.size(); done++) {
+      Future<Boolean> future;
+      try {
+        future = completion.take();
+      }
+      catch (InterruptedException e) {
+        interrupted = true;
+        cancelRacers(racers, -1);
+        done--;
+        continue;
+      }
+      int index = futures.indexOf(future);
+      try {
+        if (future.get() && first < 0) {
+          first = index;
+          cancelRacers(racers, index);
+        }
+      }
+      catch (ExecutionException e) {
+        if (error == null)
+          error = e.getCause() instanceof ProcessingException ? (ProcessingException) e.getCause() : new ProcessingException(e.getCause());
+      }
+      catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+      return -1;
+    }
+    if (first < 0 && error != null)
+      throw error;
+    return first;
+  }
+
+  private static void cancelRacers(List<EclipseSolver> racers, int winnerIndex) {
+    for (int i = 0; i < racers.size(); i++)
+      if (i != winnerIndex)
+        racers.get(i).cancel();
+  }
+
+  private List<EclipseSolver> getRacers() {
+    int count = Math.min(solvers.size(), enginePool.getMaxSize());
+    return solvers.subList(0, count);
+  }
+
+  @Override
+  public CompoundTerm getSolution() {
+    return winner == null ? null : winner.getSolution();
+  }
+
+  /**
+   * Returns the statistics of the winning strategy.
+   */
+  @Override
+  public SolverStatistics getStatistics() {
+    return winner == null ? null : winner.getStatistics();
+  }
+
+  /**
+   * Every raced strategy reports its progress to the listener.
+   */
+  @Override
+  public void setProgressListener(ISolverProgressListener listener) {
+    for (EclipseSolver solver : solvers)
+      solver.setProgressListener(listener);
+  }
+
+  /**
+   * Every raced strategy measures its runs in the report, which thus sums
+   * up the work of all of them.
+   */
+  @Override
+  public void setMetrics(PipelineMetrics metrics) {
+    for (EclipseSolver solver : solvers)
+      solver.setMetrics(metrics);
+  }
+
+  @Override
+  public void setLogger(ILogger logger) {
+    for (EclipseSolver solver : solvers)
+      solver.setLogger(logger);
+  }
+
+  @Override
+  public Object getResult() {
+    return imgResult;
+  }
+
+  @Override
+  public SolverVerdict getVerdict() {
+    return winner == null ? SolverVerdict.UNKNOWN : winner.getVerdict();
+  }
+
+  @Override
+  public long getTimeout() {
+    return timeout;
+  }
+
+  @Override
+  public void setTimeout(long timeoutMillis) {
+    for (EclipseSolver solver : solvers)
+      solver.setTimeout(timeoutMillis);
+    this.timeout = timeoutMillis;
+  }
+
+  @Override
+  public void cancel() {
+    for (EclipseSolver solver : solvers)
+      solver.cancel();
+  }
+
+  /**
+   * Every strategy keeps a session of its own, and each query is raced
+   * across them. A cancelled strategy loses its engine, so it compiles the
+   * program again on its next query.
+   */
+  @Override
+  public ICspSolverSession<CompoundTerm> openSession(File srcFile, List<File> libs) throws ProcessingException {
+    List<EclipseSolver> racers = getRacers();
+    List<EclipseSolver.EclipseSolverSession> sessions = new ArrayList<EclipseSolver.EclipseSolverSession>();
+    for (EclipseSolver solver : racers)
+      sessions.add(solver.openSession(srcFile, libs));
+    return new PortfolioSession(srcFile, racers, sessions);
+  }
+
+  /**
+   * Enumerates the solutions with the first strategy only. Racing pays off
+   * for the first solution, not for enumerations, which explore the search
+   * tree as far as the consumer pulls whatever the strategy.
+   */
+  @Override
+  public ICspSolutionIterator<CompoundTerm> iterateSolutions(File srcFile, List<File> libs) throws ProcessingException {
+    winner = solvers.get(0);
+    imgResult = null;
+    return winner.iterateSolutions(srcFile, libs);
+  }
+
+  private class PortfolioSession implements ICspSolverSession<CompoundTerm> {
+    private final File srcFile;
+    private final List<EclipseSolver> racers;
+    private final List<EclipseSolver.EclipseSolverSession> sessions;
+    private int queries = 0;
+    private EclipseSolver.EclipseSolverSession sessionWinner = null;
+    private File sessionResult = null;
+
+    PortfolioSession(File srcFile, List<EclipseSolver> racers, List<EclipseSolver.EclipseSolverSession> sessions) {
+      this.srcFile = srcFile;
+      this.racers = racers;
+      this.sessions = sessions;
+    }
+
+    @Override
+    public boolean solve(final String propertyParameter) throws ProcessingException {
+      sessionWinner = null;
+      sessionResult = null;
+      queries++;
+      final List<File> dotFiles = new ArrayList<File>();
+      List<Callable<Boolean>> searches = new ArrayList<Callable<Boolean>>();
+      for (final EclipseSolver.EclipseSolverSession session : sessions) {
+        final File dotFile = EclipseSolver.createDotFile(srcFile);
+        dotFiles.add(dotFile);
+        searches.add(new Callable<Boolean>() {
+          @Override
+          public Boolean call() throws Exception {
+            session.search(propertyParameter, dotFile);
+            return session.getVerdict() != SolverVerdict.UNKNOWN;
+          }
+        });
+      }
+      int first = race(racers, searches);
+      if (first < 0)
+        return false;
+      sessionWinner = sessions.get(first);
+      if (sessionWinner.getVerdict() != SolverVerdict.SAT)
+        return false;
+      sessionResult = racers.get(first).generateImage(srcFile.getAbsolutePath() + "." + queries + ".png", dotFiles.get(first)); //$NON-NLS-1$ //$NON-NLS-2$
+      return true;
+    }
+
+    @Override
+    public void setScope(int scope) {
+      for (EclipseSolver.EclipseSolverSession session : sessions)
+        session.setScope(scope);
+    }
+
+    @Override
+    public int getScope() {
+      return sessions.get(0).getScope();
+    }
+
+    @Override
+    public CompoundTerm getSolution() {
+      return sessionWinner == null ? null : sessionWinner.getSolution();
+    }
+
+    @Override
+    public SolverStatistics getStatistics() {
+      return sessionWinner == null ? null : sessionWinner.getStatistics();
+    }
+
+    @Override
+    public Object getResult() {
+      return sessionResult;
+    }
+
+    @Override
+    public SolverVerdict getVerdict() {
+      return sessionWinner == null ? SolverVerdict.UNKNOWN : sessionWinner.getVerdict();
+    }
+
+    @Override
+    public void close() {
+      for (EclipseSolver.EclipseSolverSession session : sessions)
+        session.close();
+    }
+  }
+}
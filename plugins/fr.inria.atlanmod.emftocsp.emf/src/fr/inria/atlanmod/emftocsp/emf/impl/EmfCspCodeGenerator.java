@@ -10,6 +10,7 @@
  *******************************************************************************/
 package fr.inria.atlanmod.emftocsp.emf.impl;
 
+import java.io.File;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -26,6 +27,7 @@ import fr.inria.atlanmod.emftocsp.ICspCodeGenerator;
 import fr.inria.atlanmod.emftocsp.IModelProperty;
 import fr.inria.atlanmod.emftocsp.IModelReader;
 import fr.inria.atlanmod.emftocsp.IOclParser;
+import fr.inria.atlanmod.emftocsp.PipelineMetrics;
 import fr.inria.atlanmod.emftocsp.ProcessingException;
 
 /**
@@ -38,7 +40,9 @@ public abstract class EmfCspCodeGenerator implements ICspCodeGenerator<Resource,
   List <IModelProperty> properties;
   HashMap <String, String> elementsDomain;
   IFile oclDocument;
+  File oclFile;
   Resource modelResource;
+  PipelineMetrics metrics;
   
   @Override
   public void setModelReader(IModelReader<Resource, EPackage, EClass, EAssociation, EAttribute, EOperation> modelReader) {
@@ -79,12 +83,29 @@ public abstract class EmfCspCodeGenerator implements ICspCodeGenerator<Resource,
   @Override
   public void setOclDocument(IFile oclDocument) {
     this.oclDocument = oclDocument;
+    this.oclFile = null;
   }
   
   protected IFile getOclDocument() {
     return oclDocument;
   } 
   
+  @Override
+  public void setOclFile(File oclFile) {
+    this.oclFile = oclFile;
+    this.oclDocument = null;
+  }
+  
+  /**
+   * Returns the location of the OCL document, whether it was set as a file
+   * or as a workspace resource.
+   */
+  protected File getOclFile() {
+    if (oclFile == null && oclDocument != null)
+      return oclDocument.getRawLocation().toFile();
+    return oclFile;
+  } 
+  
   @Override
   public void setModel(Resource modelResource) {
     this.modelResource = modelResource;
@@ -95,7 +116,23 @@ public abstract class EmfCspCodeGenerator implements ICspCodeGenerator<Resource,
   } 
 
   @Override
-  public abstract String getCspCode() throws ProcessingException;  
+  public void setMetrics(PipelineMetrics metrics) {
+    this.metrics = metrics;
+  }
+  
+  protected PipelineMetrics getMetrics() {
+    return metrics;
+  }
+
+  @Override
+  public String getCspCode() throws ProcessingException {
+    StringBuilder s = new StringBuilder();
+    writeCspCode(s);
+    return s.toString();
+  }
+
+  @Override
+  public abstract void writeCspCode(Appendable out) throws ProcessingException;  
 
   @Override
   public abstract String getCspCodeFileExtension();  
@@ -264,6 +264,10 @@ public class EmfModelBuilder extends ModelBuilder<Resource, EPackage, EClass, EA
 		return obj.eContainer()==null ? true : obj.eContainingFeature().getFeatureID()==-1;
 	}
 	protected EReference getEReferenceFromAssoc(String name) {
+		if (modelReader instanceof EmfModelReader) {
+			EAssociation ass = ((EmfModelReader) modelReader).getAssociationByLowerCaseName(name);
+			return ass != null ? ass.getDestinationEnd() : null;
+		}
 		for ( Iterator<EAssociation> it = modelReader.getAssociations().iterator(); it.hasNext();){
 			EAssociation ass = it.next();
 			if (ass.getName().toLowerCase().equals(name))
@@ -272,6 +276,8 @@ public class EmfModelBuilder extends ModelBuilder<Resource, EPackage, EClass, EA
 		return null;
 	}
 	protected EClass getEClassFromObj(String str) {
+		if (modelReader instanceof EmfModelReader)
+			return ((EmfModelReader) modelReader).getClassByLowerCaseName(str);
 		for (Iterator<EClass> it = modelReader.getClasses().iterator();it.hasNext();)
 		{
 			EClass cls = it.next();
@@ -284,6 +290,24 @@ public class EmfModelBuilder extends ModelBuilder<Resource, EPackage, EClass, EA
 	public void decorticateResult() {
 		assocStructures = new ArrayList<AssocStruct>();
 		objectStructures = new ArrayList<ObjectStruct>();
+		// objects of a previously generated instance must not leak into this one
+		idToObj.clear();
+		objList = new BasicEList<EObject>();
+		decorticate(solution);
+	}
+	/**
+	 * The components are solved separately, so the oids of their objects
+	 * start over, but their classes are distinct and so are the objects.
+	 */
+	@Override
+	public void mergeSolution(CompoundTerm ct) {
+		solution = ct;
+		if (objectStructures == null)
+			decorticateResult();
+		else
+			decorticate(ct);
+	}
+	private void decorticate(CompoundTerm solution) {
 		CompoundTerm term = (CompoundTerm) solution.arg(1);
 		if (!(term.arg(1) == Collections.EMPTY_LIST  ) ){
 		@SuppressWarnings("unchecked")
@@ -77,13 +77,30 @@ public class EmfModelReader implements IModelReader<Resource, EPackage, EClass,
 
 	@Override
 	public List<EClass> getClasses() {
-	  List<EPackage> pList = getPackages();
+	  return readClasses(getPackages());
+	}
+
+	/**
+	 * Returns the classes of the packages, in their order.
+	 */
+	protected List<EClass> readClasses(List<EPackage> pList) {
 	  ArrayList<EClass> cList = new ArrayList<EClass>();          
 	  for(EPackage p : pList) 
 	    cList.addAll(getClassesFromPackage(p));  
 	  return cList;
 	}
 
+	/**
+	 * Returns the first class whose name in lower case is the given one, as
+	 * the instances found by the solver name them, or null if there is none.
+	 */
+	public EClass getClassByLowerCaseName(String name) {
+	  for (EClass c : getClasses())
+	    if (c.getName().toLowerCase().equals(name))
+	      return c;
+	  return null;
+	}
+
 	
 	@Override
 	public List<String> getClassesNames() {
@@ -144,12 +161,19 @@ public class EmfModelReader implements IModelReader<Resource, EPackage, EClass,
   
 	@Override
 	public List<EAssociation> getAssociations() {
+	  return readAssociations(getClasses());
+	}
+
+	/**
+	 * Returns an association for each reference of the classes but the
+	 * container ones, both ends of an association sharing its name.
+	 */
+	protected List<EAssociation> readAssociations(List<EClass> cList) {
 		
     HashMap<String, Boolean> procAs = new HashMap<String, Boolean>();
     
     ArrayList<EAssociation> asList = new ArrayList<EAssociation>();
     
-    List<EClass> cList = getClasses();
     for (EClass c : cList) 
       if (c.getEReferences() != null) 
         for (EReference ref : c.getEReferences()) {
@@ -166,6 +190,18 @@ public class EmfModelReader implements IModelReader<Resource, EPackage, EClass,
         }
     return asList;
 	}
+
+	/**
+	 * Returns the first association whose name in lower case is the given
+	 * one, as the links found by the solver name them, or null if there is
+	 * none.
+	 */
+	public EAssociation getAssociationByLowerCaseName(String name) {
+	  for (EAssociation as : getAssociations())
+	    if (as.getName().toLowerCase().equals(name))
+	      return as;
+	  return null;
+	}
   
 	@Override
 	public List<String> getAssociationsNames() {
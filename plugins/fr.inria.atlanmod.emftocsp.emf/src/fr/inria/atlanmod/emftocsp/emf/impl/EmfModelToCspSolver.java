@@ -10,6 +10,8 @@
  *******************************************************************************/
 package fr.inria.atlanmod.emftocsp.emf.impl;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Map;
 
@@ -26,6 +28,7 @@ import fr.inria.atlanmod.emftocsp.ICspCodeGenerator;
 import fr.inria.atlanmod.emftocsp.IModelBuilder;
 import fr.inria.atlanmod.emftocsp.IModelReader;
 import fr.inria.atlanmod.emftocsp.IOclParser;
+import fr.inria.atlanmod.emftocsp.adapters.EResourceAdapter;
 import fr.inria.atlanmod.emftocsp.adapters.umlImpl.EResourceUMLAdapter;
 import fr.inria.atlanmod.emftocsp.impl.ModelToCspSolver;
 import fr.inria.atlanmod.emftocsp.modelbuilder.Point;
@@ -36,7 +39,7 @@ import fr.inria.atlanmod.emftocsp.modelbuilder.Point;
  */
 public class EmfModelToCspSolver extends ModelToCspSolver<Resource,CompoundTerm> {
 	Resource emfModelResource;
-	EmfModelReader modelReader;
+	IndexedEmfModelReader modelReader;
 	IOclParser<Constraint, Resource> oclParser;
 	ICspCodeGenerator<Resource, EPackage, EClass, EAssociation, EAttribute, EOperation,Constraint> cspCodeGenerator;
 	
@@ -55,14 +58,33 @@ public class EmfModelToCspSolver extends ModelToCspSolver<Resource,CompoundTerm>
 	  return emfModelResource.getURI().path();
 	}
 
+  /**
+   * Saves the resource, or the UML resource an adapter stands for, as it is
+   * in memory.
+   */
+  @Override
+  protected void writeModel(OutputStream out) throws IOException {
+    Object original = emfModelResource instanceof EResourceAdapter ? ((EResourceAdapter<?>) emfModelResource).getOriginalResource() : emfModelResource;
+    if (!(original instanceof Resource))
+      throw new IOException("The model is not an EMF resource"); //$NON-NLS-1$
+    try {
+      ((Resource) original).save(out, null);
+    }
+    catch (UnsupportedOperationException e) {
+      throw new IOException("The model cannot be saved: " + e); //$NON-NLS-1$
+    }
+  }
+
   @Override
   public IModelReader<Resource, EPackage, EClass, EAssociation, EAttribute, EOperation> getModelReader() {
     if (emfModelResource == null)
       return null;
     if (modelReader == null)
-      modelReader = new EmfModelReader(emfModelResource);
-    if (modelReader.getModelResource() != emfModelResource)
-      modelReader = new EmfModelReader(emfModelResource);
+      modelReader = new IndexedEmfModelReader(emfModelResource);
+    if (modelReader.getModelResource() != emfModelResource) {
+      modelReader.dispose();
+      modelReader = new IndexedEmfModelReader(emfModelResource);
+    }
     return modelReader;
   }
   
@@ -10,6 +10,7 @@
  *******************************************************************************/
 package fr.inria.atlanmod.emftocsp.emf.impl;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.InputStream;
@@ -151,11 +152,16 @@ public class EmfOclParser implements IOclParser<Constraint, Resource> {
 
   @Override
   public List<Constraint> parseOclDocument(IFile oclDocument, Resource modelResource) throws ProcessingException {
+    return parseOclDocument(toFile(oclDocument), modelResource);
+  }
+
+  @Override
+  public List<Constraint> parseOclDocument(File oclFile, Resource modelResource) throws ProcessingException {
     List<Constraint> constraints = new ArrayList<Constraint>();
-    if (oclDocument != null) {
+    if (oclFile != null) {
       InputStream in;
 	try {
-		in = new FileInputStream(oclDocument.getRawLocation().toOSString());
+		in = new FileInputStream(oclFile);
 	} catch (FileNotFoundException e) {
 		throw new ProcessingException( e );
 	}  
@@ -174,14 +180,24 @@ public class EmfOclParser implements IOclParser<Constraint, Resource> {
 
   @Override
   public List<Constraint> parseModelConstraints(Resource modelResource, IFile oclDocument) throws ProcessingException  {
+    return parseModelConstraints(modelResource, toFile(oclDocument));
+  }
+
+  @Override
+  public List<Constraint> parseModelConstraints(Resource modelResource, File oclFile) throws ProcessingException  {
     List<Constraint> constraints =  parseEmbeddedConstraints(modelResource);
-    constraints.addAll(parseOclDocument(oclDocument, modelResource));
+    constraints.addAll(parseOclDocument(oclFile, modelResource));
     return constraints;
   }
 
   @Override
   public List<String> getModelConstraintsNames(Resource modelResource, IFile oclDocument) throws ProcessingException {
-    List<Constraint> constraints = parseModelConstraints(modelResource, oclDocument);
+    return getModelConstraintsNames(modelResource, toFile(oclDocument));
+  }
+
+  @Override
+  public List<String> getModelConstraintsNames(Resource modelResource, File oclFile) throws ProcessingException {
+    List<Constraint> constraints = parseModelConstraints(modelResource, oclFile);
     List<String> cNames = new ArrayList<String>();
     for (Constraint c : constraints) { 
       if (c.getName() == null) //OCL preconditions and postconditions parsed from an external OCL document don't have any name
@@ -193,13 +209,22 @@ public class EmfOclParser implements IOclParser<Constraint, Resource> {
   
   @Override
   public List<String> getModelInvariantNames(Resource modelResource, IFile oclDocument) throws ProcessingException  {
-    List<Constraint> constraints = parseModelConstraints(modelResource, oclDocument);
+    return getModelInvariantNames(modelResource, toFile(oclDocument));
+  }
+
+  @Override
+  public List<String> getModelInvariantNames(Resource modelResource, File oclFile) throws ProcessingException  {
+    List<Constraint> constraints = parseModelConstraints(modelResource, oclFile);
     List<String> cNames = new ArrayList<String>();
     for (Constraint c : constraints)     
       if (!c.getStereotype().equals("precondition") && !c.getStereotype().equals("postcondition")) //$NON-NLS-1$ //$NON-NLS-2$
         cNames.add(c.getName());
     return cNames;
   }
+
+  private static File toFile(IFile oclDocument) {
+    return oclDocument == null ? null : oclDocument.getRawLocation().toFile();
+  }
   
 }  
 
@@ -0,0 +1,252 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp.emf.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.emf.common.notify.Notification;
+import org.eclipse.emf.common.notify.Notifier;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.util.EContentAdapter;
+
+import fr.inria.atlanmod.emftocsp.adapters.EResourceAdapter;
+
+/**
+ * Reads the packages, the classes and the associations of the model once,
+ * and indexes the classes and the associations by name and the classes by
+ * supertype. The lists it returns are shared and cannot be modified.
+ * <p>
+ * An adapter on the resource, or on the UML resource of a UML model, drops
+ * the indexes when the model changes, so they are built again on the next
+ * read. {@link #dispose()} removes it once the reader is no longer used.
+ */
+public class IndexedEmfModelReader extends EmfModelReader {
+  private final Notifier target;
+  private final EContentAdapter invalidator = new EContentAdapter() {
+    @Override
+    public void notifyChanged(Notification notification) {
+      super.notifyChanged(notification);
+      if (!notification.isTouch())
+        invalidate();
+    }
+  };
+  private Index index;
+  private List<EClass> lastClassList;
+  private Map<EClass, Integer> lastClassPositions;
+
+  public IndexedEmfModelReader(Resource r) {
+    super(r);
+    Object original = r instanceof EResourceAdapter ? ((EResourceAdapter<?>) r).getOriginalResource() : r;
+    target = original instanceof Notifier ? (Notifier) original : null;
+    if (target != null)
+      target.eAdapters().add(invalidator);
+  }
+
+  /**
+   * Drops the indexes, which are built again on the next read.
+   */
+  public synchronized void invalidate() {
+    index = null;
+    lastClassList = null;
+    lastClassPositions = null;
+  }
+
+  /**
+   * Stops following the changes of the model.
+   */
+  public void dispose() {
+    if (target != null)
+      target.eAdapters().remove(invalidator);
+    invalidate();
+  }
+
+  private synchronized Index getIndex() {
+    if (index == null)
+      index = new Index();
+    return index;
+  }
+
+  /**
+   * The contents of the model, read once. The packages are registered when
+   * they are read, as {@link EmfModelReader#getPackages()} does.
+   */
+  private class Index {
+    final List<EPackage> packages;
+    final List<EClass> classes;
+    final List<String> classesNames;
+    final Map<EClass, Integer> classPositions = new HashMap<EClass, Integer>();
+    final Map<String, EClass> classesByLowerCaseName = new HashMap<String, EClass>();
+    final Map<EClass, List<EClass>> subTypesByClass = new HashMap<EClass, List<EClass>>();
+    final List<EAssociation> associations;
+    final List<String> associationsNames;
+    final List<String> associationNamesOfNonAbsClasses;
+    final Map<String, EAssociation> associationsByLowerCaseName = new HashMap<String, EAssociation>();
+
+    Index() {
+      packages = Collections.unmodifiableList(IndexedEmfModelReader.super.getPackages());
+      List<EClass> cList = readClasses(packages);
+      List<String> cNames = new ArrayList<String>();
+      for (int i = 0; i < cList.size(); i++) {
+        EClass c = cList.get(i);
+        cNames.add(c.getName());
+        if (!classPositions.containsKey(c))
+          classPositions.put(c, i);
+        String lowerCaseName = c.getName().toLowerCase();
+        if (!classesByLowerCaseName.containsKey(lowerCaseName))
+          classesByLowerCaseName.put(lowerCaseName, c);
+        for (EClass superType : c.getESuperTypes()) {
+          List<EClass> subTypes = subTypesByClass.get(superType);
+          if (subTypes == null) {
+            subTypes = new ArrayList<EClass>();
+            subTypesByClass.put(superType, subTypes);
+          }
+          subTypes.add(c);
+        }
+      }
+      classes = Collections.unmodifiableList(cList);
+      classesNames = Collections.unmodifiableList(cNames);
+
+      List<EAssociation> asList = readAssociations(cList);
+      List<String> asNames = new ArrayList<String>();
+      List<String> nonAbsNames = new ArrayList<String>();
+      for (EAssociation as : asList) {
+        asNames.add(as.getName());
+        if (!isAbstractLeaf(as.getSourceEnd()) && !isAbstractLeaf(as.getDestinationEnd().getEReferenceType()))
+          nonAbsNames.add(as.getName());
+        String lowerCaseName = as.getName().toLowerCase();
+        if (!associationsByLowerCaseName.containsKey(lowerCaseName))
+          associationsByLowerCaseName.put(lowerCaseName, as);
+      }
+      associations = Collections.unmodifiableList(asList);
+      associationsNames = Collections.unmodifiableList(asNames);
+      associationNamesOfNonAbsClasses = Collections.unmodifiableList(nonAbsNames);
+    }
+
+    /**
+     * Returns true if the class is abstract and has no subtypes, so that it
+     * cannot have any instances.
+     */
+    private boolean isAbstractLeaf(EClass c) {
+      return c.isAbstract() && !subTypesByClass.containsKey(c);
+    }
+  }
+
+  @Override
+  public List<EPackage> getPackages() {
+    return getIndex().packages;
+  }
+
+  @Override
+  public List<EClass> getClasses() {
+    return getIndex().classes;
+  }
+
+  @Override
+  public List<String> getClassesNames() {
+    return getIndex().classesNames;
+  }
+
+  @Override
+  public EClass getClassByLowerCaseName(String name) {
+    return getIndex().classesByLowerCaseName.get(name);
+  }
+
+  /**
+   * Returns the direct subtypes of the class found in the list, in its
+   * order, or null if there are none. The subtypes come from the index when
+   * the list only holds classes of the model, which is the case of the
+   * classes read from this reader and of their slices.
+   */
+  @Override
+  public List<EClass> getClassSubtypes(List<EClass> classList, EClass c) {
+    if (classList == null)
+      return null;
+    Index index = getIndex();
+    if (classList == index.classes) {
+      List<EClass> subTypes = index.subTypesByClass.get(c);
+      return subTypes != null ? new ArrayList<EClass>(subTypes) : null;
+    }
+    final Map<EClass, Integer> positions = getClassPositions(index, classList);
+    if (positions == null)
+      return super.getClassSubtypes(classList, c);
+    List<EClass> subTypes = new ArrayList<EClass>();
+    if (index.subTypesByClass.containsKey(c))
+      for (EClass subType : index.subTypesByClass.get(c))
+        if (positions.containsKey(subType))
+          subTypes.add(subType);
+    Collections.sort(subTypes, new Comparator<EClass>() {
+      @Override
+      public int compare(EClass c1, EClass c2) {
+        return positions.get(c1) - positions.get(c2);
+      }
+    });
+    return subTypes.size() > 0 ? subTypes : null;
+  }
+
+  @Override
+  public void getClassSubtypes(List<EClass> classList, EClass c, List<EClass> nestedSubtypes) {
+    List<EClass> subTypes = getClassSubtypes(classList, c);
+    if (subTypes != null)
+      for (EClass subType : subTypes) {
+        nestedSubtypes.add(subType);
+        getClassSubtypes(classList, subType, nestedSubtypes);
+      }
+  }
+
+  /**
+   * Returns the positions of the classes of the list, or null if it holds
+   * classes out of the model or twice the same class. The positions of the
+   * last list are kept, as the callers ask for the subtypes of every class
+   * of the same list in turn.
+   */
+  private synchronized Map<EClass, Integer> getClassPositions(Index index, List<EClass> classList) {
+    if (classList == lastClassList)
+      return lastClassPositions;
+    Map<EClass, Integer> positions = new HashMap<EClass, Integer>();
+    for (int i = 0; i < classList.size(); i++) {
+      EClass c = classList.get(i);
+      if (!index.classPositions.containsKey(c) || positions.put(c, i) != null) {
+        positions = null;
+        break;
+      }
+    }
+    lastClassList = classList;
+    lastClassPositions = positions;
+    return positions;
+  }
+
+  @Override
+  public List<EAssociation> getAssociations() {
+    return getIndex().associations;
+  }
+
+  @Override
+  public List<String> getAssociationsNames() {
+    return getIndex().associationsNames;
+  }
+
+  @Override
+  public EAssociation getAssociationByLowerCaseName(String name) {
+    return getIndex().associationsByLowerCaseName.get(name);
+  }
+
+  @Override
+  public List<String> getAssociationNamesOfNonAbsClasses() {
+    return getIndex().associationNamesOfNonAbsClasses;
+  }
+}
@@ -0,0 +1,611 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp.emftoecl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EOperation;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.resource.Resource;
+
+import fr.inria.atlanmod.emftocsp.IModelProperty;
+import fr.inria.atlanmod.emftocsp.IModelReader;
+import fr.inria.atlanmod.emftocsp.SolverVerdict;
+import fr.inria.atlanmod.emftocsp.emf.impl.EAssociation;
+import fr.inria.atlanmod.emftocsp.impl.LivelinessModelProperty;
+import fr.inria.atlanmod.emftocsp.impl.StrongSatisfiabilityModelProperty;
+import fr.inria.atlanmod.emftocsp.impl.WeakSatisfiabilityModelProperty;
+
+/**
+ * Solves the cardinality variables of the program generated by
+ * {@link ModelToEcl} in the JVM, before any code is generated: their domains,
+ * the composition sums, the generalizations, the constraints of
+ * constraintsBinAssocMultiplicities, the scope and the cardinality
+ * properties. The bounds of the variables are propagated through these
+ * constraints, which are linear but for SizeAssoc #=< SizeA * SizeB, and the
+ * variables are then labeled in the order of CardVariables.
+ * <p>
+ * The cardinalities are a relaxation of the whole program, so the model is
+ * UNSAT as soon as they have no solution. A solution only proves the model
+ * SAT when ECLiPSe always completes it into an instance, that is when there
+ * are no OCL invariants, no class with several supertypes or compositions,
+ * no instance of an abstract class without subtypes and no attribute with an
+ * empty domain. The verdict is UNKNOWN otherwise.
+ */
+public class CardinalityPreSolver {
+  public static final int DEFAULT_NODE_LIMIT = 100000;
+
+  /**
+   * Bounds beyond which a linear constraint is not propagated, so that its
+   * sums cannot overflow.
+   */
+  private static final long SUM_LIMIT = 1L << 61;
+  private static final int MAX_EXPANDED_VALUES = 100000;
+
+  /**
+   * A constraint sum(coefficients[i] * variables[i]) =< bound.
+   */
+  private static class Linear {
+    final int[] variables;
+    final long[] coefficients;
+    final long bound;
+
+    Linear(int[] variables, long[] coefficients, long bound) {
+      this.variables = variables;
+      this.coefficients = coefficients;
+      this.bound = bound;
+    }
+  }
+
+  /**
+   * A domain given as an interval, or as the sorted values it holds.
+   */
+  private static class Domain {
+    final long min;
+    final long max;
+    final int[] values;
+
+    Domain(long min, long max, int[] values) {
+      this.min = min;
+      this.max = max;
+      this.values = values;
+    }
+
+    boolean isEmpty() {
+      return min > max;
+    }
+  }
+
+  private final List<String> names = new ArrayList<String>();
+  private final Map<String, Integer> classVariables = new HashMap<String, Integer>();
+  private final Map<String, Integer> associationVariables = new HashMap<String, Integer>();
+  private final List<Domain> domains = new ArrayList<Domain>();
+  private final List<Linear> linears = new ArrayList<Linear>();
+  private final List<int[]> products = new ArrayList<int[]>();
+  private final List<Integer> classIndexes = new ArrayList<Integer>();
+  private final Map<Integer, String> instantiationObstacles = new HashMap<Integer, String>();
+  private String obstacle = null;
+  private int nodeLimit = DEFAULT_NODE_LIMIT;
+  private int nodes;
+  private long[] solution;
+
+  public CardinalityPreSolver(IModelReader<Resource, EPackage, EClass, EAssociation, EAttribute, EOperation> emfModelReader, Map<String, String> elementsDomain, List<IModelProperty> properties, List<String> constraintsNames) {
+    List<EClass> cList = emfModelReader.getClasses();
+    List<EAssociation> asList = emfModelReader.getAssociations();
+    if (constraintsNames != null && !constraintsNames.isEmpty())
+      setObstacle("the model has OCL invariants"); //$NON-NLS-1$
+
+    for (EClass c : cList) {
+      int index = addVariable(c.getName(), elementsDomain.get(c.getEPackage().getName() + "." + c.getName())); //$NON-NLS-1$
+      classVariables.put(c.getName(), index);
+      classIndexes.add(index);
+      if (c.getESuperTypes() != null && c.getESuperTypes().size() > 1)
+        setObstacle(c.getName() + " has several supertypes"); //$NON-NLS-1$
+    }
+    for (EAssociation as : asList) {
+      String asName = emfModelReader.getAssociationName(as);
+      associationVariables.put(asName.toLowerCase(), addVariable(asName, elementsDomain.get(asName)));
+    }
+
+    List<Integer> nonAbsVariables = new ArrayList<Integer>();
+    for (EClass c : cList) {
+      int index = classVariables.get(c.getName());
+      List<EClass> subTypes = emfModelReader.getClassSubtypes(cList, c);
+      if (!(c.isAbstract() && subTypes == null))
+        nonAbsVariables.add(index);
+      if (c.isAbstract() && (subTypes == null || subTypes.isEmpty()))
+        instantiationObstacles.put(index, c.getName() + " is abstract and has no subtypes"); //$NON-NLS-1$
+      addContainmentConstraint(c, index, asList);
+      if (subTypes != null && !subTypes.isEmpty())
+        addGeneralizationConstraint(c, index, subTypes);
+      checkAttributes(c, index, emfModelReader.getClassAttributes(c), elementsDomain);
+    }
+    for (EAssociation as : asList)
+      addMultiplicityConstraints(as, associationVariables.get(emfModelReader.getAssociationName(as).toLowerCase()));
+    for (String asName : emfModelReader.getAssociationNamesOfNonAbsClasses()) {
+      Integer index = associationVariables.get(asName.toLowerCase());
+      if (index != null)
+        nonAbsVariables.add(index);
+    }
+    addPropertyConstraints(properties, nonAbsVariables);
+  }
+
+  public int getNodeLimit() {
+    return nodeLimit;
+  }
+
+  /**
+   * Sets the number of labeling steps after which the search gives up,
+   * leaving the verdict UNKNOWN.
+   */
+  public void setNodeLimit(int nodeLimit) {
+    this.nodeLimit = nodeLimit;
+  }
+
+  /**
+   * Returns why a solution of the cardinalities does not prove the model
+   * SAT, or null if it does.
+   */
+  public String getObstacle() {
+    return obstacle;
+  }
+
+  /**
+   * Solves the cardinalities with every class bounded by the scope, unless it
+   * is negative. Returns UNSAT if they have no solution, SAT if they have one
+   * and it proves the model SAT, and UNKNOWN otherwise.
+   */
+  public SolverVerdict solve(int scope) {
+    solution = null;
+    nodes = 0;
+    int size = names.size();
+    long[] min = new long[size];
+    long[] max = new long[size];
+    for (int i = 0; i < size; i++) {
+      min[i] = domains.get(i).min;
+      max[i] = domains.get(i).max;
+    }
+    if (scope >= 0)
+      for (int index : classIndexes)
+        max[index] = Math.min(max[index], scope);
+    if (!propagate(min, max))
+      return SolverVerdict.UNSAT;
+    if (!search(min, max))
+      return nodes > nodeLimit ? SolverVerdict.UNKNOWN : SolverVerdict.UNSAT;
+    if (obstacle != null)
+      return SolverVerdict.UNKNOWN;
+    for (Map.Entry<Integer, String> entry : instantiationObstacles.entrySet())
+      if (solution[entry.getKey()] > 0)
+        return SolverVerdict.UNKNOWN;
+    return SolverVerdict.SAT;
+  }
+
+  /**
+   * Returns the cardinality of every class and association found by the last
+   * call to {@link #solve(int)}, by name, or null if none was found.
+   */
+  public Map<String, Integer> getCardinalities() {
+    if (solution == null)
+      return null;
+    Map<String, Integer> cardinalities = new LinkedHashMap<String, Integer>();
+    for (int i = 0; i < names.size(); i++)
+      cardinalities.put(names.get(i), (int) solution[i]);
+    return cardinalities;
+  }
+
+  private int addVariable(String name, String domainText) {
+    Domain domain = parseDomain(domainText);
+    if (domain == null) {
+      setObstacle("the domain of " + name + " is not understood"); //$NON-NLS-1$ //$NON-NLS-2$
+      domain = new Domain(Integer.MIN_VALUE, Integer.MAX_VALUE, null);
+    }
+    names.add(name);
+    domains.add(domain);
+    return names.size() - 1;
+  }
+
+  private void setObstacle(String reason) {
+    if (obstacle == null)
+      obstacle = reason;
+  }
+
+  /**
+   * S<class> #= sum of the compositions the class is contained by, as in
+   * genCardinalityConstraintsSection. Objects contained by several
+   * compositions must not be shared, which the cardinalities do not tell.
+   */
+  private void addContainmentConstraint(EClass c, int index, List<EAssociation> asList) {
+    List<Integer> containments = new ArrayList<Integer>();
+    for (EAssociation as : asList)
+      if ((as.getDestinationEnd().isContainment() && as.getDestinationEnd().getEReferenceType().equals(c)) ||
+          (as.getDestinationEnd().isContainer() && as.getDestinationEnd().getEOpposite().getEReferenceType().equals(c))) {
+        Integer asIndex = associationVariables.get(as.getName().toLowerCase());
+        if (asIndex != null)
+          containments.add(asIndex);
+      }
+    if (containments.isEmpty())
+      return;
+    if (containments.size() > 1)
+      setObstacle(c.getName() + " is contained by several compositions"); //$NON-NLS-1$
+    addSum(index, containments, true);
+  }
+
+  /**
+   * S<super> #= sum(S<sub>) for abstract classes and #>= otherwise, as in
+   * genGeneralizationSection.
+   */
+  private void addGeneralizationConstraint(EClass c, int index, List<EClass> subTypes) {
+    List<Integer> subVariables = new ArrayList<Integer>();
+    for (EClass subType : subTypes) {
+      Integer subIndex = classVariables.get(subType.getName());
+      if (subIndex == null) {
+        setObstacle(subType.getName() + " is not a class of the model"); //$NON-NLS-1$
+        return;
+      }
+      subVariables.add(subIndex);
+    }
+    addSum(index, subVariables, c.isAbstract());
+  }
+
+  /**
+   * total #= sum(parts) when exact, total #>= sum(parts) otherwise.
+   */
+  private void addSum(int total, List<Integer> parts, boolean exact) {
+    int[] variables = new int[parts.size() + 1];
+    long[] coefficients = new long[parts.size() + 1];
+    for (int i = 0; i < parts.size(); i++) {
+      variables[i] = parts.get(i);
+      coefficients[i] = 1;
+    }
+    variables[parts.size()] = total;
+    coefficients[parts.size()] = -1;
+    addLinear(variables, coefficients, 0);
+    if (exact) {
+      long[] opposite = new long[coefficients.length];
+      for (int i = 0; i < coefficients.length; i++)
+        opposite[i] = -coefficients[i];
+      addLinear(variables, opposite, 0);
+    }
+  }
+
+  /**
+   * The constraints of constraintsBinAssocMultiplicities, every association
+   * being unique: role A is the source of the association and role B its
+   * destination.
+   */
+  private void addMultiplicityConstraints(EAssociation as, int index) {
+    Integer a = classVariables.get(as.getSourceEnd().getName());
+    Integer b = classVariables.get(as.getDestinationEnd().getEType().getName());
+    if (a == null || b == null) {
+      setObstacle(as.getName() + " links a class which is not in the model"); //$NON-NLS-1$
+      return;
+    }
+    products.add(new int[] { index, a, b });
+    int minA = as.getSourceLowerBound();
+    int maxA = as.getSourceUpperBound();
+    int minB = as.getDestinationLowerBound();
+    int maxB = as.getDestinationUpperBound();
+    if (minA != 0)
+      addLinear(new int[] { b, index }, new long[] { minA, -1 }, 0);
+    if (minB != 0)
+      addLinear(new int[] { a, index }, new long[] { minB, -1 }, 0);
+    if (maxA != -1)
+      addLinear(new int[] { index, b }, new long[] { 1, -maxA }, 0);
+    if (maxB != -1)
+      addLinear(new int[] { index, a }, new long[] { 1, -maxB }, 0);
+  }
+
+  private void addPropertyConstraints(List<IModelProperty> properties, List<Integer> nonAbsVariables) {
+    if (properties == null)
+      return;
+    for (IModelProperty prop : properties) {
+      if (prop instanceof StrongSatisfiabilityModelProperty) {
+        for (int index : nonAbsVariables)
+          addLinear(new int[] { index }, new long[] { -1 }, -1);
+      }
+      else if (prop instanceof WeakSatisfiabilityModelProperty) {
+        int[] variables = new int[nonAbsVariables.size()];
+        long[] coefficients = new long[nonAbsVariables.size()];
+        for (int i = 0; i < variables.length; i++) {
+          variables[i] = nonAbsVariables.get(i);
+          coefficients[i] = -1;
+        }
+        addLinear(variables, coefficients, -1);
+      }
+      else if (prop instanceof LivelinessModelProperty) {
+        for (String name : prop.getTargetModelElementsNames()) {
+          Integer index = name == null ? null : classVariables.get(name);
+          if (index == null && name != null)
+            index = associationVariables.get(name);
+          if (index == null)
+            setObstacle("the liveliness target " + name + " is not in the model"); //$NON-NLS-1$ //$NON-NLS-2$
+          else
+            addLinear(new int[] { index }, new long[] { -1 }, -1);
+        }
+      }
+      else
+        setObstacle("the property " + prop.getClass().getSimpleName() + " is not about cardinalities"); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+  }
+
+  /**
+   * Records why an object of the class may not be created even if the
+   * cardinalities allow it: ECLiPSe labels every attribute in its domain.
+   */
+  private void checkAttributes(EClass c, int index, List<EAttribute> attributes, Map<String, String> elementsDomain) {
+    for (EAttribute at : attributes) {
+      String key = at.getEContainingClass().getName() + "." + at.getName(); //$NON-NLS-1$
+      String typeName = at.getEAttributeType().getName();
+      Domain domain;
+      if (typeName.equalsIgnoreCase("string") || typeName.equalsIgnoreCase("estring")) { //$NON-NLS-1$ //$NON-NLS-2$
+        String stringDomain = elementsDomain.get(key + ".domain"); //$NON-NLS-1$
+        if (stringDomain != null && stringDomain.trim().length() > 0) {
+          instantiationObstacles.put(index, key + " has a string domain"); //$NON-NLS-1$
+          return;
+        }
+        domain = parseDomain(elementsDomain.get(key + ".length")); //$NON-NLS-1$
+        if (domain != null && domain.max < 0)
+          domain = null;
+      }
+      else
+        domain = parseDomain(elementsDomain.get(key));
+      if (domain == null || domain.isEmpty()) {
+        instantiationObstacles.put(index, key + " has an empty or unknown domain"); //$NON-NLS-1$
+        return;
+      }
+    }
+  }
+
+  /**
+   * Adds sum(coefficients[i] * variables[i]) =< bound, merging the terms of
+   * the same variable.
+   */
+  private void addLinear(int[] variables, long[] coefficients, long bound) {
+    Map<Integer, Long> terms = new LinkedHashMap<Integer, Long>();
+    for (int i = 0; i < variables.length; i++) {
+      Long coefficient = terms.get(variables[i]);
+      terms.put(variables[i], (coefficient == null ? 0 : coefficient) + coefficients[i]);
+    }
+    List<Integer> merged = new ArrayList<Integer>();
+    for (Map.Entry<Integer, Long> term : terms.entrySet())
+      if (term.getValue() != 0)
+        merged.add(term.getKey());
+    int[] mergedVariables = new int[merged.size()];
+    long[] mergedCoefficients = new long[merged.size()];
+    for (int i = 0; i < merged.size(); i++) {
+      mergedVariables[i] = merged.get(i);
+      mergedCoefficients[i] = terms.get(merged.get(i));
+    }
+    linears.add(new Linear(mergedVariables, mergedCoefficients, bound));
+  }
+
+  /**
+   * Returns true if 0 is in the domain, false if it is not or if the domain
+   * is not understood.
+   */
+  static boolean allowsZero(String domainText) {
+    Domain domain = parseDomain(domainText);
+    if (domain == null || domain.min > 0 || domain.max < 0)
+      return false;
+    return domain.values == null || Arrays.binarySearch(domain.values, 0) >= 0;
+  }
+
+  /**
+   * Parses a domain of the form a..b, [v1,v2,...] (items may be ranges) or
+   * v. Returns null if it is not understood.
+   */
+  private static Domain parseDomain(String text) {
+    if (text == null)
+      return null;
+    text = text.trim();
+    try {
+      if (text.startsWith("[") && text.endsWith("]")) { //$NON-NLS-1$ //$NON-NLS-2$
+        String items = text.substring(1, text.length() - 1).trim();
+        TreeSet<Integer> values = new TreeSet<Integer>();
+        if (items.length() > 0)
+          for (String item : items.split(",")) { //$NON-NLS-1$
+            Domain range = parseRange(item.trim());
+            if (range.max - range.min + values.size() > MAX_EXPANDED_VALUES)
+              return null;
+            for (long v = range.min; v <= range.max; v++)
+              values.add((int) v);
+          }
+        if (values.isEmpty())
+          return new Domain(1, 0, null);
+        int[] sorted = new int[values.size()];
+        int i = 0;
+        for (int v : values)
+          sorted[i++] = v;
+        return new Domain(sorted[0], sorted[sorted.length - 1], sorted);
+      }
+      return parseRange(text);
+    }
+    catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private static Domain parseRange(String text) {
+    int separator = text.indexOf(".."); //$NON-NLS-1$
+    if (separator < 0) {
+      int value = Integer.parseInt(text);
+      return new Domain(value, value, null);
+    }
+    return new Domain(Integer.parseInt(text.substring(0, separator).trim()), Integer.parseInt(text.substring(separator + 2).trim()), null);
+  }
+
+  /**
+   * Tightens the bounds until none changes. Returns false if a domain
+   * becomes empty.
+   */
+  private boolean propagate(long[] min, long[] max) {
+    for (int i = 0; i < min.length; i++)
+      if (!snap(i, min, max))
+        return false;
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (Linear linear : linears) {
+        int[] variables = linear.variables;
+        long[] coefficients = linear.coefficients;
+        long sumMin = 0;
+        boolean overflow = false;
+        for (int k = 0; k < variables.length && !overflow; k++) {
+          sumMin += termMin(coefficients[k], variables[k], min, max);
+          overflow = Math.abs(sumMin) > SUM_LIMIT;
+        }
+        if (overflow)
+          continue;
+        if (sumMin > linear.bound)
+          return false;
+        for (int k = 0; k < variables.length; k++) {
+          int v = variables[k];
+          long c = coefficients[k];
+          long slack = linear.bound - (sumMin - termMin(c, v, min, max));
+          if (c > 0) {
+            long bound = floorDiv(slack, c);
+            if (bound < max[v]) {
+              max[v] = bound;
+              changed = true;
+              if (!snap(v, min, max))
+                return false;
+            }
+          }
+          else {
+            long bound = ceilDiv(slack, c);
+            if (bound > min[v]) {
+              min[v] = bound;
+              changed = true;
+              if (!snap(v, min, max))
+                return false;
+            }
+          }
+        }
+      }
+      for (int[] product : products) {
+        int p = product[0];
+        int a = product[1];
+        int b = product[2];
+        if (min[p] < 0 || min[a] < 0 || min[b] < 0)
+          continue;
+        long bound = max[a] * max[b];
+        if (bound < max[p]) {
+          max[p] = bound;
+          changed = true;
+          if (!snap(p, min, max))
+            return false;
+        }
+        if (min[p] > 0) {
+          if (max[a] == 0 || max[b] == 0)
+            return false;
+          long minA = ceilDiv(min[p], max[b]);
+          if (minA > min[a]) {
+            min[a] = minA;
+            changed = true;
+            if (!snap(a, min, max))
+              return false;
+          }
+          long minB = ceilDiv(min[p], max[a]);
+          if (minB > min[b]) {
+            min[b] = minB;
+            changed = true;
+            if (!snap(b, min, max))
+              return false;
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+  private static long termMin(long coefficient, int variable, long[] min, long[] max) {
+    return coefficient > 0 ? coefficient * min[variable] : coefficient * max[variable];
+  }
+
+  /**
+   * Moves the bounds of the variable to the nearest values of its domain.
+   */
+  private boolean snap(int variable, long[] min, long[] max) {
+    int[] values = domains.get(variable).values;
+    if (values != null && min[variable] <= max[variable]) {
+      int from = Arrays.binarySearch(values, (int) Math.max(Integer.MIN_VALUE, min[variable]));
+      if (from < 0)
+        from = -from - 1;
+      int to = Arrays.binarySearch(values, (int) Math.min(Integer.MAX_VALUE, max[variable]));
+      if (to < 0)
+        to = -to - 2;
+      if (from > to)
+        return false;
+      min[variable] = values[from];
+      max[variable] = values[to];
+    }
+    return min[variable] <= max[variable];
+  }
+
+  /**
+   * Labels the variables in order, smallest values first, propagating after
+   * every choice. Returns true once a solution is found, false if there is
+   * none or the node limit is reached.
+   */
+  private boolean search(long[] min, long[] max) {
+    if (++nodes > nodeLimit)
+      return false;
+    int variable = -1;
+    for (int i = 0; i < min.length && variable < 0; i++)
+      if (min[i] < max[i])
+        variable = i;
+    if (variable < 0) {
+      solution = min.clone();
+      return true;
+    }
+    int[] values = domains.get(variable).values;
+    for (long value = min[variable]; value <= max[variable]; value = next(values, value)) {
+      long[] childMin = min.clone();
+      long[] childMax = max.clone();
+      childMin[variable] = value;
+      childMax[variable] = value;
+      if (propagate(childMin, childMax) && search(childMin, childMax))
+        return true;
+      if (nodes > nodeLimit)
+        return false;
+    }
+    return false;
+  }
+
+  private static long next(int[] values, long value) {
+    if (values == null)
+      return value + 1;
+    int i = Arrays.binarySearch(values, (int) value);
+    return i + 1 < values.length ? values[i + 1] : Long.MAX_VALUE;
+  }
+
+  private static long floorDiv(long a, long b) {
+    long q = a / b;
+    if (a % b != 0 && (a < 0) != (b < 0))
+      q--;
+    return q;
+  }
+
+  private static long ceilDiv(long a, long b) {
+    long q = a / b;
+    if (a % b != 0 && (a < 0) == (b < 0))
+      q++;
+    return q;
+  }
+}
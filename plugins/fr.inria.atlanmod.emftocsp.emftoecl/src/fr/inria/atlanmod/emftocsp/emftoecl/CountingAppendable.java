@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp.emftoecl;
+
+import java.io.IOException;
+
+/**
+ * Counts the characters and the clauses of the code appended to another
+ * output. A clause is counted at every full stop ending a line, which is how
+ * the generated code ends its clauses.
+ */
+class CountingAppendable implements Appendable {
+  private final Appendable out;
+  private long characters = 0;
+  private long clauses = 0;
+  private char last = 0;
+
+  CountingAppendable(Appendable out) {
+    this.out = out;
+  }
+
+  @Override
+  public Appendable append(CharSequence csq) throws IOException {
+    CharSequence s = csq == null ? "null" : csq; //$NON-NLS-1$
+    return append(s, 0, s.length());
+  }
+
+  @Override
+  public Appendable append(CharSequence csq, int start, int end) throws IOException {
+    CharSequence s = csq == null ? "null" : csq; //$NON-NLS-1$
+    for (int i = start; i < end; i++)
+      count(s.charAt(i));
+    out.append(s, start, end);
+    return this;
+  }
+
+  @Override
+  public Appendable append(char c) throws IOException {
+    count(c);
+    out.append(c);
+    return this;
+  }
+
+  private void count(char c) {
+    characters++;
+    if (c == '\n' && last == '.')
+      clauses++;
+    last = c;
+  }
+
+  long getCharacters() {
+    return characters;
+  }
+
+  long getClauses() {
+    return clauses;
+  }
+}
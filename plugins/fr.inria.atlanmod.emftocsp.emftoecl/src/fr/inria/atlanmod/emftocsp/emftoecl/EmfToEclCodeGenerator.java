@@ -10,17 +10,34 @@
  *******************************************************************************/
 package fr.inria.atlanmod.emftocsp.emftoecl;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
-import org.eclipse.core.resources.IFile;
+import org.eclipse.emf.common.util.TreeIterator;
 import org.eclipse.emf.ecore.EAttribute;
 import org.eclipse.emf.ecore.EClass;
 import org.eclipse.emf.ecore.EClassifier;
 import org.eclipse.emf.ecore.EOperation;
+import org.eclipse.emf.ecore.EObject;
 import org.eclipse.emf.ecore.EPackage;
 import org.eclipse.emf.ecore.EParameter;
+import org.eclipse.emf.ecore.EReference;
 import org.eclipse.emf.ecore.EStructuralFeature;
 import org.eclipse.emf.ecore.resource.Resource;
 import org.eclipse.ocl.ParserException;
@@ -38,115 +55,539 @@ import fr.inria.atlanmod.emftocsp.IModelProperty;
 import fr.inria.atlanmod.emftocsp.IModelReader;
 import fr.inria.atlanmod.emftocsp.IModelToCspSolver;
 import fr.inria.atlanmod.emftocsp.IOclParser;
+import fr.inria.atlanmod.emftocsp.PipelineMetrics;
+import fr.inria.atlanmod.emftocsp.PipelinePhase;
 import fr.inria.atlanmod.emftocsp.ProcessingException;
+import fr.inria.atlanmod.emftocsp.SolverVerdict;
 import fr.inria.atlanmod.emftocsp.emf.impl.EAssociation;
 import fr.inria.atlanmod.emftocsp.emf.impl.EmfCspCodeGenerator;
 import fr.inria.atlanmod.emftocsp.impl.LackOfConstraintsRedundanciesModelProperty;
 import fr.inria.atlanmod.emftocsp.impl.LackOfConstraintsSubsumptionsModelProperty;
+import fr.inria.atlanmod.emftocsp.impl.LivelinessModelProperty;
+import fr.inria.atlanmod.emftocsp.impl.MeasuredOclParser;
 
 /**
  * @author <a href="mailto:carlos.gonzalez@inria.fr">Carlos A. Gonzlez</a>
  *
  */
 public class EmfToEclCodeGenerator extends EmfCspCodeGenerator {
+  private static final String OCL_CONSTRAINT_FRAGMENT = "OCL_CONSTRAINT"; //$NON-NLS-1$
   IModelToCspSolver<Resource,?> modelSolver;
+  int parallelism = 1;
+  ThreadPoolExecutor executor = null;
+  boolean incremental = false;
+  boolean slicing = false;
+  boolean decomposing = false;
+  int maxComponents = Runtime.getRuntime().availableProcessors();
+  TranslationCache translationCache = null;
+  SearchConfiguration searchConfiguration = null;
+  boolean telemetry = false;
+  Map<String, Integer> cardinalities = null;
+  List<Set<EClass>> components = null;
   
   public EmfToEclCodeGenerator(IModelToCspSolver<Resource,?> modelSolver) {
     this.modelSolver = modelSolver;
   }
+
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Sets the number of threads used to generate the code. With more than one
+   * thread the sections of the model translation and the OCL invariants are
+   * translated concurrently and then written in their usual order, so the
+   * generated code does not depend on this setting.
+   */
+  public synchronized void setParallelism(int parallelism) {
+    int threads = Math.max(1, parallelism);
+    if (threads != this.parallelism)
+      dispose();
+    this.parallelism = threads;
+  }
+
+  /**
+   * Returns the threads generating the code, or null if there is only one.
+   * They are started by the first translation and kept for the next ones
+   * until the generator is disposed, an idle thread stopping after a while.
+   */
+  private synchronized ExecutorService getExecutor() {
+    if (parallelism < 2)
+      return null;
+    if (executor == null) {
+      executor = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "EmfToEclCodeGenerator"); //$NON-NLS-1$
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+      executor.allowCoreThreadTimeOut(true);
+    }
+    return executor;
+  }
+
+  /**
+   * Stops the threads generating the code. They are started again if the
+   * generator is used after being disposed.
+   */
+  public synchronized void dispose() {
+    if (executor != null)
+      executor.shutdown();
+    executor = null;
+  }
     
-  @SuppressWarnings("unchecked")
+  public boolean isIncremental() {
+    return incremental;
+  }
+
+  /**
+   * When set, the fragments generated from the classes, the associations and
+   * the OCL invariants are kept in a translation cache and only the
+   * fragments of the elements that changed since the previous translation
+   * are generated again. It is off by default, as the cache is stored in a
+   * file, see {@link #setTranslationCache(TranslationCache)}.
+   */
+  public void setIncremental(boolean incremental) {
+    this.incremental = incremental;
+  }
+
+  public boolean isSlicing() {
+    return slicing;
+  }
+
+  /**
+   * When set (not the default), only the slice of the model computed by a
+   * {@link ModelSlicer} from the properties and the OCL invariants is
+   * translated, the classes and associations out of it having no instances.
+   */
+  public void setSlicing(boolean slicing) {
+    this.slicing = slicing;
+  }
+
+  public boolean isDecomposing() {
+    return decomposing;
+  }
+
+  /**
+   * When set (not the default), the model is decomposed into the groups of
+   * linked classes computed by a {@link ModelSlicer}, whose code is generated
+   * and solved separately.
+   */
+  public void setDecomposing(boolean decomposing) {
+    this.decomposing = decomposing;
+  }
+
+  public int getMaxComponents() {
+    return maxComponents;
+  }
+
+  /**
+   * Sets the largest number of components a model is decomposed into, by
+   * default the number of processors. Beyond it the groups of linked
+   * classes are gathered into the smallest components, the largest groups
+   * first.
+   */
+  public void setMaxComponents(int maxComponents) {
+    this.maxComponents = Math.max(1, maxComponents);
+  }
+
+  public TranslationCache getTranslationCache() {
+    return translationCache;
+  }
+
+  /**
+   * Sets the cache used by incremental translations. When it is null, the
+   * cache of the model in the temporary directory is used.
+   */
+  public void setTranslationCache(TranslationCache translationCache) {
+    this.translationCache = translationCache;
+  }
+
+  public SearchConfiguration getSearchConfiguration() {
+    return searchConfiguration;
+  }
+
+  /**
+   * Sets the search of the labeling phases of the generated code. When it
+   * is null (the default) the variables are labeled by labeling/1. A search
+   * strategy set on the solver, which needs a search configuration or the
+   * telemetry, takes precedence over the variable selection and value
+   * choice of the cardinalities and attributes phases.
+   */
+  public void setSearchConfiguration(SearchConfiguration searchConfiguration) {
+    this.searchConfiguration = searchConfiguration;
+  }
+
+  public boolean isTelemetry() {
+    return telemetry;
+  }
+
+  /**
+   * When set (not the default), the generated code reports its progress to
+   * the progress listener of the solver and keeps the statistics of its
+   * search. Counting the backtracks slows the labeling down.
+   */
+  public void setTelemetry(boolean telemetry) {
+    this.telemetry = telemetry;
+  }
+
+  @Override
+  public void writeCspCode(Appendable out) throws ProcessingException {
+    writeCspCode(out, false);
+  }
+    
+  @Override
+  public void writeParameterizedCspCode(Appendable out) throws ProcessingException {
+    writeCspCode(out, true);
+  }
+  
+  @Override
+  public String getPropertyParameter(IModelProperty property, String target) {
+    return ModelToEcl.getPropertyParameter(property, target);
+  }
+    
+  /**
+   * The cardinalities are solved by a {@link CardinalityPreSolver}, from the
+   * same model elements domains and properties as the generated code.
+   */
+  @Override
+  public SolverVerdict checkCardinalities(int scope) throws ProcessingException {
+    readModelSolver();
+    List<String> constraintsNames = getOclParser().getModelInvariantNames(getModel(), getOclFile());
+    CardinalityPreSolver preSolver = new CardinalityPreSolver(getModelReader(), getModelElementsDomain(), getProperties(), constraintsNames);
+    SolverVerdict verdict = preSolver.solve(scope);
+    cardinalities = verdict == SolverVerdict.SAT ? preSolver.getCardinalities() : null;
+    if (modelSolver.getLogger() != null)
+      modelSolver.getLogger().writeInfoMessage(this.getClass().toString(), "Cardinalities checked: " + verdict + (preSolver.getObstacle() != null ? " (" + preSolver.getObstacle() + ")" : "")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+    return verdict;
+  }
+  
+  @Override
+  public Map<String, Integer> getCardinalities() {
+    return cardinalities;
+  }
+
+  /**
+   * The components are the groups of linked classes computed by a
+   * {@link ModelSlicer} over the translated classes. Models whose
+   * properties relate several groups are not decomposed.
+   */
   @Override
-  public String getCspCode() throws ProcessingException {
+  public int decompose() throws ProcessingException {
+    readModelSolver();
+    components = null;
+    if (!decomposing || maxComponents < 2)
+      return 1;
+    ModelSlicer slicer = new ModelSlicer(getModelReader(), getModelElementsDomain(), getProperties(), parseInvariants());
+    List<Set<EClass>> groups = slicer.computeComponents();
+    if (groups == null || groups.size() < 2)
+      return 1;
+    components = gatherComponents(groups);
+    if (modelSolver.getLogger() != null)
+      modelSolver.getLogger().writeInfoMessage(this.getClass().toString(), "Decomposing the model into " + components.size() + " components"); //$NON-NLS-1$ //$NON-NLS-2$
+    return components.size();
+  }
+
+  /**
+   * Gathers the groups into at most maxComponents components, each group
+   * going, from the largest to the smallest, to the smallest component.
+   */
+  private List<Set<EClass>> gatherComponents(List<Set<EClass>> groups) {
+    if (groups.size() <= maxComponents)
+      return groups;
+    List<Set<EClass>> sorted = new ArrayList<Set<EClass>>(groups);
+    Collections.sort(sorted, new Comparator<Set<EClass>>() {
+      @Override
+      public int compare(Set<EClass> g1, Set<EClass> g2) {
+        return g2.size() - g1.size();
+      }
+    });
+    List<Set<EClass>> gathered = new ArrayList<Set<EClass>>();
+    for (Set<EClass> group : sorted) {
+      if (gathered.size() < maxComponents) {
+        gathered.add(new LinkedHashSet<EClass>(group));
+        continue;
+      }
+      Set<EClass> smallest = gathered.get(0);
+      for (Set<EClass> component : gathered)
+        if (component.size() < smallest.size())
+          smallest = component;
+      smallest.addAll(group);
+    }
+    return gathered;
+  }
+
+  /**
+   * Components are translated from scratch, the translation cache only
+   * holding the fragments of whole models.
+   */
+  @Override
+  public void writeComponentCspCode(int component, boolean withProperties, Appendable out) throws ProcessingException {
+    if (components == null || component < 0 || component >= components.size())
+      throw new ProcessingException("The model has no component " + component); //$NON-NLS-1$
+    readModelSolver();
+    Set<EClass> classes = components.get(component);
+    setModelReader(new SlicedModelReader(getModelReader(), classes));
+    List<IModelProperty> properties = withProperties ? getComponentProperties() : Collections.<IModelProperty>emptyList();
+    writeCspCode(out, properties, false, classes, null);
+  }
+
+  /**
+   * Returns the properties restricted to the classes of the model reader,
+   * which only keep the liveliness targets among them.
+   */
+  private List<IModelProperty> getComponentProperties() {
+    ModelSlicer slicer = new ModelSlicer(getModelReader(), getModelElementsDomain(), getProperties(), Collections.<Constraint>emptyList());
+    List<IModelProperty> properties = new ArrayList<IModelProperty>();
+    for (IModelProperty prop : getProperties()) {
+      if (!(prop instanceof LivelinessModelProperty)) {
+        properties.add(prop);
+        continue;
+      }
+      List<String> targets = new ArrayList<String>();
+      for (String name : prop.getTargetModelElementsNames())
+        if (slicer.findTarget(name) != null)
+          targets.add(name);
+      if (!targets.isEmpty())
+        properties.add(new LivelinessModelProperty(targets));
+    }
+    return properties;
+  }
+    
+  @SuppressWarnings("unchecked")
+  private void readModelSolver() {
     setModel(modelSolver.getModel());
-    setOclDocument(modelSolver.getConstraintsDocument());
+    setOclFile(modelSolver.getConstraintsFile());
     setModelElementsDomains(modelSolver.getModelElementsDomain());
     setProperties(modelSolver.getModelProperties());
     setModelReader((IModelReader<Resource, EPackage, EClass, EAssociation, EAttribute, EOperation>)modelSolver.getModelReader());
-    setOclParser((IOclParser<Constraint, Resource>)modelSolver.getOclParser());
+    IOclParser<Constraint, Resource> oclParser = (IOclParser<Constraint, Resource>)modelSolver.getOclParser();
+    setOclParser(getMetrics() == null ? oclParser : new MeasuredOclParser<Constraint, Resource>(oclParser, getMetrics()));
+    if (slicing)
+      sliceModelReader();
+  }
+
+  /**
+   * Starts measuring the phase in the report of the code generator, or in a
+   * report of its own when there is none.
+   */
+  private PipelineMetrics.Measurement startMeasurement(PipelinePhase phase) {
+    return (getMetrics() != null ? getMetrics() : new PipelineMetrics()).start(phase);
+  }
+
+  private List<Constraint> parseInvariants() {
+    List<Constraint> invariants = new ArrayList<Constraint>();
+    for (Constraint c : getOclParser().parseModelConstraints(getModel(), getOclFile()))
+      if (!c.getStereotype().equalsIgnoreCase("precondition") && !c.getStereotype().equalsIgnoreCase("postcondition"))
+        invariants.add(c);
+    return invariants;
+  }
+
+  private void sliceModelReader() {
+    ModelSlicer slicer = new ModelSlicer(getModelReader(), getModelElementsDomain(), getProperties(), parseInvariants());
+    Set<EClass> slice = slicer.computeSlice();
+    int classes = getModelReader().getClasses().size();
+    if (slice == null || slice.size() == classes)
+      return;
+    setModelReader(new SlicedModelReader(getModelReader(), slice));
+    if (modelSolver.getLogger() != null)
+      modelSolver.getLogger().writeInfoMessage(this.getClass().toString(), "Translating " + slice.size() + " of the " + classes + " classes of the model");
+  }
+  
+  private void writeCspCode(Appendable out, boolean parameterized) throws ProcessingException {
+    readModelSolver();
     
-    StringBuilder s = new StringBuilder();
-    s.append(translateEmfModel(getModelReader(), getModelElementsDomain(), getProperties()));
-    s.append(translateOclConstraints(getOclParser(), getProperties(), getModel(), getOclDocument()));
-    return s.toString();
+    TranslationCache cache = null;
+    if (incremental)
+      cache = translationCache != null ? translationCache : TranslationCache.getDefaultCache(modelSolver.getModelFileName());
+    List<IModelProperty> properties = parameterized ? Collections.<IModelProperty>emptyList() : getProperties();
+    writeCspCode(out, properties, parameterized, null, cache);
+  }
+
+  /**
+   * Writes the code of the classes of the model reader. When the component
+   * is not null, only the OCL invariants whose context is one of its classes
+   * are translated.
+   */
+  private void writeCspCode(Appendable out, List<IModelProperty> properties, boolean parameterized, Set<EClass> component, TranslationCache cache) throws ProcessingException {
+    ExecutorService executor = getExecutor();
+    try {
+      translateEmfModel(getModelReader(), getModelElementsDomain(), properties, parameterized, component, cache, out, executor);
+      translateOclConstraints(getOclParser(), properties, parameterized, component, cache, getModel(), getOclFile(), out, executor);
+      if (cache != null)
+        commit(cache);
+    }
+    catch (IOException e) {
+      throw new ProcessingException(e);
+    }
   }
   
-  private String translateEmfModel(IModelReader<Resource, EPackage, EClass, EAssociation, EAttribute, EOperation> emfModelReader, Map<String, String> modelElementsDomain, List<IModelProperty> properties) throws ProcessingException {
-    StringBuilder s = new StringBuilder();
-      List<String> constraintsNames = getOclParser().getModelInvariantNames(getModel(), getOclDocument());
-      ModelToEcl emfTranslator = new ModelToEcl(emfModelReader, modelElementsDomain, properties, constraintsNames, modelSolver.getLogger());
+  private void translateEmfModel(IModelReader<Resource, EPackage, EClass, EAssociation, EAttribute, EOperation> emfModelReader, Map<String, String> modelElementsDomain, List<IModelProperty> properties, boolean parameterized, Set<EClass> component, TranslationCache cache, Appendable code, ExecutorService executor) throws ProcessingException, IOException {
+      List<String> constraintsNames;
+      if (component == null)
+        constraintsNames = getOclParser().getModelInvariantNames(getModel(), getOclFile());
+      else {
+        constraintsNames = new ArrayList<String>();
+        for (Constraint c : parseInvariants())
+          if (component.contains(c.getConstrainedElements().get(0)))
+            constraintsNames.add(c.getName());
+      }
+      final ModelToEcl emfTranslator = new ModelToEcl(emfModelReader, modelElementsDomain, properties, constraintsNames, modelSolver.getLogger());
+      emfTranslator.setParameterized(parameterized);
+      emfTranslator.setTranslationCache(cache);
+      emfTranslator.setSearchConfiguration(searchConfiguration);
+      emfTranslator.setTelemetry(telemetry);
+      emfTranslator.setScoped(modelSolver.getMaxScope() > 0);
       
-      s.append(emfTranslator.genLibsSection());
-      s.append("\n");
-      s.append(emfTranslator.genStructSection());
-      s.append("\n");
-      s.append(emfTranslator.genHeaderSection());
-      s.append("\n");
-      s.append(emfTranslator.genCardinalityDefinitionsSection());
-      s.append("\n");
-      s.append(emfTranslator.genCardinalityConstraintsSection());
-      s.append("\n");
-      s.append(emfTranslator.genCardinalityInstantiationSection());
-      s.append("\n");
-      s.append(emfTranslator.genInstancesSection1());
-      s.append("\n");
-      s.append(emfTranslator.genObjectsCreationSection());
-      s.append("\n");
-      s.append(emfTranslator.genLinksCreationSection());
-      s.append("\n");
-      s.append(emfTranslator.genInstancesSection2());
-      s.append("\n");
-      s.append(emfTranslator.genOclRootSection());
-      s.append("\n");
-      s.append(emfTranslator.genAttributeLabelingSection());
-      s.append("\n");
-      s.append(emfTranslator.genStringLabelingSection());
-      s.append("\n");
-      s.append(emfTranslator.genGeneralizationSection());
-      s.append("\n");
-      s.append(emfTranslator.genIndexesSection());
-      s.append("\n");
-      s.append(emfTranslator.genAssociationRolesSection());
-      s.append("\n");
-      s.append(emfTranslator.genAssociationIsUniqueSection());
-      s.append("\n");
-      s.append(emfTranslator.genClassGeneralization());
-      s.append("\n");
-      s.append(emfTranslator.genModelPropertiesSection());
-      s.append("\n");
-      s.append(emfTranslator.genConstraintBinAssocMultiSection());
-      s.append("\n");
-      s.append(emfTranslator.genClassCreationSection());
-      s.append("\n");
-      s.append(emfTranslator.genAssociationCreationSection());
-      s.append("\n");
-   
-    return s.toString();
+      PipelineMetrics.Measurement measurement = startMeasurement(PipelinePhase.CODE_GENERATION);
+      CountingAppendable out = new CountingAppendable(code);
+      try {
+        if (executor == null) {
+          for (ModelToEcl.Section section : ModelToEcl.Section.values()) {
+            emfTranslator.genSection(section, out);
+            out.append("\n");
+          }
+          return;
+        }
+        List<Future<String>> sections = new ArrayList<Future<String>>();
+        for (final ModelToEcl.Section section : ModelToEcl.Section.values())
+          sections.add(executor.submit(new Callable<String>() {
+            @Override
+            public String call() throws IOException {
+              StringBuilder s = new StringBuilder();
+              emfTranslator.genSection(section, s);
+              return s.toString();
+            }
+          }));
+        for (Future<String> section : sections) {
+          out.append(getResult(section));
+          out.append("\n");
+        }
+      }
+      finally {
+        measurement.count("classes", emfModelReader.getClasses().size()); //$NON-NLS-1$
+        measurement.count("associations", emfModelReader.getAssociations().size()); //$NON-NLS-1$
+        measurement.count("characters", out.getCharacters()); //$NON-NLS-1$
+        measurement.count("clauses", out.getClauses()); //$NON-NLS-1$
+        measurement.stop();
+      }
+  }
+
+  private void commit(TranslationCache cache) {
+    try {
+      cache.commit();
+    }
+    catch (IOException e) {
+      // the translation is not affected, the next one just starts from scratch
+      if (modelSolver.getLogger() != null)
+        modelSolver.getLogger().writeWarningMessage(this.getClass().toString(), "Unable to store the translation cache: " + e.getMessage());
+    }
+  }
+
+  private static <T> T getResult(Future<T> task) throws IOException {
+    try {
+      return task.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ProcessingException(e);
+    }
+    catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException)
+        throw (IOException) e.getCause();
+      if (e.getCause() instanceof ProcessingException)
+        throw (ProcessingException) e.getCause();
+      throw new ProcessingException(e.getCause());
+    }
   }
   
   @SuppressWarnings("rawtypes")
-  private String translateOclConstraints(IOclParser<Constraint, Resource> oclParser, List<IModelProperty> properties, Resource modelResource, IFile oclDocument) {
-    StringBuilder s = new StringBuilder();
+  private void translateOclConstraints(IOclParser<Constraint, Resource> oclParser, List<IModelProperty> properties, boolean parameterized, Set<EClass> component, TranslationCache cache, Resource modelResource, File oclFile, Appendable out, ExecutorService executor) throws IOException {
     HashMap<String, String> ctfpMap = new HashMap<String, String>();
+    PipelineMetrics.Measurement measurement = null;
+    CountingAppendable s = new CountingAppendable(out);
     
     try {
+      List<Constraint> cList = oclParser.parseModelConstraints(modelResource, oclFile);
+      measurement = startMeasurement(PipelinePhase.OCL_TRANSLATION);
     	  OCL ocl = org.eclipse.ocl.ecore.OCL.newInstance();
           OCLHelper<EClassifier, EOperation, EStructuralFeature, Constraint> helper = ocl.createOCLHelper();
         
-      OclToEcl oclVisitor = OclToEcl.getInstance(modelSolver.getLogger());                
-      List<Constraint> cList = oclParser.parseModelConstraints(modelResource, oclDocument);
+      List<Constraint> invariants = new ArrayList<Constraint>();
       for (Constraint c : cList) {
         if (!c.getStereotype().equalsIgnoreCase("precondition") && !c.getStereotype().equalsIgnoreCase("postcondition")) {
           ExpressionInOCL oclExpression = (ExpressionInOCL) c.getSpecification();
           EClass contextCls = (EClass) c.getConstrainedElements().get(0);
+          if (component != null && !component.contains(contextCls))
+            continue;
  
           insertQuantificationForSelf(helper, contextCls, oclExpression);          
-
-          s.append(oclExpression.accept(oclVisitor));
-          ctfpMap.put(c.getName(), oclVisitor.getConstraintFirstPredicate());
-          s.append("\n");                      
+          invariants.add(c);
+        }
+      }
+      /* A translation is made of the predicates of the constraint and of the
+       * name of its first predicate. Cached translations are only reused while
+       * the constraint and the model elements it refers to are unchanged. */
+      String[][] translations = new String[invariants.size()][];
+      String[] fingerprints = new String[invariants.size()];
+      if (cache != null)
+        for (int i = 0; i < invariants.size(); i++) {
+          fingerprints[i] = TranslationCache.fingerprint(describeConstraint(invariants.get(i)));
+          String cached = cache.get(OCL_CONSTRAINT_FRAGMENT, fingerprints[i]);
+          if (cached != null) {
+            int separator = cached.indexOf('\n');
+            translations[i] = new String[] { cached.substring(separator + 1), cached.substring(0, separator) };
+          }
+        }
+      if (executor == null) {
+        OclToEcl oclVisitor = OclToEcl.getInstance(modelSolver.getLogger());                
+        for (int i = 0; i < invariants.size(); i++)
+          if (translations[i] == null)
+            translations[i] = translateConstraint(invariants.get(i), oclVisitor);
+      }
+      else {
+        /* Every worker thread has its own visitor. Predicate names only depend on the
+         * constraint name and on a counter the visitor restarts for each constraint,
+         * so they are the same whichever thread translates the constraint. */
+        final ThreadLocal<OclToEcl> oclVisitors = new ThreadLocal<OclToEcl>() {
+          @Override
+          protected OclToEcl initialValue() {
+            return OclToEcl.getInstance(modelSolver.getLogger());
+          }
+        };
+        List<Future<String[]>> tasks = new ArrayList<Future<String[]>>();
+        for (int i = 0; i < invariants.size(); i++) {
+          final Constraint c = invariants.get(i);
+          tasks.add(translations[i] != null ? null : executor.submit(new Callable<String[]>() {
+            @Override
+            public String[] call() {
+              return translateConstraint(c, oclVisitors.get());
+            }
+          }));
         }
+        for (int i = 0; i < invariants.size(); i++)
+          if (tasks.get(i) != null)
+            translations[i] = getResult(tasks.get(i));
       }
+      measurement.count("invariants", invariants.size()); //$NON-NLS-1$
+      for (int i = 0; i < invariants.size(); i++) {
+        if (cache != null)
+          cache.put(OCL_CONSTRAINT_FRAGMENT, fingerprints[i], translations[i][1] + "\n" + translations[i][0]);
+        s.append(translations[i][0]);
+        ctfpMap.put(invariants.get(i).getName(), translations[i][1]);
+        s.append("\n");                      
+      }
+      if (parameterized)
+        for (Constraint c : invariants) 
+          if (ctfpMap.get(c.getName()) != null) {
+            s.append("constraintFirstPredicate(\"");
+            s.append(c.getName());
+            s.append("\", ");
+            s.append(ctfpMap.get(c.getName()));
+            s.append(").\n");
+          }
       LackOfConstraintsSubsumptionsModelProperty cSub = null;
       LackOfConstraintsRedundanciesModelProperty cRed = null;
       for(IModelProperty prop : properties) {
@@ -180,11 +621,60 @@ public class EmfToEclCodeGenerator extends EmfCspCodeGenerator {
           s.append(").\n");
         }
     }
-    catch (Exception e) {
-      e.printStackTrace();
-      System.out.println(e.getMessage());
+    catch (ParserException e) {
+      throw new ProcessingException("Unable to translate the OCL constraints", e); //$NON-NLS-1$
+    }
+    finally {
+      if (measurement != null) {
+        measurement.count("characters", s.getCharacters()); //$NON-NLS-1$
+        measurement.count("clauses", s.getClauses()); //$NON-NLS-1$
+        measurement.stop();
+      }
     }
-    return s.toString();
+  }
+
+  @SuppressWarnings("rawtypes")
+  private static String[] translateConstraint(Constraint c, OclToEcl oclVisitor) {
+    String translation = (String) ((ExpressionInOCL) c.getSpecification()).accept(oclVisitor);
+    String firstPredicate = oclVisitor.getConstraintFirstPredicate();
+    return new String[] { translation, firstPredicate == null ? "" : firstPredicate };
+  }
+
+  /**
+   * Describes everything the translation of a constraint depends on: its
+   * name, its expression and the names, types and multiplicities of the
+   * classes and features the expression refers to.
+   */
+  @SuppressWarnings("rawtypes")
+  private static String describeConstraint(Constraint c) {
+    StringBuilder d = new StringBuilder();
+    d.append(c.getName());
+    d.append("|");
+    d.append(((ExpressionInOCL) c.getSpecification()).getBodyExpression());
+    for (TreeIterator<EObject> it = ((EObject) c.getSpecification()).eAllContents(); it.hasNext();)
+      for (EObject referenced : it.next().eCrossReferences()) {
+        d.append("|");
+        if (referenced instanceof EStructuralFeature) {
+          EStructuralFeature feature = (EStructuralFeature) referenced;
+          d.append(feature.getEContainingClass() == null ? null : feature.getEContainingClass().getName());
+          d.append(".");
+          d.append(feature.getName());
+          d.append(":");
+          d.append(feature.getEType() == null ? null : feature.getEType().getName());
+          d.append("[");
+          d.append(feature.getLowerBound());
+          d.append("..");
+          d.append(feature.getUpperBound());
+          d.append("]");
+          if (feature instanceof EReference && ((EReference) feature).getEOpposite() != null) {
+            d.append("~");
+            d.append(((EReference) feature).getEOpposite().getName());
+          }
+        }
+        else if (referenced instanceof EClassifier)
+          d.append(((EClassifier) referenced).getName());
+      }
+    return d.toString();
   }
 
   /**
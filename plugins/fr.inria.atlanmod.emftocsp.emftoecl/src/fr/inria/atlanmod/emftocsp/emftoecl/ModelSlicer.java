@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp.emftoecl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.emf.common.util.TreeIterator;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EOperation;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.ocl.ecore.Constraint;
+
+import fr.inria.atlanmod.emftocsp.IModelProperty;
+import fr.inria.atlanmod.emftocsp.IModelReader;
+import fr.inria.atlanmod.emftocsp.emf.impl.EAssociation;
+import fr.inria.atlanmod.emftocsp.impl.LackOfConstraintsRedundanciesModelProperty;
+import fr.inria.atlanmod.emftocsp.impl.LackOfConstraintsSubsumptionsModelProperty;
+import fr.inria.atlanmod.emftocsp.impl.LivelinessModelProperty;
+import fr.inria.atlanmod.emftocsp.impl.StrongSatisfiabilityModelProperty;
+import fr.inria.atlanmod.emftocsp.impl.WeakSatisfiabilityModelProperty;
+
+/**
+ * Computes the part of the model a verification depends on. Classes linked by
+ * an association (compositions included), a generalization or an OCL
+ * invariant are constrained together, the other ones are independent. The
+ * slice is made of the groups of linked classes holding a target of the
+ * properties, a class referenced by an OCL invariant, or a class or
+ * association whose domain does not allow 0.
+ * <p>
+ * Every other group may have no instances at all, so the model has a
+ * solution if and only if its slice has one, extended with empty classes and
+ * associations. This does not hold for strong and weak satisfiability, which
+ * are about every class, so such models are not sliced.
+ * <p>
+ * The groups are also the components a model can be decomposed into, every
+ * component being solved on its own.
+ */
+public class ModelSlicer {
+  IModelReader<Resource, EPackage, EClass, EAssociation, EAttribute, EOperation> emfModelReader;
+  Map<String, String> elementsDomain;
+  List<IModelProperty> properties;
+  List<Constraint> constraints;
+  Map<EClass, EClass> parents = new HashMap<EClass, EClass>();
+
+  public ModelSlicer(IModelReader<Resource, EPackage, EClass, EAssociation, EAttribute, EOperation> emfModelReader, Map<String, String> elementsDomain, List<IModelProperty> properties, List<Constraint> constraints) {
+    this.emfModelReader = emfModelReader;
+    this.elementsDomain = elementsDomain;
+    this.properties = properties;
+    this.constraints = constraints;
+  }
+
+  /**
+   * Returns the classes of the slice, or null if the model cannot be sliced.
+   */
+  public Set<EClass> computeSlice() {
+    List<EClass> cList = emfModelReader.getClasses();
+    List<EAssociation> asList = emfModelReader.getAssociations();
+    Set<EClass> seeds = linkClasses(cList, asList);
+    if (properties != null)
+      for (IModelProperty prop : properties) {
+        if (prop instanceof StrongSatisfiabilityModelProperty || prop instanceof WeakSatisfiabilityModelProperty)
+          return null;
+        if (prop instanceof LivelinessModelProperty)
+          for (String name : prop.getTargetModelElementsNames()) {
+            EClass target = findTarget(name);
+            if (target == null)
+              return null;
+            seeds.add(target);
+          }
+      }
+
+    Set<EClass> seedRoots = new HashSet<EClass>();
+    for (EClass seed : seeds)
+      seedRoots.add(find(seed));
+    Set<EClass> slice = new HashSet<EClass>();
+    for (EClass c : cList)
+      if (seedRoots.contains(find(c)))
+        slice.add(c);
+    return slice;
+  }
+
+  /**
+   * Returns the groups of linked classes, in the order of their first class
+   * in the model, or null if the properties relate several groups: the lack
+   * of subsumptions and redundancies between invariants, and liveliness
+   * targets which are not in the model.
+   */
+  public List<Set<EClass>> computeComponents() {
+    List<EClass> cList = emfModelReader.getClasses();
+    linkClasses(cList, emfModelReader.getAssociations());
+    if (properties != null)
+      for (IModelProperty prop : properties) {
+        if (prop instanceof LackOfConstraintsSubsumptionsModelProperty || prop instanceof LackOfConstraintsRedundanciesModelProperty)
+          return null;
+        if (prop instanceof LivelinessModelProperty)
+          for (String name : prop.getTargetModelElementsNames())
+            if (findTarget(name) == null)
+              return null;
+      }
+
+    Map<EClass, Set<EClass>> components = new LinkedHashMap<EClass, Set<EClass>>();
+    for (EClass c : cList) {
+      Set<EClass> component = components.get(find(c));
+      if (component == null) {
+        component = new LinkedHashSet<EClass>();
+        components.put(find(c), component);
+      }
+      component.add(c);
+    }
+    return new ArrayList<Set<EClass>>(components.values());
+  }
+
+  /**
+   * Groups the classes linked by a generalization, an association or an OCL
+   * invariant, and returns the classes which must have instances: the ones
+   * referenced by an invariant and the ones whose domain, or the domain of
+   * one of their associations, does not allow 0.
+   */
+  private Set<EClass> linkClasses(List<EClass> cList, List<EAssociation> asList) {
+    Set<EClass> seeds = new HashSet<EClass>();
+    parents.clear();
+    for (EClass c : cList) {
+      find(c);
+      if (c.getESuperTypes() != null)
+        for (EClass superType : c.getESuperTypes())
+          union(c, superType);
+      if (!CardinalityPreSolver.allowsZero(elementsDomain.get(c.getEPackage().getName() + "." + c.getName()))) //$NON-NLS-1$
+        seeds.add(c);
+    }
+    for (EAssociation as : asList) {
+      union(as.getSourceEnd(), (EClass) as.getDestinationEnd().getEType());
+      if (!CardinalityPreSolver.allowsZero(elementsDomain.get(emfModelReader.getAssociationName(as))))
+        seeds.add(as.getSourceEnd());
+    }
+    for (Constraint constraint : constraints) {
+      Set<EClass> referenced = getReferencedClasses(constraint);
+      EClass first = null;
+      for (EClass c : referenced) {
+        if (first == null)
+          first = c;
+        union(first, c);
+      }
+      seeds.addAll(referenced);
+    }
+    return seeds;
+  }
+
+  /**
+   * Returns the class of the liveliness target, or the source class of the
+   * association it names, as resolved by the index/2 facts, or null if the
+   * model has no such element.
+   */
+  EClass findTarget(String name) {
+    for (EClass c : emfModelReader.getClasses())
+      if (c.getName().equals(name))
+        return c;
+    for (EAssociation as : emfModelReader.getAssociations())
+      if (emfModelReader.getAssociationName(as).toLowerCase().equals(name))
+        return as.getSourceEnd();
+    return null;
+  }
+
+  /**
+   * Returns the context of the invariant and the classes its expression
+   * refers to, directly or through the features it navigates.
+   */
+  private static Set<EClass> getReferencedClasses(Constraint constraint) {
+    Set<EClass> referenced = new HashSet<EClass>();
+    for (EObject element : constraint.getConstrainedElements())
+      if (element instanceof EClass)
+        referenced.add((EClass) element);
+    for (TreeIterator<EObject> it = ((EObject) constraint.getSpecification()).eAllContents(); it.hasNext();)
+      for (EObject element : it.next().eCrossReferences()) {
+        if (element instanceof EClass)
+          referenced.add((EClass) element);
+        else if (element instanceof EStructuralFeature) {
+          EStructuralFeature feature = (EStructuralFeature) element;
+          if (feature.getEContainingClass() != null)
+            referenced.add(feature.getEContainingClass());
+          if (feature.getEType() instanceof EClass)
+            referenced.add((EClass) feature.getEType());
+        }
+      }
+    return referenced;
+  }
+
+  private EClass find(EClass c) {
+    EClass parent = parents.get(c);
+    if (parent == null) {
+      parents.put(c, c);
+      return c;
+    }
+    if (parent == c)
+      return c;
+    EClass root = find(parent);
+    parents.put(c, root);
+    return root;
+  }
+
+  private void union(EClass c1, EClass c2) {
+    EClass root1 = find(c1);
+    EClass root2 = find(c2);
+    if (root1 != root2)
+      parents.put(root1, root2);
+  }
+}
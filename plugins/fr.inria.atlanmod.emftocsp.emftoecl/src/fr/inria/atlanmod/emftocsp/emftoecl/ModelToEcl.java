@@ -10,7 +10,9 @@
  *******************************************************************************/
 package fr.inria.atlanmod.emftocsp.emftoecl;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -48,6 +50,34 @@ public class ModelToEcl {
   Map<String, String> elementsDomain;
   List<IModelProperty> properties;
   ILogger logger;
+  Map<EClass, List<EClass>> subTypesByClass;
+  Map<EClass, List<EAttribute>> attributesByClass;
+  Map<EClass, EClass> baseClassByClass;
+  List<String> nonAbsAssociationsNames;
+  boolean parameterized = false;
+  TranslationCache translationCache = null;
+  SearchConfiguration searchConfiguration = null;
+  boolean telemetry = false;
+  boolean scoped = false;
+
+  /**
+   * Sections of the generated program, in the order they are written.
+   */
+  public enum Section {
+    LIBS, STRUCT, HEADER, CARDINALITY_DEFINITIONS, CARDINALITY_CONSTRAINTS, CARDINALITY_INSTANTIATION,
+    INSTANCES_1, OBJECTS_CREATION, LINKS_CREATION, INSTANCES_2, OCL_ROOT, ATTRIBUTE_LABELING, STRING_LABELING,
+    GENERALIZATION, INDEXES, ASSOCIATION_ROLES, ASSOCIATION_IS_UNIQUE, CLASS_GENERALIZATION, MODEL_PROPERTIES,
+    CONSTRAINT_BIN_ASSOC_MULTI, CLASS_CREATION, ASSOCIATION_CREATION
+  }
+
+  /**
+   * Parts of the sections generated from a single class or association,
+   * which are reused from the translation cache while the element is
+   * unchanged.
+   */
+  enum Fragment {
+    CLASS_STRUCT, CLASS_ATTRIBUTE_INDEXES, CLASS_ATTRIBUTE_TYPES, CLASS_CREATION, ASSOCIATION_STRUCT, ASSOCIATION_CREATION
+  }
   
   public ModelToEcl(IModelReader<Resource, EPackage, EClass, EAssociation, EAttribute, EOperation> emfModelReader, Map<String, String> elementsDomain, List<IModelProperty> properties, List<String> constraintsNames, ILogger logger) {
     this.emfModelReader = emfModelReader;
@@ -60,53 +90,454 @@ public class ModelToEcl {
     this.elementsDomain = elementsDomain;
     this.constraintsNames = constraintsNames;
     this.logger = logger;
+    collectModelInformation();
   }
 
-  protected String genLibsSection() {
-    return ":-lib(ic).\n:-lib(ic_global).\n:-lib(ic_global_gac).\n:-lib(apply).\n:-lib(apply_macros).\n:-lib(lists).\n:-lib(ech).";
-  }
-  
-  protected String genStructSection() {
-    StringBuilder s = new StringBuilder();
-    List<EAttribute> atList = new ArrayList<EAttribute>();
+  /**
+   * Queries the model reader once for everything the sections need, so that
+   * the sections only read from this translator and can be generated
+   * concurrently.
+   */
+  private void collectModelInformation() {
+    subTypesByClass = new HashMap<EClass, List<EClass>>();
+    attributesByClass = new HashMap<EClass, List<EAttribute>>();
+    baseClassByClass = new HashMap<EClass, EClass>();
     for (EClass c : cList) {
-      s.append(":- local struct(");
-      s.append(c.getName().toLowerCase());
-      s.append("(oid");
-      atList = emfModelReader.getClassAttributes(c);
-      for (EAttribute at : atList) { 
-        s.append(",");
-        s.append(at.getName());
-      }
-      s.append(")).\n");
-    }    
+      subTypesByClass.put(c, emfModelReader.getClassSubtypes(cList, c));
+      attributesByClass.put(c, emfModelReader.getClassAttributes(c));
+      baseClassByClass.put(c, emfModelReader.getBaseClass(c));
+    }
     for (EAssociation as : asList) {
-      s.append(":- local struct(");
-      s.append(emfModelReader.getAssociationName(as).toLowerCase());
-      s.append("(");
-      s.append(as.getSourceRoleName().toLowerCase());
+      as.getDestinationEnd().getEReferenceType();
+      as.getDestinationEnd().getEOpposite();
+    }
+    nonAbsAssociationsNames = emfModelReader.getAssociationNamesOfNonAbsClasses();
+  }
+
+  public boolean isParameterized() {
+    return parameterized;
+  }
+
+  /**
+   * When set, the properties are not embedded in the generated program.
+   * findSolutions/2 takes the property to check as second argument instead,
+   * as returned by {@link #getPropertyParameter(IModelProperty, String)}.
+   */
+  public void setParameterized(boolean parameterized) {
+    this.parameterized = parameterized;
+  }
+
+  public TranslationCache getTranslationCache() {
+    return translationCache;
+  }
+
+  /**
+   * Sets the cache the fragments generated from the classes and associations
+   * are taken from. When it is null every fragment is generated.
+   */
+  public void setTranslationCache(TranslationCache translationCache) {
+    this.translationCache = translationCache;
+  }
+
+  public SearchConfiguration getSearchConfiguration() {
+    return searchConfiguration;
+  }
+
+  /**
+   * Sets the search of the labeling phases of the program. When it is null
+   * (the default) the variables are labeled by labeling/1, unless the
+   * program reports its progress.
+   */
+  public void setSearchConfiguration(SearchConfiguration searchConfiguration) {
+    this.searchConfiguration = searchConfiguration;
+  }
+
+  public boolean isTelemetry() {
+    return telemetry;
+  }
+
+  /**
+   * When set (not the default), the program reports its progress and keeps
+   * the statistics of its search, see {@link #genTelemetrySection(Appendable)}.
+   */
+  public void setTelemetry(boolean telemetry) {
+    this.telemetry = telemetry;
+  }
+
+  public boolean isScoped() {
+    return scoped;
+  }
+
+  /**
+   * When set (not the default), the cardinalities of the classes are bounded
+   * by a scope the solver sets, see {@link #genScopeSection(Appendable)}.
+   */
+  public void setScoped(boolean scoped) {
+    this.scoped = scoped;
+  }
+
+  /**
+   * Returns true if the variables are labeled by searchVariables/2 rather
+   * than by labeling/1.
+   */
+  private boolean isSearchConfigured() {
+    return searchConfiguration != null || telemetry;
+  }
+
+  /**
+   * Returns the term selecting the given property (and target) in a
+   * parameterized program.
+   */
+  public static String getPropertyParameter(IModelProperty property, String target) {
+    if (property instanceof StrongSatisfiabilityModelProperty)
+      return "strongSatisfiability";
+    if (property instanceof WeakSatisfiabilityModelProperty)
+      return "weakSatisfiability";
+    if (property instanceof LivelinessModelProperty)
+      return "liveliness(\"" + target + "\")";
+    if (property instanceof LackOfConstraintsSubsumptionsModelProperty || property instanceof LackOfConstraintsRedundanciesModelProperty) {
+      String[] nameList = target.split(",");
+      StringBuilder s = new StringBuilder();
+      s.append(property instanceof LackOfConstraintsSubsumptionsModelProperty ? "noSubsumption(\"" : "noRedundancy(\"");
+      s.append(nameList[0].trim());
+      s.append("\", \"");
+      s.append(nameList[1].trim());
+      s.append("\")");
+      return s.toString();
+    }
+    return "none";
+  }
+
+  private List<EClass> getClassSubtypes(EClass c) {
+    return subTypesByClass.containsKey(c) ? subTypesByClass.get(c) : emfModelReader.getClassSubtypes(cList, c);
+  }
+
+  private List<EAttribute> getClassAttributes(EClass c) {
+    return attributesByClass.containsKey(c) ? attributesByClass.get(c) : emfModelReader.getClassAttributes(c);
+  }
+
+  private EClass getBaseClass(EClass c) {
+    return baseClassByClass.containsKey(c) ? baseClassByClass.get(c) : emfModelReader.getBaseClass(c);
+  }
+
+  protected void genSection(Section section, Appendable s) throws IOException, ProcessingException {
+    switch (section) {
+      case LIBS: genLibsSection(s); break;
+      case STRUCT: genStructSection(s); break;
+      case HEADER: genHeaderSection(s); break;
+      case CARDINALITY_DEFINITIONS: genCardinalityDefinitionsSection(s); break;
+      case CARDINALITY_CONSTRAINTS: genCardinalityConstraintsSection(s); break;
+      case CARDINALITY_INSTANTIATION: genCardinalityInstantiationSection(s); break;
+      case INSTANCES_1: genInstancesSection1(s); break;
+      case OBJECTS_CREATION: genObjectsCreationSection(s); break;
+      case LINKS_CREATION: genLinksCreationSection(s); break;
+      case INSTANCES_2: genInstancesSection2(s); break;
+      case OCL_ROOT: genOclRootSection(s); break;
+      case ATTRIBUTE_LABELING: genAttributeLabelingSection(s); break;
+      case STRING_LABELING: genStringLabelingSection(s); break;
+      case GENERALIZATION: genGeneralizationSection(s); break;
+      case INDEXES: genIndexesSection(s); break;
+      case ASSOCIATION_ROLES: genAssociationRolesSection(s); break;
+      case ASSOCIATION_IS_UNIQUE: genAssociationIsUniqueSection(s); break;
+      case CLASS_GENERALIZATION: genClassGeneralization(s); break;
+      case MODEL_PROPERTIES: genModelPropertiesSection(s); break;
+      case CONSTRAINT_BIN_ASSOC_MULTI: genConstraintBinAssocMultiSection(s); break;
+      case CLASS_CREATION: genClassCreationSection(s); break;
+      case ASSOCIATION_CREATION: genAssociationCreationSection(s); break;
+    }
+  }
+
+  private void appendClassFragment(Fragment fragment, EClass c, Appendable s) throws IOException, ProcessingException {
+    if (translationCache == null) {
+      genClassFragment(fragment, c, s);
+      return;
+    }
+    String fingerprint = TranslationCache.fingerprint(describeClass(c));
+    String code = translationCache.get(fragment.name(), fingerprint);
+    if (code == null) {
+      StringBuilder b = new StringBuilder();
+      genClassFragment(fragment, c, b);
+      code = b.toString();
+      translationCache.put(fragment.name(), fingerprint, code);
+    }
+    s.append(code);
+  }
+
+  private void genClassFragment(Fragment fragment, EClass c, Appendable s) throws IOException, ProcessingException {
+    switch (fragment) {
+      case CLASS_STRUCT: genClassStruct(c, s); break;
+      case CLASS_ATTRIBUTE_INDEXES: genClassAttributeIndexes(c, s); break;
+      case CLASS_ATTRIBUTE_TYPES: genClassAttributeTypes(c, s); break;
+      case CLASS_CREATION: genClassCreation(c, s); break;
+      default: throw new IllegalArgumentException(fragment.name());
+    }
+  }
+
+  private void appendAssociationFragment(Fragment fragment, EAssociation as, Appendable s) throws IOException {
+    if (translationCache == null) {
+      genAssociationFragment(fragment, as, s);
+      return;
+    }
+    String fingerprint = TranslationCache.fingerprint(describeAssociation(as));
+    String code = translationCache.get(fragment.name(), fingerprint);
+    if (code == null) {
+      StringBuilder b = new StringBuilder();
+      genAssociationFragment(fragment, as, b);
+      code = b.toString();
+      translationCache.put(fragment.name(), fingerprint, code);
+    }
+    s.append(code);
+  }
+
+  private void genAssociationFragment(Fragment fragment, EAssociation as, Appendable s) throws IOException {
+    switch (fragment) {
+      case ASSOCIATION_STRUCT: genAssociationStruct(as, s); break;
+      case ASSOCIATION_CREATION: genAssociationCreation(as, s); break;
+      default: throw new IllegalArgumentException(fragment.name());
+    }
+  }
+
+  /**
+   * Describes everything the class fragments are generated from: the class,
+   * whether it has supertypes, its attributes with their types and the
+   * domains given to them.
+   */
+  private String describeClass(EClass c) {
+    StringBuilder d = new StringBuilder();
+    d.append(c.getName());
+    d.append(c.getESuperTypes() != null && c.getESuperTypes().size() > 0 ? "|sub" : "|root");
+    for (EAttribute at : getClassAttributes(c)) {
+      String key = at.getEContainingClass().getName() + "." + at.getName();
+      d.append("|");
+      d.append(at.getName());
+      d.append(":");
+      d.append(at.getEAttributeType().getName());
+      d.append(":");
+      d.append(elementsDomain.get(key));
+      d.append(":");
+      d.append(elementsDomain.get(key + ".length"));
+      d.append(":");
+      d.append(elementsDomain.get(key + ".domain"));
+    }
+    return d.toString();
+  }
+
+  private String describeAssociation(EAssociation as) {
+    StringBuilder d = new StringBuilder();
+    d.append(as.getName());
+    d.append("|");
+    d.append(emfModelReader.getAssociationName(as));
+    d.append("|");
+    d.append(as.getSourceRoleName());
+    d.append("|");
+    d.append(as.getDestinationRoleName());
+    d.append("|");
+    d.append(as.getSourceEnd().getName());
+    d.append("|");
+    d.append(as.getDestinationEnd().getEType().getName());
+    return d.toString();
+  }
+
+  protected void genLibsSection(Appendable s) throws IOException {
+    s.append(":-lib(ic).\n:-lib(ic_global).\n:-lib(ic_global_gac).\n:-lib(apply).\n:-lib(apply_macros).\n:-lib(lists).\n:-lib(ech).");
+    if (isSearchConfigured())
+      genSearchStrategySection(s);
+    if (telemetry)
+      genTelemetrySection(s);
+    if (scoped)
+      genScopeSection(s);
+  }
+
+  /**
+   * The program reports its progress through telemetryEvent/1, which writes
+   * event(Event, Statistics) terms to the queue named by the telemetry_queue
+   * global variable, unless it is none (the default). The events are the
+   * phases entered by findSolutions, the cardinalities it assigns and every
+   * thousandth backtrack of the labeling. The statistics of the last call,
+   * statistics(CpuTime, Backtracks, GlobalPeak, TrailPeak), are answered by
+   * telemetryStatistics/1, the stacks being sampled at every event.
+   */
+  protected void genTelemetrySection(Appendable s) throws IOException {
+    s.append("\n\n:-local variable(telemetry_queue).\n");
+    s.append(":-local variable(telemetry_start).\n");
+    s.append(":-local variable(telemetry_backtracks).\n");
+    s.append(":-local variable(telemetry_global_peak).\n");
+    s.append(":-local variable(telemetry_trail_peak).\n");
+    s.append(":-setval(telemetry_queue, none).\n\n");
+    s.append("telemetryStart:-\n\t");
+    s.append("statistics(cputime, Start),\n\t");
+    s.append("setval(telemetry_start, Start),\n\t");
+    s.append("setval(telemetry_backtracks, 0),\n\t");
+    s.append("setval(telemetry_global_peak, 0),\n\t");
+    s.append("setval(telemetry_trail_peak, 0).\n\n");
+    s.append("telemetryStatistics(statistics(CpuTime, Backtracks, GlobalPeak, TrailPeak)):-\n\t");
+    s.append("statistics(cputime, Now),\n\t");
+    s.append("getval(telemetry_start, Start),\n\t");
+    s.append("CpuTime is Now - Start,\n\t");
+    s.append("getval(telemetry_backtracks, Backtracks),\n\t");
+    s.append("getval(telemetry_global_peak, GlobalPeak),\n\t");
+    s.append("getval(telemetry_trail_peak, TrailPeak).\n\n");
+    s.append("telemetrySample:-\n\t");
+    s.append("statistics(global_stack_used, Global),\n\t");
+    s.append("getval(telemetry_global_peak, GlobalPeak),\n\t");
+    s.append("( Global > GlobalPeak -> setval(telemetry_global_peak, Global) ; true ),\n\t");
+    s.append("statistics(trail_stack_used, Trail),\n\t");
+    s.append("getval(telemetry_trail_peak, TrailPeak),\n\t");
+    s.append("( Trail > TrailPeak -> setval(telemetry_trail_peak, Trail) ; true ).\n\n");
+    s.append("telemetryEvent(Event):-\n\t");
+    s.append("telemetrySample,\n\t");
+    s.append("getval(telemetry_queue, Queue),\n\t");
+    s.append("( Queue == none -> true ; telemetryStatistics(Statistics), write_exdr(Queue, event(Event, Statistics)), flush(Queue) ).\n\n");
+    s.append("telemetryPhase(Phase):-\n\t");
+    s.append("telemetryEvent(phase(Phase)).\n\n");
+    s.append("telemetryCardinalities(Names, CardVariables):-\n\t");
+    s.append("telemetryEvent(cardinalities(Names, CardVariables)).\n\n");
+    s.append("telemetryBacktrack:-\n\t");
+    s.append("incval(telemetry_backtracks),\n\t");
+    s.append("getval(telemetry_backtracks, Backtracks),\n\t");
+    s.append("( Backtracks mod 1000 =:= 0 -> telemetryEvent(backtracks) ; true ).\n\n");
+    s.append("telemetryChoicePoint.\n");
+    s.append("telemetryChoicePoint:-\n\t");
+    s.append("telemetryBacktrack,\n\t");
+    s.append("fail.");
+  }
+
+  /**
+   * The cardinality of every class is bounded by the scope_bound global
+   * variable, on top of its domain, unless it is negative (the default). The
+   * solver may thus verify the same compiled program with growing scopes.
+   */
+  protected void genScopeSection(Appendable s) throws IOException {
+    s.append("\n\n:-local variable(scope_bound).\n");
+    s.append(":-setval(scope_bound, -1).\n\n");
+    s.append("boundScope(ClassCardVariables):-\n\t");
+    s.append("getval(scope_bound, Scope),\n\t");
+    s.append("( Scope >= 0 -> ( foreach(S, ClassCardVariables), param(Scope) do S #=< Scope ) ; true ).");
+  }
+
+  /**
+   * Variables are labeled by searchVariables/2, which reads the search of
+   * their phase from the searchConfiguration/5 facts written from the
+   * search configuration. The solver may override the variable selection and
+   * value choice methods of the cardinalities and attributes phases by
+   * setting the search_strategy global variable before calling
+   * findSolutions. The runs bounded by the restart limits choose the values
+   * at random, so that each one explores another part of the search tree.
+   * <p>
+   * With telemetry, every value choice is made by a counted_ predicate,
+   * which leaves a choice point after each value to count the backtracks
+   * into it. Without telemetry the value choices are the ones of search/6.
+   * Without a search configuration the section is only generated for the
+   * telemetry, with the default configuration.
+   */
+  protected void genSearchStrategySection(Appendable s) throws IOException {
+    SearchConfiguration search = searchConfiguration != null ? searchConfiguration : new SearchConfiguration();
+    s.append("\n\n:-local variable(search_strategy).\n");
+    s.append(":-setval(search_strategy, none).\n\n");
+    for (SearchConfiguration.Phase phase : SearchConfiguration.Phase.values()) {
+      s.append("searchConfiguration(");
+      s.append(phase.getTerm());
+      s.append(", ");
+      s.append(search.getVariableSelection(phase).getTerm());
+      s.append(", ");
+      s.append(search.getValueChoice(phase).getTerm());
+      s.append(", ");
+      s.append(search.getMethod(phase).getTerm(search.getMethodLimit(phase)));
+      s.append(", ");
+      s.append(search.getRestartLimits(phase).toString().replace(" ", ""));
+      s.append(").\n");
+    }
+    s.append("\nsearchVariables(Phase, Vars):-\n\t");
+    s.append("searchConfiguration(Phase, Select0, Choice0, Method, Limits),\n\t");
+    if (telemetry) {
+      s.append("( Phase \\== strings, getval(search_strategy, strategy(Select, Choice1)) -> true ; Select = Select0, Choice1 = Choice0 ),\n\t");
+      s.append("countedChoice(Choice1, Choice),\n\t");
+    }
+    else
+      s.append("( Phase \\== strings, getval(search_strategy, strategy(Select, Choice)) -> true ; Select = Select0, Choice = Choice0 ),\n\t");
+    s.append("searchRestarts(Vars, Select, Choice, Method, Limits).\n\n");
+    if (telemetry) {
+      for (SearchConfiguration.ValueChoice choice : SearchConfiguration.ValueChoice.values()) {
+        s.append("countedChoice(");
+        s.append(choice.getTerm());
+        s.append(", counted_");
+        s.append(choice.getTerm());
+        s.append(").\n");
+      }
+      s.append("\n");
+      for (SearchConfiguration.ValueChoice choice : SearchConfiguration.ValueChoice.values()) {
+        s.append("counted_");
+        s.append(choice.getTerm());
+        s.append("(X):- indomain(X, ");
+        s.append(choice.getIndomainMethod());
+        s.append("), telemetryChoicePoint.\n");
+      }
+      s.append("\n");
+    }
+    s.append("searchRestarts(Vars, Select, Choice, Method, []):-\n\t");
+    s.append("search(Vars, 0, Select, Choice, Method, []).\n");
+    s.append("searchRestarts(Vars, Select, Choice, Method, [Limit|Limits]):-\n\t");
+    s.append("( search(Vars, 0, Select, ");
+    s.append(telemetry ? "counted_indomain_random" : "indomain_random");
+    s.append(", bbs(Limit), []) ; searchRestarts(Vars, Select, Choice, Method, Limits) ).\n\n");
+    s.append("domDeg(X, Criterion):-\n\t");
+    s.append("get_domain_size(X, Size),\n\t");
+    s.append("delayed_goals_number(X, Degree),\n\t");
+    s.append("Criterion is Size / (Degree + 1).\n\n");
+    s.append("stringLabeling:-\n\t");
+    s.append("str_label_variables(48..122, Strings),\n\t");
+    s.append("searchVariables(strings, Strings), !.");
+  }
+  
+  protected void genStructSection(Appendable s) throws IOException {
+    for (EClass c : cList)
+      appendClassFragment(Fragment.CLASS_STRUCT, c, s);
+    for (EAssociation as : asList)
+      appendAssociationFragment(Fragment.ASSOCIATION_STRUCT, as, s);
+  }
+
+  private void genClassStruct(EClass c, Appendable s) throws IOException {
+    s.append(":- local struct(");
+    s.append(c.getName().toLowerCase());
+    s.append("(oid");
+    for (EAttribute at : getClassAttributes(c)) { 
       s.append(",");
-      s.append(as.getDestinationRoleName().toLowerCase());
-      s.append(")).\n");              
+      s.append(at.getName());
     }
-    return s.toString();
+    s.append(")).\n");
+  }
+
+  private void genAssociationStruct(EAssociation as, Appendable s) throws IOException {
+    s.append(":- local struct(");
+    s.append(emfModelReader.getAssociationName(as).toLowerCase());
+    s.append("(");
+    s.append(as.getSourceRoleName().toLowerCase());
+    s.append(",");
+    s.append(as.getDestinationRoleName().toLowerCase());
+    s.append(")).\n");              
   }
   
-  protected String genHeaderSection() {
-    return "findSolutions(Instances):-\n";   
+  protected void genHeaderSection(Appendable s) throws IOException {
+    if (parameterized)
+      s.append("findSolutions(Instances, Property):-\n");
+    else
+      s.append("findSolutions(Instances):-\n");
+    if (telemetry)
+      s.append("\ttelemetryStart,\n");
   }  
   
-  protected String genCardinalityDefinitionsSection() {  
-    StringBuilder s = new StringBuilder();
-    String nameList = "";
-    String nameList2 = "";
+  protected void genCardinalityDefinitionsSection(Appendable s) throws IOException {  
+    StringBuilder nameList = new StringBuilder();
+    StringBuilder nameList2 = new StringBuilder();
+    StringBuilder classNameList = new StringBuilder();
     s.append("\t%Cardinality definitions\n\t");
     for (EClass c : cList) {
       s.append("S");
       s.append(c.getName());
-      nameList += "S" + c.getName() + ", ";
+      appendListItem(nameList, "S", c.getName());
+      appendListItem(classNameList, "S", c.getName());
       if (!isAbsWithNoChilds(c))
-      nameList2 += "S" + c.getName() + ", ";
+        appendListItem(nameList2, "S", c.getName());
       s.append("::");
       s.append(elementsDomain.get(c.getEPackage().getName() + "." + c.getName()));
       s.append(", ");
@@ -116,32 +547,42 @@ public class ModelToEcl {
     for (String asName : asListNames) {
       s.append("S");
       s.append(asName.toLowerCase());
-      nameList += "S" + asName.toLowerCase() + ", ";
+      appendListItem(nameList, "S", asName.toLowerCase());
       s.append("::");
       s.append(elementsDomain.get(asName));
       s.append(", ");
     }  
-    for (String name : emfModelReader.getAssociationNamesOfNonAbsClasses())
-    	nameList2 += "S" + name.toLowerCase() + ", ";
+    for (String name : nonAbsAssociationsNames)
+      appendListItem(nameList2, "S", name.toLowerCase());
     s.append("\n\t");
     s.append("CardVariables=[");
-    s.append(nameList.substring(0, nameList.length() - 2));
+    s.append(nameList);
     s.append("],\n\t");
     
     s.append("\n\t");
     s.append("CardNonAbsVariables=[");
-    s.append(nameList2.substring(0, nameList2.length() - 2));
+    s.append(nameList2);
     s.append("],\n\t");
-    return s.toString();
+    if (scoped) {
+      s.append("boundScope([");
+      s.append(classNameList);
+      s.append("]),\n\t");
+    }
   }
   
   
+  private static void appendListItem(StringBuilder list, String prefix, String name) {
+    if (list.length() > 0)
+      list.append(", ");
+    list.append(prefix);
+    list.append(name);
+  }
+
   private boolean isAbsWithNoChilds(EClass c){
-	  return c.isAbstract() && emfModelReader.getClassSubtypes(cList, c)== null;
+	  return c.isAbstract() && getClassSubtypes(c)== null;
 	  
   }
-  protected String genCardinalityConstraintsSection() {  
-    StringBuilder s = new StringBuilder();
+  protected void genCardinalityConstraintsSection(Appendable s) throws IOException {  
     s.append("\t%Cardinality constraints\n\t");
     
     s.append("% cardinality constraints derived from containment tree (compositions)\n");
@@ -178,7 +619,9 @@ public class ModelToEcl {
 		}
 	}
 
-    for(IModelProperty prop : properties) {
+    if (parameterized)
+      s.append("\n\tcardinalityProperty(Property, CardVariables, CardNonAbsVariables),");
+    else for(IModelProperty prop : properties) {
       if (prop instanceof StrongSatisfiabilityModelProperty)
         s.append("strongSatisfiability(CardNonAbsVariables),");
       if (prop instanceof WeakSatisfiabilityModelProperty)
@@ -195,7 +638,7 @@ public class ModelToEcl {
     }    
     s.append("\n\t");
     for (EClass c : cList) {      
-      List<EClass> subTypes = emfModelReader.getClassSubtypes(cList, c);
+      List<EClass> subTypes = getClassSubtypes(c);
       StringBuilder subTypeNames = new StringBuilder();
       if (subTypes != null) {
         for(EClass subType : subTypes) { 
@@ -217,7 +660,6 @@ public class ModelToEcl {
       s.append(asName.toLowerCase());
       s.append("Card(CardVariables),\n\t");
     }      
-    return s.toString();    
   }
   
   private List<String> getContainments(EClass c, String s) {
@@ -249,16 +691,28 @@ private EAssociation getAssociation(EReference ref) {
 	  throw new RuntimeException("Internal error (this should never happen): Could not find association for " + ref);
 }
 
-protected String genCardinalityInstantiationSection() { 
-    StringBuilder s = new StringBuilder();
+protected void genCardinalityInstantiationSection(Appendable s) throws IOException { 
     s.append("\t%Instantiation of cardinality variables\n\t");    
-    s.append("labeling(CardVariables),\n\t");
-    return s.toString();
+    if (!telemetry) {
+      s.append(isSearchConfigured() ? "searchVariables(cardinalities, CardVariables),\n\t" : "labeling(CardVariables),\n\t");
+      return;
+    }
+    s.append("telemetryPhase(cardinalities),\n\t");
+    s.append("searchVariables(cardinalities, CardVariables),\n\t");
+    StringBuilder names = new StringBuilder();
+    for (EClass c : cList)
+      appendListItem(names, "\"", c.getName() + "\"");
+    for (String asName : asListNames)
+      appendListItem(names, "\"", asName + "\"");
+    s.append("telemetryCardinalities([");
+    s.append(names);
+    s.append("], CardVariables),\n\t");
   }
    
-  protected String genObjectsCreationSection() {
-    StringBuilder s = new StringBuilder();
+  protected void genObjectsCreationSection(Appendable s) throws IOException {
     s.append("\t%Object creation\n\t");    
+    if (telemetry)
+      s.append("telemetryPhase(objects),\n\t");
 
     for (EClass c : cList) {
       s.append("creation");
@@ -268,7 +722,7 @@ protected String genCardinalityInstantiationSection() {
       s.append(", S");
       s.append(c.getName());
       s.append(", S");
-      s.append(emfModelReader.getBaseClass(c).getName());
+      s.append(getBaseClass(c).getName());
       s.append(", At");
       s.append(c.getName());
       s.append("),\n\t");
@@ -291,8 +745,8 @@ protected String genCardinalityInstantiationSection() {
     }
     s.append("\n\t");     
     for (EClass c : cList) {
-    	List<EClass> subTypes = emfModelReader.getClassSubtypes(cList, c);
-      String b= "";
+    	List<EClass> subTypes = getClassSubtypes(c);
+      StringBuilder b = new StringBuilder();
       if (subTypes!=null) 
     	
         for(EClass subType : subTypes) { 
@@ -305,20 +759,19 @@ protected String genCardinalityInstantiationSection() {
           s.append(", O");
           s.append(c.getName());
           s.append("),\n\t");
-          b+=("O"+subType.getName()+", ");
+          appendListItem(b, "O", subType.getName());
         }
       if (c.isAbstract()){
     	  s.append("existsOidInOneOf(O");
     	  s.append(c.getName());
     	  s.append(", [");
-    	  if (b.length() >= 2)
-    	  s.append(b.substring(0, b.length()-2));
+    	  s.append(b);
     	  s.append("]),\n\t");
       }
     	  
     }    
     for (EClass c : cList) {
-      List<EClass> subTypes = emfModelReader.getClassSubtypes(cList, c);
+      List<EClass> subTypes = getClassSubtypes(c);
       StringBuilder subTypeNames = new StringBuilder();
       if (subTypes != null && subTypes.size() > 0) {
         for(EClass subType : subTypes) { 
@@ -332,12 +785,12 @@ protected String genCardinalityInstantiationSection() {
         s.append("),\n\t");
       }
     }    
-    return s.toString();
   }
   
-  protected String genLinksCreationSection() {
-    StringBuilder s = new StringBuilder();
+  protected void genLinksCreationSection(Appendable s) throws IOException {
     s.append("\t%Links creation\n\t");    
+    if (telemetry)
+      s.append("telemetryPhase(links),\n\t");
    
     for (EAssociation as : asList) {
       String asName = emfModelReader.getAssociationName(as).toLowerCase();
@@ -350,9 +803,9 @@ protected String genCardinalityInstantiationSection() {
       s.append(", P");
       s.append(asName);
       s.append(", S");
-      s.append(emfModelReader.getBaseClass(as.getSourceEnd()).getName()); 
+      s.append(getBaseClass(as.getSourceEnd()).getName()); 
       s.append(", S");
-      s.append(emfModelReader.getBaseClass((EClass)as.getDestinationEnd().getEType()).getName());                                                 
+      s.append(getBaseClass((EClass)as.getDestinationEnd().getEType()).getName());                                                 
       s.append("),\n\t");
     }    
     for (String asName : asListNames) {
@@ -370,43 +823,40 @@ protected String genCardinalityInstantiationSection() {
     for (EClass c : cList){
     	List <String> contList = getContainments(c,"L");
     	if (contList.size() > 1)
-    	{	String st="noSharing([";
-    		for (String str : contList){
-    			st+=(str+", ");
+    	{	s.append("noSharing([");
+    		for (Iterator<String> itCont = contList.iterator(); itCont.hasNext();) {
+    			s.append(itCont.next());
+    			if (itCont.hasNext())
+    				s.append(", ");
     		}
-    		st=st.substring(0,st.length()-2);
-    		st+="]),\n\t";
-    		s.append(st);}
+    		s.append("]),\n\t");}
     }
-    return s.toString(); 
   }
   
-  protected String genInstancesSection1() {
-
-	  StringBuilder s = new StringBuilder();
-
+  protected void genInstancesSection1(Appendable s) throws IOException {
+	  String separator = "";
 	  s.append("\tInstances = [");
 	  for (String cName : cListNames) {
+		  s.append(separator);
 		  s.append("O");
 		  s.append(cName);
-		  s.append(", ");
+		  separator = ", ";
 	  }    
 	  for (String asName : asListNames) {
+		  s.append(separator);
 		  s.append("L");
 		  s.append(asName.toLowerCase());
-		  s.append(", ");
+		  separator = ", ";
 	  } 
-	  s.deleteCharAt(s.length() - 2);
 	  s.append("],\n\t");
-	  return s.toString();
   }
   
-  protected String genInstancesSection2() {
-    StringBuilder s = new StringBuilder();
-
+  protected void genInstancesSection2(Appendable s) throws IOException {
     s.append("\t");
     
-    for(IModelProperty prop : properties) {
+    if (parameterized)
+      s.append("propertyInstances(Property, Instances),\n\t");
+    else for(IModelProperty prop : properties) {
       if (prop instanceof LackOfConstraintsSubsumptionsModelProperty)
         for (String constraintNames : prop.getTargetModelElementsNames()) {
           s.append("noSubsumption");
@@ -425,12 +875,15 @@ protected String genCardinalityInstantiationSection() {
       s.append(asName.toLowerCase());
       s.append("(Instances),\n\t");
     } 
-    return s.toString(); 
   }
 
-  protected String genOclRootSection() {
-    StringBuilder s = new StringBuilder();
-       
+  protected void genOclRootSection(Appendable s) throws IOException {
+    if (telemetry)
+      s.append("telemetryPhase(ocl),\n\t");
+    if (parameterized) {
+      s.append("oclInvariants(Property, Instances),\n\t");
+      return;
+    }
     LackOfConstraintsSubsumptionsModelProperty cSub = null;
     LackOfConstraintsRedundanciesModelProperty cRed = null;
     for(IModelProperty prop : properties) {
@@ -441,50 +894,61 @@ protected String genCardinalityInstantiationSection() {
     }   
     if (cSub == null && cRed == null)  
       for(String cName : constraintsNames) {
-        String firstChar = cName.substring(0, 1); 
-        String firstCharLower = firstChar.toLowerCase();
-        s.append(cName.replaceFirst(firstChar, firstCharLower));
+        s.append(getInvariantPredicateName(cName));
         s.append("(Instances),\n\t");
       }    
-    return s.toString();
+  }
+  
+  private String getInvariantPredicateName(String cName) {
+    String firstChar = cName.substring(0, 1); 
+    String firstCharLower = firstChar.toLowerCase();
+    return cName.replaceFirst(firstChar, firstCharLower);
   }
   
 
-  protected String genAttributeLabelingSection() {
-	    StringBuilder s = new StringBuilder();
-	    s.append("\tAllAttributes = [");
+  protected void genAttributeLabelingSection(Appendable s) throws IOException {
+	    String separator = "";
+	    s.append("\t");
+	    if (telemetry)
+	      s.append("telemetryPhase(attributes),\n\t");
+	    s.append("AllAttributes = [");
 	    for (String asName : asListNames) {
+	        s.append(separator);
 	        s.append("P");
 	        s.append(asName.toLowerCase());
-	        s.append(", ");
+	        separator = ", ";
 	      } 
 	    for (String cName : cListNames) {
+	      s.append(separator);
 	      s.append("At");
 	      s.append(cName);
-	      s.append(", ");
+	      separator = ", ";
 	    }    
-	    s.deleteCharAt(s.length() - 2);
 	    s.append("],\n\t");
 	    s.append("flatten(AllAttributes, Attributes),\n\t");
-        //s.append("search(Attributes,0,first_fail, indomain, complete, []),\n");
-        s.append("labeling(Attributes),\n\t");
+        s.append(isSearchConfigured() ? "searchVariables(attributes, Attributes),\n\t" : "labeling(Attributes),\n\t");
 
 
-	    return s.toString();    
 	  }
 
-  protected String genStringLabelingSection() {
-	    StringBuilder s = new StringBuilder();
+  protected void genStringLabelingSection(Appendable s) throws IOException {
 	    s.append("\t");
-		s.append("str_labeling.");
-	    return s.toString();    
+	    if (!isSearchConfigured()) {
+	      s.append("str_labeling.");
+	      return;
+	    }
+	    if (!telemetry) {
+	      s.append("stringLabeling.");
+	      return;
+	    }
+	    s.append("telemetryPhase(strings),\n\t");
+	    s.append("stringLabeling,\n\t");
+	    s.append("telemetryPhase(solved).");
 	  }
 
-  protected String genGeneralizationSection() {
-    StringBuilder s = new StringBuilder();
-    
+  protected void genGeneralizationSection(Appendable s) throws IOException {
     for (EClass c : cList) {
-      List<EClass> subTypes = emfModelReader.getClassSubtypes(cList, c);
+      List<EClass> subTypes = getClassSubtypes(c);
       if (subTypes != null && subTypes.size() > 0) {
         s.append("\tconstraintsGen");
         s.append(c.getName());
@@ -500,70 +964,66 @@ protected String genCardinalityInstantiationSection() {
         s.append(c.isAbstract() ? "constraintsAbstractDisjointSubtypesCard(S" : "constraintsDisjointSubtypesCard(S");
         s.append(c.getName());
         s.append(", [");
-        for(EClass subType : subTypes) {
+        for (Iterator<EClass> itSubType = subTypes.iterator(); itSubType.hasNext();) {
           s.append("S");
-          s.append(subType.getName());        
-          s.append(",");
+          s.append(itSubType.next().getName());        
+          if (itSubType.hasNext())
+            s.append(",");
         }        
-        s.deleteCharAt(s.length() - 1);
         s.append("]).\n");
       }
     }   
-    return s.toString();
   }
   
-  protected String genIndexesSection() {
-    StringBuilder s = new StringBuilder();
+  protected void genIndexesSection(Appendable s) throws IOException {
     int i = 1;
     
     for (String cName : cListNames) {
       s.append("index(\"");
       s.append(cName);
       s.append("\",");
-      s.append(i++);
+      s.append(String.valueOf(i++));
       s.append(").\n");
     }    
     for (String asName : asListNames) {
       s.append("index(\"");
       s.append(asName.toLowerCase());
       s.append("\",");
-      s.append(i++);
+      s.append(String.valueOf(i++));
       s.append(").\n");
     } 
-    List<EAttribute> atList = new ArrayList<EAttribute>();
-    for (EClass c : cList) {
-      i = 1;
-      atList = emfModelReader.getClassAttributes(c);
-      for (EAttribute at : atList) { 
-        s.append("attIndex(\"");
-        s.append(c.getName());
-        s.append("\",\"");
-        s.append(at.getName());
-        s.append("\",");
-        s.append(++i);
-        s.append(").\n");
-      }
-    }    
-    for (EClass c : cList) {
-      i = 1;
-      atList = emfModelReader.getClassAttributes(c);
-      for (EAttribute at : atList) { 
-        s.append("attType(\"");
-        s.append(c.getName());
-        s.append("\",\"");
-        s.append(at.getName());
-        s.append("\",\"");
-        s.append(at.getEAttributeType().getName());
-        s.append("\").\n");
-        ++i;
-      }
-    }    
-    return s.toString();
+    for (EClass c : cList)
+      appendClassFragment(Fragment.CLASS_ATTRIBUTE_INDEXES, c, s);
+    for (EClass c : cList)
+      appendClassFragment(Fragment.CLASS_ATTRIBUTE_TYPES, c, s);
   }
-  
-  protected String genAssociationRolesSection() {
-    StringBuilder s = new StringBuilder();
 
+  private void genClassAttributeIndexes(EClass c, Appendable s) throws IOException {
+    int i = 1;
+    for (EAttribute at : getClassAttributes(c)) { 
+      s.append("attIndex(\"");
+      s.append(c.getName());
+      s.append("\",\"");
+      s.append(at.getName());
+      s.append("\",");
+      s.append(String.valueOf(++i));
+      s.append(").\n");
+    }
+  }
+
+  private void genClassAttributeTypes(EClass c, Appendable s) throws IOException {
+    for (EAttribute at : getClassAttributes(c)) { 
+      s.append("attType(\"");
+      s.append(c.getName());
+      s.append("\",\"");
+      s.append(at.getName());
+      s.append("\",\"");
+      s.append(at.getEAttributeType().getName());
+      s.append("\").\n");
+    }
+  }
+  
+  protected void genAssociationRolesSection(Appendable s) throws IOException {
     for (EAssociation as : asList) {
       String asName = emfModelReader.getAssociationName(as).toLowerCase();
       s.append("roleIndex(\"");
@@ -602,14 +1062,14 @@ protected String genCardinalityInstantiationSection() {
       s.append("\",\"");
       s.append(as.getSourceRoleName().toLowerCase());
       s.append("\",");
-      s.append(as.getSourceLowerBound());
+      s.append(String.valueOf(as.getSourceLowerBound()));
       s.append(").\n");
       s.append("roleMin(\"");
       s.append(asName);
       s.append("\",\"");
       s.append(as.getDestinationRoleName().toLowerCase());
       s.append("\",");
-      s.append(as.getDestinationLowerBound());
+      s.append(String.valueOf(as.getDestinationLowerBound()));
       s.append(").\n");
     }      
     for (EAssociation as : asList) {
@@ -619,33 +1079,27 @@ protected String genCardinalityInstantiationSection() {
       s.append("\",\"");
       s.append(as.getSourceRoleName().toLowerCase());
       s.append("\",");
-      s.append(as.getSourceUpperBound() == -1 ? "\"*\"" : as.getSourceUpperBound());
+      s.append(as.getSourceUpperBound() == -1 ? "\"*\"" : String.valueOf(as.getSourceUpperBound()));
       s.append(").\n");
       s.append("roleMax(\"");
       s.append(asName.toLowerCase());
       s.append("\",\"");
       s.append(as.getDestinationRoleName().toLowerCase());
       s.append("\",");
-      s.append(as.getDestinationUpperBound() == -1 ? "\"*\"" : as.getDestinationUpperBound());
+      s.append(as.getDestinationUpperBound() == -1 ? "\"*\"" : String.valueOf(as.getDestinationUpperBound()));
       s.append(").\n");
     }      
-    return s.toString();    
   }
    
-  protected String genAssociationIsUniqueSection() {
-    StringBuilder s = new StringBuilder();
-
+  protected void genAssociationIsUniqueSection(Appendable s) throws IOException {
     for (String asName : asListNames) {
       s.append("assocIsUnique(\"");
       s.append(asName.toLowerCase());
       s.append("\", 1).\n");
     }
-    return s.toString();
   }
   
-  protected String genClassGeneralization() {
-    StringBuilder s = new StringBuilder();
-    
+  protected void genClassGeneralization(Appendable s) throws IOException {
     for (EClass c : cList)
       if (c.getESuperTypes() != null)
         for (EClass superType : c.getESuperTypes()) {
@@ -656,7 +1110,7 @@ protected String genCardinalityInstantiationSection() {
           s.append("\").\n");          
         }    
     for (EClass c : cList) {
-      List<EClass> subTypes = emfModelReader.getClassSubtypes(cList, c);
+      List<EClass> subTypes = getClassSubtypes(c);
       StringBuilder subTypeNames = new StringBuilder();
       if (subTypes != null && subTypes.size() > 0) {
         for(EClass subType : subTypes) {
@@ -673,12 +1127,13 @@ protected String genCardinalityInstantiationSection() {
         s.append("]).\n");
       }
     }   
-    return s.toString();
   }
   
-  protected String genModelPropertiesSection() {
-    StringBuilder s = new StringBuilder();
-
+  protected void genModelPropertiesSection(Appendable s) throws IOException {
+    if (parameterized) {
+      genPropertyParameterSection(s);
+      return;
+    }
     for(IModelProperty prop : properties) {
       if (prop instanceof StrongSatisfiabilityModelProperty)
         s.append("strongSatisfiability(CardVariables):- strongSatisfiabilityConstraint(CardVariables).\n");
@@ -696,12 +1151,42 @@ protected String genCardinalityInstantiationSection() {
       }
     }   
     
-    return s.toString();
   }
   
-  protected String genConstraintBinAssocMultiSection() {
-    StringBuilder s = new StringBuilder();
-
+  /**
+   * Dispatches the property parameter of findSolutions/2 to the cardinality
+   * constraint, the instances constraint and the OCL invariants it requires.
+   * The first predicates of the constraints are given by the
+   * constraintFirstPredicate/2 facts of the OCL translation.
+   */
+  protected void genPropertyParameterSection(Appendable s) throws IOException {
+    s.append("cardinalityProperty(strongSatisfiability, _, CardNonAbsVariables):- !, strongSatisfiabilityConstraint(CardNonAbsVariables).\n");
+    s.append("cardinalityProperty(weakSatisfiability, _, CardNonAbsVariables):- !, weakSatisfiabilityConstraint(CardNonAbsVariables).\n");
+    s.append("cardinalityProperty(liveliness(Name), CardVariables, _):- !, livelinessConstraint(CardVariables, Name).\n");
+    s.append("cardinalityProperty(_, _, _).\n");
+    s.append("propertyInstances(noSubsumption(C1, C2), Instances):- !,\n\t");
+    s.append("constraintFirstPredicate(C1, P1), constraintFirstPredicate(C2, P2), noConstraintSubsumption(Instances, P1, P2).\n");
+    s.append("propertyInstances(noRedundancy(C1, C2), Instances):- !,\n\t");
+    s.append("constraintFirstPredicate(C1, P1), constraintFirstPredicate(C2, P2), noConstraintRedundancy(Instances, P1, P2).\n");
+    s.append("propertyInstances(_, _).\n");
+    s.append("oclInvariants(noSubsumption(_, _), _):- !.\n");
+    s.append("oclInvariants(noRedundancy(_, _), _):- !.\n");
+    if (constraintsNames.isEmpty()) {
+      s.append("oclInvariants(_, _).\n");
+      return;
+    }
+    s.append("oclInvariants(_, Instances):-");
+    String separator = "\n\t";
+    for(String cName : constraintsNames) {
+      s.append(separator);
+      s.append(getInvariantPredicateName(cName));
+      s.append("(Instances)");
+      separator = ",\n\t";
+    }
+    s.append(".\n");
+  }
+  
+  protected void genConstraintBinAssocMultiSection(Appendable s) throws IOException {
     for (EAssociation as : asList) {
       s.append("constraints");
       s.append(as.getName().toLowerCase());
@@ -715,7 +1200,6 @@ protected String genCardinalityInstantiationSection() {
       s.append(as.getDestinationRoleName().toLowerCase());
       s.append("\", CardVariables).\n");
     }    
-    return s.toString();
   }
   
   private String getStandardTypeName(String typeName) {
@@ -726,102 +1210,13 @@ protected String genCardinalityInstantiationSection() {
     return typeName;    
   }
   
-  protected String genClassCreationSection() throws ProcessingException {
-    StringBuilder s = new StringBuilder();
-    
-    for (EClass c : cList) {
-      s.append("creation");
-      s.append(c.getName());
-      if (c.getESuperTypes() != null && c.getESuperTypes().size() > 0) 
-        s.append("(Instances, Size, MaxId, Attributes):-\n\t");
-      else 
-        s.append("(Instances, Size, _, Attributes):-\n\t");
-      s.append("length(Instances, Size),\n\t");
-      if (c.getESuperTypes() != null && c.getESuperTypes().size() > 0) {
-        s.append("(foreach(Xi, Instances), fromto([],AtIn,AtOut,Attributes), param(MaxId) do\n\t\t");
-        s.append("Xi=");
-        s.append(c.getName().toLowerCase());
-        s.append("{oid:Integer1");
-      }
-      else {
-        s.append("(foreach(Xi, Instances), fromto([],AtIn,AtOut,Attributes), for(N, 1, Size) do\n\t\t");
-        s.append("Xi=");
-        s.append(c.getName().toLowerCase());
-        s.append("{oid:N");
-      }
-      
-      List<EAttribute> atList = emfModelReader.getClassAttributes(c);
-      List<EAttribute> atListNumeric = new ArrayList<EAttribute>();
-      for (EAttribute at : atList) { 
-    	  if (! (at.getEAttributeType().getName().equalsIgnoreCase("string") || at.getEAttributeType().getName().equalsIgnoreCase("estring")) ) {
-    		  atListNumeric.add(at);
-    	  }
-      }
-      int i = 1;
-      for (EAttribute at : atList) {
-    	  	++i;
-			s.append(",");
-			s.append(at.getName());
-			s.append(":");
-			if (atListNumeric.contains(at)) {
-				s.append("Int");
-			} else {
-				s.append("Str");
-			}
-			s.append(i);
-      }
-      if (c.getESuperTypes() != null && c.getESuperTypes().size() > 0)
-        s.append("}, Integer1::1..MaxId, ");
-      else
-        s.append("}, ");
-      i = 1;
-      for (EAttribute at : atList) {
-    	  ++i;
-    	  if (atListNumeric.contains(at)) {
-		  	s.append("Int");
-	    	s.append(i);
-	    	s.append("#::");        
-	    	s.append(elementsDomain.get(at.getEContainingClass().getName() + "." + at.getName()));
-    	  } else {
-    		  String lengthBound = elementsDomain.get(at.getEContainingClass().getName() + "." + at.getName() + ".length");
-    		  String domainBound = elementsDomain.get(at.getEContainingClass().getName() + "." + at.getName() + ".domain");
-    		  s.append("str_len(Str");
-    		  s.append(i);
-    		  s.append(",");
-    		  s.append("LenStr" + i);
-    		  s.append("),");
-    		  s.append("LenStr" + i);
-    		  s.append("#::");
-    		  s.append(lengthBound);
-    		  if (domainBound != null && domainBound.length() != 0) {
-    			  if (! domainBound.matches("\\[\".*\"\\]") ) {
-    				  throw new ProcessingException("String domain must be of the form [\"str1\",\"str2\",...]");
-    			  }
-    			  s.append(",str_constrain_str_domain(Str" + i + "," + domainBound + ")");
-    		  }
-    	  }
-    	  s.append(",\n\t\t ");
-      }
-
-      if (c.getESuperTypes() != null && c.getESuperTypes().size() > 0)
-        s.append("append([Integer1");
-      else
-        s.append("append([N");
-      i = 1;
-      for (EAttribute at : atList) {
-    	  ++i;
-    	  if (atListNumeric.contains(at)) {
-    		  s.append(",");
-    		  s.append("Int");
-    		  s.append(i);
-    	  }
-      }
-      s.append("],AtIn, AtOut)).\n\n");
-    }
+  protected void genClassCreationSection(Appendable s) throws IOException, ProcessingException {
+    for (EClass c : cList)
+      appendClassFragment(Fragment.CLASS_CREATION, c, s);
 
    
     for (EClass c : cList) {
-      List<EClass> subTypes = emfModelReader.getClassSubtypes(cList, c);
+      List<EClass> subTypes = getClassSubtypes(c);
       if (subTypes != null && subTypes.size() > 0)
         for(EClass subType : subTypes) {
           s.append("existingOids");
@@ -839,39 +1234,129 @@ protected String genCardinalityInstantiationSection() {
           s.append(").\n");
         }
     }   
-    return s.toString();
   }
 
-  protected String genAssociationCreationSection() {
-    StringBuilder s = new StringBuilder();
+  private void genClassCreation(EClass c, Appendable s) throws IOException, ProcessingException {
+    s.append("creation");
+    s.append(c.getName());
+    if (c.getESuperTypes() != null && c.getESuperTypes().size() > 0) 
+      s.append("(Instances, Size, MaxId, Attributes):-\n\t");
+    else 
+      s.append("(Instances, Size, _, Attributes):-\n\t");
+    s.append("length(Instances, Size),\n\t");
+    if (c.getESuperTypes() != null && c.getESuperTypes().size() > 0) {
+      s.append("(foreach(Xi, Instances), fromto([],AtIn,AtOut,Attributes), param(MaxId) do\n\t\t");
+      s.append("Xi=");
+      s.append(c.getName().toLowerCase());
+      s.append("{oid:Integer1");
+    }
+    else {
+      s.append("(foreach(Xi, Instances), fromto([],AtIn,AtOut,Attributes), for(N, 1, Size) do\n\t\t");
+      s.append("Xi=");
+      s.append(c.getName().toLowerCase());
+      s.append("{oid:N");
+    }
     
-    for (EAssociation as : asList) {
-      s.append("creation");
-      s.append(as.getName().toLowerCase());
-      s.append("(Instances, Size, Participants");
-      s.append(", S");
-      s.append(as.getSourceEnd().getName());
-      s.append(", S");
-      s.append(as.getDestinationEnd().getEType().getName());
-      s.append("):-\n\tlength(Instances, Size),\n\t(foreach(Xi, Instances), fromto([],AtIn,AtOut,Participants)");
-      s.append(", param(S");
-      s.append(as.getSourceEnd().getName());
-      s.append(")");
-      s.append(", param(S");
-      s.append(as.getDestinationEnd().getEType().getName());
-      s.append(") do\n\t\tXi=");
-      s.append(as.getName().toLowerCase());
-      s.append("{");
-      s.append(as.getSourceRoleName().toLowerCase());
-      s.append(":ValuePart1,");
-      s.append(as.getDestinationRoleName().toLowerCase());
-      s.append(":ValuePart2}");
-      s.append(", ValuePart1#>0, ValuePart1#=<S");
-      s.append(as.getSourceEnd().getName());
-      s.append(", ValuePart2#>0, ValuePart2#=<S");
-      s.append(as.getDestinationEnd().getEType().getName());
-      s.append(",\n\t\tappend([ValuePart1, ValuePart2],AtIn, AtOut)).\n");
-    }    
+    List<EAttribute> atList = getClassAttributes(c);
+    List<EAttribute> atListNumeric = new ArrayList<EAttribute>();
+    for (EAttribute at : atList) { 
+  	  if (! (at.getEAttributeType().getName().equalsIgnoreCase("string") || at.getEAttributeType().getName().equalsIgnoreCase("estring")) ) {
+  		  atListNumeric.add(at);
+  	  }
+    }
+    int i = 1;
+    for (EAttribute at : atList) {
+  	  	++i;
+			s.append(",");
+			s.append(at.getName());
+			s.append(":");
+			if (atListNumeric.contains(at)) {
+				s.append("Int");
+			} else {
+				s.append("Str");
+			}
+			s.append(String.valueOf(i));
+    }
+    if (c.getESuperTypes() != null && c.getESuperTypes().size() > 0)
+      s.append("}, Integer1::1..MaxId, ");
+    else
+      s.append("}, ");
+    i = 1;
+    for (EAttribute at : atList) {
+  	  ++i;
+  	  if (atListNumeric.contains(at)) {
+		  	s.append("Int");
+	    	s.append(String.valueOf(i));
+	    	s.append("#::");        
+	    	s.append(elementsDomain.get(at.getEContainingClass().getName() + "." + at.getName()));
+  	  } else {
+  		  String lengthBound = elementsDomain.get(at.getEContainingClass().getName() + "." + at.getName() + ".length");
+  		  String domainBound = elementsDomain.get(at.getEContainingClass().getName() + "." + at.getName() + ".domain");
+  		  s.append("str_len(Str");
+  		  s.append(String.valueOf(i));
+  		  s.append(",");
+  		  s.append("LenStr" + i);
+  		  s.append("),");
+  		  s.append("LenStr" + i);
+  		  s.append("#::");
+  		  s.append(lengthBound);
+  		  if (domainBound != null && domainBound.length() != 0) {
+  			  if (! domainBound.matches("\\[\".*\"\\]") ) {
+  				  throw new ProcessingException("String domain must be of the form [\"str1\",\"str2\",...]");
+  			  }
+  			  s.append(",str_constrain_str_domain(Str" + i + "," + domainBound + ")");
+  		  }
+  	  }
+  	  s.append(",\n\t\t ");
+    }
+
+    if (c.getESuperTypes() != null && c.getESuperTypes().size() > 0)
+      s.append("append([Integer1");
+    else
+      s.append("append([N");
+    i = 1;
+    for (EAttribute at : atList) {
+  	  ++i;
+  	  if (atListNumeric.contains(at)) {
+  		  s.append(",");
+  		  s.append("Int");
+  		  s.append(String.valueOf(i));
+  	  }
+    }
+    s.append("],AtIn, AtOut)).\n\n");
+  }
+
+  private void genAssociationCreation(EAssociation as, Appendable s) throws IOException {
+    s.append("creation");
+    s.append(as.getName().toLowerCase());
+    s.append("(Instances, Size, Participants");
+    s.append(", S");
+    s.append(as.getSourceEnd().getName());
+    s.append(", S");
+    s.append(as.getDestinationEnd().getEType().getName());
+    s.append("):-\n\tlength(Instances, Size),\n\t(foreach(Xi, Instances), fromto([],AtIn,AtOut,Participants)");
+    s.append(", param(S");
+    s.append(as.getSourceEnd().getName());
+    s.append(")");
+    s.append(", param(S");
+    s.append(as.getDestinationEnd().getEType().getName());
+    s.append(") do\n\t\tXi=");
+    s.append(as.getName().toLowerCase());
+    s.append("{");
+    s.append(as.getSourceRoleName().toLowerCase());
+    s.append(":ValuePart1,");
+    s.append(as.getDestinationRoleName().toLowerCase());
+    s.append(":ValuePart2}");
+    s.append(", ValuePart1#>0, ValuePart1#=<S");
+    s.append(as.getSourceEnd().getName());
+    s.append(", ValuePart2#>0, ValuePart2#=<S");
+    s.append(as.getDestinationEnd().getEType().getName());
+    s.append(",\n\t\tappend([ValuePart1, ValuePart2],AtIn, AtOut)).\n");
+  }
+
+  protected void genAssociationCreationSection(Appendable s) throws IOException {
+    for (EAssociation as : asList)
+      appendAssociationFragment(Fragment.ASSOCIATION_CREATION, as, s);
     
     for (EAssociation as : asList) {
       s.append("cardinalityLinks");
@@ -884,6 +1369,5 @@ protected String genCardinalityInstantiationSection() {
       s.append(as.getDestinationRoleName().toLowerCase());
       s.append("\").\n");
     }
-    return s.toString();
   }   
 }
@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp.emftoecl;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The search/6 calls of every labeling phase of a generated program: the
+ * variable selection, the value choice, the search method and the restarts.
+ * <p>
+ * With restarts, the phase is first searched with the backtrack limits of
+ * the restart sequence, choosing the values at random so that every run
+ * labels the variables differently, and then with its method and value
+ * choice. A solution may then be found again by a later run when the
+ * solutions are enumerated. The complete method keeps the
+ * search complete; bbs, lds and credit bound it, so a program they find no
+ * solution for may still have one.
+ */
+public class SearchConfiguration {
+  private static final String PROPERTY_PREFIX = "search."; //$NON-NLS-1$
+  private static final Pattern LIMITED = Pattern.compile("(\\w+)\\((\\d+)\\)"); //$NON-NLS-1$
+  private static final Pattern RESTARTS = Pattern.compile("(\\w+)\\((\\d+)\\s*,\\s*(\\d+)\\)"); //$NON-NLS-1$
+
+  /**
+   * The labeling phases, in the order of the program.
+   */
+  public enum Phase {
+    CARDINALITIES("cardinalities"), ATTRIBUTES("attributes"), STRINGS("strings"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+    private final String term;
+
+    private Phase(String term) {
+      this.term = term;
+    }
+
+    public String getTerm() {
+      return term;
+    }
+  }
+
+  /**
+   * The variable selection methods. DOM_DEG selects the variable with the
+   * smallest domain per constraint it is involved in, as a static stand-in
+   * for dom/wdeg, whose constraint weights the ic library does not keep.
+   */
+  public enum VariableSelection {
+    INPUT_ORDER("input_order"), FIRST_FAIL("first_fail"), ANTI_FIRST_FAIL("anti_first_fail"), SMALLEST("smallest"), //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+    LARGEST("largest"), OCCURRENCE("occurrence"), MOST_CONSTRAINED("most_constrained"), MAX_REGRET("max_regret"), DOM_DEG("domDeg"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+
+    private final String term;
+
+    private VariableSelection(String term) {
+      this.term = term;
+    }
+
+    public String getTerm() {
+      return term;
+    }
+  }
+
+  public enum ValueChoice {
+    INDOMAIN, INDOMAIN_MIN, INDOMAIN_MAX, INDOMAIN_MIDDLE, INDOMAIN_MEDIAN, INDOMAIN_SPLIT, INDOMAIN_REVERSE_SPLIT, INDOMAIN_RANDOM, INDOMAIN_INTERVAL;
+
+    public String getTerm() {
+      return name().toLowerCase();
+    }
+
+    /**
+     * Returns the method of indomain/2 the choice stands for.
+     */
+    public String getIndomainMethod() {
+      return this == INDOMAIN ? "enum" : getTerm().substring("indomain_".length()); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+  }
+
+  /**
+   * The search methods. Every method but COMPLETE takes a limit: the
+   * backtracks of bbs, the discrepancies of lds, the credit of credit.
+   */
+  public enum Method {
+    COMPLETE, BBS, LDS, CREDIT;
+
+    public String getTerm(int limit) {
+      switch (this) {
+      case COMPLETE: return "complete"; //$NON-NLS-1$
+      case CREDIT: return "credit(" + limit + ", none)"; //$NON-NLS-1$ //$NON-NLS-2$
+      default: return name().toLowerCase() + "(" + limit + ")"; //$NON-NLS-1$ //$NON-NLS-2$
+      }
+    }
+  }
+
+  /**
+   * The sequences of backtrack limits of the restarts: the Luby sequence 1,
+   * 1, 2, 1, 1, 2, 4, ... or the powers of 2, times the scale.
+   */
+  public enum Restarts {
+    NONE, LUBY, GEOMETRIC
+  }
+
+  private final Map<Phase, VariableSelection> selections = new EnumMap<Phase, VariableSelection>(Phase.class);
+  private final Map<Phase, ValueChoice> choices = new EnumMap<Phase, ValueChoice>(Phase.class);
+  private final Map<Phase, Method> methods = new EnumMap<Phase, Method>(Phase.class);
+  private final Map<Phase, Integer> methodLimits = new EnumMap<Phase, Integer>(Phase.class);
+  private final Map<Phase, Restarts> restarts = new EnumMap<Phase, Restarts>(Phase.class);
+  private final Map<Phase, Integer> restartScales = new EnumMap<Phase, Integer>(Phase.class);
+  private final Map<Phase, Integer> restartCounts = new EnumMap<Phase, Integer>(Phase.class);
+
+  /**
+   * Creates the configuration of the programs generated so far: labeling/1
+   * for the cardinalities and the attributes, and a search bounded to 10000
+   * backtracks for the strings.
+   */
+  public SearchConfiguration() {
+    for (Phase phase : Phase.values()) {
+      setVariableSelection(phase, VariableSelection.INPUT_ORDER);
+      setValueChoice(phase, ValueChoice.INDOMAIN);
+      setMethod(phase, Method.COMPLETE, 0);
+      setRestarts(phase, Restarts.NONE, 0, 0);
+    }
+    setMethod(Phase.STRINGS, Method.BBS, 10000);
+  }
+
+  public VariableSelection getVariableSelection(Phase phase) {
+    return selections.get(phase);
+  }
+
+  public void setVariableSelection(Phase phase, VariableSelection selection) {
+    selections.put(phase, selection);
+  }
+
+  public ValueChoice getValueChoice(Phase phase) {
+    return choices.get(phase);
+  }
+
+  public void setValueChoice(Phase phase, ValueChoice choice) {
+    choices.put(phase, choice);
+  }
+
+  public Method getMethod(Phase phase) {
+    return methods.get(phase);
+  }
+
+  public int getMethodLimit(Phase phase) {
+    return methodLimits.get(phase);
+  }
+
+  public void setMethod(Phase phase, Method method, int limit) {
+    if (method != Method.COMPLETE && limit <= 0)
+      throw new IllegalArgumentException("The limit of the " + method + " method must be positive"); //$NON-NLS-1$ //$NON-NLS-2$
+    methods.put(phase, method);
+    methodLimits.put(phase, limit);
+  }
+
+  public Restarts getRestarts(Phase phase) {
+    return restarts.get(phase);
+  }
+
+  /**
+   * Sets the restarts of the phase: count runs whose backtracks are bounded
+   * by the sequence times the scale, before the run with the method.
+   */
+  public void setRestarts(Phase phase, Restarts restarts, int scale, int count) {
+    if (restarts != Restarts.NONE && (scale <= 0 || count <= 0))
+      throw new IllegalArgumentException("The scale and the count of the restarts must be positive"); //$NON-NLS-1$
+    this.restarts.put(phase, restarts);
+    restartScales.put(phase, scale);
+    restartCounts.put(phase, count);
+  }
+
+  /**
+   * Returns the backtrack limits of the runs preceding the run with the
+   * method, which is empty without restarts.
+   */
+  public List<Integer> getRestartLimits(Phase phase) {
+    List<Integer> limits = new ArrayList<Integer>();
+    int scale = restartScales.get(phase);
+    for (int run = 1; run <= restartCounts.get(phase) && restarts.get(phase) != Restarts.NONE; run++) {
+      long limit = restarts.get(phase) == Restarts.LUBY ? (long) luby(run) * scale : (long) scale << Math.min(run - 1, 31);
+      limits.add((int) Math.min(limit, Integer.MAX_VALUE));
+    }
+    return limits;
+  }
+
+  /**
+   * Returns the i-th term of the Luby sequence, starting from 1.
+   */
+  public static int luby(int i) {
+    int k = 1;
+    while ((1 << k) - 1 < i)
+      k++;
+    if (i == (1 << k) - 1)
+      return 1 << (k - 1);
+    return luby(i - (1 << (k - 1)) + 1);
+  }
+
+  /**
+   * Reads the search.&lt;phase&gt;.selection, .choice, .method and .restarts
+   * entries of the properties, such as search.cardinalities.method=lds(3)
+   * or search.attributes.restarts=luby(100,20). The values are the terms of
+   * search/6 and the other entries are left unchanged.
+   */
+  public void read(Properties properties) {
+    for (Phase phase : Phase.values()) {
+      String prefix = PROPERTY_PREFIX + phase.getTerm() + "."; //$NON-NLS-1$
+      String selection = get(properties, prefix + "selection"); //$NON-NLS-1$
+      if (selection != null)
+        setVariableSelection(phase, parseSelection(selection));
+      String choice = get(properties, prefix + "choice"); //$NON-NLS-1$
+      if (choice != null)
+        setValueChoice(phase, ValueChoice.valueOf(choice.toUpperCase()));
+      String method = get(properties, prefix + "method"); //$NON-NLS-1$
+      if (method != null) {
+        Matcher m = LIMITED.matcher(method);
+        if (m.matches())
+          setMethod(phase, Method.valueOf(m.group(1).toUpperCase()), Integer.parseInt(m.group(2)));
+        else
+          setMethod(phase, Method.valueOf(method.toUpperCase()), 0);
+      }
+      String restarts = get(properties, prefix + "restarts"); //$NON-NLS-1$
+      if (restarts != null) {
+        Matcher m = RESTARTS.matcher(restarts);
+        if (m.matches())
+          setRestarts(phase, Restarts.valueOf(m.group(1).toUpperCase()), Integer.parseInt(m.group(2)), Integer.parseInt(m.group(3)));
+        else
+          setRestarts(phase, Restarts.valueOf(restarts.toUpperCase()), 0, 0);
+      }
+    }
+  }
+
+  private static String get(Properties properties, String key) {
+    String value = properties.getProperty(key);
+    return value == null || value.trim().length() == 0 ? null : value.trim();
+  }
+
+  private static VariableSelection parseSelection(String selection) {
+    for (VariableSelection s : VariableSelection.values())
+      if (s.getTerm().equalsIgnoreCase(selection) || s.name().equalsIgnoreCase(selection))
+        return s;
+    throw new IllegalArgumentException("Unknown variable selection method " + selection); //$NON-NLS-1$
+  }
+}
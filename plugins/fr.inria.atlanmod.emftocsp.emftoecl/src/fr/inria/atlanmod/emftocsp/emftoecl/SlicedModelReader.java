@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp.emftoecl;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EOperation;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.resource.Resource;
+
+import fr.inria.atlanmod.emftocsp.IModelReader;
+import fr.inria.atlanmod.emftocsp.emf.impl.EAssociation;
+
+/**
+ * Reads only the classes of a slice computed by {@link ModelSlicer}, and the
+ * associations whose source is one of them, from another reader.
+ */
+public class SlicedModelReader implements IModelReader<Resource, EPackage, EClass, EAssociation, EAttribute, EOperation> {
+  IModelReader<Resource, EPackage, EClass, EAssociation, EAttribute, EOperation> modelReader;
+  List<EClass> classes = new ArrayList<EClass>();
+  List<EAssociation> associations = new ArrayList<EAssociation>();
+
+  public SlicedModelReader(IModelReader<Resource, EPackage, EClass, EAssociation, EAttribute, EOperation> modelReader, Set<EClass> slice) {
+    this.modelReader = modelReader;
+    for (EClass c : modelReader.getClasses())
+      if (slice.contains(c))
+        classes.add(c);
+    for (EAssociation as : modelReader.getAssociations())
+      if (slice.contains(as.getSourceEnd()))
+        associations.add(as);
+  }
+
+  @Override
+  public Resource getModelResource() {
+    return modelReader.getModelResource();
+  }
+
+  @Override
+  public Resource getResource() {
+    return modelReader.getResource();
+  }
+
+  @Override
+  public List<EPackage> getPackages() {
+    return modelReader.getPackages();
+  }
+
+  @Override
+  public List<EClass> getClasses() {
+    return new ArrayList<EClass>(classes);
+  }
+
+  @Override
+  public List<String> getClassesNames() {
+    List<String> names = new ArrayList<String>();
+    for (EClass c : classes)
+      names.add(c.getName());
+    return names;
+  }
+
+  @Override
+  public List<EAttribute> getClassAttributes(EClass c) {
+    return modelReader.getClassAttributes(c);
+  }
+
+  @Override
+  public List<EOperation> getClassOperations(EClass c) {
+    return modelReader.getClassOperations(c);
+  }
+
+  @Override
+  public List<EClass> getClassSubtypes(List<EClass> classList, EClass c) {
+    return modelReader.getClassSubtypes(classList, c);
+  }
+
+  @Override
+  public void getClassSubtypes(List<EClass> cList, EClass c, List<EClass> subTypes) {
+    modelReader.getClassSubtypes(cList, c, subTypes);
+  }
+
+  @Override
+  public EClass getBaseClass(EClass c) {
+    return modelReader.getBaseClass(c);
+  }
+
+  @Override
+  public List<EAssociation> getAssociations() {
+    return new ArrayList<EAssociation>(associations);
+  }
+
+  @Override
+  public List<String> getAssociationsNames() {
+    List<String> names = new ArrayList<String>();
+    for (EAssociation as : associations)
+      names.add(getAssociationName(as));
+    return names;
+  }
+
+  @Override
+  public String getAssociationName(EAssociation as) {
+    return modelReader.getAssociationName(as);
+  }
+
+  @Override
+  public String getAssociationEndName(EAttribute asEnd) {
+    return modelReader.getAssociationEndName(asEnd);
+  }
+
+  @Override
+  public List<String> getAssociationNamesOfNonAbsClasses() {
+    Set<String> names = new HashSet<String>(getAssociationsNames());
+    List<String> nonAbsNames = new ArrayList<String>();
+    for (String name : modelReader.getAssociationNamesOfNonAbsClasses())
+      if (names.contains(name))
+        nonAbsNames.add(name);
+    return nonAbsNames;
+  }
+}
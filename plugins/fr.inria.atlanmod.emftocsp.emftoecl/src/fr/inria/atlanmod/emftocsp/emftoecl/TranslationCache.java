@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp.emftoecl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import fr.inria.atlanmod.emftocsp.ProcessingException;
+
+/**
+ * Fragments of ECLiPSe code keyed by the kind of fragment and by a
+ * fingerprint of everything the fragment is generated from. A fragment is
+ * thus reused as long as its model element (and the elements it refers to)
+ * is unchanged, whatever happens to the rest of the model.
+ * <p>
+ * The cache is stored in a single file. Committing a translation writes the
+ * fragments used by that translation only, so the fragments of deleted or
+ * edited elements do not accumulate.
+ */
+public class TranslationCache {
+  private static final String FILE_EXTENSION = ".cache"; //$NON-NLS-1$
+
+  private final File file;
+  private Map<String, String> fragments = null;
+  private final Set<String> usedKeys = new HashSet<String>();
+  private int hits = 0;
+  private int misses = 0;
+
+  public TranslationCache(File file) {
+    this.file = file;
+  }
+
+  /**
+   * Returns the cache of the given model, located in the temporary directory
+   * of the system.
+   */
+  public static TranslationCache getDefaultCache(String modelName) {
+    File dir = new File(System.getProperty("java.io.tmpdir"), "emftocsp-translation"); //$NON-NLS-1$ //$NON-NLS-2$
+    return new TranslationCache(new File(dir, (modelName == null ? "model" : modelName) + FILE_EXTENSION)); //$NON-NLS-1$
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * Returns the fragment generated from the element with this fingerprint,
+   * or null if it has to be generated again.
+   */
+  public synchronized String get(String kind, String fingerprint) {
+    String key = kind + ":" + fingerprint; //$NON-NLS-1$
+    String fragment = getFragments().get(key);
+    if (fragment == null)
+      misses++;
+    else {
+      hits++;
+      usedKeys.add(key);
+    }
+    return fragment;
+  }
+
+  public synchronized void put(String kind, String fingerprint, String fragment) {
+    String key = kind + ":" + fingerprint; //$NON-NLS-1$
+    getFragments().put(key, fragment);
+    usedKeys.add(key);
+  }
+
+  public synchronized int getHits() {
+    return hits;
+  }
+
+  public synchronized int getMisses() {
+    return misses;
+  }
+
+  /**
+   * Writes the fragments used since the previous commit to the cache file and
+   * forgets the other ones.
+   */
+  public synchronized void commit() throws IOException {
+    Map<String, String> used = new HashMap<String, String>();
+    for (String key : usedKeys)
+      used.put(key, getFragments().get(key));
+    fragments = used;
+    usedKeys.clear();
+    hits = 0;
+    misses = 0;
+
+    File dir = file.getAbsoluteFile().getParentFile();
+    if (dir != null && !dir.isDirectory() && !dir.mkdirs())
+      throw new IOException("Unable to create the directory " + dir.getAbsolutePath()); //$NON-NLS-1$
+    File tmpFile = new File(file.getPath() + ".tmp"); //$NON-NLS-1$
+    ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+    try {
+      out.writeObject(used);
+    }
+    finally {
+      out.close();
+    }
+    if (!tmpFile.renameTo(file)) {
+      file.delete();
+      if (!tmpFile.renameTo(file))
+        throw new IOException("Unable to store " + file.getAbsolutePath()); //$NON-NLS-1$
+    }
+  }
+
+  /**
+   * Returns the SHA-1 digest of the description of a model element.
+   */
+  public static String fingerprint(CharSequence description) {
+    try {
+      MessageDigest md = MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+      byte[] digest = md.digest(description.toString().getBytes("UTF-8")); //$NON-NLS-1$
+      StringBuilder hex = new StringBuilder();
+      for (byte b : digest)
+        hex.append(String.format("%02x", b)); //$NON-NLS-1$
+      return hex.toString();
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new ProcessingException(e);
+    }
+    catch (UnsupportedEncodingException e) {
+      throw new ProcessingException(e);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private Map<String, String> getFragments() {
+    if (fragments != null)
+      return fragments;
+    fragments = new HashMap<String, String>();
+    if (!file.isFile())
+      return fragments;
+    try {
+      ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+      try {
+        fragments = (HashMap<String, String>) in.readObject();
+      }
+      finally {
+        in.close();
+      }
+    }
+    catch (Exception e) {
+      // an unreadable cache is just regenerated
+      fragments = new HashMap<String, String>();
+    }
+    return fragments;
+  }
+}
@@ -10,9 +10,17 @@
  *******************************************************************************/
 package fr.inria.atlanmod.emftocsp.ui.main;
 
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.ui.IWorkbenchPage;
+import org.eclipse.ui.IWorkbenchWindow;
+import org.eclipse.ui.PartInitException;
+import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
 import org.osgi.framework.BundleContext;
 
+import fr.inria.atlanmod.emftocsp.ui.jobs.ModelVerificationResults;
+import fr.inria.atlanmod.emftocsp.ui.main.views.VerificationResultsView;
+
 /**
  * The activator class controls the plug-in life cycle
  */
@@ -23,6 +31,26 @@ public class Activator extends AbstractUIPlugin {
 
 	// The shared instance
 	private static Activator plugin;
+
+	// Brings the results view to the front when a verification ends
+	private final ModelVerificationResults.Listener resultsListener = new ModelVerificationResults.Listener() {
+		public void resultsChanged() {
+			if (!PlatformUI.isWorkbenchRunning())
+				return;
+			Display.getDefault().asyncExec(new Runnable() {
+				public void run() {
+					IWorkbenchWindow window = PlatformUI.getWorkbench().getActiveWorkbenchWindow();
+					if (window == null || window.getActivePage() == null)
+						return;
+					try {
+						window.getActivePage().showView(VerificationResultsView.VIEW_ID, null, IWorkbenchPage.VIEW_VISIBLE);
+					} catch (PartInitException e) {
+						getLog().log(e.getStatus());
+					}
+				}
+			});
+		}
+	};
 	
 	/**
 	 * The constructor
@@ -37,6 +65,8 @@ public class Activator extends AbstractUIPlugin {
 	public void start(BundleContext context) throws Exception {
 		super.start(context);
 		plugin = this;
+		getPreferenceStore().setDefault("MaxConcurrentVerifications", 1); //$NON-NLS-1$
+		ModelVerificationResults.getDefault().addListener(resultsListener);
 	}
 
 	/*
@@ -44,6 +74,7 @@ public class Activator extends AbstractUIPlugin {
 	 * @see org.eclipse.ui.plugin.AbstractUIPlugin#stop(org.osgi.framework.BundleContext)
 	 */
 	public void stop(BundleContext context) throws Exception {
+		ModelVerificationResults.getDefault().removeListener(resultsListener);
 		plugin = null;
 		super.stop(context);
 	}
@@ -40,6 +40,11 @@ public class WizardHandler extends AbstractWizardHandler {
 		return Activator.getDefault().getPreferenceStore().getString("EclipsePath");       //$NON-NLS-1$
 	}
 
+	@Override
+	protected int getMaxConcurrentVerificationsFromPreferenceStore() {
+		return Math.max(1, Activator.getDefault().getPreferenceStore().getInt("MaxConcurrentVerifications")); //$NON-NLS-1$
+	}
+
 	protected int canHandle(String extension) {
 		return extension.equals("uml")? 1 : extension.equals("ecore")? 0 : -1 ;	
 	}
@@ -13,6 +13,7 @@ package fr.inria.atlanmod.emftocsp.ui.main.preferences;
 
 import org.eclipse.jface.preference.DirectoryFieldEditor;
 import org.eclipse.jface.preference.FieldEditorPreferencePage;
+import org.eclipse.jface.preference.IntegerFieldEditor;
 import org.eclipse.ui.IWorkbench;
 import org.eclipse.ui.IWorkbenchPreferencePage;
 
@@ -33,6 +34,9 @@ public class PreferencePage extends FieldEditorPreferencePage implements IWorkbe
     public void createFieldEditors() {
       addField(new DirectoryFieldEditor("EclipsePath", "Eclipse Constraint Solver Path: ", getFieldEditorParent())); //$NON-NLS-1$ //$NON-NLS-2$
       addField(new DirectoryFieldEditor("GraphvizPath", "Graphviz Dot Path: ", getFieldEditorParent())); //$NON-NLS-1$ //$NON-NLS-2$
+      IntegerFieldEditor maxVerifications = new IntegerFieldEditor("MaxConcurrentVerifications", "Maximum concurrent verifications: ", getFieldEditorParent()); //$NON-NLS-1$ //$NON-NLS-2$
+      maxVerifications.setValidRange(1, 64);
+      addField(maxVerifications);
     }
 
     public void init(IWorkbench workbench) {
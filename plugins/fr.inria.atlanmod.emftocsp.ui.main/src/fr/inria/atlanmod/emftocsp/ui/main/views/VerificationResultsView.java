@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp.ui.main.views;
+
+import java.io.File;
+
+import org.eclipse.osgi.util.NLS;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.MouseAdapter;
+import org.eclipse.swt.events.MouseEvent;
+import org.eclipse.swt.program.Program;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.MessageBox;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableColumn;
+import org.eclipse.swt.widgets.TableItem;
+import org.eclipse.ui.part.ViewPart;
+
+import fr.inria.atlanmod.emftocsp.SolverVerdict;
+import fr.inria.atlanmod.emftocsp.ui.jobs.ModelVerificationResult;
+import fr.inria.atlanmod.emftocsp.ui.jobs.ModelVerificationResults;
+import fr.inria.atlanmod.emftocsp.ui.messages.Messages;
+
+/**
+ * Lists the verifications that ended since the workbench started, most
+ * recent last. Double-clicking a satisfiable one opens the image of the
+ * instance found, double-clicking an unsatisfiable one recalls that the
+ * verdict only holds within the bounds of the search.
+ */
+public class VerificationResultsView extends ViewPart {
+
+	public static final String VIEW_ID = "fr.inria.atlanmod.emftocsp.ui.views.VerificationResultsView"; //$NON-NLS-1$
+
+	private Table table;
+
+	private final ModelVerificationResults.Listener listener = new ModelVerificationResults.Listener() {
+		public void resultsChanged() {
+			if (table == null || table.isDisposed())
+				return;
+			table.getDisplay().asyncExec(new Runnable() {
+				public void run() {
+					refresh();
+				}
+			});
+		}
+	};
+
+	@Override
+	public void createPartControl(Composite parent) {
+		table = new Table(parent, SWT.SINGLE | SWT.FULL_SELECTION);
+		table.setHeaderVisible(true);
+		table.setLinesVisible(true);
+		createColumn("Model", 200); //$NON-NLS-1$
+		createColumn("Verdict", 220); //$NON-NLS-1$
+		createColumn("Time (ms)", 80); //$NON-NLS-1$
+		createColumn("Result", 300); //$NON-NLS-1$
+		table.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseDoubleClick(MouseEvent e) {
+				TableItem[] selection = table.getSelection();
+				if (selection.length == 0)
+					return;
+				ModelVerificationResult result = (ModelVerificationResult) selection[0].getData();
+				if (result.getError() != null)
+					return;
+				File image = result.getImage();
+				if (result.getVerdict() == SolverVerdict.SAT && image != null && image.isFile())
+					Program.launch(image.getAbsolutePath());
+				else if (result.getVerdict() == SolverVerdict.SAT)
+					showMessage(SWT.ICON_INFORMATION, Messages.VerificationResultsView_0, Messages.VerificationResultsView_1);
+				else if (result.getVerdict() == SolverVerdict.UNSAT)
+					showMessage(SWT.ICON_WARNING, Messages.VerificationResultsView_2, Messages.VerificationResultsView_3);
+			}
+		});
+		ModelVerificationResults.getDefault().addListener(listener);
+		refresh();
+	}
+
+	private void showMessage(int icon, String title, String message) {
+		MessageBox messageBox = new MessageBox(table.getShell(), icon | SWT.OK);
+		messageBox.setText(title);
+		messageBox.setMessage(message);
+		messageBox.open();
+	}
+
+	private void createColumn(String name, int width) {
+		TableColumn column = new TableColumn(table, SWT.LEFT);
+		column.setText(name);
+		column.setWidth(width);
+	}
+
+	private void refresh() {
+		if (table == null || table.isDisposed())
+			return;
+		table.removeAll();
+		for (ModelVerificationResult result : ModelVerificationResults.getDefault().getResults()) {
+			TableItem item = new TableItem(table, SWT.NONE);
+			item.setData(result);
+			item.setText(0, result.getModelFileName());
+			item.setText(1, getVerdictText(result));
+			item.setText(2, String.valueOf(result.getMillis()));
+			File location = result.getImage() != null ? result.getImage() : result.getResultDirectory();
+			item.setText(3, location != null ? location.getPath() : ""); //$NON-NLS-1$
+		}
+	}
+
+	private static String getVerdictText(ModelVerificationResult result) {
+		if (result.getError() != null)
+			return NLS.bind(Messages.VerificationResultsView_5, result.getError());
+		if (result.getVerdict() == SolverVerdict.SAT)
+			return Messages.VerificationResultsView_0;
+		if (result.getVerdict() == SolverVerdict.UNSAT)
+			return Messages.VerificationResultsView_2;
+		return Messages.VerificationResultsView_4;
+	}
+
+	@Override
+	public void setFocus() {
+		table.setFocus();
+	}
+
+	@Override
+	public void dispose() {
+		ModelVerificationResults.getDefault().removeListener(listener);
+		super.dispose();
+	}
+}
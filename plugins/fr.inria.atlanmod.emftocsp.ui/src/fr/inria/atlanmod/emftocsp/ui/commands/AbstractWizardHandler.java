@@ -29,6 +29,7 @@ import fr.inria.atlanmod.emftocsp.eclipsecs.EclipseSolver;
 import fr.inria.atlanmod.emftocsp.emf.impl.EmfModelToCspSolverFactory;
 import fr.inria.atlanmod.emftocsp.emftoecl.EmfToEclCodeGenerator;
 import fr.inria.atlanmod.emftocsp.impl.FileLogger;
+import fr.inria.atlanmod.emftocsp.ui.jobs.ModelVerificationJob;
 import fr.inria.atlanmod.emftocsp.ui.wizards.impl.ModelSelectedWizard;
 import fr.inria.atlanmod.emftocsp.ui.wizards.impl.ValidationWizard;
 
@@ -57,6 +58,15 @@ public abstract class AbstractWizardHandler extends AbstractHandler implements I
 	 */
 	protected abstract String getEclipsePathFromPreferenceStore();
 
+	/**
+	 * Returns how many verifications may run at the same time. Subclasses
+	 * reading it from their preference store override this.
+	 * @return {@link Integer}
+	 */
+	protected int getMaxConcurrentVerificationsFromPreferenceStore() {
+		return 1;
+	}
+
 	/**
 	 * switch case to see if the extension is handled 
 	 * and return the  
@@ -104,6 +114,7 @@ public abstract class AbstractWizardHandler extends AbstractHandler implements I
 
 	
 	public void launchWizard(IFile modelFile, String eclipsePath, String graphvizPath, Resource resource) {
+		ModelVerificationJob.setMaxConcurrentJobs(getMaxConcurrentVerificationsFromPreferenceStore());
 		    
 		@SuppressWarnings("rawtypes")
 		ICspSolver solver = new EclipseSolver(eclipsePath, graphvizPath);
@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp.ui.jobs;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubProgressMonitor;
+import org.eclipse.core.runtime.jobs.IJobChangeEvent;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.JobChangeAdapter;
+import org.eclipse.osgi.util.NLS;
+
+import fr.inria.atlanmod.emftocsp.IModelToCspSolver;
+import fr.inria.atlanmod.emftocsp.SolverVerdict;
+import fr.inria.atlanmod.emftocsp.ui.messages.Messages;
+
+/**
+ * Verifies a model configured by the validation wizard outside of the UI
+ * thread. Cancelling the job stops the solver. At most
+ * {@link #getMaxConcurrentJobs()} verifications are scheduled at the same
+ * time: scheduling another one holds it back, without taking a worker
+ * thread, until one of them is done.
+ * <p>
+ * The result of every verification, failed ones included, is added to
+ * {@link ModelVerificationResults}.
+ */
+public class ModelVerificationJob extends Job {
+  public static final String PLUGIN_ID = "fr.inria.atlanmod.emftocsp.ui"; //$NON-NLS-1$
+  public static final Object FAMILY = ModelVerificationJob.class;
+
+  private static final Object slots = new Object();
+  private static final LinkedList<ModelVerificationJob> heldJobs = new LinkedList<ModelVerificationJob>();
+  private static int maxConcurrentJobs = 1;
+  private static int runningJobs = 0;
+
+  private final IModelToCspSolver<?, ?> modelSolver;
+  private final List<File> importLibs;
+  private final String logFileName;
+  private boolean holdsSlot = false;
+
+  public ModelVerificationJob(IModelToCspSolver<?, ?> modelSolver, List<File> importLibs, String logFileName) {
+    super(NLS.bind(Messages.ModelVerificationJob_0, modelSolver.getModelFileName()));
+    this.modelSolver = modelSolver;
+    this.importLibs = importLibs;
+    this.logFileName = logFileName;
+    setUser(true);
+    addJobChangeListener(new JobChangeAdapter() {
+      @Override
+      public void done(IJobChangeEvent event) {
+        releaseSlot();
+      }
+    });
+  }
+
+  public static int getMaxConcurrentJobs() {
+    synchronized (slots) {
+      return maxConcurrentJobs;
+    }
+  }
+
+  public static void setMaxConcurrentJobs(int max) {
+    synchronized (slots) {
+      maxConcurrentJobs = Math.max(1, max);
+    }
+    scheduleHeldJobs();
+  }
+
+  /**
+   * Takes a slot for the job, or holds it back until another verification
+   * is done when all the slots are taken.
+   */
+  @Override
+  public boolean shouldSchedule() {
+    synchronized (slots) {
+      if (holdsSlot)
+        return true;
+      if (runningJobs >= maxConcurrentJobs) {
+        heldJobs.add(this);
+        return false;
+      }
+      runningJobs++;
+      holdsSlot = true;
+      return true;
+    }
+  }
+
+  @Override
+  protected void canceling() {
+    synchronized (slots) {
+      heldJobs.remove(this);
+    }
+  }
+
+  @Override
+  protected IStatus run(IProgressMonitor monitor) {
+    monitor.beginTask(getName(), 10);
+    long start = System.currentTimeMillis();
+    ModelVerificationResult result = null;
+    try {
+      modelSolver.solveModel(importLibs, new SubProgressMonitor(monitor, 9));
+      SolverVerdict verdict = modelSolver.getVerdict();
+      if (monitor.isCanceled() && verdict == SolverVerdict.UNKNOWN)
+        return Status.CANCEL_STATUS;
+      Object evaluationResult = verdict == SolverVerdict.SAT ? modelSolver.getSolverEvaluationResult() : null;
+      result = new ModelVerificationResult(modelSolver.getModelFileName(), verdict, System.currentTimeMillis() - start, modelSolver.getResultDirectory(), evaluationResult instanceof File ? (File) evaluationResult : null, null);
+      return Status.OK_STATUS;
+    }
+    catch (RuntimeException e) {
+      result = new ModelVerificationResult(modelSolver.getModelFileName(), SolverVerdict.UNKNOWN, System.currentTimeMillis() - start, modelSolver.getResultDirectory(), null, e.getMessage());
+      return new Status(IStatus.ERROR, PLUGIN_ID, NLS.bind(Messages.ModelVerificationJob_2, modelSolver.getModelFileName()) + "\n" + Messages.ValidationWizard_5, e); //$NON-NLS-1$
+    }
+    finally {
+      closeLog();
+      monitor.done();
+      if (result != null)
+        ModelVerificationResults.getDefault().add(result);
+    }
+  }
+
+  private void releaseSlot() {
+    synchronized (slots) {
+      if (!holdsSlot)
+        return;
+      holdsSlot = false;
+      runningJobs--;
+    }
+    scheduleHeldJobs();
+  }
+
+  /**
+   * Schedules the held back jobs, oldest first, while there are free slots.
+   */
+  private static void scheduleHeldJobs() {
+    List<ModelVerificationJob> jobs = new ArrayList<ModelVerificationJob>();
+    synchronized (slots) {
+      while (runningJobs < maxConcurrentJobs && !heldJobs.isEmpty()) {
+        ModelVerificationJob job = heldJobs.removeFirst();
+        runningJobs++;
+        job.holdsSlot = true;
+        jobs.add(job);
+      }
+    }
+    for (ModelVerificationJob job : jobs)
+      job.schedule();
+  }
+
+  private void closeLog() {
+    if (modelSolver.getLogger() != null) {
+      modelSolver.getLogger().writeInfoMessage(this.getClass().toString(), "Closing EMFtoCSP"); //$NON-NLS-1$
+      modelSolver.getLogger().close(logFileName);
+    }
+    if (modelSolver.getResultLocation() != null)
+      try {
+        modelSolver.getResultLocation().refreshLocal(IResource.DEPTH_INFINITE, null);
+      }
+      catch (CoreException e) {
+        e.printStackTrace();
+      }
+  }
+
+  @Override
+  public boolean belongsTo(Object family) {
+    return family == FAMILY;
+  }
+}
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp.ui.jobs;
+
+import java.io.File;
+
+import fr.inria.atlanmod.emftocsp.SolverVerdict;
+
+/**
+ * The outcome of a verification run in the background.
+ */
+public class ModelVerificationResult {
+  private final String modelFileName;
+  private final SolverVerdict verdict;
+  private final long millis;
+  private final File resultDirectory;
+  private final File image;
+  private final String error;
+
+  public ModelVerificationResult(String modelFileName, SolverVerdict verdict, long millis, File resultDirectory, File image, String error) {
+    this.modelFileName = modelFileName;
+    this.verdict = verdict;
+    this.millis = millis;
+    this.resultDirectory = resultDirectory;
+    this.image = image;
+    this.error = error;
+  }
+
+  public String getModelFileName() {
+    return modelFileName;
+  }
+
+  public SolverVerdict getVerdict() {
+    return verdict;
+  }
+
+  public long getMillis() {
+    return millis;
+  }
+
+  public File getResultDirectory() {
+    return resultDirectory;
+  }
+
+  /**
+   * Returns the image of the instance found, or null if there is none.
+   */
+  public File getImage() {
+    return image;
+  }
+
+  /**
+   * Returns the message of the error which stopped the verification, or
+   * null if it completed.
+   */
+  public String getError() {
+    return error;
+  }
+}
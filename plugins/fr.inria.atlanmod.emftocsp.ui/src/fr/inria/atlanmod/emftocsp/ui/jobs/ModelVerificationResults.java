@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp.ui.jobs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The results of the verifications run during the session, in the order
+ * they finished. Listeners are notified from the thread of the finishing
+ * job, not from the UI thread.
+ */
+public class ModelVerificationResults {
+  private static final ModelVerificationResults INSTANCE = new ModelVerificationResults();
+
+  private final List<ModelVerificationResult> results = new ArrayList<ModelVerificationResult>();
+  private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+  public interface Listener {
+    void resultsChanged();
+  }
+
+  private ModelVerificationResults() {
+  }
+
+  public static ModelVerificationResults getDefault() {
+    return INSTANCE;
+  }
+
+  public void add(ModelVerificationResult result) {
+    synchronized (results) {
+      results.add(result);
+    }
+    fireResultsChanged();
+  }
+
+  public void clear() {
+    synchronized (results) {
+      results.clear();
+    }
+    fireResultsChanged();
+  }
+
+  public List<ModelVerificationResult> getResults() {
+    synchronized (results) {
+      return new ArrayList<ModelVerificationResult>(results);
+    }
+  }
+
+  public void addListener(Listener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(Listener listener) {
+    listeners.remove(listener);
+  }
+
+  private void fireResultsChanged() {
+    for (Listener listener : listeners)
+      listener.resultsChanged();
+  }
+}
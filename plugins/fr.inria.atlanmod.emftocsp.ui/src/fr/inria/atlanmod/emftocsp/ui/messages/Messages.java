@@ -19,17 +19,22 @@ import org.eclipse.osgi.util.NLS;
 public class Messages extends NLS {
   private static final String BUNDLE_NAME = "fr.inria.atlanmod.emftocsp.ui.messages.messages"; //$NON-NLS-1$
   public static String ModelElementDomainPage_0;
+  public static String ModelElementDomainPage_1;
+  public static String ModelVerificationJob_0;
+  public static String ModelVerificationJob_2;
   public static String ModelWizardNavigation_0;
   public static String ModelWizardNavigation_1;
   public static String ModelWizardNavigation_2;
   public static String ModelWizardNavigation_3;
   public static String PropertiesSelectionPage_0;
-  public static String ValidationWizard_0;
-  public static String ValidationWizard_1;
-  public static String ValidationWizard_2;
-  public static String ValidationWizard_3;
   public static String ValidationWizard_4;
   public static String ValidationWizard_5;
+  public static String VerificationResultsView_0;
+  public static String VerificationResultsView_1;
+  public static String VerificationResultsView_2;
+  public static String VerificationResultsView_3;
+  public static String VerificationResultsView_4;
+  public static String VerificationResultsView_5;
   static {
     // initialize resource bundle
     NLS.initializeMessages(BUNDLE_NAME, Messages.class);
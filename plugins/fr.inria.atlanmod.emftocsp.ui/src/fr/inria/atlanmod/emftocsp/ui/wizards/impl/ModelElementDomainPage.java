@@ -37,11 +37,15 @@ import org.eclipse.jface.viewers.TreeViewerFocusCellManager;
 import org.eclipse.jface.viewers.Viewer;
 import org.eclipse.jface.wizard.WizardPage;
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
 import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.layout.FormAttachment;
 import org.eclipse.swt.layout.FormData;
 import org.eclipse.swt.layout.FormLayout;
+import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Spinner;
 import org.eclipse.uml2.uml.Association;
 import org.eclipse.uml2.uml.Class;
 import org.eclipse.uml2.uml.Operation;
@@ -268,11 +272,38 @@ public class ModelElementDomainPage extends WizardPage {
     container.setLayout(new FormLayout());
     setControl(container);
     
+    // the automatic bounds mode grows the class cardinalities up to the scope
+    final Button autoBoundsButton = new Button(container, SWT.CHECK);
+    autoBoundsButton.setText(Messages.ModelElementDomainPage_1);
+    autoBoundsButton.setSelection(modelSolver.getMaxScope() > 0);
+    FormData buttonData = new FormData();
+    buttonData.left = new FormAttachment(0, 0);
+    buttonData.bottom = new FormAttachment(100, -5);
+    autoBoundsButton.setLayoutData(buttonData);
+
+    final Spinner maxScopeSpinner = new Spinner(container, SWT.BORDER);
+    maxScopeSpinner.setValues(modelSolver.getMaxScope() > 0 ? modelSolver.getMaxScope() : 10, 1, 1000, 0, 1, 10);
+    maxScopeSpinner.setEnabled(autoBoundsButton.getSelection());
+    FormData spinnerData = new FormData();
+    spinnerData.left = new FormAttachment(autoBoundsButton, 5);
+    spinnerData.top = new FormAttachment(autoBoundsButton, 0, SWT.CENTER);
+    maxScopeSpinner.setLayoutData(spinnerData);
+
+    SelectionAdapter autoBoundsListener = new SelectionAdapter() {
+      @Override
+      public void widgetSelected(SelectionEvent e) {
+        maxScopeSpinner.setEnabled(autoBoundsButton.getSelection());
+        modelSolver.setMaxScope(autoBoundsButton.getSelection() ? maxScopeSpinner.getSelection() : 0);
+      }
+    };
+    autoBoundsButton.addSelectionListener(autoBoundsListener);
+    maxScopeSpinner.addSelectionListener(autoBoundsListener);
+
     FormData formData = new FormData();
     formData.left = new FormAttachment(0, 0);   
     formData.top = new FormAttachment(0, 0);
     formData.right = new FormAttachment(100, -5);
-    formData.bottom = new FormAttachment(100, 0);   
+    formData.bottom = new FormAttachment(autoBoundsButton, -5);   
     
     treeViewer = new TreeViewer(container, SWT.BORDER | SWT.FULL_SELECTION);
     treeViewer.getControl().setLayoutData(formData);
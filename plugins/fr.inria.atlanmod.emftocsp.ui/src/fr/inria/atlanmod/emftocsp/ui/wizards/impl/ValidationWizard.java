@@ -21,8 +21,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import javax.swing.text.html.HTMLDocument.HTMLReader.IsindexAction;
-
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.FileLocator;
@@ -40,6 +38,7 @@ import fr.inria.atlanmod.emftocsp.impl.LackOfConstraintsSubsumptionsModelPropert
 import fr.inria.atlanmod.emftocsp.impl.LivelinessModelProperty;
 import fr.inria.atlanmod.emftocsp.impl.StrongSatisfiabilityModelProperty;
 import fr.inria.atlanmod.emftocsp.impl.WeakSatisfiabilityModelProperty;
+import fr.inria.atlanmod.emftocsp.ui.jobs.ModelVerificationJob;
 import fr.inria.atlanmod.emftocsp.ui.messages.Messages;
 import fr.inria.atlanmod.emftocsp.ui.wizards.IWizardNavigation;
 
@@ -84,6 +83,10 @@ public abstract class ValidationWizard extends Wizard  {
 	  return true;
 	}
 	
+	/**
+	 * Schedules the verification as a background job and closes the wizard.
+	 * The result is reported by the job once the verification finishes.
+	 */
 	@Override
 	public boolean performFinish() {  
 		try {
@@ -107,35 +110,8 @@ public abstract class ValidationWizard extends Wizard  {
 			ArrayList<File> libList = new ArrayList<File>();
 			for(int i = 0; i < libs.length; i++)
 				libList.add(libs[i]);
-			String msgTitle = ""; //$NON-NLS-1$
-			String message = ""; //$NON-NLS-1$
-			if (modelSolver.solveModel(libList)) {
-				MessageBox messageBox = new MessageBox(this.getShell(), SWT.ICON_INFORMATION | SWT.OK);
-				msgTitle = Messages.ValidationWizard_0;
-				message = Messages.ValidationWizard_1;
-				messageBox.setText(msgTitle);
-				messageBox.setMessage(message);
-				messageBox.open();
-				modelSolver.getLogger().writeInfoMessage(this.getClass().toString(), "Closing EMFtoCSP");
-				modelSolver.getLogger().close(logFileName);
-				try {
-					modelSolver.getResultLocation().refreshLocal(IResource.DEPTH_INFINITE, null);
-				} 
-				catch (CoreException ex) {
-					ex.printStackTrace();
-				}
-				return true;
-			}
-			msgTitle = Messages.ValidationWizard_2;
-			message = Messages.ValidationWizard_3;	      
-			MessageBox messageBox = new MessageBox(this.getShell(), SWT.ICON_WARNING | SWT.OK);
-			messageBox.setText(msgTitle);
-			messageBox.setMessage(message);
-			messageBox.open();    
-			//      modelSolver.getLogger().writeInfoMessage(this.getClass().toString(), "Closing EMFtoCSP");
-			//      modelSolver.getLogger().close(logFileName);
-			//      modelSolver.getResultLocation().refreshLocal(IResource.DEPTH_INFINITE, null);
-			return false;
+			new ModelVerificationJob(modelSolver, libList, logFileName).schedule();
+			return true;
 		}
 		catch(Exception e) {
 			e.printStackTrace();
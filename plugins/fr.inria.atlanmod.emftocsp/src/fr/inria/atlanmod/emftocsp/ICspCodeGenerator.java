@@ -10,6 +10,7 @@
  *******************************************************************************/
 package fr.inria.atlanmod.emftocsp;
 
+import java.io.File;
 import java.util.List;
 import java.util.Map;
 
@@ -31,9 +32,69 @@ public interface ICspCodeGenerator<R, P, C, AS, AT, OP, CT> {
   
   void setOclDocument(IFile oclDocument);
   
+  /**
+   * Sets the OCL document by its location in the file system, so that no
+   * workspace is needed.
+   */
+  void setOclFile(File oclFile);
+  
   void setModel(R modelResource);
   
   String getCspCode() throws ProcessingException;
   
+  /**
+   * Writes the CSP code section by section to the given output, without
+   * building the whole program in memory.
+   */
+  void writeCspCode(Appendable out) throws ProcessingException;
+  
+  /**
+   * Writes CSP code which does not embed the model properties. The property
+   * to check is instead a parameter of the entry point of the program, whose
+   * values are given by {@link #getPropertyParameter(IModelProperty, String)}.
+   */
+  void writeParameterizedCspCode(Appendable out) throws ProcessingException;
+  
+  /**
+   * Returns the parameter selecting the property in the parameterized code.
+   * The target is null for the properties without targets.
+   */
+  String getPropertyParameter(IModelProperty property, String target);
+  
+  /**
+   * Solves the cardinalities of the classes and associations before any code
+   * is generated, every class being bounded by the scope unless it is
+   * negative. Returns UNSAT if they have no solution, SAT if they have one
+   * which is known to extend to an instance of the model, and UNKNOWN when
+   * the CSP has to be solved.
+   */
+  SolverVerdict checkCardinalities(int scope) throws ProcessingException;
+  
+  /**
+   * Returns the cardinality of every class and association, by name, found
+   * by the last call to {@link #checkCardinalities(int)} which returned SAT.
+   */
+  Map<String, Integer> getCardinalities();
+  
+  /**
+   * Splits the model into components which share no association,
+   * generalization, containment or OCL navigation, and returns their number.
+   * A model which is not decomposed has a single component.
+   */
+  int decompose() throws ProcessingException;
+  
+  /**
+   * Writes the CSP code of one of the components found by the last call to
+   * {@link #decompose()}. The properties are checked on the elements of the
+   * component when withProperties is set, and are not checked otherwise.
+   */
+  void writeComponentCspCode(int component, boolean withProperties, Appendable out) throws ProcessingException;
+  
   String getCspCodeFileExtension();  
+  
+  /**
+   * Sets the report the OCL parsing, the code generation and the OCL
+   * translation are measured in, or null (the default) to measure nothing.
+   */
+  void setMetrics(PipelineMetrics metrics);
 }
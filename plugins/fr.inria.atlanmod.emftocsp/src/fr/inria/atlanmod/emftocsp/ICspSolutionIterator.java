@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp;
+
+import java.util.Iterator;
+
+/**
+ * The solutions of a program, found one after the other by the solver as
+ * they are pulled. The solver looks for the next solution while the current
+ * one is consumed, and waits for it to be taken before going further.
+ * <p>
+ * Iterators must be closed once no more solutions are needed, which stops
+ * the search and releases the solver. Solutions cannot be removed.
+ */
+public interface ICspSolutionIterator<T> extends Iterator<T> {
+
+  /**
+   * Returns SAT once a solution has been found, UNSAT if the program has no
+   * solution, or UNKNOWN if the search was stopped before the first one.
+   */
+  public SolverVerdict getVerdict();
+
+  /**
+   * Returns true if every solution has been found, false if the search was
+   * stopped by a timeout, a cancellation or {@link #close()}.
+   */
+  public boolean isExhausted();
+
+  /**
+   * Stops the search and releases the solver resources held by the
+   * iterator. May be called from any thread.
+   */
+  public void close();
+}
@@ -22,8 +22,67 @@ public interface ICspSolver <ST> {
   public boolean solveCSP(File srcFile, List<File> libs) throws ProcessingException;  
 
   public boolean solveCSP(File srcFile) throws ProcessingException;  
+
+  /**
+   * Compiles the program and its libraries once and keeps them loaded, so
+   * that several properties can be checked against the same program.
+   */
+  public ICspSolverSession<ST> openSession(File srcFile, List<File> libs) throws ProcessingException;
+
+  /**
+   * Enumerates the solutions of the program, each one found on demand by
+   * resuming the search where the previous one stopped. The timeout of the
+   * solver bounds the search of each solution.
+   */
+  public ICspSolutionIterator<ST> iterateSolutions(File srcFile, List<File> libs) throws ProcessingException;
   
   public Object getResult();
 
   public ST getSolution();
+
+  /**
+   * Returns the statistics of the search of the last run, or null if the
+   * run was stopped before the solver answered or if the program does not
+   * keep them.
+   */
+  public SolverStatistics getStatistics();
+
+  /**
+   * Sets the listener the progress of the next runs is reported to, or null
+   * (the default) to report nothing. Only the programs generated with
+   * telemetry report their progress.
+   */
+  public void setProgressListener(ISolverProgressListener listener);
+
+  /**
+   * Sets the report the next runs measure their compilation, solving and
+   * image generation in, or null (the default) to measure nothing.
+   */
+  public void setMetrics(PipelineMetrics metrics);
+
+  /**
+   * Sets the logger the failures the solver recovers from are reported to,
+   * or null (the default) to report nothing.
+   */
+  public void setLogger(ILogger logger);
+
+  /**
+   * Bounds the wall time of every run of the solver. A run reaching the
+   * timeout is stopped and answers false with an UNKNOWN verdict. A timeout
+   * of 0 (the default) means no bound.
+   */
+  public void setTimeout(long timeoutMillis);
+
+  public long getTimeout();
+
+  /**
+   * Stops the runs in progress, which answer false with an UNKNOWN verdict.
+   * May be called from any thread.
+   */
+  public void cancel();
+
+  /**
+   * Returns the verdict of the last run.
+   */
+  public SolverVerdict getVerdict();
 }
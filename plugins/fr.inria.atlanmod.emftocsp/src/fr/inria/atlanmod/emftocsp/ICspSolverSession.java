@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp;
+
+/**
+ * A program compiled once by a solver and queried several times, each query
+ * checking one property given as a parameter of the program entry point.
+ */
+public interface ICspSolverSession<ST> {
+
+  /**
+   * Searches a solution for the property described by the parameter, as
+   * returned by {@link ICspCodeGenerator#getPropertyParameter(IModelProperty, String)}.
+   * A null parameter calls the entry point of a program which is not
+   * parameterized, checking the properties it was generated with.
+   */
+  public boolean solve(String propertyParameter) throws ProcessingException;
+
+  /**
+   * Bounds the cardinality of every class by the scope in the next queries,
+   * on top of the domains of the program. A negative scope (the default)
+   * keeps the domains alone.
+   */
+  public void setScope(int scope);
+
+  public int getScope();
+
+  /**
+   * Returns the solution found by the last successful query, or null.
+   */
+  public ST getSolution();
+
+  /**
+   * Returns the statistics of the search of the last query, or null.
+   */
+  public SolverStatistics getStatistics();
+
+  public Object getResult();
+
+  /**
+   * Returns the verdict of the last query. Queries are bounded by the
+   * timeout of the solver which opened the session.
+   */
+  public SolverVerdict getVerdict();
+
+  /**
+   * Releases the solver resources held by the session.
+   */
+  public void close();
+}
@@ -12,6 +12,12 @@ public interface IModelBuilder <R, P, C, AS, AT, OP,ST> {
 	void generateInstance(String path);
 	void decorticateResult();
 	void setSolution(ST solution);
+	/**
+	 * Decorticates another solution, whose objects and links are added to the
+	 * ones of the solutions decorticated before. The solutions of independent
+	 * components of a model are merged this way into a single instance.
+	 */
+	void mergeSolution(ST solution);
 	boolean solutionIsEmpty();
 
 
@@ -18,6 +18,7 @@ import java.util.Map;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
 
 
 /**
@@ -48,6 +49,18 @@ public interface IModelToCspSolver<R,ST> {
 
 	public IFile getConstraintsDocument();
 
+	/**
+	 * Sets the OCL document by its location in the file system. Unlike the
+	 * other ways of setting it, this does not need a workspace.
+	 */
+	public void setConstraintsFile(File constraintsFile);
+
+	/**
+	 * Returns the location of the OCL document, whichever way it was set, or
+	 * null if there is none.
+	 */
+	public File getConstraintsFile();
+
 	public void setModelElementsDomain(Map<String, String> modelDomain);
 
 	public Map<String, String> getModelElementsDomain();
@@ -56,6 +69,18 @@ public interface IModelToCspSolver<R,ST> {
 
 	public IFolder getResultLocation();
 
+	/**
+	 * Sets the directory the generated code and instances are written to.
+	 * Unlike {@link #setResultLocation(IFolder)}, this does not need a
+	 * workspace.
+	 */
+	public void setResultDirectory(File resultDirectory);
+
+	/**
+	 * Returns the directory results are written to, whichever way it was set.
+	 */
+	public File getResultDirectory();
+
 	public void setModelProperties(List<IModelProperty> modelProperties);
 
 	public List<IModelProperty> getModelProperties();
@@ -68,8 +93,109 @@ public interface IModelToCspSolver<R,ST> {
 
 	public boolean solveModel(List<File> importLibs) throws ProcessingException ;	
 
+	/**
+	 * Solves the model, reporting progress to the monitor. Cancelling the
+	 * monitor stops the solver, in which case false is returned and the
+	 * verdict is UNKNOWN.
+	 */
+	public boolean solveModel(List<File> importLibs, IProgressMonitor monitor) throws ProcessingException ;
+
+	/**
+	 * Enables the automatic bounds mode when positive: solveModel then bounds
+	 * the cardinality of every class by a scope growing 1, 2, 4, ... up to
+	 * maxScope, on top of the model elements domain, and stops at the first
+	 * scope with a solution. 0 (the default) disables the mode.
+	 */
+	public void setMaxScope(int maxScope);
+
+	public int getMaxScope();
+
+	/**
+	 * Returns the smallest scope with a solution found by the last call to
+	 * solveModel in automatic bounds mode, or -1.
+	 */
+	public int getSatisfyingScope();
+
+	/**
+	 * When set (not the default), solveModel first solves the cardinalities of
+	 * the model alone. When they settle the verdict the CSP is not solved and,
+	 * for a satisfiable model, no instance nor evaluation result is generated:
+	 * the cardinalities found are returned by {@link #getCardinalities()}.
+	 */
+	public void setCardinalityPreSolving(boolean cardinalityPreSolving);
+
+	public boolean isCardinalityPreSolving();
+
+	/**
+	 * Returns the verdict the cardinalities proved in the last call to
+	 * solveModel, UNKNOWN if they proved none, or null if they were not
+	 * solved.
+	 */
+	public SolverVerdict getCardinalityVerdict();
+
+	/**
+	 * Returns the cardinalities of the classes and associations which proved
+	 * the model satisfiable in the last call to solveModel, or null if the
+	 * verdict was not settled by the cardinalities alone.
+	 */
+	public Map<String, Integer> getCardinalities();
+
+	/**
+	 * Returns the verdicts of the components of the model, in their order, if
+	 * the code generator decomposed it in the last call to solveModel, or
+	 * null. The merged instance has no evaluation result then.
+	 */
+	public List<SolverVerdict> getComponentVerdicts();
+
+	/**
+	 * When an instance is required (not the default), a model the
+	 * cardinalities prove satisfiable is still solved to generate it.
+	 */
+	public void setInstanceRequired(boolean instanceRequired);
+
+	public boolean isInstanceRequired();
+
+	/**
+	 * Returns the verdict of the last call to solveModel.
+	 */
+	public SolverVerdict getVerdict();
+
+	/**
+	 * Checks every property, and every target of the properties having
+	 * targets, against a single compiled program. An instance is generated
+	 * for each satisfiable check.
+	 */
+	public List<PropertyVerificationResult> solveProperties(List<IModelProperty> properties, List<File> importLibs) throws ProcessingException ;
+
+	/**
+	 * Enumerates the instances of the model, generating the instance file of
+	 * each solution when it is pulled while the solver looks for the next
+	 * one. Instances are numbered in the order they are found.
+	 */
+	public ICspSolutionIterator<File> iterateInstances(List<File> importLibs) throws ProcessingException ;
+
 	public Object getSolverEvaluationResult();
 
+	/**
+	 * Returns the metrics of the phases of the last call to solveModel, or
+	 * null.
+	 */
+	public PipelineMetrics getMetrics();
+
+	/**
+	 * Sets the listener the metrics of the next calls to solveModel are
+	 * reported to as they are measured, or null (the default).
+	 */
+	public void setMetricsListener(IPipelineMetricsListener listener);
+
+	/**
+	 * When set (not the default), solveModel writes its metrics as JSON next
+	 * to the generated code, in &lt;model&gt;.metrics.json.
+	 */
+	public void setMetricsWritten(boolean metricsWritten);
+
+	public boolean isMetricsWritten();
+
 	public void setLogger(ILogger logger);
 
 	public ILogger getLogger();
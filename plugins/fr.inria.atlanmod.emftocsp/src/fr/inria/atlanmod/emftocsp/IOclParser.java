@@ -10,6 +10,7 @@
  *******************************************************************************/
 package fr.inria.atlanmod.emftocsp;
 
+import java.io.File;
 import java.util.List;
 
 import org.eclipse.core.resources.IFile;
@@ -31,4 +32,16 @@ public interface IOclParser<CT, R> {
   List<String> getModelConstraintsNames(R modelResource, IFile oclDocument) throws ProcessingException;
 
   List<String> getModelInvariantNames(R modelResource, IFile oclDocument) throws ProcessingException;
+
+  /*
+   * The same operations on an OCL document outside of the workspace.
+   */
+
+  List<CT> parseOclDocument(File oclFile, R modelResource) throws ProcessingException;
+
+  List<CT> parseModelConstraints(R modelResource, File oclFile) throws ProcessingException;
+
+  List<String> getModelConstraintsNames(R modelResource, File oclFile) throws ProcessingException;
+
+  List<String> getModelInvariantNames(R modelResource, File oclFile) throws ProcessingException;
 }
@@ -0,0 +1,31 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp;
+
+/**
+ * Receives the metrics of a verification as it runs. Measurements are
+ * delivered on the threads running the phases, so listeners should return
+ * quickly.
+ */
+public interface IPipelineMetricsListener {
+
+  /**
+   * Called at the end of every run of a phase, with the metrics of that run
+   * alone.
+   */
+  public void phaseMeasured(PhaseMetrics measurement);
+
+  /**
+   * Called at the end of the verification, with the metrics of all of its
+   * phases.
+   */
+  public void verificationMeasured(PipelineMetrics metrics);
+}
@@ -0,0 +1,21 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp;
+
+/**
+ * Receives the progress of the searches of a solver. Events are delivered
+ * on the threads of the solver while it runs, so listeners should return
+ * quickly.
+ */
+public interface ISolverProgressListener {
+
+  public void progressed(SolverProgressEvent event);
+}
@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * What a phase of a verification took: its wall time in nanoseconds, the
+ * change of the used heap in bytes, and counts specific to the phase, such
+ * as the size of the generated code. A phase run several times, once per
+ * component or per scope, sums its runs.
+ */
+public class PhaseMetrics {
+  private final PipelinePhase phase;
+  private final int runs;
+  private final long nanos;
+  private final long memoryDelta;
+  private final Map<String, Long> counts;
+
+  public PhaseMetrics(PipelinePhase phase, int runs, long nanos, long memoryDelta, Map<String, Long> counts) {
+    this.phase = phase;
+    this.runs = runs;
+    this.nanos = nanos;
+    this.memoryDelta = memoryDelta;
+    this.counts = Collections.unmodifiableMap(new LinkedHashMap<String, Long>(counts));
+  }
+
+  public PipelinePhase getPhase() {
+    return phase;
+  }
+
+  public int getRuns() {
+    return runs;
+  }
+
+  public long getNanos() {
+    return nanos;
+  }
+
+  /**
+   * Returns the used heap after the phase minus the used heap before it,
+   * which is negative when the garbage collector ran in between.
+   */
+  public long getMemoryDelta() {
+    return memoryDelta;
+  }
+
+  /**
+   * Returns the counts of the phase, by name.
+   */
+  public Map<String, Long> getCounts() {
+    return counts;
+  }
+
+  @Override
+  public String toString() {
+    return phase + ": " + nanos + "ns in " + runs + " run(s), " + memoryDelta + " bytes " + counts; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+  }
+}
@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The report of a verification, phase by phase. The components taking part
+ * in the verification measure their phases with {@link #start(PipelinePhase)},
+ * possibly from several threads at once, and the measurements of a phase are
+ * summed up.
+ */
+public class PipelineMetrics {
+  private final IPipelineMetricsListener listener;
+  private final long startNanos = System.nanoTime();
+  private long endNanos = -1;
+  private final Map<PipelinePhase, Integer> runs = new EnumMap<PipelinePhase, Integer>(PipelinePhase.class);
+  private final Map<PipelinePhase, Long> nanos = new EnumMap<PipelinePhase, Long>(PipelinePhase.class);
+  private final Map<PipelinePhase, Long> memoryDeltas = new EnumMap<PipelinePhase, Long>(PipelinePhase.class);
+  private final Map<PipelinePhase, Map<String, Long>> counts = new EnumMap<PipelinePhase, Map<String, Long>>(PipelinePhase.class);
+
+  public PipelineMetrics() {
+    this(null);
+  }
+
+  /**
+   * Creates a report telling the listener about every measurement, unless
+   * it is null.
+   */
+  public PipelineMetrics(IPipelineMetricsListener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * A run of a phase, measured from its start until {@link #stop()} is
+   * called.
+   */
+  public class Measurement {
+    private final PipelinePhase phase;
+    private final long start;
+    private final long startMemory;
+    private final Map<String, Long> measurementCounts = new LinkedHashMap<String, Long>();
+    private boolean stopped = false;
+
+    Measurement(PipelinePhase phase) {
+      this.phase = phase;
+      this.startMemory = usedMemory();
+      this.start = System.nanoTime();
+    }
+
+    /**
+     * Adds the value to the count of the run.
+     */
+    public Measurement count(String name, long value) {
+      Long count = measurementCounts.get(name);
+      measurementCounts.put(name, count == null ? value : count + value);
+      return this;
+    }
+
+    /**
+     * Ends the run and adds it to the report. Only the first call counts, so
+     * a run can be stopped in a finally block after being stopped earlier.
+     */
+    public void stop() {
+      long duration = System.nanoTime() - start;
+      if (stopped)
+        return;
+      stopped = true;
+      record(new PhaseMetrics(phase, 1, duration, usedMemory() - startMemory, measurementCounts));
+    }
+  }
+
+  public Measurement start(PipelinePhase phase) {
+    return new Measurement(phase);
+  }
+
+  private void record(PhaseMetrics measurement) {
+    PipelinePhase phase = measurement.getPhase();
+    synchronized (this) {
+      runs.put(phase, get(runs, phase, 0) + 1);
+      nanos.put(phase, get(nanos, phase, 0L) + measurement.getNanos());
+      memoryDeltas.put(phase, get(memoryDeltas, phase, 0L) + measurement.getMemoryDelta());
+      Map<String, Long> phaseCounts = counts.get(phase);
+      if (phaseCounts == null) {
+        phaseCounts = new LinkedHashMap<String, Long>();
+        counts.put(phase, phaseCounts);
+      }
+      for (Map.Entry<String, Long> count : measurement.getCounts().entrySet())
+        phaseCounts.put(count.getKey(), get(phaseCounts, count.getKey(), 0L) + count.getValue());
+    }
+    if (listener != null)
+      listener.phaseMeasured(measurement);
+  }
+
+  /**
+   * Ends the verification, which the report then tells the listener about.
+   */
+  public void finish() {
+    synchronized (this) {
+      if (endNanos >= 0)
+        return;
+      endNanos = System.nanoTime();
+    }
+    if (listener != null)
+      listener.verificationMeasured(this);
+  }
+
+  /**
+   * Returns the wall time of the verification in nanoseconds, so far if it
+   * is not finished.
+   */
+  public synchronized long getTotalNanos() {
+    return (endNanos >= 0 ? endNanos : System.nanoTime()) - startNanos;
+  }
+
+  /**
+   * Returns the metrics of the phase, or null if it did not run.
+   */
+  public synchronized PhaseMetrics getPhase(PipelinePhase phase) {
+    if (!runs.containsKey(phase))
+      return null;
+    return new PhaseMetrics(phase, runs.get(phase), nanos.get(phase), memoryDeltas.get(phase), counts.get(phase));
+  }
+
+  /**
+   * Returns the metrics of the phases which ran, in the order of the
+   * phases.
+   */
+  public List<PhaseMetrics> getPhases() {
+    List<PhaseMetrics> phases = new ArrayList<PhaseMetrics>();
+    for (PipelinePhase phase : PipelinePhase.values()) {
+      PhaseMetrics metrics = getPhase(phase);
+      if (metrics != null)
+        phases.add(metrics);
+    }
+    return phases;
+  }
+
+  public String toJson() {
+    StringBuilder json = new StringBuilder();
+    json.append("{\n  \"totalNanos\": ").append(getTotalNanos()).append(",\n  \"phases\": ["); //$NON-NLS-1$ //$NON-NLS-2$
+    String separator = "\n"; //$NON-NLS-1$
+    for (PhaseMetrics phase : getPhases()) {
+      json.append(separator);
+      json.append("    {\"phase\": \"").append(phase.getPhase().name().toLowerCase()); //$NON-NLS-1$
+      json.append("\", \"runs\": ").append(phase.getRuns()); //$NON-NLS-1$
+      json.append(", \"nanos\": ").append(phase.getNanos()); //$NON-NLS-1$
+      json.append(", \"memoryDelta\": ").append(phase.getMemoryDelta()); //$NON-NLS-1$
+      json.append(", \"counts\": {"); //$NON-NLS-1$
+      String countSeparator = ""; //$NON-NLS-1$
+      for (Map.Entry<String, Long> count : phase.getCounts().entrySet()) {
+        json.append(countSeparator).append('"').append(count.getKey()).append("\": ").append(count.getValue()); //$NON-NLS-1$
+        countSeparator = ", "; //$NON-NLS-1$
+      }
+      json.append("}}"); //$NON-NLS-1$
+      separator = ",\n"; //$NON-NLS-1$
+    }
+    json.append("\n  ]\n}\n"); //$NON-NLS-1$
+    return json.toString();
+  }
+
+  public void writeJson(File file) throws IOException {
+    Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8"); //$NON-NLS-1$
+    try {
+      out.write(toJson());
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "PipelineMetrics " + getTotalNanos() + "ns " + getPhases(); //$NON-NLS-1$ //$NON-NLS-2$
+  }
+
+  private static <K, V> V get(Map<K, V> map, K key, V defaultValue) {
+    V value = map.get(key);
+    return value == null ? defaultValue : value;
+  }
+
+  private static long usedMemory() {
+    Runtime runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -0,0 +1,19 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp;
+
+/**
+ * The phases of a verification measured by {@link PipelineMetrics}, in the
+ * order they run.
+ */
+public enum PipelinePhase {
+  OCL_PARSING, CODE_GENERATION, OCL_TRANSLATION, COMPILATION, SOLVING, DECORTICATION, INSTANCE_SERIALIZATION, IMAGE_GENERATION
+}
@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp;
+
+/**
+ * Verdict of one check of a batch verification. Properties with targets
+ * (liveliness of a class, subsumption or redundancy of a pair of
+ * constraints) are checked once per target.
+ */
+public class PropertyVerificationResult {
+  private final IModelProperty property;
+  private final String target;
+  private final SolverVerdict verdict;
+  private final String instanceLocation;
+  private final Object solverResult;
+
+  public PropertyVerificationResult(IModelProperty property, String target, SolverVerdict verdict, String instanceLocation, Object solverResult) {
+    this.property = property;
+    this.target = target;
+    this.verdict = verdict;
+    this.instanceLocation = instanceLocation;
+    this.solverResult = solverResult;
+  }
+
+  public IModelProperty getProperty() {
+    return property;
+  }
+
+  /**
+   * Returns the checked target, or null for the properties without targets.
+   */
+  public String getTarget() {
+    return target;
+  }
+
+  public boolean isSatisfiable() {
+    return verdict == SolverVerdict.SAT;
+  }
+
+  /**
+   * Returns UNKNOWN when the check was stopped before the solver answered.
+   */
+  public SolverVerdict getVerdict() {
+    return verdict;
+  }
+
+  /**
+   * Returns the location of the generated instance, or null if the property
+   * is not satisfiable.
+   */
+  public String getInstanceLocation() {
+    return instanceLocation;
+  }
+
+  public Object getSolverResult() {
+    return solverResult;
+  }
+
+  @Override
+  public String toString() {
+    return property + (target == null ? "" : " [" + target + "]") + ": " + verdict; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+  }
+}
@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Progress of a search in progress, reported while the solver runs:
+ * <ul>
+ * <li>PHASE when the search enters a phase of the program, such as the
+ * creation of the objects or the labeling of the attributes. The search
+ * enters a phase again after backtracking into an earlier one.</li>
+ * <li>CARDINALITIES when the cardinalities of the classes and associations
+ * are assigned.</li>
+ * <li>BACKTRACKS every thousand backtracks.</li>
+ * </ul>
+ * Every event carries the statistics of the search so far.
+ */
+public class SolverProgressEvent {
+  public enum Kind {
+    PHASE, CARDINALITIES, BACKTRACKS
+  }
+
+  private final Kind kind;
+  private final String phase;
+  private final Map<String, Integer> cardinalities;
+  private final SolverStatistics statistics;
+
+  public SolverProgressEvent(Kind kind, String phase, Map<String, Integer> cardinalities, SolverStatistics statistics) {
+    this.kind = kind;
+    this.phase = phase;
+    this.cardinalities = cardinalities == null ? null : Collections.unmodifiableMap(cardinalities);
+    this.statistics = statistics;
+  }
+
+  public Kind getKind() {
+    return kind;
+  }
+
+  /**
+   * Returns the phase entered by a PHASE event, or null.
+   */
+  public String getPhase() {
+    return phase;
+  }
+
+  /**
+   * Returns the cardinalities assigned by a CARDINALITIES event, by class
+   * and association name, or null.
+   */
+  public Map<String, Integer> getCardinalities() {
+    return cardinalities;
+  }
+
+  public SolverStatistics getStatistics() {
+    return statistics;
+  }
+
+  @Override
+  public String toString() {
+    String detail = kind == Kind.PHASE ? " " + phase : kind == Kind.CARDINALITIES ? " " + cardinalities : ""; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    return kind + detail + " (" + statistics + ")"; //$NON-NLS-1$ //$NON-NLS-2$
+  }
+}
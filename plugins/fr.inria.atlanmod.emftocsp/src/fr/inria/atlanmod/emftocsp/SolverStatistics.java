@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp;
+
+/**
+ * Statistics of the search of a solver run, as far as it went: the CPU time
+ * of the search in seconds, the number of backtracks into the labeling of
+ * the variables, and the peak usage of the global and trail stacks of the
+ * engine in bytes. The stacks are sampled at every progress event, so their
+ * peaks are lower bounds.
+ */
+public class SolverStatistics {
+  private final double cpuTime;
+  private final long backtracks;
+  private final long peakGlobalStack;
+  private final long peakTrailStack;
+
+  public SolverStatistics(double cpuTime, long backtracks, long peakGlobalStack, long peakTrailStack) {
+    this.cpuTime = cpuTime;
+    this.backtracks = backtracks;
+    this.peakGlobalStack = peakGlobalStack;
+    this.peakTrailStack = peakTrailStack;
+  }
+
+  public double getCpuTime() {
+    return cpuTime;
+  }
+
+  public long getBacktracks() {
+    return backtracks;
+  }
+
+  public long getPeakGlobalStack() {
+    return peakGlobalStack;
+  }
+
+  public long getPeakTrailStack() {
+    return peakTrailStack;
+  }
+
+  @Override
+  public String toString() {
+    return "cputime=" + cpuTime + "s backtracks=" + backtracks + " global=" + peakGlobalStack + " trail=" + peakTrailStack; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+  }
+}
@@ -0,0 +1,20 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp;
+
+/**
+ * Outcome of a solver run. A run is UNKNOWN when it was stopped, because it
+ * reached its timeout or because it was cancelled, before the solver could
+ * answer.
+ */
+public enum SolverVerdict {
+  SAT, UNSAT, UNKNOWN
+}
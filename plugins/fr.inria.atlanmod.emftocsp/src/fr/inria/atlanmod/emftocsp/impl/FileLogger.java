@@ -63,7 +63,7 @@ public class FileLogger implements ILogger {
     outputStream.println(message);
   }	
 	
-	private void writeMessage(String context, String message, String type) {
+	private synchronized void writeMessage(String context, String message, String type) {
 	  cal = Calendar.getInstance();
 	  StringBuilder s = new StringBuilder();
     s.append(dateFormat.format(cal.getTime()));
@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp.impl;
+
+import java.io.File;
+import java.util.List;
+
+import org.eclipse.core.resources.IFile;
+
+import fr.inria.atlanmod.emftocsp.IOclParser;
+import fr.inria.atlanmod.emftocsp.PipelineMetrics;
+import fr.inria.atlanmod.emftocsp.PipelinePhase;
+import fr.inria.atlanmod.emftocsp.ProcessingException;
+
+/**
+ * Parses OCL with another parser, measuring every parsing as an OCL_PARSING
+ * run of a report, along with the number of constraints it returns.
+ */
+public class MeasuredOclParser<CT, R> implements IOclParser<CT, R> {
+  private static final String CONSTRAINTS = "constraints"; //$NON-NLS-1$
+  private final IOclParser<CT, R> oclParser;
+  private final PipelineMetrics metrics;
+
+  public MeasuredOclParser(IOclParser<CT, R> oclParser, PipelineMetrics metrics) {
+    this.oclParser = oclParser;
+    this.metrics = metrics;
+  }
+
+  public IOclParser<CT, R> getOclParser() {
+    return oclParser;
+  }
+
+  @Override
+  public CT parseOclConstraint(Object context, String key, String constraint) {
+    PipelineMetrics.Measurement measurement = metrics.start(PipelinePhase.OCL_PARSING);
+    try {
+      return oclParser.parseOclConstraint(context, key, constraint);
+    }
+    finally {
+      measurement.count(CONSTRAINTS, 1).stop();
+    }
+  }
+
+  @Override
+  public List<CT> parseOclDocument(IFile oclDocument, R modelResource) throws ProcessingException {
+    PipelineMetrics.Measurement measurement = metrics.start(PipelinePhase.OCL_PARSING);
+    try {
+      return counted(measurement, oclParser.parseOclDocument(oclDocument, modelResource));
+    }
+    finally {
+      measurement.stop();
+    }
+  }
+
+  @Override
+  public List<CT> parseEmbeddedConstraints(R modelResource) {
+    PipelineMetrics.Measurement measurement = metrics.start(PipelinePhase.OCL_PARSING);
+    try {
+      return counted(measurement, oclParser.parseEmbeddedConstraints(modelResource));
+    }
+    finally {
+      measurement.stop();
+    }
+  }
+
+  @Override
+  public List<CT> parseModelConstraints(R modelResource, IFile oclDocument) throws ProcessingException {
+    PipelineMetrics.Measurement measurement = metrics.start(PipelinePhase.OCL_PARSING);
+    try {
+      return counted(measurement, oclParser.parseModelConstraints(modelResource, oclDocument));
+    }
+    finally {
+      measurement.stop();
+    }
+  }
+
+  @Override
+  public List<String> getModelConstraintsNames(R modelResource, IFile oclDocument) throws ProcessingException {
+    PipelineMetrics.Measurement measurement = metrics.start(PipelinePhase.OCL_PARSING);
+    try {
+      return counted(measurement, oclParser.getModelConstraintsNames(modelResource, oclDocument));
+    }
+    finally {
+      measurement.stop();
+    }
+  }
+
+  @Override
+  public List<String> getModelInvariantNames(R modelResource, IFile oclDocument) throws ProcessingException {
+    PipelineMetrics.Measurement measurement = metrics.start(PipelinePhase.OCL_PARSING);
+    try {
+      return counted(measurement, oclParser.getModelInvariantNames(modelResource, oclDocument));
+    }
+    finally {
+      measurement.stop();
+    }
+  }
+
+  @Override
+  public List<CT> parseOclDocument(File oclFile, R modelResource) throws ProcessingException {
+    PipelineMetrics.Measurement measurement = metrics.start(PipelinePhase.OCL_PARSING);
+    try {
+      return counted(measurement, oclParser.parseOclDocument(oclFile, modelResource));
+    }
+    finally {
+      measurement.stop();
+    }
+  }
+
+  @Override
+  public List<CT> parseModelConstraints(R modelResource, File oclFile) throws ProcessingException {
+    PipelineMetrics.Measurement measurement = metrics.start(PipelinePhase.OCL_PARSING);
+    try {
+      return counted(measurement, oclParser.parseModelConstraints(modelResource, oclFile));
+    }
+    finally {
+      measurement.stop();
+    }
+  }
+
+  @Override
+  public List<String> getModelConstraintsNames(R modelResource, File oclFile) throws ProcessingException {
+    PipelineMetrics.Measurement measurement = metrics.start(PipelinePhase.OCL_PARSING);
+    try {
+      return counted(measurement, oclParser.getModelConstraintsNames(modelResource, oclFile));
+    }
+    finally {
+      measurement.stop();
+    }
+  }
+
+  @Override
+  public List<String> getModelInvariantNames(R modelResource, File oclFile) throws ProcessingException {
+    PipelineMetrics.Measurement measurement = metrics.start(PipelinePhase.OCL_PARSING);
+    try {
+      return counted(measurement, oclParser.getModelInvariantNames(modelResource, oclFile));
+    }
+    finally {
+      measurement.stop();
+    }
+  }
+
+  private static <T> List<T> counted(PipelineMetrics.Measurement measurement, List<T> constraints) {
+    if (constraints != null)
+      measurement.count(CONSTRAINTS, constraints.size());
+    return constraints;
+  }
+}
@@ -10,13 +10,23 @@
  *******************************************************************************/
 package fr.inria.atlanmod.emftocsp.impl;
 
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
@@ -26,31 +36,57 @@ import org.eclipse.core.resources.IWorkspace;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.Path;
 
 import fr.inria.atlanmod.emftocsp.ICspCodeGenerator;
+import fr.inria.atlanmod.emftocsp.ICspSolutionIterator;
 import fr.inria.atlanmod.emftocsp.ICspSolver;
+import fr.inria.atlanmod.emftocsp.ICspSolverSession;
 import fr.inria.atlanmod.emftocsp.ILogger;
 import fr.inria.atlanmod.emftocsp.IModelBuilder;
 import fr.inria.atlanmod.emftocsp.IModelProperty;
 import fr.inria.atlanmod.emftocsp.IModelReader;
 import fr.inria.atlanmod.emftocsp.IModelToCspSolver;
 import fr.inria.atlanmod.emftocsp.IOclParser;
+import fr.inria.atlanmod.emftocsp.IPipelineMetricsListener;
+import fr.inria.atlanmod.emftocsp.PipelineMetrics;
+import fr.inria.atlanmod.emftocsp.PipelinePhase;
 import fr.inria.atlanmod.emftocsp.ProcessingException;
+import fr.inria.atlanmod.emftocsp.PropertyVerificationResult;
+import fr.inria.atlanmod.emftocsp.SolverVerdict;
 
 /**
  * @author <a href="mailto:carlos.gonzalez@inria.fr">Carlos A. Gonzlez</a>
  *
  */
 public abstract class ModelToCspSolver<R,ST> implements IModelToCspSolver<R,ST> {
+  private static final long CANCELLATION_POLL_MILLIS = 200;
+  private static boolean externalFilesCleanupRegistered = false;
   IFile constraintsDocument;
+  File constraintsFile;
   IFolder resultLocation;
+  File resultDirectory;
   HashMap<String, String> modelElementsDomain;
   List<IModelProperty> modelProperties;
   ICspSolver<ST> solver;
   String modelFilename;
   ILogger logger;
   protected IModelBuilder<R, ?,?,?,?,?,ST> builder;
+  VerificationResultCache resultCache;
+  SolverVerdict verdict;
+  File evaluationResult;
+  int maxScope = 0;
+  int satisfyingScope = -1;
+  boolean cardinalityPreSolving = false;
+  boolean instanceRequired = false;
+  SolverVerdict cardinalityVerdict;
+  Map<String, Integer> cardinalities;
+  List<SolverVerdict> componentVerdicts;
+  PipelineMetrics metrics;
+  IPipelineMetricsListener metricsListener;
+  boolean metricsWritten = false;
 
 @Override  
   public abstract 	IModelBuilder<R, ?, ?, ?, ?, ?, ST> getBuilder();
@@ -84,31 +120,38 @@ public abstract class ModelToCspSolver<R,ST> implements IModelToCspSolver<R,ST>
   @Override
   public void setConstraintsDocument(IFile constraintsDocument) {
     this.constraintsDocument = constraintsDocument;
+    this.constraintsFile = null;
   }
   @Override
   public void setConstraintsDocumentToNull() {
     this.constraintsDocument = null;
+    this.constraintsFile = null;
   }
+  /**
+   * Links the document into the external.files project, which is created
+   * the first time only and deleted when the virtual machine exits.
+   */
   @Override 
   public void setConstraintsDocument(URI fileURI) throws CoreException{
 	  IWorkspace ws = ResourcesPlugin.getWorkspace();
 	IProject project = ws.getRoot().getProject("external.files");
-	if (project.exists())
-		project.delete(true, null);
+	if (!project.exists())
 	    project.create(null);
 	if (!project.isOpen())
 	    project.open(null);
 	project.setHidden(false);
 	IPath location = new Path(fileURI.getPath());
 	IFile file = project.getFile(location.lastSegment());
-	file.createLink(location, IResource.HIDDEN, null);
+	file.createLink(location, IResource.HIDDEN | IResource.REPLACE, null);
 	setConstraintsDocument(file);
 	addShutDownhook(project);
   }
   
 
-  private void addShutDownhook(final IProject project) {
-	  
+  private static synchronized void addShutDownhook(final IProject project) {
+	  if (externalFilesCleanupRegistered)
+		  return;
+	  externalFilesCleanupRegistered = true;
 	  Runtime.getRuntime().addShutdownHook( 
 	    		new Thread(
 	    			new Runnable() {
@@ -129,6 +172,19 @@ public abstract class ModelToCspSolver<R,ST> implements IModelToCspSolver<R,ST>
   public IFile getConstraintsDocument() {
     return constraintsDocument;
   }
+
+  @Override
+  public void setConstraintsFile(File constraintsFile) {
+    this.constraintsFile = constraintsFile;
+    this.constraintsDocument = null;
+  }
+
+  @Override
+  public File getConstraintsFile() {
+    if (constraintsFile == null && constraintsDocument != null)
+      return constraintsDocument.getRawLocation().toFile();
+    return constraintsFile;
+  }
   
   @Override
   public void setModelElementsDomain(Map<String, String> modelElementsDomain) {
@@ -143,12 +199,26 @@ public abstract class ModelToCspSolver<R,ST> implements IModelToCspSolver<R,ST>
   @Override
   public void setResultLocation(IFolder resultLocation) {
     this.resultLocation = resultLocation;    
+    this.resultDirectory = null;
   }
 
   @Override
   public IFolder getResultLocation() {
     return resultLocation;
   }
+
+  @Override
+  public void setResultDirectory(File resultDirectory) {
+    this.resultDirectory = resultDirectory;
+    this.resultLocation = null;
+  }
+
+  @Override
+  public File getResultDirectory() {
+    if (resultDirectory == null && resultLocation != null)
+      return resultLocation.getRawLocation().toFile();
+    return resultDirectory;
+  }
   
   @Override
   public void setModelProperties(List<IModelProperty> modelProperties) {
@@ -163,6 +233,8 @@ public abstract class ModelToCspSolver<R,ST> implements IModelToCspSolver<R,ST>
   @Override
   public void setSolver(ICspSolver solver) {
     this.solver = solver;
+    if (solver != null)
+      solver.setLogger(logger);
   }  
   
   @Override
@@ -177,39 +249,621 @@ public abstract class ModelToCspSolver<R,ST> implements IModelToCspSolver<R,ST>
   
   @Override
   public boolean solveModel(List<File> importLibs) throws ProcessingException {
-    String cspCodeFileExtension = getCspCodeGenerator().getCspCodeFileExtension();
-    String cspCodeFileName = getModelFileName() + "." + cspCodeFileExtension; //$NON-NLS-1$
-    IPath cspCodeFilePath = getResultLocation().getRawLocation().append(cspCodeFileName);
-    File cspCodeFile = new File(cspCodeFilePath.toOSString());
-    String cspCode = getCspCodeGenerator().getCspCode();
+    return solveModel(importLibs, null);
+  }
+  
+  @Override
+  public boolean solveModel(List<File> importLibs, IProgressMonitor monitor) throws ProcessingException {
+    if (monitor == null)
+      monitor = new NullProgressMonitor();
+    File cspCodeFile = getCspCodeFile();
     boolean solved=false;
+    evaluationResult = null;
+    cardinalityVerdict = null;
+    cardinalities = null;
+    componentVerdicts = null;
+    satisfyingScope = -1;
+    verdict = SolverVerdict.UNKNOWN;
+    metrics = new PipelineMetrics(metricsListener);
+    getCspCodeGenerator().setMetrics(metrics);
+    solver.setMetrics(metrics);
+    Timer cancellationWatcher = null;
+    monitor.beginTask("Verifying " + getModelFileName(), 3); //$NON-NLS-1$
     try {
-	    PrintWriter out = new PrintWriter(cspCodeFile);
-	    out.println(cspCode);
-	    out.flush();    
-	    solved = solver.solveCSP(cspCodeFile, importLibs);
-	    if(solver.getSolution()!=null){
-	    builder.setSolution(solver.getSolution());
+	    String resultKey = null;
+	    if (resultCache != null) {
+	      resultKey = computeResultKey(importLibs);
+	      VerificationResultCache.Entry cached = resultKey == null ? null : resultCache.get(resultKey);
+	      if (cached != null) {
+	        verdict = cached.isSatisfiable() ? SolverVerdict.SAT : SolverVerdict.UNSAT;
+	        return restoreResult(cached, cspCodeFile);
+	      }
+	    }
+	    if (cardinalityPreSolving) {
+	      monitor.subTask("Checking the cardinalities"); //$NON-NLS-1$
+	      if (solveCardinalities())
+	        return verdict == SolverVerdict.SAT;
+	    }
+	    int components = maxScope > 0 ? 1 : getCspCodeGenerator().decompose();
+	    if (components > 1) {
+	      cancellationWatcher = watchCancellation(monitor);
+	      return solveComponents(components, cspCodeFile, importLibs, monitor);
+	    }
+	    monitor.subTask("Generating the CSP code"); //$NON-NLS-1$
+	    writeCspCode(cspCodeFile, false);
+	    monitor.worked(1);
+	    if (monitor.isCanceled())
+	      return false;
+	    cancellationWatcher = watchCancellation(monitor);
+	    ST solution;
+	    if (maxScope > 0) {
+	      solution = solveWithGrowingScopes(cspCodeFile, importLibs, monitor);
+	      solved = solution != null;
+	    }
+	    else {
+	      monitor.subTask("Solving the CSP"); //$NON-NLS-1$
+	      solved = solver.solveCSP(cspCodeFile, importLibs);
+	      verdict = solver.getVerdict() != null ? solver.getVerdict() : (solved ? SolverVerdict.SAT : SolverVerdict.UNSAT);
+	      solution = solver.getSolution();
+	    }
+	    cancellationWatcher.cancel();
+	    monitor.worked(1);
+	    File instanceFile = null;
+	    if(solved && solution!=null){
+	    monitor.subTask("Generating the instance"); //$NON-NLS-1$
+	    PipelineMetrics.Measurement decortication = metrics.start(PipelinePhase.DECORTICATION);
+	    builder.setSolution(solution);
 	    builder.decorticateResult();
-	    String path ="\\" + modelFilename;
-	    path=resultLocation.getFullPath().toOSString()+path;
-	    //System.out.println("PATH IS "+path);
+	    countInstances(decortication).stop();
 	    String outputModelLocation= getUnusedLocation(cspCodeFile.getAbsolutePath());
-		builder.generateInstance("file://"+outputModelLocation);
-		if (getConstraintsDocument() != null)
-		 if (getConstraintsDocument().getParent() instanceof IProject)
-			 if (((IProject)getConstraintsDocument().getParent()).getFullPath().segment(0).equals("external.files") )
-				 ((IProject)getConstraintsDocument().getParent()).delete(true,null);
+		generateInstance(outputModelLocation);
+		instanceFile = new File(outputModelLocation + ".xmi");
+		deleteExternalFiles();
 	    }
+	    monitor.worked(1);
+	    if (resultKey != null && verdict != SolverVerdict.UNKNOWN)
+	      storeResult(resultKey, solved, solved ? instanceFile : null);
 
 	    return solved;
     } catch (IOException e) {
     	throw new ProcessingException(e);
     }catch (CoreException e){
     	throw new ProcessingException(e);
+    } finally {
+      if (cancellationWatcher != null)
+        cancellationWatcher.cancel();
+      finishMetrics(cspCodeFile);
+      monitor.done();
     }
   }   
+
+  /**
+   * Ends the metrics of the verification, writing them next to the code if
+   * asked to. The code generator and the solver stop measuring, so that the
+   * metrics only hold the phases of solveModel.
+   */
+  private void finishMetrics(File cspCodeFile) {
+    getCspCodeGenerator().setMetrics(null);
+    solver.setMetrics(null);
+    metrics.finish();
+    if (!metricsWritten)
+      return;
+    String cspCodeFilePath = cspCodeFile.getAbsolutePath();
+    File metricsFile = new File(cspCodeFilePath.substring(0, cspCodeFilePath.lastIndexOf('.')) + ".metrics.json"); //$NON-NLS-1$
+    try {
+      metrics.writeJson(metricsFile);
+    }
+    catch (IOException e) {
+      if (logger != null)
+        logger.writeWarningMessage(this.getClass().toString(), "Unable to write the metrics: " + e.getMessage()); //$NON-NLS-1$
+    }
+  }
+
+  /**
+   * Adds the objects and links decorticated by the builder to the counts of
+   * the measurement.
+   */
+  private PipelineMetrics.Measurement countInstances(PipelineMetrics.Measurement measurement) {
+    if (builder instanceof ModelBuilder) {
+      ModelBuilder<?, ?, ?, ?, ?, ?, ?> modelBuilder = (ModelBuilder<?, ?, ?, ?, ?, ?, ?>) builder;
+      measurement.count("objects", modelBuilder.getObjectStructures() == null ? 0 : modelBuilder.getObjectStructures().size()); //$NON-NLS-1$
+      measurement.count("links", modelBuilder.getAssocStructures() == null ? 0 : modelBuilder.getAssocStructures().size()); //$NON-NLS-1$
+    }
+    return measurement;
+  }
+
+  /**
+   * Serializes the instance decorticated by the builder, measuring the size
+   * of the instance file.
+   */
+  private void generateInstance(String outputModelLocation) {
+    PipelineMetrics.Measurement measurement = metrics.start(PipelinePhase.INSTANCE_SERIALIZATION);
+    try {
+      builder.generateInstance("file://" + outputModelLocation); //$NON-NLS-1$
+      measurement.count("bytes", new File(outputModelLocation + ".xmi").length()); //$NON-NLS-1$
+    }
+    finally {
+      measurement.stop();
+    }
+  }
+
+  /**
+   * Verifies the program with the scopes 1, 2, 4, ... up to the maximum
+   * scope, and then narrows the scope down between the last unsatisfiable
+   * round and the first satisfiable one, so that the solution kept is one of
+   * the smallest scope. The program is compiled once for all the rounds.
+   * Returns null, setting the verdict, if no round has a solution.
+   */
+  private ST solveWithGrowingScopes(File cspCodeFile, List<File> importLibs, IProgressMonitor monitor) throws ProcessingException {
+    ICspSolverSession<ST> session = solver.openSession(cspCodeFile, importLibs);
+    try {
+      int unsatisfiableScope = 0;
+      int scope = 1;
+      while (!solveWithScope(session, scope, monitor)) {
+        if (session.getVerdict() == SolverVerdict.UNKNOWN || monitor.isCanceled()) {
+          verdict = SolverVerdict.UNKNOWN;
+          return null;
+        }
+        if (scope >= maxScope) {
+          verdict = SolverVerdict.UNSAT;
+          return null;
+        }
+        unsatisfiableScope = scope;
+        scope = Math.min(scope * 2, maxScope);
+      }
+      ST solution = session.getSolution();
+      Object result = session.getResult();
+      int low = unsatisfiableScope + 1;
+      while (low < scope && !monitor.isCanceled()) {
+        int middle = (low + scope) / 2;
+        if (solveWithScope(session, middle, monitor)) {
+          scope = middle;
+          solution = session.getSolution();
+          result = session.getResult();
+        }
+        else if (session.getVerdict() == SolverVerdict.UNSAT)
+          low = middle + 1;
+        else
+          break;
+      }
+      verdict = SolverVerdict.SAT;
+      satisfyingScope = scope;
+      evaluationResult = result instanceof File ? (File) result : null;
+      if (logger != null)
+        logger.writeInfoMessage(this.getClass().toString(), "Solution found with scope " + scope); //$NON-NLS-1$
+      return solution;
+    }
+    finally {
+      session.close();
+    }
+  }
+
+  /**
+   * Settles the verdict from the cardinalities of the model when the code
+   * generator can, so that no code is generated and the CSP is not solved.
+   * In automatic bounds mode the satisfying scope is the smallest one the
+   * cardinalities fit in. Returns false if the CSP has to be solved.
+   */
+  private boolean solveCardinalities() throws ProcessingException {
+    ICspCodeGenerator<R, ?, ?, ?, ?, ?, ?> generator = getCspCodeGenerator();
+    cardinalityVerdict = generator.checkCardinalities(maxScope > 0 ? maxScope : -1);
+    if (cardinalityVerdict == SolverVerdict.UNKNOWN || (cardinalityVerdict == SolverVerdict.SAT && instanceRequired))
+      return false;
+    if (cardinalityVerdict == SolverVerdict.SAT) {
+      Map<String, Integer> found = generator.getCardinalities();
+      if (maxScope > 0) {
+        int low = 1;
+        int scope = maxScope;
+        while (low < scope) {
+          int middle = (low + scope) / 2;
+          SolverVerdict middleVerdict = generator.checkCardinalities(middle);
+          if (middleVerdict == SolverVerdict.SAT) {
+            scope = middle;
+            found = generator.getCardinalities();
+          }
+          else if (middleVerdict == SolverVerdict.UNSAT)
+            low = middle + 1;
+          else
+            break;
+        }
+        satisfyingScope = scope;
+      }
+      cardinalities = found;
+    }
+    verdict = cardinalityVerdict;
+    if (logger != null)
+      logger.writeInfoMessage(this.getClass().toString(), "Verdict " + verdict + " found from the cardinalities" + (satisfyingScope > 0 ? " with scope " + satisfyingScope : "")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+    return true;
+  }
+
+  /**
+   * Solves the components of a decomposed model concurrently, each one on an
+   * engine of its own, and merges their solutions into a single instance.
+   * Every component must have a solution. For weak satisfiability a single
+   * one must satisfy the property, so the other ones are solved again
+   * without it.
+   */
+  private boolean solveComponents(int components, File cspCodeFile, List<File> importLibs, IProgressMonitor monitor) throws IOException, CoreException {
+    boolean weak = false;
+    if (modelProperties != null)
+      for (IModelProperty property : modelProperties)
+        if (property instanceof WeakSatisfiabilityModelProperty)
+          weak = true;
+    List<ST> solutions = new ArrayList<ST>(Collections.<ST>nCopies(components, null));
+    componentVerdicts = new ArrayList<SolverVerdict>(Collections.nCopies(components, SolverVerdict.UNKNOWN));
+    List<Integer> all = new ArrayList<Integer>();
+    for (int component = 0; component < components; component++)
+      all.add(component);
+    monitor.subTask("Solving the " + components + " components of the model"); //$NON-NLS-1$ //$NON-NLS-2$
+    solveComponents(all, true, cspCodeFile, importLibs, solutions);
+    if (weak && !componentVerdicts.contains(SolverVerdict.SAT))
+      verdict = componentVerdicts.contains(SolverVerdict.UNKNOWN) ? SolverVerdict.UNKNOWN : SolverVerdict.UNSAT;
+    else {
+      if (weak) {
+        List<Integer> unsolved = new ArrayList<Integer>();
+        for (int component = 0; component < components; component++)
+          if (componentVerdicts.get(component) != SolverVerdict.SAT)
+            unsolved.add(component);
+        if (!unsolved.isEmpty())
+          solveComponents(unsolved, false, cspCodeFile, importLibs, solutions);
+      }
+      if (componentVerdicts.contains(SolverVerdict.UNSAT))
+        verdict = SolverVerdict.UNSAT;
+      else
+        verdict = componentVerdicts.contains(SolverVerdict.UNKNOWN) ? SolverVerdict.UNKNOWN : SolverVerdict.SAT;
+    }
+    monitor.worked(2);
+    if (logger != null)
+      logger.writeInfoMessage(this.getClass().toString(), "Verdicts of the components: " + componentVerdicts); //$NON-NLS-1$
+    if (verdict != SolverVerdict.SAT)
+      return false;
+    monitor.subTask("Generating the instance"); //$NON-NLS-1$
+    PipelineMetrics.Measurement decortication = metrics.start(PipelinePhase.DECORTICATION);
+    builder.setSolution(solutions.get(0));
+    builder.decorticateResult();
+    for (int component = 1; component < components; component++)
+      builder.mergeSolution(solutions.get(component));
+    countInstances(decortication).stop();
+    generateInstance(getUnusedLocation(cspCodeFile.getAbsolutePath()));
+    deleteExternalFiles();
+    return true;
+  }
+
+  /**
+   * Writes the code of every component to a file of its own and then pulls
+   * the first solution of each one, their programs running meanwhile.
+   */
+  private void solveComponents(List<Integer> components, boolean withProperties, File cspCodeFile, List<File> importLibs, List<ST> solutions) throws IOException {
+    String cspCodeFilePath = cspCodeFile.getAbsolutePath();
+    String extension = cspCodeFilePath.substring(cspCodeFilePath.lastIndexOf('.'));
+    List<ICspSolutionIterator<ST>> iterators = new ArrayList<ICspSolutionIterator<ST>>();
+    try {
+      for (int component : components) {
+        File componentCodeFile = new File(cspCodeFilePath.substring(0, cspCodeFilePath.lastIndexOf('.')) + ".c" + component + extension); //$NON-NLS-1$
+        writeCspCode(componentCodeFile, false, component, withProperties);
+        iterators.add(solver.iterateSolutions(componentCodeFile, importLibs));
+      }
+      for (int i = 0; i < components.size(); i++) {
+        ICspSolutionIterator<ST> iterator = iterators.get(i);
+        if (iterator.hasNext()) {
+          solutions.set(components.get(i), iterator.next());
+          componentVerdicts.set(components.get(i), SolverVerdict.SAT);
+        }
+        else
+          componentVerdicts.set(components.get(i), iterator.getVerdict());
+        iterator.close();
+      }
+    }
+    finally {
+      for (ICspSolutionIterator<ST> iterator : iterators)
+        iterator.close();
+    }
+  }
+
+  private boolean solveWithScope(ICspSolverSession<ST> session, int scope, IProgressMonitor monitor) throws ProcessingException {
+    monitor.subTask("Solving the CSP with scope " + scope); //$NON-NLS-1$
+    session.setScope(scope);
+    return session.solve(null) && session.getSolution() != null;
+  }
+
+  @Override
+  public void setMaxScope(int maxScope) {
+    if (maxScope < 0)
+      throw new IllegalArgumentException("The maximum scope must not be negative"); //$NON-NLS-1$
+    this.maxScope = maxScope;
+  }
+
+  @Override
+  public int getMaxScope() {
+    return maxScope;
+  }
+
+  @Override
+  public int getSatisfyingScope() {
+    return satisfyingScope;
+  }
+
+  @Override
+  public void setCardinalityPreSolving(boolean cardinalityPreSolving) {
+    this.cardinalityPreSolving = cardinalityPreSolving;
+  }
+
+  @Override
+  public boolean isCardinalityPreSolving() {
+    return cardinalityPreSolving;
+  }
+
+  @Override
+  public SolverVerdict getCardinalityVerdict() {
+    return cardinalityVerdict;
+  }
+
+  @Override
+  public Map<String, Integer> getCardinalities() {
+    return cardinalities;
+  }
+
+  @Override
+  public List<SolverVerdict> getComponentVerdicts() {
+    return componentVerdicts;
+  }
+
+  @Override
+  public void setInstanceRequired(boolean instanceRequired) {
+    this.instanceRequired = instanceRequired;
+  }
+
+  @Override
+  public boolean isInstanceRequired() {
+    return instanceRequired;
+  }
+
+  /**
+   * Cancels the solver as soon as the monitor is cancelled.
+   */
+  private Timer watchCancellation(final IProgressMonitor monitor) {
+    Timer timer = new Timer("EMFtoCSP cancellation watcher", true); //$NON-NLS-1$
+    timer.schedule(new TimerTask() {
+      @Override
+      public void run() {
+        if (monitor.isCanceled()) {
+          solver.cancel();
+          cancel();
+        }
+      }
+    }, CANCELLATION_POLL_MILLIS, CANCELLATION_POLL_MILLIS);
+    return timer;
+  }
+
+  @Override
+  public SolverVerdict getVerdict() {
+    return verdict;
+  }
   
+  private void deleteExternalFiles() throws CoreException {
+		if (getConstraintsDocument() != null)
+		 if (getConstraintsDocument().getParent() instanceof IProject)
+			 if (((IProject)getConstraintsDocument().getParent()).getFullPath().segment(0).equals("external.files") )
+				 ((IProject)getConstraintsDocument().getParent()).delete(true,null);
+  }
+
+  public VerificationResultCache getResultCache() {
+    return resultCache;
+  }
+
+  /**
+   * Sets the cache solveModel looks the verdict up in before translating the
+   * model. When it is null (the default) every verification is solved.
+   */
+  public void setResultCache(VerificationResultCache resultCache) {
+    this.resultCache = resultCache;
+  }
+
+  /**
+   * Writes the model as the result cache digests it. Verifications of models
+   * which cannot be written are not cached.
+   */
+  protected void writeModel(OutputStream out) throws IOException {
+    throw new IOException("The model cannot be written"); //$NON-NLS-1$
+  }
+
+  /**
+   * Returns the key of the verification in the result cache, computed from
+   * its inputs before anything is generated, or null if the model cannot be
+   * written.
+   */
+  private String computeResultKey(List<File> importLibs) {
+    ByteArrayOutputStream model = new ByteArrayOutputStream();
+    try {
+      writeModel(model);
+      String solverName = solver.getClass().getName() + "/" + getCspCodeGenerator().getClass().getName(); //$NON-NLS-1$
+      return VerificationResultCache.computeKey(model.toByteArray(), getConstraintsFile(), modelElementsDomain, modelProperties, maxScope, importLibs, solverName);
+    }
+    catch (IOException e) {
+      if (logger != null)
+        logger.writeWarningMessage(this.getClass().toString(), "The verification is not looked up in the result cache: " + e.getMessage()); //$NON-NLS-1$
+      return null;
+    }
+  }
+
+  private void storeResult(String resultKey, boolean solved, File instanceFile) {
+    Object result = getSolverEvaluationResult();
+    File imageFile = solved && result instanceof File ? (File) result : null;
+    String imageExtension = null;
+    if (imageFile != null && imageFile.getName().lastIndexOf('.') >= 0)
+      imageExtension = imageFile.getName().substring(imageFile.getName().lastIndexOf('.'));
+    try {
+      resultCache.put(resultKey, new VerificationResultCache.Entry(solved, VerificationResultCache.readFile(instanceFile), VerificationResultCache.readFile(imageFile), imageExtension));
+    }
+    catch (IOException e) {
+      // the verdict is still valid, it will just be solved again next time
+      if (logger != null)
+        logger.writeWarningMessage(this.getClass().toString(), "Unable to store the verification result: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Writes the instance and the image of a cached result where solving the
+   * program would have written them.
+   */
+  private boolean restoreResult(VerificationResultCache.Entry cached, File cspCodeFile) throws IOException, CoreException {
+    if (!cached.isSatisfiable())
+      return false;
+    if (cached.getInstance() != null) {
+      String outputModelLocation = getUnusedLocation(cspCodeFile.getAbsolutePath());
+      VerificationResultCache.writeFile(new File(outputModelLocation + ".xmi"), cached.getInstance());
+    }
+    if (cached.getImage() != null) {
+      String imageExtension = cached.getImageExtension() != null ? cached.getImageExtension() : ""; //$NON-NLS-1$
+      evaluationResult = new File(cspCodeFile.getAbsolutePath() + imageExtension);
+      VerificationResultCache.writeFile(evaluationResult, cached.getImage());
+    }
+    deleteExternalFiles();
+    return true;
+  }
+
+  @Override
+  public List<PropertyVerificationResult> solveProperties(List<IModelProperty> properties, List<File> importLibs) throws ProcessingException {
+    File cspCodeFile = getCspCodeFile();
+    List<PropertyVerificationResult> results = new ArrayList<PropertyVerificationResult>();
+    try {
+      writeCspCode(cspCodeFile, true);
+    } catch (IOException e) {
+      throw new ProcessingException(e);
+    }
+    ICspSolverSession<ST> session = solver.openSession(cspCodeFile, importLibs);
+    try {
+      for (IModelProperty property : properties) {
+        List<String> targets = property.getTargetModelElementsNames();
+        if (targets == null || targets.isEmpty())
+          results.add(solveProperty(session, cspCodeFile, property, null, results.size()));
+        else
+          for (String target : targets)
+            results.add(solveProperty(session, cspCodeFile, property, target, results.size()));
+      }
+    }
+    finally {
+      session.close();
+    }
+    return results;
+  }
+
+  /**
+   * Runs one check of the batch. Every check writes its instance to a file
+   * of its own, numbered after the position of the check in the batch.
+   */
+  private PropertyVerificationResult solveProperty(ICspSolverSession<ST> session, File cspCodeFile, IModelProperty property, String target, int check) throws ProcessingException {
+    if (!session.solve(getCspCodeGenerator().getPropertyParameter(property, target)) || session.getSolution() == null)
+      return new PropertyVerificationResult(property, target, session.getVerdict() == SolverVerdict.UNKNOWN ? SolverVerdict.UNKNOWN : SolverVerdict.UNSAT, null, null);
+    builder.setSolution(session.getSolution());
+    builder.decorticateResult();
+    String cspCodeFilePath = cspCodeFile.getAbsolutePath();
+    String outputModelLocation = cspCodeFilePath.substring(0, cspCodeFilePath.lastIndexOf('.')) + ".p" + check; //$NON-NLS-1$
+    builder.generateInstance("file://" + outputModelLocation); //$NON-NLS-1$
+    return new PropertyVerificationResult(property, target, SolverVerdict.SAT, outputModelLocation + ".xmi", session.getResult()); //$NON-NLS-1$
+  }
+
+  /**
+   * The iterator holds the builder of the solver, so the solver must not be
+   * used for anything else until the iterator is closed.
+   */
+  @Override
+  public ICspSolutionIterator<File> iterateInstances(List<File> importLibs) throws ProcessingException {
+    File cspCodeFile = getCspCodeFile();
+    try {
+      writeCspCode(cspCodeFile, false);
+    } catch (IOException e) {
+      throw new ProcessingException(e);
+    }
+    String cspCodeFilePath = cspCodeFile.getAbsolutePath();
+    return new InstanceIterator(solver.iterateSolutions(cspCodeFile, importLibs), cspCodeFilePath.substring(0, cspCodeFilePath.lastIndexOf('.')));
+  }
+
+  /**
+   * Generates the instance of each solution as it is pulled, while the
+   * solver is already looking for the next one.
+   */
+  private class InstanceIterator implements ICspSolutionIterator<File> {
+    private final ICspSolutionIterator<ST> solutions;
+    private final String outputModelLocationPrefix;
+    private int instances = 0;
+
+    InstanceIterator(ICspSolutionIterator<ST> solutions, String outputModelLocationPrefix) {
+      this.solutions = solutions;
+      this.outputModelLocationPrefix = outputModelLocationPrefix;
+    }
+
+    @Override
+    public boolean hasNext() {
+      boolean hasNext = solutions.hasNext();
+      if (!hasNext)
+        verdict = solutions.getVerdict();
+      return hasNext;
+    }
+
+    @Override
+    public File next() {
+      ST solution = solutions.next();
+      String outputModelLocation = outputModelLocationPrefix + ".i" + instances++; //$NON-NLS-1$
+      builder.setSolution(solution);
+      builder.decorticateResult();
+      builder.generateInstance("file://" + outputModelLocation); //$NON-NLS-1$
+      return new File(outputModelLocation + ".xmi"); //$NON-NLS-1$
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public SolverVerdict getVerdict() {
+      return solutions.getVerdict();
+    }
+
+    @Override
+    public boolean isExhausted() {
+      return solutions.isExhausted();
+    }
+
+    @Override
+    public void close() {
+      solutions.close();
+      verdict = solutions.getVerdict();
+    }
+  }
+
+  private File getCspCodeFile() {
+    String cspCodeFileExtension = getCspCodeGenerator().getCspCodeFileExtension();
+    String cspCodeFileName = getModelFileName() + "." + cspCodeFileExtension; //$NON-NLS-1$
+    return new File(getResultDirectory(), cspCodeFileName);
+  }
+  
+  /**
+   * Streams the generated code to the file through a buffered channel
+   * writer, so the program is never held in memory as a whole.
+   */
+  private void writeCspCode(File cspCodeFile, boolean parameterized) throws IOException {
+    writeCspCode(cspCodeFile, parameterized, -1, false);
+  }
+
+  private void writeCspCode(File cspCodeFile, boolean parameterized, int component, boolean withProperties) throws IOException {
+    FileOutputStream stream = new FileOutputStream(cspCodeFile);
+    Writer out = new BufferedWriter(Channels.newWriter(stream.getChannel(), Charset.defaultCharset().name()), 64 * 1024);
+    try {
+      if (component >= 0)
+        getCspCodeGenerator().writeComponentCspCode(component, withProperties, out);
+      else if (parameterized)
+        getCspCodeGenerator().writeParameterizedCspCode(out);
+      else
+        getCspCodeGenerator().writeCspCode(out);
+      out.write(System.getProperty("line.separator")); //$NON-NLS-1$
+    }
+    finally {
+      out.close();
+    }
+  }
+
   private String getUnusedLocation(String absolutePath) {
 	String cutPath = absolutePath.substring(0, absolutePath.lastIndexOf('.'));
 	String resultLocation = "";
@@ -230,12 +884,38 @@ public abstract class ModelToCspSolver<R,ST> implements IModelToCspSolver<R,ST>
 
 @Override
   public Object getSolverEvaluationResult()  {
+    if (evaluationResult != null)
+      return evaluationResult;
+    if (cardinalities != null || componentVerdicts != null)
+      return null;
     return solver.getResult();
   }
   
+  @Override
+  public PipelineMetrics getMetrics() {
+    return metrics;
+  }
+
+  @Override
+  public void setMetricsListener(IPipelineMetricsListener metricsListener) {
+    this.metricsListener = metricsListener;
+  }
+
+  @Override
+  public void setMetricsWritten(boolean metricsWritten) {
+    this.metricsWritten = metricsWritten;
+  }
+
+  @Override
+  public boolean isMetricsWritten() {
+    return metricsWritten;
+  }
+
   @Override
   public void setLogger(ILogger logger) {
     this.logger = logger;
+    if (solver != null)
+      solver.setLogger(logger);
   }
 
   @Override
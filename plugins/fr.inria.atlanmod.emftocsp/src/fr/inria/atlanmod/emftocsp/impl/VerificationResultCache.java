@@ -0,0 +1,315 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import fr.inria.atlanmod.emftocsp.IModelProperty;
+import fr.inria.atlanmod.emftocsp.ProcessingException;
+
+/**
+ * Verdicts of previous verifications, together with the instance and the
+ * image they produced, addressed by a digest of the inputs of the
+ * verification: the model, the constraints, the domains, the properties, the
+ * scope, the libraries and the solver. The program is derived from them
+ * only, so two verifications with the same digest have the same result, and
+ * a verification found in the cache needs neither to be translated nor to be
+ * solved.
+ * <p>
+ * The most recently used results are kept in memory, and all of them on disk
+ * until the disk store exceeds its size, in which case the least recently
+ * used ones are removed.
+ */
+public class VerificationResultCache {
+  public static final int DEFAULT_MEMORY_ENTRIES = 64;
+  public static final long DEFAULT_DISK_BYTES = 256L * 1024 * 1024;
+
+  private static final String FILE_EXTENSION = ".result"; //$NON-NLS-1$
+
+  private final File dir;
+  private final long maxDiskBytes;
+  private final Map<String, Entry> memory;
+
+  public VerificationResultCache(File dir, final int maxMemoryEntries, long maxDiskBytes) {
+    this.dir = dir;
+    this.maxDiskBytes = maxDiskBytes;
+    memory = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, VerificationResultCache.Entry> eldest) {
+        return size() > maxMemoryEntries;
+      }
+    };
+  }
+
+  /**
+   * Returns a cache stored in the temporary directory of the system.
+   */
+  public static VerificationResultCache getDefaultCache() {
+    return new VerificationResultCache(new File(System.getProperty("java.io.tmpdir"), "emftocsp-results"), DEFAULT_MEMORY_ENTRIES, DEFAULT_DISK_BYTES); //$NON-NLS-1$ //$NON-NLS-2$
+  }
+
+  public File getDir() {
+    return dir;
+  }
+
+  /**
+   * Returns the key of the verification of the serialized model against the
+   * constraints of the file, which may be null, with the given domains,
+   * properties and scope, solved with the given libraries by the given
+   * solver. The domains are taken in the order of their keys.
+   */
+  public static String computeKey(byte[] model, File constraintsFile, Map<String, String> domains, List<IModelProperty> properties, int maxScope, List<File> libs, String solverName) throws IOException {
+    MessageDigest md;
+    try {
+      md = MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new ProcessingException(e);
+    }
+    update(md, solverName);
+    update(md, String.valueOf(maxScope));
+    update(md, String.valueOf(model.length));
+    md.update(model);
+    update(md, String.valueOf(constraintsFile != null));
+    if (constraintsFile != null)
+      update(md, constraintsFile);
+    update(md, String.valueOf(domains == null ? 0 : domains.size()));
+    if (domains != null)
+      for (Map.Entry<String, String> domain : new TreeMap<String, String>(domains).entrySet()) {
+        update(md, domain.getKey());
+        update(md, domain.getValue());
+      }
+    update(md, String.valueOf(properties == null ? 0 : properties.size()));
+    if (properties != null)
+      for (IModelProperty property : properties) {
+        update(md, property.getClass().getName());
+        List<String> targets = property.getTargetModelElementsNames();
+        update(md, String.valueOf(targets == null ? 0 : targets.size()));
+        if (targets != null)
+          for (String name : targets)
+            update(md, name);
+      }
+    if (libs != null) {
+      List<File> sortedLibs = new ArrayList<File>(libs);
+      Collections.sort(sortedLibs, new Comparator<File>() {
+        @Override
+        public int compare(File f1, File f2) {
+          return f1.getName().compareTo(f2.getName());
+        }
+      });
+      for (File lib : sortedLibs) {
+        update(md, lib.getName());
+        update(md, lib);
+      }
+    }
+    StringBuilder hex = new StringBuilder();
+    for (byte b : md.digest())
+      hex.append(String.format("%02x", b)); //$NON-NLS-1$
+    return hex.toString();
+  }
+
+  /**
+   * Returns the result stored under this key, or null if there is none.
+   */
+  public synchronized Entry get(String key) {
+    File file = new File(dir, key + FILE_EXTENSION);
+    Entry entry = memory.get(key);
+    if (entry != null) {
+      file.setLastModified(System.currentTimeMillis());
+      return entry;
+    }
+    if (!file.isFile())
+      return null;
+    try {
+      ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+      try {
+        entry = (Entry) in.readObject();
+      }
+      finally {
+        in.close();
+      }
+    }
+    catch (Exception e) {
+      file.delete();
+      return null;
+    }
+    file.setLastModified(System.currentTimeMillis());
+    memory.put(key, entry);
+    return entry;
+  }
+
+  public synchronized void put(String key, Entry entry) throws IOException {
+    memory.put(key, entry);
+    if (!dir.isDirectory() && !dir.mkdirs())
+      throw new IOException("Unable to create the directory " + dir.getAbsolutePath()); //$NON-NLS-1$
+    File file = new File(dir, key + FILE_EXTENSION);
+    File tmpFile = new File(dir, key + ".tmp"); //$NON-NLS-1$
+    ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+    try {
+      out.writeObject(entry);
+    }
+    finally {
+      out.close();
+    }
+    file.delete();
+    if (!tmpFile.renameTo(file))
+      throw new IOException("Unable to store " + file.getAbsolutePath()); //$NON-NLS-1$
+    evict();
+  }
+
+  /**
+   * Removes the least recently used results until the disk store fits in
+   * its size.
+   */
+  private void evict() {
+    File[] files = dir.listFiles();
+    if (files == null)
+      return;
+    long size = 0;
+    List<File> results = new ArrayList<File>();
+    for (File file : files)
+      if (file.getName().endsWith(FILE_EXTENSION)) {
+        results.add(file);
+        size += file.length();
+      }
+    if (size <= maxDiskBytes)
+      return;
+    File[] byAge = results.toArray(new File[results.size()]);
+    Arrays.sort(byAge, new Comparator<File>() {
+      @Override
+      public int compare(File f1, File f2) {
+        long m1 = f1.lastModified();
+        long m2 = f2.lastModified();
+        return m1 < m2 ? -1 : (m1 == m2 ? 0 : 1);
+      }
+    });
+    for (int i = 0; i < byAge.length && size > maxDiskBytes; i++) {
+      size -= byAge[i].length();
+      byAge[i].delete();
+      String name = byAge[i].getName();
+      memory.remove(name.substring(0, name.length() - FILE_EXTENSION.length()));
+    }
+  }
+
+  /**
+   * Digests the string with its length, so that consecutive strings cannot
+   * be mistaken for other ones.
+   */
+  private static void update(MessageDigest md, String s) throws IOException {
+    byte[] bytes = String.valueOf(s).getBytes("UTF-8"); //$NON-NLS-1$
+    md.update(String.valueOf(bytes.length).getBytes("UTF-8")); //$NON-NLS-1$
+    md.update((byte) ':');
+    md.update(bytes);
+  }
+
+  private static void update(MessageDigest md, File file) throws IOException {
+    update(md, String.valueOf(file.length()));
+    InputStream in = new FileInputStream(file);
+    try {
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = in.read(buffer)) != -1)
+        md.update(buffer, 0, read);
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Returns the contents of the file, or null if it does not exist.
+   */
+  static byte[] readFile(File file) throws IOException {
+    if (file == null || !file.isFile())
+      return null;
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) file.length());
+    InputStream in = new FileInputStream(file);
+    try {
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = in.read(buffer)) != -1)
+        bytes.write(buffer, 0, read);
+    }
+    finally {
+      in.close();
+    }
+    return bytes.toByteArray();
+  }
+
+  static void writeFile(File file, byte[] contents) throws IOException {
+    OutputStream out = new FileOutputStream(file);
+    try {
+      out.write(contents);
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  /**
+   * The verdict of a verification with the contents of the instance and of
+   * the image generated for it, if any.
+   */
+  public static class Entry implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final boolean satisfiable;
+    private final byte[] instance;
+    private final byte[] image;
+    private final String imageExtension;
+
+    public Entry(boolean satisfiable, byte[] instance, byte[] image, String imageExtension) {
+      this.satisfiable = satisfiable;
+      this.instance = instance;
+      this.image = image;
+      this.imageExtension = imageExtension;
+    }
+
+    public boolean isSatisfiable() {
+      return satisfiable;
+    }
+
+    public byte[] getInstance() {
+      return instance;
+    }
+
+    public byte[] getImage() {
+      return image;
+    }
+
+    public String getImageExtension() {
+      return imageExtension;
+    }
+  }
+}
@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp.benchmarks;
+
+/**
+ * An operation measured by the {@link BenchmarkRunner} over a synthetic
+ * model. Only run() is measured: the set up prepares what the operation
+ * reads, once per benchmark.
+ */
+public abstract class Benchmark {
+  private final String name;
+  private final SyntheticModel model;
+
+  protected Benchmark(String name, SyntheticModel model) {
+    this.name = name;
+    this.model = model;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public SyntheticModel getModel() {
+    return model;
+  }
+
+  public void setUp() throws Exception {
+  }
+
+  /**
+   * Runs the operation once. The result is consumed by the runner, so that
+   * the computation of the operation cannot be left out.
+   */
+  public abstract Object run() throws Exception;
+
+  public void tearDown() throws Exception {
+  }
+}
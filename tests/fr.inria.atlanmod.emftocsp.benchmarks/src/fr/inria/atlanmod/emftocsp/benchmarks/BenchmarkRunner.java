@@ -0,0 +1,383 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp.benchmarks;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import javax.management.Attribute;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import fr.inria.atlanmod.emftocsp.ProcessingException;
+import fr.inria.atlanmod.emftocsp.emftoecl.ModelToEcl;
+
+/**
+ * Measures the throughput and the allocations of the translation over
+ * synthetic models, the way JMH does it in throughput mode: each benchmark
+ * is run for a number of warm-up iterations, which are ignored, then for a
+ * number of measured iterations of a fixed duration. The throughput is the
+ * mean of the operations per second of the measured iterations, with the
+ * half-width of its 99.9% confidence interval. The allocations are the
+ * bytes the running thread allocated per operation, and per second, as
+ * reported by the thread MX bean of the platform MBean server on virtual
+ * machines telling them, such as HotSpot.
+ * <p>
+ * The benchmarks run in the calling thread, one after the other, so the
+ * figures of the parallel code generation only count the allocations of the
+ * thread waiting for the sections.
+ */
+public class BenchmarkRunner {
+  private static final String USAGE = "Usage: BenchmarkRunner [-classes <n,...>] [-associations <n,...>] [-depth <n,...>] [-invariants <n,...>] [-seed <n>] [-warmup <n>] [-iterations <n>] [-time <ms>] [-parallelism <n>] [-include <regex>] [-csv <file>]"; //$NON-NLS-1$
+  private static final double[] STUDENT_999 = { 636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587 };
+
+  private int warmupIterations = 3;
+  private int measurementIterations = 5;
+  private long iterationMillis = 1000;
+  private Pattern include = null;
+  private volatile int sink;
+
+  public int getWarmupIterations() {
+    return warmupIterations;
+  }
+
+  public void setWarmupIterations(int warmupIterations) {
+    if (warmupIterations < 0)
+      throw new IllegalArgumentException("The number of warm-up iterations must not be negative"); //$NON-NLS-1$
+    this.warmupIterations = warmupIterations;
+  }
+
+  public int getMeasurementIterations() {
+    return measurementIterations;
+  }
+
+  public void setMeasurementIterations(int measurementIterations) {
+    if (measurementIterations < 1)
+      throw new IllegalArgumentException("The number of measured iterations must be positive"); //$NON-NLS-1$
+    this.measurementIterations = measurementIterations;
+  }
+
+  public long getIterationMillis() {
+    return iterationMillis;
+  }
+
+  /**
+   * Sets the duration of an iteration. An iteration runs at least one
+   * operation, however long it takes.
+   */
+  public void setIterationMillis(long iterationMillis) {
+    if (iterationMillis < 1)
+      throw new IllegalArgumentException("The duration of an iteration must be positive"); //$NON-NLS-1$
+    this.iterationMillis = iterationMillis;
+  }
+
+  /**
+   * Only runs the benchmarks whose name matches the expression, or all of
+   * them if it is null.
+   */
+  public void setInclude(Pattern include) {
+    this.include = include;
+  }
+
+  /**
+   * Returns the benchmarks of the translation of the model: every section of
+   * ModelToEcl, the whole program, the OCL translation and the OCL parsing.
+   */
+  public static List<Benchmark> getBenchmarks(SyntheticModel model, int parallelism) {
+    List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+    for (ModelToEcl.Section section : ModelToEcl.Section.values())
+      benchmarks.add(new ModelToEclBenchmark(model, section));
+    benchmarks.add(new CspCodeBenchmark(model, parallelism));
+    benchmarks.add(new OclToEclBenchmark(model));
+    benchmarks.add(new OclParsingBenchmark(model));
+    return benchmarks;
+  }
+
+  /**
+   * Runs the benchmarks which are included and returns their results, in the
+   * same order. The progress is printed to the stream, if any.
+   */
+  public List<Result> runAll(List<Benchmark> benchmarks, PrintStream progress) throws Exception {
+    List<Result> results = new ArrayList<Result>();
+    for (Benchmark benchmark : benchmarks)
+      if (include == null || include.matcher(benchmark.getName()).find()) {
+        if (progress != null)
+          progress.println("# " + benchmark.getName() + " over " + benchmark.getModel().getName()); //$NON-NLS-1$ //$NON-NLS-2$
+        results.add(run(benchmark));
+      }
+    return results;
+  }
+
+  public Result run(Benchmark benchmark) throws Exception {
+    benchmark.setUp();
+    try {
+      for (int i = 0; i < warmupIterations; i++)
+        runIteration(benchmark);
+      double[] throughputs = new double[measurementIterations];
+      long operations = 0;
+      long nanos = 0;
+      long bytes = 0;
+      for (int i = 0; i < measurementIterations; i++) {
+        Iteration iteration = runIteration(benchmark);
+        throughputs[i] = iteration.operations * 1e9 / iteration.nanos;
+        operations += iteration.operations;
+        nanos += iteration.nanos;
+        bytes = bytes < 0 || iteration.bytes < 0 ? -1 : bytes + iteration.bytes;
+      }
+      return new Result(benchmark, throughputs, operations, nanos, bytes);
+    }
+    finally {
+      benchmark.tearDown();
+    }
+  }
+
+  private Iteration runIteration(Benchmark benchmark) throws Exception {
+    long deadline = System.nanoTime() + iterationMillis * 1000000L;
+    long allocated = getAllocatedBytes();
+    long start = System.nanoTime();
+    long operations = 0;
+    long now;
+    do {
+      Object result = benchmark.run();
+      sink += result == null ? 0 : System.identityHashCode(result);
+      operations++;
+      now = System.nanoTime();
+    } while (now < deadline);
+    long end = getAllocatedBytes();
+    return new Iteration(operations, now - start, allocated < 0 || end < 0 ? -1 : end - allocated);
+  }
+
+  /**
+   * Returns the bytes allocated so far by the current thread, or -1 if the
+   * virtual machine does not tell. The thread MX bean is reached through the
+   * platform MBean server, the interface telling the allocations not being
+   * part of the Java API.
+   */
+  private static long getAllocatedBytes() {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      ObjectName threads = new ObjectName(ManagementFactory.THREAD_MXBEAN_NAME);
+      if (!Boolean.TRUE.equals(server.getAttribute(threads, "ThreadAllocatedMemorySupported"))) //$NON-NLS-1$
+        return -1;
+      if (!Boolean.TRUE.equals(server.getAttribute(threads, "ThreadAllocatedMemoryEnabled"))) //$NON-NLS-1$
+        server.setAttribute(threads, new Attribute("ThreadAllocatedMemoryEnabled", Boolean.TRUE)); //$NON-NLS-1$
+      Object bytes = server.invoke(threads, "getThreadAllocatedBytes", new Object[] { Thread.currentThread().getId() }, new String[] { long.class.getName() }); //$NON-NLS-1$
+      return bytes instanceof Long ? (Long) bytes : -1;
+    }
+    catch (JMException e) {
+      return -1;
+    }
+  }
+
+  private static class Iteration {
+    final long operations;
+    final long nanos;
+    final long bytes;
+
+    Iteration(long operations, long nanos, long bytes) {
+      this.operations = operations;
+      this.nanos = nanos;
+      this.bytes = bytes;
+    }
+  }
+
+  /**
+   * The figures of a benchmark over its measured iterations.
+   */
+  public static class Result {
+    private final Benchmark benchmark;
+    private final double[] throughputs;
+    private final long operations;
+    private final long nanos;
+    private final long bytes;
+
+    Result(Benchmark benchmark, double[] throughputs, long operations, long nanos, long bytes) {
+      this.benchmark = benchmark;
+      this.throughputs = throughputs.clone();
+      this.operations = operations;
+      this.nanos = nanos;
+      this.bytes = bytes;
+    }
+
+    public Benchmark getBenchmark() {
+      return benchmark;
+    }
+
+    /**
+     * Returns the mean of the operations per second of the iterations.
+     */
+    public double getThroughput() {
+      double sum = 0;
+      for (double throughput : throughputs)
+        sum += throughput;
+      return sum / throughputs.length;
+    }
+
+    /**
+     * Returns the half-width of the 99.9% confidence interval of the
+     * throughput, or NaN with a single iteration.
+     */
+    public double getThroughputError() {
+      int n = throughputs.length;
+      if (n < 2)
+        return Double.NaN;
+      double mean = getThroughput();
+      double squares = 0;
+      for (double throughput : throughputs)
+        squares += (throughput - mean) * (throughput - mean);
+      double t = n - 1 <= STUDENT_999.length ? STUDENT_999[n - 2] : 3.291;
+      return t * Math.sqrt(squares / (n - 1)) / Math.sqrt(n);
+    }
+
+    public long getOperations() {
+      return operations;
+    }
+
+    /**
+     * Returns the bytes allocated per operation, or NaN if the virtual
+     * machine does not tell.
+     */
+    public double getBytesPerOperation() {
+      return bytes < 0 ? Double.NaN : (double) bytes / operations;
+    }
+
+    /**
+     * Returns the allocation rate, in megabytes per second, or NaN if the
+     * virtual machine does not tell.
+     */
+    public double getAllocationRate() {
+      return bytes < 0 ? Double.NaN : bytes * 1e9 / nanos / (1024 * 1024);
+    }
+
+    @Override
+    public String toString() {
+      SyntheticModel model = benchmark.getModel();
+      return String.format(Locale.ROOT, "%-50s %7d %7d %5d %7d %14.3f %12.3f %16.1f %10.1f", benchmark.getName(), model.getClasses(), model.getAssociations(), model.getInheritanceDepth(), model.getInvariants(), //$NON-NLS-1$
+          getThroughput(), getThroughputError(), getBytesPerOperation(), getAllocationRate());
+    }
+  }
+
+  public static String getHeader() {
+    return String.format(Locale.ROOT, "%-50s %7s %7s %5s %7s %14s %12s %16s %10s", "Benchmark", "classes", "assocs", "depth", "invs", "ops/s", "error", "B/op", "MB/s"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$ //$NON-NLS-10$
+  }
+
+  /**
+   * Writes the results as comma separated values, one line per benchmark.
+   */
+  public static void writeCsv(List<Result> results, File file) throws IOException {
+    PrintWriter out = new PrintWriter(new FileWriter(file));
+    try {
+      out.println("benchmark,classes,associations,depth,invariants,seed,operations,ops_per_s,ops_per_s_error,bytes_per_op,alloc_mb_per_s"); //$NON-NLS-1$
+      for (Result result : results) {
+        SyntheticModel model = result.getBenchmark().getModel();
+        out.println(String.format(Locale.ROOT, "%s,%d,%d,%d,%d,%d,%d,%.3f,%.3f,%.1f,%.1f", result.getBenchmark().getName(), model.getClasses(), model.getAssociations(), //$NON-NLS-1$
+            model.getInheritanceDepth(), model.getInvariants(), model.getSeed(), result.getOperations(), result.getThroughput(), result.getThroughputError(),
+            result.getBytesPerOperation(), result.getAllocationRate()));
+      }
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  private static int[] parseCounts(String counts) {
+    String[] values = counts.split(","); //$NON-NLS-1$
+    int[] result = new int[values.length];
+    for (int i = 0; i < values.length; i++)
+      result[i] = Integer.parseInt(values[i].trim());
+    return result;
+  }
+
+  /**
+   * Runs the benchmarks over every combination of the counts and prints one
+   * line per benchmark and model. Without associations or invariants, the
+   * models have as many associations as classes and an invariant per ten
+   * classes. Exits with 2 if the arguments are wrong.
+   */
+  public static void main(String[] args) {
+    int[] classes = { 50, 500, 5000 };
+    int[] associations = null;
+    int[] depths = { 3 };
+    int[] invariants = null;
+    long seed = 42;
+    int parallelism = 1;
+    File csvFile = null;
+    BenchmarkRunner runner = new BenchmarkRunner();
+    try {
+      for (int i = 0; i < args.length; i++) {
+        String arg = args[i];
+        if (arg.equals("-classes")) //$NON-NLS-1$
+          classes = parseCounts(args[++i]);
+        else if (arg.equals("-associations")) //$NON-NLS-1$
+          associations = parseCounts(args[++i]);
+        else if (arg.equals("-depth")) //$NON-NLS-1$
+          depths = parseCounts(args[++i]);
+        else if (arg.equals("-invariants")) //$NON-NLS-1$
+          invariants = parseCounts(args[++i]);
+        else if (arg.equals("-seed")) //$NON-NLS-1$
+          seed = Long.parseLong(args[++i]);
+        else if (arg.equals("-warmup")) //$NON-NLS-1$
+          runner.setWarmupIterations(Integer.parseInt(args[++i]));
+        else if (arg.equals("-iterations")) //$NON-NLS-1$
+          runner.setMeasurementIterations(Integer.parseInt(args[++i]));
+        else if (arg.equals("-time")) //$NON-NLS-1$
+          runner.setIterationMillis(Long.parseLong(args[++i]));
+        else if (arg.equals("-parallelism")) //$NON-NLS-1$
+          parallelism = Integer.parseInt(args[++i]);
+        else if (arg.equals("-include")) //$NON-NLS-1$
+          runner.setInclude(Pattern.compile(args[++i]));
+        else if (arg.equals("-csv")) //$NON-NLS-1$
+          csvFile = new File(args[++i]);
+        else
+          throw new IllegalArgumentException("Unknown option " + arg); //$NON-NLS-1$
+      }
+    }
+    catch (RuntimeException e) {
+      System.err.println(e.getMessage());
+      System.err.println(USAGE);
+      System.exit(2);
+    }
+
+    List<Result> results = new ArrayList<Result>();
+    WorkloadGenerator generator = new WorkloadGenerator();
+    try {
+      for (int c : classes)
+        for (int a : associations != null ? associations : new int[] { c })
+          for (int d : depths)
+            for (int inv : invariants != null ? invariants : new int[] { Math.max(1, c / 10) }) {
+              generator.setClasses(c);
+              generator.setAssociations(a);
+              generator.setInheritanceDepth(d);
+              generator.setInvariants(inv);
+              SyntheticModel model = generator.generate(seed);
+              results.addAll(runner.runAll(getBenchmarks(model, parallelism), System.out));
+            }
+      System.out.println();
+      System.out.println(getHeader());
+      for (Result result : results)
+        System.out.println(result);
+      if (csvFile != null)
+        writeCsv(results, csvFile);
+    }
+    catch (Exception e) {
+      throw new ProcessingException(e);
+    }
+  }
+}
@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp.benchmarks;
+
+import java.util.Collections;
+
+import org.eclipse.emf.ecore.resource.Resource;
+
+import com.parctechnologies.eclipse.CompoundTerm;
+
+import fr.inria.atlanmod.emftocsp.IModelProperty;
+import fr.inria.atlanmod.emftocsp.IModelToCspSolver;
+import fr.inria.atlanmod.emftocsp.emf.impl.EmfModelToCspSolverFactory;
+import fr.inria.atlanmod.emftocsp.emftoecl.EmfToEclCodeGenerator;
+import fr.inria.atlanmod.emftocsp.impl.FileLogger;
+import fr.inria.atlanmod.emftocsp.impl.StrongSatisfiabilityModelProperty;
+
+/**
+ * Generates the whole program of a model, for strong satisfiability: the
+ * sections of the model and the translation of its OCL document, which is
+ * parsed again by every run. The translation cache is off, so every run
+ * translates the model from scratch.
+ */
+public class CspCodeBenchmark extends Benchmark {
+  private final int parallelism;
+  private EmfToEclCodeGenerator codeGenerator;
+
+  public CspCodeBenchmark(SyntheticModel model, int parallelism) {
+    super(parallelism == 1 ? "EmfToEclCodeGenerator.getCspCode" : "EmfToEclCodeGenerator.getCspCode.parallel" + parallelism, model); //$NON-NLS-1$ //$NON-NLS-2$
+    this.parallelism = parallelism;
+  }
+
+  @Override
+  public void setUp() {
+    IModelToCspSolver<Resource, CompoundTerm> modelSolver = new EmfModelToCspSolverFactory().getModelToCspSolver();
+    modelSolver.setModelFileName(getModel().getName() + ".ecore"); //$NON-NLS-1$
+    modelSolver.setModel(getModel().getResource());
+    modelSolver.setLogger(new FileLogger());
+    modelSolver.setConstraintsFile(getModel().getOclFile());
+    modelSolver.setModelProperties(Collections.<IModelProperty>singletonList(new StrongSatisfiabilityModelProperty()));
+    modelSolver.setModelElementsDomain(getModel().getModelElementsDomain());
+    codeGenerator = new EmfToEclCodeGenerator(modelSolver);
+    codeGenerator.setIncremental(false);
+    codeGenerator.setParallelism(parallelism);
+    modelSolver.setCspCodeGenerator(codeGenerator);
+  }
+
+  @Override
+  public Object run() {
+    return codeGenerator.getCspCode();
+  }
+
+  @Override
+  public void tearDown() {
+    codeGenerator.dispose();
+  }
+}
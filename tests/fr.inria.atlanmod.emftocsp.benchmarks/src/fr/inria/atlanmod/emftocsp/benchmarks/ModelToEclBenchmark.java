@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp.benchmarks;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EOperation;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.resource.Resource;
+
+import fr.inria.atlanmod.emftocsp.ILogger;
+import fr.inria.atlanmod.emftocsp.IModelProperty;
+import fr.inria.atlanmod.emftocsp.IModelReader;
+import fr.inria.atlanmod.emftocsp.emf.impl.EAssociation;
+import fr.inria.atlanmod.emftocsp.emf.impl.IndexedEmfModelReader;
+import fr.inria.atlanmod.emftocsp.emftoecl.ModelToEcl;
+import fr.inria.atlanmod.emftocsp.impl.FileLogger;
+import fr.inria.atlanmod.emftocsp.impl.StrongSatisfiabilityModelProperty;
+
+/**
+ * Generates one section of the program of a model, for strong
+ * satisfiability, without any translation cache. The model is read through
+ * the indexed reader the solver uses.
+ */
+public class ModelToEclBenchmark extends Benchmark {
+  private final ModelToEcl.Section section;
+  private IndexedEmfModelReader modelReader;
+  private SectionTranslator translator;
+
+  public ModelToEclBenchmark(SyntheticModel model, ModelToEcl.Section section) {
+    super("ModelToEcl." + section.name(), model); //$NON-NLS-1$
+    this.section = section;
+  }
+
+  @Override
+  public void setUp() {
+    List<IModelProperty> properties = Collections.<IModelProperty>singletonList(new StrongSatisfiabilityModelProperty());
+    modelReader = new IndexedEmfModelReader(getModel().getResource());
+    translator = new SectionTranslator(modelReader, getModel().getModelElementsDomain(), properties, getModel().getInvariantNames(), new FileLogger());
+  }
+
+  @Override
+  public Object run() throws IOException {
+    StringBuilder s = new StringBuilder();
+    translator.genSection(section, s);
+    return s;
+  }
+
+  @Override
+  public void tearDown() {
+    modelReader.dispose();
+  }
+
+  /**
+   * Opens the generation of a single section.
+   */
+  private static class SectionTranslator extends ModelToEcl {
+    SectionTranslator(IModelReader<Resource, EPackage, EClass, EAssociation, EAttribute, EOperation> emfModelReader, Map<String, String> elementsDomain, List<IModelProperty> properties, List<String> constraintsNames, ILogger logger) {
+      super(emfModelReader, elementsDomain, properties, constraintsNames, logger);
+    }
+
+    @Override
+    protected void genSection(Section section, Appendable s) throws IOException {
+      super.genSection(section, s);
+    }
+  }
+}
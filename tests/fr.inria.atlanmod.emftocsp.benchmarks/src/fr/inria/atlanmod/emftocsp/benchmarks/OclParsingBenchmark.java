@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp.benchmarks;
+
+import fr.inria.atlanmod.emftocsp.emf.impl.EmfOclParser;
+
+/**
+ * Parses the constraints embedded in a model and the ones of its OCL
+ * document.
+ */
+public class OclParsingBenchmark extends Benchmark {
+  private EmfOclParser oclParser;
+
+  public OclParsingBenchmark(SyntheticModel model) {
+    super("EmfOclParser.parseModelConstraints", model); //$NON-NLS-1$
+  }
+
+  @Override
+  public void setUp() {
+    oclParser = new EmfOclParser();
+  }
+
+  @Override
+  public Object run() {
+    return oclParser.parseModelConstraints(getModel().getResource(), getModel().getOclFile());
+  }
+}
@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp.benchmarks;
+
+import java.util.List;
+
+import org.eclipse.ocl.ecore.Constraint;
+import org.eclipse.ocl.utilities.ExpressionInOCL;
+
+import fr.inria.atlanmod.emftocsp.ILogger;
+import fr.inria.atlanmod.emftocsp.emf.impl.EmfOclParser;
+import fr.inria.atlanmod.emftocsp.emftoecl.OclToEcl;
+import fr.inria.atlanmod.emftocsp.impl.FileLogger;
+
+/**
+ * Translates the OCL invariants of a model into ECLiPSe predicates, with a
+ * visitor of its own for each run. The invariants are parsed once.
+ */
+public class OclToEclBenchmark extends Benchmark {
+  private List<Constraint> constraints;
+  private ILogger logger;
+
+  public OclToEclBenchmark(SyntheticModel model) {
+    super("OclToEcl", model); //$NON-NLS-1$
+  }
+
+  @Override
+  public void setUp() {
+    constraints = new EmfOclParser().parseModelConstraints(getModel().getResource(), getModel().getOclFile());
+    logger = new FileLogger();
+  }
+
+  @SuppressWarnings("rawtypes")
+  @Override
+  public Object run() {
+    OclToEcl oclVisitor = OclToEcl.getInstance(logger);
+    StringBuilder s = new StringBuilder();
+    for (Constraint c : constraints) {
+      s.append(((ExpressionInOCL) c.getSpecification()).accept(oclVisitor));
+      s.append(oclVisitor.getConstraintFirstPredicate());
+    }
+    return s;
+  }
+}
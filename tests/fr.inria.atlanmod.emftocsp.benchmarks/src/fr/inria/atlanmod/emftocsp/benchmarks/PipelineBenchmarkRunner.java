@@ -0,0 +1,507 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+import fr.inria.atlanmod.emftocsp.PhaseMetrics;
+import fr.inria.atlanmod.emftocsp.PipelineMetrics;
+import fr.inria.atlanmod.emftocsp.ProcessingException;
+import fr.inria.atlanmod.emftocsp.SolverVerdict;
+import fr.inria.atlanmod.emftocsp.batch.BatchVerifier;
+import fr.inria.atlanmod.emftocsp.batch.VerificationJob;
+import fr.inria.atlanmod.emftocsp.eclipsecs.EclipseEnginePool;
+
+/**
+ * Measures whole verifications, phase by phase, over the models of the
+ * non-regression tests and synthetic models: the translation, the
+ * compilation, the solving, the generation of the instance and of its image.
+ * Every model is verified a number of times after a number of warm-up
+ * verifications, without incremental translation, and each phase gets the
+ * median and the 95th percentile of its wall times.
+ * <p>
+ * The medians are compared with those of a baseline written by a previous
+ * run. A phase regresses when its median exceeds the median of the baseline
+ * by more than the budget, in percent, and by more than the tolerance, in
+ * milliseconds, which keeps the short phases from failing on noise.
+ */
+public class PipelineBenchmarkRunner {
+  private static final String USAGE = "Usage: PipelineBenchmarkRunner [-data <tests data dir>] [-eclipse <dir>] [-graphviz <dir>] [-libs <dir>] [-synthetic <classes,...>] [-seed <n>] [-warmup <n>] [-runs <n>] [-timeout <ms>] [-include <regex>] [-out <dir>] [-csv <file>] [-json <file>] [-baseline <file>] [-budget <percent>] [-tolerance <ms>] [-update-baseline]"; //$NON-NLS-1$
+  private static final String TOTAL = "total"; //$NON-NLS-1$
+
+  private final BatchVerifier verifier;
+  private int warmupRuns = 1;
+  private int runs = 5;
+  private Pattern include = null;
+
+  public PipelineBenchmarkRunner(BatchVerifier verifier) {
+    this.verifier = verifier;
+  }
+
+  public int getWarmupRuns() {
+    return warmupRuns;
+  }
+
+  public void setWarmupRuns(int warmupRuns) {
+    if (warmupRuns < 0)
+      throw new IllegalArgumentException("The number of warm-up runs must not be negative"); //$NON-NLS-1$
+    this.warmupRuns = warmupRuns;
+  }
+
+  public int getRuns() {
+    return runs;
+  }
+
+  public void setRuns(int runs) {
+    if (runs < 1)
+      throw new IllegalArgumentException("The number of measured runs must be positive"); //$NON-NLS-1$
+    this.runs = runs;
+  }
+
+  /**
+   * Only the models whose name matches the pattern are verified, unless it
+   * is null.
+   */
+  public void setInclude(Pattern include) {
+    this.include = include;
+  }
+
+  /**
+   * A model to verify, with its expected satisfiability, or null when it is
+   * not known.
+   */
+  public static class Workload {
+    private final VerificationJob job;
+    private final Boolean satisfiable;
+
+    public Workload(VerificationJob job, Boolean satisfiable) {
+      this.job = job;
+      this.satisfiable = satisfiable;
+    }
+
+    public VerificationJob getJob() {
+      return job;
+    }
+
+    public Boolean isSatisfiable() {
+      return satisfiable;
+    }
+  }
+
+  /**
+   * Reads the models of the data directory of the tests, as listed by its
+   * corpus.txt. The tests bundle checks that the list is the one of
+   * TestModelGeneration, which cannot be read outside of a running platform.
+   */
+  public static List<Workload> readCorpus(File dataDirectory) throws IOException {
+    List<Workload> workloads = new ArrayList<Workload>();
+    BufferedReader in = new BufferedReader(new FileReader(new File(dataDirectory, "corpus.txt"))); //$NON-NLS-1$
+    try {
+      String line;
+      while ((line = in.readLine()) != null) {
+        line = line.trim();
+        if (line.length() == 0 || line.startsWith("#")) //$NON-NLS-1$
+          continue;
+        String[] entry = line.split("\\s+"); //$NON-NLS-1$
+        if (entry.length != 3)
+          throw new ProcessingException("Invalid corpus entry " + line); //$NON-NLS-1$
+        workloads.add(new Workload(new VerificationJob(new File(dataDirectory, entry[0]), new File(dataDirectory, entry[1])), Boolean.valueOf(entry[2])));
+      }
+    }
+    finally {
+      in.close();
+    }
+    return workloads;
+  }
+
+  /**
+   * Writes a synthetic Ecore model of each size to the directory, with as
+   * many associations as classes and an invariant per ten classes.
+   */
+  public static List<Workload> generateWorkloads(int[] classes, long seed, File directory) throws IOException {
+    List<Workload> workloads = new ArrayList<Workload>();
+    WorkloadGenerator generator = new WorkloadGenerator();
+    for (int c : classes) {
+      generator.setClasses(c);
+      generator.setAssociations(c);
+      generator.setInvariants(Math.max(1, c / 10));
+      SyntheticModel model = generator.generate(seed);
+      for (File modelFile : WorkloadGenerator.write(model, directory, Collections.singletonList("ecore"))) { //$NON-NLS-1$
+        File propertiesFile = new File(directory, "properties" + File.separator + "ecore" + File.separator + modelFile.getName() + ".properties"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        workloads.add(new Workload(new VerificationJob(modelFile, propertiesFile), null));
+      }
+    }
+    return workloads;
+  }
+
+  /**
+   * Verifies the models and returns the statistics of their phases, in the
+   * order of the models. A model which fails or gets another verdict than
+   * the expected one is reported in the failures and has no statistics.
+   */
+  public List<Statistics> runAll(List<Workload> workloads, List<String> failures, PrintStream out) {
+    List<Statistics> statistics = new ArrayList<Statistics>();
+    for (Workload workload : workloads) {
+      String name = workload.getJob().getName();
+      if (include != null && !include.matcher(name).find())
+        continue;
+      out.println("# " + name); //$NON-NLS-1$
+      try {
+        statistics.addAll(run(workload));
+      }
+      catch (RuntimeException e) {
+        failures.add(name + ": " + e.getMessage()); //$NON-NLS-1$
+      }
+    }
+    return statistics;
+  }
+
+  /**
+   * Verifies the model and returns the statistics of its phases, the total
+   * last.
+   */
+  public List<Statistics> run(Workload workload) {
+    VerificationJob job = workload.getJob();
+    for (int i = 0; i < warmupRuns; i++)
+      verify(workload);
+    Map<String, List<Long>> nanos = new LinkedHashMap<String, List<Long>>();
+    for (int i = 0; i < runs; i++) {
+      PipelineMetrics metrics = verify(workload);
+      for (PhaseMetrics phase : metrics.getPhases())
+        add(nanos, phase.getPhase().name().toLowerCase(), phase.getNanos());
+      add(nanos, TOTAL, metrics.getTotalNanos());
+    }
+    List<Statistics> statistics = new ArrayList<Statistics>();
+    for (Map.Entry<String, List<Long>> phase : nanos.entrySet())
+      statistics.add(new Statistics(job.getName(), phase.getKey(), phase.getValue()));
+    return statistics;
+  }
+
+  private PipelineMetrics verify(Workload workload) {
+    BatchVerifier.Result result = verifier.verify(workload.getJob());
+    if (workload.isSatisfiable() != null && workload.isSatisfiable() != (result.getVerdict() == SolverVerdict.SAT))
+      throw new ProcessingException("Expected " + (workload.isSatisfiable() ? "SAT" : "UNSAT") + " but got " + result.getVerdict()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+    return result.getMetrics();
+  }
+
+  private static void add(Map<String, List<Long>> nanos, String phase, long value) {
+    List<Long> values = nanos.get(phase);
+    if (values == null) {
+      values = new ArrayList<Long>();
+      nanos.put(phase, values);
+    }
+    values.add(value);
+  }
+
+  /**
+   * The wall times of a phase of a model over the measured runs. A phase
+   * which does not run every time, such as the generation of an image, only
+   * has the runs it took part in.
+   */
+  public static class Statistics {
+    private final String model;
+    private final String phase;
+    private final long[] nanos;
+
+    public Statistics(String model, String phase, List<Long> nanos) {
+      this.model = model;
+      this.phase = phase;
+      this.nanos = new long[nanos.size()];
+      for (int i = 0; i < this.nanos.length; i++)
+        this.nanos[i] = nanos.get(i);
+      Arrays.sort(this.nanos);
+    }
+
+    public String getModel() {
+      return model;
+    }
+
+    public String getPhase() {
+      return phase;
+    }
+
+    public int getRuns() {
+      return nanos.length;
+    }
+
+    public double getMedianMillis() {
+      int n = nanos.length;
+      return (n % 2 == 1 ? nanos[n / 2] : (nanos[n / 2 - 1] + nanos[n / 2]) / 2.0) / 1e6;
+    }
+
+    /**
+     * Returns the 95th percentile, by the nearest rank.
+     */
+    public double getP95Millis() {
+      return nanos[(int) Math.ceil(0.95 * nanos.length) - 1] / 1e6;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(Locale.ROOT, "%-50s %-24s %5d %12.3f %12.3f", model, phase, getRuns(), getMedianMillis(), getP95Millis()); //$NON-NLS-1$
+    }
+  }
+
+  public static String getHeader() {
+    return String.format(Locale.ROOT, "%-50s %-24s %5s %12s %12s", "Model", "Phase", "runs", "median ms", "p95 ms"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+  }
+
+  /**
+   * Writes the statistics as comma separated values, one line per phase of
+   * a model. The file can be read back as a baseline.
+   */
+  public static void writeCsv(List<Statistics> statistics, File file) throws IOException {
+    PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8")); //$NON-NLS-1$
+    try {
+      out.println("model,phase,runs,median_ms,p95_ms"); //$NON-NLS-1$
+      for (Statistics phase : statistics)
+        out.println(String.format(Locale.ROOT, "%s,%s,%d,%.3f,%.3f", phase.getModel(), phase.getPhase(), phase.getRuns(), phase.getMedianMillis(), phase.getP95Millis())); //$NON-NLS-1$
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  public static void writeJson(List<Statistics> statistics, File file) throws IOException {
+    PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8")); //$NON-NLS-1$
+    try {
+      out.print("["); //$NON-NLS-1$
+      String separator = "\n"; //$NON-NLS-1$
+      for (Statistics phase : statistics) {
+        out.print(separator);
+        out.print(String.format(Locale.ROOT, "  {\"model\": \"%s\", \"phase\": \"%s\", \"runs\": %d, \"medianMillis\": %.3f, \"p95Millis\": %.3f}", //$NON-NLS-1$
+            phase.getModel().replace("\\", "\\\\").replace("\"", "\\\""), phase.getPhase(), phase.getRuns(), phase.getMedianMillis(), phase.getP95Millis())); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+        separator = ",\n"; //$NON-NLS-1$
+      }
+      out.println("\n]"); //$NON-NLS-1$
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Reads the medians of a file written by {@link #writeCsv(List, File)},
+   * by model and phase.
+   */
+  public static Map<String, Double> readBaseline(File file) throws IOException {
+    Map<String, Double> medians = new HashMap<String, Double>();
+    BufferedReader in = new BufferedReader(new FileReader(file));
+    try {
+      String line = in.readLine();
+      while ((line = in.readLine()) != null) {
+        String[] values = line.split(","); //$NON-NLS-1$
+        if (values.length < 5)
+          continue;
+        try {
+          medians.put(values[0] + "/" + values[1], Double.valueOf(values[3])); //$NON-NLS-1$
+        }
+        catch (NumberFormatException e) {
+          throw new ProcessingException("Invalid baseline entry " + line + " in " + file.getPath()); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+      }
+    }
+    finally {
+      in.close();
+    }
+    return medians;
+  }
+
+  /**
+   * Returns a message for each phase whose median exceeds the one of the
+   * baseline by more than the budget, in percent, and by more than the
+   * tolerance, in milliseconds. Phases missing from the baseline are not
+   * compared.
+   */
+  public static List<String> findRegressions(List<Statistics> statistics, Map<String, Double> baseline, double budget, double toleranceMillis) {
+    List<String> regressions = new ArrayList<String>();
+    for (Statistics phase : statistics) {
+      Double reference = baseline.get(phase.getModel() + "/" + phase.getPhase()); //$NON-NLS-1$
+      if (reference == null)
+        continue;
+      double median = phase.getMedianMillis();
+      if (median > reference * (1 + budget / 100) && median - reference > toleranceMillis)
+        regressions.add(String.format(Locale.ROOT, "%s %s: %.3f ms against %.3f ms (+%.1f%%)", phase.getModel(), phase.getPhase(), median, reference, //$NON-NLS-1$
+            reference > 0 ? (median - reference) * 100 / reference : Double.POSITIVE_INFINITY));
+    }
+    return regressions;
+  }
+
+  private static int[] parseCounts(String counts) {
+    if (counts.trim().length() == 0)
+      return new int[0];
+    String[] values = counts.split(","); //$NON-NLS-1$
+    int[] result = new int[values.length];
+    for (int i = 0; i < values.length; i++)
+      result[i] = Integer.parseInt(values[i].trim());
+    return result;
+  }
+
+  /**
+   * Prints the statistics of every phase of every model, and exits with 1
+   * if a model failed or a phase regressed against the baseline, 2 if the
+   * arguments are wrong. The ECLiPSe and Graphviz installations default to
+   * the ones of the config.properties of the tests.
+   */
+  public static void main(String[] args) {
+    File dataDirectory = new File(".." + File.separator + "fr.inria.atlanmod.emftocsp.tests" + File.separator + "data"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    String eclipsePath = null;
+    String graphvizPath = null;
+    File libsDirectory = new File(".." + File.separator + ".." + File.separator + "plugins" + File.separator + "fr.inria.atlanmod.emftocsp.eclipsecs" + File.separator + "libs"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+    int[] synthetic = { 10 };
+    long seed = 42;
+    int warmupRuns = 1;
+    int runs = 5;
+    long timeout = 0;
+    Pattern include = null;
+    File outputDirectory = new File("pipeline-benchmarks"); //$NON-NLS-1$
+    File csvFile = null;
+    File jsonFile = null;
+    File baselineFile = null;
+    double budget = 20;
+    double toleranceMillis = 10;
+    boolean updateBaseline = false;
+    try {
+      for (int i = 0; i < args.length; i++) {
+        String arg = args[i];
+        if (arg.equals("-data")) //$NON-NLS-1$
+          dataDirectory = new File(args[++i]);
+        else if (arg.equals("-eclipse")) //$NON-NLS-1$
+          eclipsePath = args[++i];
+        else if (arg.equals("-graphviz")) //$NON-NLS-1$
+          graphvizPath = args[++i];
+        else if (arg.equals("-libs")) //$NON-NLS-1$
+          libsDirectory = new File(args[++i]);
+        else if (arg.equals("-synthetic")) //$NON-NLS-1$
+          synthetic = parseCounts(args[++i]);
+        else if (arg.equals("-seed")) //$NON-NLS-1$
+          seed = Long.parseLong(args[++i]);
+        else if (arg.equals("-warmup")) //$NON-NLS-1$
+          warmupRuns = Integer.parseInt(args[++i]);
+        else if (arg.equals("-runs")) //$NON-NLS-1$
+          runs = Integer.parseInt(args[++i]);
+        else if (arg.equals("-timeout")) //$NON-NLS-1$
+          timeout = Long.parseLong(args[++i]);
+        else if (arg.equals("-include")) //$NON-NLS-1$
+          include = Pattern.compile(args[++i]);
+        else if (arg.equals("-out")) //$NON-NLS-1$
+          outputDirectory = new File(args[++i]);
+        else if (arg.equals("-csv")) //$NON-NLS-1$
+          csvFile = new File(args[++i]);
+        else if (arg.equals("-json")) //$NON-NLS-1$
+          jsonFile = new File(args[++i]);
+        else if (arg.equals("-baseline")) //$NON-NLS-1$
+          baselineFile = new File(args[++i]);
+        else if (arg.equals("-budget")) //$NON-NLS-1$
+          budget = Double.parseDouble(args[++i]);
+        else if (arg.equals("-tolerance")) //$NON-NLS-1$
+          toleranceMillis = Double.parseDouble(args[++i]);
+        else if (arg.equals("-update-baseline")) //$NON-NLS-1$
+          updateBaseline = true;
+        else
+          throw new IllegalArgumentException("Unknown option " + arg); //$NON-NLS-1$
+      }
+      if (updateBaseline && baselineFile == null)
+        throw new IllegalArgumentException("-update-baseline needs a baseline file"); //$NON-NLS-1$
+      if (budget < 0 || toleranceMillis < 0)
+        throw new IllegalArgumentException("The budget and the tolerance must not be negative"); //$NON-NLS-1$
+      Properties config = new Properties();
+      InputStream in = new FileInputStream(new File(dataDirectory, "config.properties")); //$NON-NLS-1$
+      try {
+        config.load(in);
+      }
+      finally {
+        in.close();
+      }
+      if (eclipsePath == null)
+        eclipsePath = config.getProperty("eclipsePath"); //$NON-NLS-1$
+      if (graphvizPath == null)
+        graphvizPath = config.getProperty("graphvizPath", ""); //$NON-NLS-1$ //$NON-NLS-2$
+      if (eclipsePath == null)
+        throw new IllegalArgumentException("Missing ECLiPSe installation"); //$NON-NLS-1$
+    }
+    catch (IOException e) {
+      System.err.println(e.getMessage());
+      System.exit(2);
+    }
+    catch (RuntimeException e) {
+      System.err.println(e.getMessage());
+      System.err.println(USAGE);
+      System.exit(2);
+    }
+
+    List<String> failures = new ArrayList<String>();
+    List<String> regressions = new ArrayList<String>();
+    EclipseEnginePool enginePool = new EclipseEnginePool(eclipsePath, 1, EclipseEnginePool.DEFAULT_MAX_JOBS_PER_ENGINE);
+    try {
+      BatchVerifier verifier = new BatchVerifier(enginePool, graphvizPath, libsDirectory);
+      verifier.setOutputDirectory(new File(outputDirectory, "results")); //$NON-NLS-1$
+      verifier.setTimeout(timeout);
+      verifier.setIncremental(false);
+      PipelineBenchmarkRunner runner = new PipelineBenchmarkRunner(verifier);
+      runner.setWarmupRuns(warmupRuns);
+      runner.setRuns(runs);
+      runner.setInclude(include);
+
+      List<Workload> workloads = readCorpus(dataDirectory);
+      workloads.addAll(generateWorkloads(synthetic, seed, new File(outputDirectory, "workload"))); //$NON-NLS-1$
+      List<Statistics> statistics = runner.runAll(workloads, failures, System.out);
+
+      System.out.println();
+      System.out.println(getHeader());
+      for (Statistics phase : statistics)
+        System.out.println(phase);
+      if (csvFile != null)
+        writeCsv(statistics, csvFile);
+      if (jsonFile != null)
+        writeJson(statistics, jsonFile);
+      if (baselineFile != null) {
+        if (updateBaseline)
+          writeCsv(statistics, baselineFile);
+        else if (baselineFile.isFile())
+          regressions = findRegressions(statistics, readBaseline(baselineFile), budget, toleranceMillis);
+        else
+          System.err.println("No baseline " + baselineFile.getPath()); //$NON-NLS-1$
+      }
+    }
+    catch (IOException e) {
+      throw new ProcessingException(e);
+    }
+    finally {
+      enginePool.shutdown();
+    }
+
+    for (String failure : failures)
+      System.err.println("FAILED " + failure); //$NON-NLS-1$
+    for (String regression : regressions)
+      System.err.println("REGRESSION " + regression); //$NON-NLS-1$
+    System.exit(failures.isEmpty() && regressions.isEmpty() ? 0 : 1);
+  }
+}
@@ -0,0 +1,388 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp.benchmarks;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.emf.common.util.TreeIterator;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EcoreFactory;
+import org.eclipse.emf.ecore.EcorePackage;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.emf.ecore.xmi.XMLResource;
+import org.eclipse.emf.ecore.xmi.impl.EcoreResourceFactoryImpl;
+import org.eclipse.uml2.uml.AggregationKind;
+import org.eclipse.uml2.uml.Association;
+import org.eclipse.uml2.uml.Model;
+import org.eclipse.uml2.uml.PrimitiveType;
+import org.eclipse.uml2.uml.UMLFactory;
+import org.eclipse.uml2.uml.UMLPackage;
+import org.eclipse.uml2.uml.resource.UMLResource;
+import org.eclipse.uml2.uml.resources.util.UMLResourcesUtil;
+
+import fr.inria.atlanmod.emftocsp.ProcessingException;
+import fr.inria.atlanmod.emftocsp.benchmarks.WorkloadGenerator.AttributeType;
+
+/**
+ * A model generated by a {@link WorkloadGenerator}: its classes,
+ * associations and OCL invariants, which are turned into an Ecore or a UML
+ * model, an OCL document and a properties file in the format written by the
+ * validation wizard.
+ */
+public class SyntheticModel {
+  static final String PACKAGE_NAME = "synthetic"; //$NON-NLS-1$
+
+  private final String name;
+  private final long seed;
+  private final int inheritanceDepth;
+  private final List<SyntheticClass> classes;
+  private final List<SyntheticAssociation> associations;
+  private final Map<String, String> invariants;
+  private Resource resource;
+  private File oclFile;
+
+  SyntheticModel(String name, long seed, int inheritanceDepth, List<SyntheticClass> classes, List<SyntheticAssociation> associations, Map<String, String> invariants) {
+    this.name = name;
+    this.seed = seed;
+    this.inheritanceDepth = inheritanceDepth;
+    this.classes = classes;
+    this.associations = associations;
+    this.invariants = invariants;
+  }
+
+  /**
+   * Returns the name of the model, which tells its counts and its seed.
+   */
+  public String getName() {
+    return name;
+  }
+
+  public int getClasses() {
+    return classes.size();
+  }
+
+  public int getAssociations() {
+    return associations.size();
+  }
+
+  public int getInheritanceDepth() {
+    return inheritanceDepth;
+  }
+
+  public int getInvariants() {
+    return invariants.size();
+  }
+
+  public long getSeed() {
+    return seed;
+  }
+
+  public List<String> getInvariantNames() {
+    return new ArrayList<String>(invariants.keySet());
+  }
+
+  /**
+   * Returns the OCL document of the invariants, whose context is the package
+   * of the model.
+   */
+  public String getOclDocument() {
+    StringBuilder s = new StringBuilder();
+    s.append("package ").append(PACKAGE_NAME).append("\n\n"); //$NON-NLS-1$ //$NON-NLS-2$
+    for (Map.Entry<String, String> invariant : invariants.entrySet()) {
+      s.append(invariant.getValue());
+      s.append("\n\n"); //$NON-NLS-1$
+    }
+    s.append("endpackage\n"); //$NON-NLS-1$
+    return s.toString();
+  }
+
+  /**
+   * Returns the Ecore model, in a resource of its own whose package is
+   * registered in its resource set only.
+   */
+  public synchronized Resource getResource() {
+    if (resource == null) {
+      EPackage p = createEPackage();
+      ResourceSet rSet = new ResourceSetImpl();
+      rSet.getPackageRegistry().put(p.getNsURI(), p);
+      resource = rSet.createResource(URI.createURI(p.getNsURI() + "/" + name + ".ecore")); //$NON-NLS-1$ //$NON-NLS-2$
+      resource.getContents().add(p);
+    }
+    return resource;
+  }
+
+  /**
+   * Returns the OCL document written to a temporary file, which is deleted
+   * when the virtual machine exits.
+   */
+  public synchronized File getOclFile() {
+    if (oclFile != null)
+      return oclFile;
+    try {
+      oclFile = File.createTempFile(name, ".ocl"); //$NON-NLS-1$
+      oclFile.deleteOnExit();
+      writeOcl(oclFile);
+    }
+    catch (IOException e) {
+      throw new ProcessingException(e);
+    }
+    return oclFile;
+  }
+
+  /**
+   * Returns the domains the validation wizard gives by default to the
+   * classes, attributes and associations of the model, in the order of the
+   * model.
+   */
+  public Map<String, String> getModelElementsDomain() {
+    Map<String, String> domain = new LinkedHashMap<String, String>();
+    for (SyntheticClass c : classes) {
+      domain.put(PACKAGE_NAME + "." + c.name, "0..5"); //$NON-NLS-1$ //$NON-NLS-2$
+      for (SyntheticAttribute at : c.attributes) {
+        String atKey = c.name + "." + at.name; //$NON-NLS-1$
+        switch (at.type) {
+        case BOOLEAN:
+          domain.put(atKey, "0..1"); //$NON-NLS-1$
+          break;
+        case STRING:
+          domain.put(atKey + ".length", "0..10"); //$NON-NLS-1$ //$NON-NLS-2$
+          domain.put(atKey + ".domain", ""); //$NON-NLS-1$ //$NON-NLS-2$
+          break;
+        default:
+          domain.put(atKey, "[1,10,20]"); //$NON-NLS-1$
+        }
+      }
+    }
+    for (SyntheticAssociation as : associations)
+      domain.put(as.getName(), "0..10"); //$NON-NLS-1$
+    return domain;
+  }
+
+  public void writeOcl(File file) throws IOException {
+    Writer out = new FileWriter(file);
+    try {
+      out.write(getOclDocument());
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Writes the properties file of the verification of the model, for strong
+   * satisfiability, with its OCL document next to the model.
+   */
+  public void writeProperties(File file, String oclFileName) throws IOException {
+    PrintWriter out = new PrintWriter(new FileWriter(file));
+    try {
+      out.println("## OCL file selection"); //$NON-NLS-1$
+      out.println("oclFile = " + (oclFileName == null ? "" : oclFileName)); //$NON-NLS-1$ //$NON-NLS-2$
+      out.println();
+      out.println("## Properties selection"); //$NON-NLS-1$
+      out.println("### Model properties"); //$NON-NLS-1$
+      out.println("strongSatisfiability = true"); //$NON-NLS-1$
+      out.println("weakSatisfiability = false"); //$NON-NLS-1$
+      out.println("liveliness = false"); //$NON-NLS-1$
+      out.println("livelinessClass ="); //$NON-NLS-1$
+      out.println();
+      out.println("### Constraints properties"); //$NON-NLS-1$
+      out.println("lackOfConstraintsSubsumptions = false"); //$NON-NLS-1$
+      out.println("lackOfConstraintsSubsumptions1 ="); //$NON-NLS-1$
+      out.println("lackOfConstraintsSubsumptions2 ="); //$NON-NLS-1$
+      out.println();
+      out.println("lackOfConstraintsRedundancies = false"); //$NON-NLS-1$
+      out.println("lackOfConstraintsRedundancies1 ="); //$NON-NLS-1$
+      out.println("lackOfConstraintsRedundancies2 ="); //$NON-NLS-1$
+      out.println();
+      out.println("## Domains and cardinalities"); //$NON-NLS-1$
+      for (Map.Entry<String, String> domain : getModelElementsDomain().entrySet())
+        out.println(domain.getKey() + " = " + domain.getValue()); //$NON-NLS-1$
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  public void writeEcore(File file) throws IOException {
+    ResourceSet rSet = new ResourceSetImpl();
+    rSet.getResourceFactoryRegistry().getExtensionToFactoryMap().put("ecore", new EcoreResourceFactoryImpl()); //$NON-NLS-1$
+    Resource r = rSet.createResource(URI.createFileURI(file.getAbsolutePath()));
+    r.getContents().add(createEPackage());
+    r.save(null);
+  }
+
+  /**
+   * Writes the model as a UML model typed by the UML primitive types. The
+   * identifiers of the elements are numbered in the order of the model, so
+   * that the same model is always written the same way.
+   */
+  public void writeUml(File file) throws IOException {
+    ResourceSet rSet = new ResourceSetImpl();
+    UMLResourcesUtil.init(rSet);
+    rSet.getPackageRegistry().put(UMLPackage.eNS_URI, UMLPackage.eINSTANCE);
+    rSet.getResourceFactoryRegistry().getExtensionToFactoryMap().put(UMLResource.FILE_EXTENSION, UMLResource.Factory.INSTANCE);
+    Resource library = rSet.getResource(URI.createURI(UMLResource.UML_PRIMITIVE_TYPES_LIBRARY_URI), true);
+    org.eclipse.uml2.uml.Package types = (org.eclipse.uml2.uml.Package) EcoreUtil.getObjectByType(library.getContents(), UMLPackage.Literals.PACKAGE);
+
+    Model model = UMLFactory.eINSTANCE.createModel();
+    model.setName(PACKAGE_NAME);
+    model.setURI(getNsUri());
+    List<org.eclipse.uml2.uml.Class> umlClasses = new ArrayList<org.eclipse.uml2.uml.Class>();
+    for (SyntheticClass c : classes) {
+      org.eclipse.uml2.uml.Class umlClass = model.createOwnedClass(c.name, false);
+      if (c.superClass >= 0)
+        umlClass.createGeneralization(umlClasses.get(c.superClass));
+      for (SyntheticAttribute at : c.attributes)
+        umlClass.createOwnedAttribute(at.name, (PrimitiveType) types.getOwnedType(at.type.getUmlTypeName()), 1, 1);
+      umlClasses.add(umlClass);
+    }
+    for (SyntheticAssociation as : associations) {
+      Association association = umlClasses.get(as.source).createAssociation(
+          true, as.containment ? AggregationKind.COMPOSITE_LITERAL : AggregationKind.NONE_LITERAL, as.dstName, as.dstLower, as.dstUpper, umlClasses.get(as.target),
+          true, AggregationKind.NONE_LITERAL, as.srcName, as.srcLower, as.srcUpper);
+      association.setName(as.getName());
+    }
+
+    Resource r = rSet.createResource(URI.createFileURI(file.getAbsolutePath()));
+    r.getContents().add(model);
+    int id = 0;
+    for (TreeIterator<EObject> it = r.getAllContents(); it.hasNext();)
+      ((XMLResource) r).setID(it.next(), "_" + name + "-" + id++); //$NON-NLS-1$ //$NON-NLS-2$
+    r.save(null);
+  }
+
+  private String getNsUri() {
+    return "http://www.inria.fr/atlanmod/emftocsp/" + name; //$NON-NLS-1$
+  }
+
+  private EPackage createEPackage() {
+    EcoreFactory factory = EcoreFactory.eINSTANCE;
+    EPackage p = factory.createEPackage();
+    p.setName(PACKAGE_NAME);
+    p.setNsPrefix(PACKAGE_NAME);
+    p.setNsURI(getNsUri());
+    List<EClass> eClasses = new ArrayList<EClass>();
+    for (SyntheticClass c : classes) {
+      EClass eClass = factory.createEClass();
+      eClass.setName(c.name);
+      if (c.superClass >= 0)
+        eClass.getESuperTypes().add(eClasses.get(c.superClass));
+      for (SyntheticAttribute at : c.attributes) {
+        EAttribute eAttribute = factory.createEAttribute();
+        eAttribute.setName(at.name);
+        eAttribute.setEType(at.type == AttributeType.BOOLEAN ? EcorePackage.Literals.EBOOLEAN : at.type == AttributeType.STRING ? EcorePackage.Literals.ESTRING : EcorePackage.Literals.EINT);
+        eAttribute.setLowerBound(1);
+        eClass.getEStructuralFeatures().add(eAttribute);
+      }
+      eClasses.add(eClass);
+      p.getEClassifiers().add(eClass);
+    }
+    for (SyntheticAssociation as : associations) {
+      EReference dst = factory.createEReference();
+      dst.setName(as.dstName);
+      dst.setEType(eClasses.get(as.target));
+      dst.setLowerBound(as.dstLower);
+      dst.setUpperBound(as.dstUpper);
+      dst.setContainment(as.containment);
+      EReference src = factory.createEReference();
+      src.setName(as.srcName);
+      src.setEType(eClasses.get(as.source));
+      src.setLowerBound(as.srcLower);
+      src.setUpperBound(as.srcUpper);
+      dst.setEOpposite(src);
+      src.setEOpposite(dst);
+      eClasses.get(as.source).getEStructuralFeatures().add(dst);
+      eClasses.get(as.target).getEStructuralFeatures().add(src);
+    }
+    return p;
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+
+  static class SyntheticClass {
+    final String name;
+    final int superClass;
+    final List<SyntheticAttribute> attributes;
+
+    SyntheticClass(String name, int superClass, List<SyntheticAttribute> attributes) {
+      this.name = name;
+      this.superClass = superClass;
+      this.attributes = Collections.unmodifiableList(attributes);
+    }
+  }
+
+  static class SyntheticAttribute {
+    final String name;
+    final AttributeType type;
+
+    SyntheticAttribute(String name, AttributeType type) {
+      this.name = name;
+      this.type = type;
+    }
+  }
+
+  /**
+   * An association whose source navigates to its target through the dst
+   * role, and back through the src role. A containment association makes
+   * its source the container of its target.
+   */
+  static class SyntheticAssociation {
+    final int source;
+    final int target;
+    final String dstName;
+    final String srcName;
+    final int dstLower;
+    final int dstUpper;
+    final int srcLower;
+    final int srcUpper;
+    final boolean containment;
+
+    SyntheticAssociation(int source, int target, String dstName, int dstLower, int dstUpper, String srcName, int srcLower, int srcUpper, boolean containment) {
+      this.source = source;
+      this.target = target;
+      this.dstName = dstName;
+      this.dstLower = dstLower;
+      this.dstUpper = dstUpper;
+      this.srcName = srcName;
+      this.srcLower = srcLower;
+      this.srcUpper = srcUpper;
+      this.containment = containment;
+    }
+
+    /**
+     * Returns the name EmfModelReader gives to the association: its role
+     * names, in alphabetical order.
+     */
+    String getName() {
+      return dstName.compareToIgnoreCase(srcName) < 0 ? dstName + "_" + srcName : srcName + "_" + dstName; //$NON-NLS-1$ //$NON-NLS-2$
+    }
+  }
+}
@@ -0,0 +1,412 @@
+/*******************************************************************************
+ * Copyright (c) 2013 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import fr.inria.atlanmod.emftocsp.ProcessingException;
+import fr.inria.atlanmod.emftocsp.benchmarks.SyntheticModel.SyntheticAssociation;
+import fr.inria.atlanmod.emftocsp.benchmarks.SyntheticModel.SyntheticAttribute;
+import fr.inria.atlanmod.emftocsp.benchmarks.SyntheticModel.SyntheticClass;
+
+/**
+ * Generates synthetic models from a seed: the same settings and the same
+ * seed always give the same model, written the same way.
+ * <p>
+ * The classes form generalization chains of the given depth. Every class
+ * declares its own attributes, whose types go round the attribute types.
+ * The associations link classes drawn at random, their ends getting
+ * multiplicities drawn from the given ones. The first associations are
+ * containments, from a class to a later class which has no container yet,
+ * so that they form trees. The invariants go round the invariant shapes,
+ * over the instances of a class drawn at random.
+ */
+public class WorkloadGenerator {
+  private static final String USAGE = "Usage: WorkloadGenerator [-classes <n>] [-associations <n> | -density <d>] [-multiplicities <l..u,...>] [-depth <n>] [-containments <n>] [-attributes <n>] [-types <type,...>] [-invariants <n>] [-shapes <shape,...>] [-seed <n>] [-formats ecore,uml] [-out <dir>]"; //$NON-NLS-1$
+
+  public enum AttributeType {
+    INTEGER("Integer"), BOOLEAN("Boolean"), STRING("String"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+    private final String umlTypeName;
+
+    private AttributeType(String umlTypeName) {
+      this.umlTypeName = umlTypeName;
+    }
+
+    /**
+     * Returns the name of the type in the UML primitive types library.
+     */
+    public String getUmlTypeName() {
+      return umlTypeName;
+    }
+  }
+
+  /**
+   * The shapes of the invariants: a forAll or an exists over the instances
+   * of the class, the size of a select over them, the size of a navigation
+   * from each of them, and an arithmetic comparison of their integer
+   * attributes.
+   */
+  public enum InvariantShape {
+    FOR_ALL("forAll"), EXISTS("exists"), SELECT("select"), SIZE("size"), ARITHMETIC("arith"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+
+    private final String term;
+
+    private InvariantShape(String term) {
+      this.term = term;
+    }
+
+    public String getTerm() {
+      return term;
+    }
+
+    public static InvariantShape parse(String term) {
+      for (InvariantShape shape : values())
+        if (shape.term.equalsIgnoreCase(term) || shape.name().equalsIgnoreCase(term))
+          return shape;
+      throw new IllegalArgumentException("Unknown invariant shape " + term); //$NON-NLS-1$
+    }
+  }
+
+  private int classes = 50;
+  private int associations = 50;
+  private List<int[]> multiplicities = Arrays.asList(new int[] { 0, 1 }, new int[] { 0, -1 });
+  private int inheritanceDepth = 3;
+  private int containments = 0;
+  private int attributes = 2;
+  private List<AttributeType> attributeTypes = Arrays.asList(AttributeType.INTEGER, AttributeType.BOOLEAN);
+  private int invariants = 5;
+  private List<InvariantShape> invariantShapes = Arrays.asList(InvariantShape.values());
+
+  public int getClasses() {
+    return classes;
+  }
+
+  public void setClasses(int classes) {
+    if (classes < 1)
+      throw new IllegalArgumentException("The number of classes must be positive"); //$NON-NLS-1$
+    this.classes = classes;
+  }
+
+  public int getAssociations() {
+    return associations;
+  }
+
+  public void setAssociations(int associations) {
+    if (associations < 0)
+      throw new IllegalArgumentException("The number of associations must not be negative"); //$NON-NLS-1$
+    this.associations = associations;
+  }
+
+  /**
+   * Sets the number of associations per class.
+   */
+  public void setAssociationDensity(double density) {
+    setAssociations((int) Math.round(density * classes));
+  }
+
+  /**
+   * Sets the multiplicities the ends of the associations are drawn from, such
+   * as 0..1, 1 or 0..*. The container end of a containment is 0..1 whatever
+   * the multiplicities.
+   */
+  public void setMultiplicities(List<String> multiplicities) {
+    if (multiplicities.isEmpty())
+      throw new IllegalArgumentException("At least one multiplicity is needed"); //$NON-NLS-1$
+    List<int[]> bounds = new ArrayList<int[]>();
+    for (String multiplicity : multiplicities)
+      bounds.add(parseMultiplicity(multiplicity.trim()));
+    this.multiplicities = bounds;
+  }
+
+  private static int[] parseMultiplicity(String multiplicity) {
+    String[] bounds = multiplicity.split("\\.\\."); //$NON-NLS-1$
+    try {
+      int lower = Integer.parseInt(bounds[0]);
+      int upper = bounds.length == 1 ? lower : bounds[1].equals("*") ? -1 : Integer.parseInt(bounds[1]); //$NON-NLS-1$
+      if (bounds.length > 2 || lower < 0 || (upper != -1 && upper < Math.max(lower, 1)))
+        throw new IllegalArgumentException("Invalid multiplicity " + multiplicity); //$NON-NLS-1$
+      return new int[] { lower, upper };
+    }
+    catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid multiplicity " + multiplicity); //$NON-NLS-1$
+    }
+  }
+
+  public int getInheritanceDepth() {
+    return inheritanceDepth;
+  }
+
+  /**
+   * Sets the number of generalizations between the root and the leaf of the
+   * generalization chains. 0 means no generalizations.
+   */
+  public void setInheritanceDepth(int inheritanceDepth) {
+    if (inheritanceDepth < 0)
+      throw new IllegalArgumentException("The inheritance depth must not be negative"); //$NON-NLS-1$
+    this.inheritanceDepth = inheritanceDepth;
+  }
+
+  public int getContainments() {
+    return containments;
+  }
+
+  /**
+   * Sets how many of the associations are containments. There are at most
+   * as many containments as classes but one.
+   */
+  public void setContainments(int containments) {
+    if (containments < 0)
+      throw new IllegalArgumentException("The number of containments must not be negative"); //$NON-NLS-1$
+    this.containments = containments;
+  }
+
+  public int getAttributes() {
+    return attributes;
+  }
+
+  /**
+   * Sets the number of attributes each class declares.
+   */
+  public void setAttributes(int attributes) {
+    if (attributes < 0)
+      throw new IllegalArgumentException("The number of attributes must not be negative"); //$NON-NLS-1$
+    this.attributes = attributes;
+  }
+
+  public void setAttributeTypes(List<AttributeType> attributeTypes) {
+    if (attributeTypes.isEmpty())
+      throw new IllegalArgumentException("At least one attribute type is needed"); //$NON-NLS-1$
+    this.attributeTypes = new ArrayList<AttributeType>(attributeTypes);
+  }
+
+  public int getInvariants() {
+    return invariants;
+  }
+
+  public void setInvariants(int invariants) {
+    if (invariants < 0)
+      throw new IllegalArgumentException("The number of invariants must not be negative"); //$NON-NLS-1$
+    this.invariants = invariants;
+  }
+
+  public void setInvariantShapes(List<InvariantShape> invariantShapes) {
+    if (invariantShapes.isEmpty())
+      throw new IllegalArgumentException("At least one invariant shape is needed"); //$NON-NLS-1$
+    this.invariantShapes = new ArrayList<InvariantShape>(invariantShapes);
+  }
+
+  public SyntheticModel generate(long seed) {
+    Random random = new Random(seed);
+    String name = SyntheticModel.PACKAGE_NAME + "-" + classes + "c-" + associations + "a-" + inheritanceDepth + "d-" + invariants + "i-" + seed; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+
+    List<SyntheticClass> cList = new ArrayList<SyntheticClass>();
+    for (int i = 0; i < classes; i++) {
+      List<SyntheticAttribute> atList = new ArrayList<SyntheticAttribute>();
+      for (int k = 0; k < attributes; k++)
+        atList.add(new SyntheticAttribute("a" + i + "_" + k, attributeTypes.get((i + k) % attributeTypes.size()))); //$NON-NLS-1$ //$NON-NLS-2$
+      cList.add(new SyntheticClass("C" + i, i % (inheritanceDepth + 1) != 0 ? i - 1 : -1, atList)); //$NON-NLS-1$
+    }
+
+    /* The roles of the k-th association are dstk, on its source, and srck,
+     * on its target, so that the association is named dstk_srck. */
+    List<SyntheticAssociation> asList = new ArrayList<SyntheticAssociation>();
+    List<Integer> uncontained = new ArrayList<Integer>();
+    for (int i = 1; i < classes; i++)
+      uncontained.add(i);
+    for (int k = 0; k < associations; k++) {
+      int[] dst = multiplicities.get(random.nextInt(multiplicities.size()));
+      if (k < containments && !uncontained.isEmpty()) {
+        int target = uncontained.remove(random.nextInt(uncontained.size()));
+        int source = random.nextInt(target);
+        asList.add(new SyntheticAssociation(source, target, "dst" + k, dst[0], dst[1], "src" + k, 0, 1, true)); //$NON-NLS-1$ //$NON-NLS-2$
+      }
+      else {
+        int[] src = multiplicities.get(random.nextInt(multiplicities.size()));
+        asList.add(new SyntheticAssociation(random.nextInt(classes), random.nextInt(classes), "dst" + k, dst[0], dst[1], "src" + k, src[0], src[1], false)); //$NON-NLS-1$ //$NON-NLS-2$
+      }
+    }
+
+    Map<String, String> invList = new LinkedHashMap<String, String>();
+    for (int k = 0; k < invariants; k++) {
+      String invName = "inv" + k; //$NON-NLS-1$
+      int i = random.nextInt(classes);
+      invList.put(invName, "context " + cList.get(i).name + "\ninv " + invName + ": " + genInvariant(invariantShapes.get(k % invariantShapes.size()), i, cList, asList, random)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    }
+    return new SyntheticModel(name, seed, inheritanceDepth, cList, asList, invList);
+  }
+
+  private static String genInvariant(InvariantShape shape, int i, List<SyntheticClass> cList, List<SyntheticAssociation> asList, Random random) {
+    SyntheticClass c = cList.get(i);
+    String instances = c.name + "::allInstances()"; //$NON-NLS-1$
+    switch (shape) {
+    case EXISTS:
+      return instances + "->exists(o | " + genCondition(c, random) + ")"; //$NON-NLS-1$ //$NON-NLS-2$
+    case SELECT:
+      return instances + "->select(o | " + genCondition(c, random) + ")->size() <= " + (1 + random.nextInt(5)); //$NON-NLS-1$ //$NON-NLS-2$
+    case SIZE:
+      List<SyntheticAssociation> navigable = new ArrayList<SyntheticAssociation>();
+      for (SyntheticAssociation as : asList)
+        if (as.source == i)
+          navigable.add(as);
+      if (navigable.isEmpty())
+        return instances + "->size() <= " + (1 + random.nextInt(5)); //$NON-NLS-1$
+      return instances + "->forAll(o | o." + navigable.get(random.nextInt(navigable.size())).dstName + "->size() <= " + (1 + random.nextInt(5)) + ")"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    case ARITHMETIC:
+      List<String> integers = getAttributes(c, AttributeType.INTEGER);
+      if (integers.isEmpty())
+        return instances + "->size() * 2 <= " + (2 + random.nextInt(10)); //$NON-NLS-1$
+      String first = integers.get(random.nextInt(integers.size()));
+      String second = integers.get(random.nextInt(integers.size()));
+      return instances + "->forAll(o | o." + first + " + o." + second + " * 2 >= " + random.nextInt(20) + ")"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+    default:
+      return instances + "->forAll(o | " + genCondition(c, random) + ")"; //$NON-NLS-1$ //$NON-NLS-2$
+    }
+  }
+
+  /**
+   * Returns a condition on the instance o of the class: a comparison of one
+   * of its integer attributes, or else one of its boolean attributes.
+   */
+  private static String genCondition(SyntheticClass c, Random random) {
+    List<String> integers = getAttributes(c, AttributeType.INTEGER);
+    if (!integers.isEmpty())
+      return "o." + integers.get(random.nextInt(integers.size())) + " >= " + (1 + random.nextInt(10)); //$NON-NLS-1$ //$NON-NLS-2$
+    List<String> booleans = getAttributes(c, AttributeType.BOOLEAN);
+    if (!booleans.isEmpty())
+      return "o." + booleans.get(random.nextInt(booleans.size())); //$NON-NLS-1$
+    return c.name + "::allInstances()->includes(o)"; //$NON-NLS-1$
+  }
+
+  private static List<String> getAttributes(SyntheticClass c, AttributeType type) {
+    List<String> names = new ArrayList<String>();
+    for (SyntheticAttribute at : c.attributes)
+      if (at.type == type)
+        names.add(at.name);
+    return names;
+  }
+
+  /**
+   * Writes the model in each format, ecore or uml, in the layout of the data
+   * of the tests: models/&lt;format&gt;/&lt;name&gt;.&lt;format&gt; with its
+   * OCL document &lt;name&gt;.&lt;format&gt;.ocl next to it, and
+   * properties/&lt;format&gt;/&lt;name&gt;.&lt;format&gt;.properties. Returns
+   * the model files.
+   */
+  public static List<File> write(SyntheticModel model, File directory, List<String> formats) throws IOException {
+    List<File> files = new ArrayList<File>();
+    for (String format : formats) {
+      File modelsDirectory = new File(directory, "models" + File.separator + format); //$NON-NLS-1$
+      File propertiesDirectory = new File(directory, "properties" + File.separator + format); //$NON-NLS-1$
+      for (File dir : new File[] { modelsDirectory, propertiesDirectory })
+        if (!dir.isDirectory() && !dir.mkdirs())
+          throw new IOException("Unable to create the directory " + dir.getAbsolutePath()); //$NON-NLS-1$
+      String fileName = model.getName() + "." + format; //$NON-NLS-1$
+      File modelFile = new File(modelsDirectory, fileName);
+      if (format.equals("ecore")) //$NON-NLS-1$
+        model.writeEcore(modelFile);
+      else if (format.equals("uml")) //$NON-NLS-1$
+        model.writeUml(modelFile);
+      else
+        throw new IllegalArgumentException("Unknown model format " + format); //$NON-NLS-1$
+      String oclFileName = null;
+      if (model.getInvariants() > 0) {
+        oclFileName = fileName + ".ocl"; //$NON-NLS-1$
+        model.writeOcl(new File(modelsDirectory, oclFileName));
+      }
+      model.writeProperties(new File(propertiesDirectory, fileName + ".properties"), oclFileName); //$NON-NLS-1$
+      files.add(modelFile);
+    }
+    return files;
+  }
+
+  private static List<String> parseList(String list) {
+    List<String> values = new ArrayList<String>();
+    for (String value : list.split(",")) //$NON-NLS-1$
+      values.add(value.trim());
+    return values;
+  }
+
+  /**
+   * Writes a model and prints its files. Exits with 2 if the arguments are
+   * wrong.
+   */
+  public static void main(String[] args) {
+    WorkloadGenerator generator = new WorkloadGenerator();
+    long seed = 42;
+    List<String> formats = Arrays.asList("ecore", "uml"); //$NON-NLS-1$ //$NON-NLS-2$
+    File outputDirectory = new File("workload"); //$NON-NLS-1$
+    Double density = null;
+    try {
+      for (int i = 0; i < args.length; i++) {
+        String arg = args[i];
+        if (arg.equals("-classes")) //$NON-NLS-1$
+          generator.setClasses(Integer.parseInt(args[++i]));
+        else if (arg.equals("-associations")) //$NON-NLS-1$
+          generator.setAssociations(Integer.parseInt(args[++i]));
+        else if (arg.equals("-density")) //$NON-NLS-1$
+          density = Double.valueOf(args[++i]);
+        else if (arg.equals("-multiplicities")) //$NON-NLS-1$
+          generator.setMultiplicities(parseList(args[++i]));
+        else if (arg.equals("-depth")) //$NON-NLS-1$
+          generator.setInheritanceDepth(Integer.parseInt(args[++i]));
+        else if (arg.equals("-containments")) //$NON-NLS-1$
+          generator.setContainments(Integer.parseInt(args[++i]));
+        else if (arg.equals("-attributes")) //$NON-NLS-1$
+          generator.setAttributes(Integer.parseInt(args[++i]));
+        else if (arg.equals("-types")) { //$NON-NLS-1$
+          List<AttributeType> types = new ArrayList<AttributeType>();
+          for (String type : parseList(args[++i]))
+            types.add(AttributeType.valueOf(type.toUpperCase()));
+          generator.setAttributeTypes(types);
+        }
+        else if (arg.equals("-invariants")) //$NON-NLS-1$
+          generator.setInvariants(Integer.parseInt(args[++i]));
+        else if (arg.equals("-shapes")) { //$NON-NLS-1$
+          List<InvariantShape> shapes = new ArrayList<InvariantShape>();
+          for (String shape : parseList(args[++i]))
+            shapes.add(InvariantShape.parse(shape));
+          generator.setInvariantShapes(shapes);
+        }
+        else if (arg.equals("-seed")) //$NON-NLS-1$
+          seed = Long.parseLong(args[++i]);
+        else if (arg.equals("-formats")) //$NON-NLS-1$
+          formats = parseList(args[++i]);
+        else if (arg.equals("-out")) //$NON-NLS-1$
+          outputDirectory = new File(args[++i]);
+        else
+          throw new IllegalArgumentException("Unknown option " + arg); //$NON-NLS-1$
+      }
+      // the density is relative to the final number of classes
+      if (density != null)
+        generator.setAssociationDensity(density);
+    }
+    catch (RuntimeException e) {
+      System.err.println(e.getMessage());
+      System.err.println(USAGE);
+      System.exit(2);
+    }
+    try {
+      for (File file : write(generator.generate(seed), outputDirectory, formats))
+        System.out.println(file.getPath());
+    }
+    catch (IOException e) {
+      throw new ProcessingException(e);
+    }
+  }
+}
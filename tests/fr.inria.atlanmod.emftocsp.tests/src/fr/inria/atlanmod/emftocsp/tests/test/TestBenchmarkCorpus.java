@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2015 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp.tests.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.runtime.FileLocator;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.emf.common.util.URI;
+import org.junit.Test;
+
+import fr.inria.atlanmod.emftocsp.tests.EMFtoCSPTestsPlugin;
+
+/**
+ * Checks that the corpus.txt the pipeline benchmarks read lists the models
+ * of {@link TestModelGeneration}, in the same order and with the same
+ * verdicts.
+ */
+public class TestBenchmarkCorpus {
+
+	private static final String DATA = "data/";
+
+	@Test
+	public void testCorpusListsTheModelsOfTheNonRegressionTests() throws IOException {
+		List<String> expected = new ArrayList<String>();
+		for (Object[] parameters : TestModelGeneration.data()) {
+			URI model = (URI) parameters[0];
+			URL properties = (URL) parameters[1];
+			assertNotNull("properties of " + model, properties);
+			expected.add(relativize(model.toString()) + "\t" + relativize(properties.getPath()) + "\t" + parameters[2]);
+		}
+		assertEquals(expected, readCorpus());
+	}
+
+	/**
+	 * Returns the path relative to the data directory of the tests.
+	 */
+	private static String relativize(String path) {
+		int data = path.indexOf(DATA);
+		assertTrue(path, data >= 0);
+		return path.substring(data + DATA.length());
+	}
+
+	/**
+	 * Returns the entries of corpus.txt as the benchmarks read them, each
+	 * made of its three fields separated by tabulations.
+	 */
+	private static List<String> readCorpus() throws IOException {
+		URL corpus = Platform.getBundle(EMFtoCSPTestsPlugin.PLUGIN_ID).getEntry(DATA + "corpus.txt");
+		assertNotNull(corpus);
+		List<String> entries = new ArrayList<String>();
+		BufferedReader in = new BufferedReader(new InputStreamReader(FileLocator.resolve(corpus).openStream()));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				line = line.trim();
+				if (line.length() == 0 || line.startsWith("#"))
+					continue;
+				String[] entry = line.split("\\s+");
+				assertEquals("corpus entry " + line, 3, entry.length);
+				entries.add(entry[0] + "\t" + entry[1] + "\t" + Boolean.valueOf(entry[2]));
+			}
+		}
+		finally {
+			in.close();
+		}
+		return entries;
+	}
+}
@@ -0,0 +1,263 @@
+/*******************************************************************************
+ * Copyright (c) 2015 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp.tests.test.unit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EcoreFactory;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.impl.ResourceImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.inria.atlanmod.emftocsp.IModelProperty;
+import fr.inria.atlanmod.emftocsp.SolverVerdict;
+import fr.inria.atlanmod.emftocsp.emf.impl.EmfModelReader;
+import fr.inria.atlanmod.emftocsp.emftoecl.CardinalityPreSolver;
+import fr.inria.atlanmod.emftocsp.impl.LivelinessModelProperty;
+import fr.inria.atlanmod.emftocsp.impl.StrongSatisfiabilityModelProperty;
+import fr.inria.atlanmod.emftocsp.impl.WeakSatisfiabilityModelProperty;
+
+/**
+ * Checks the verdicts the cardinalities give on small models: UNSAT when
+ * they have no solution, SAT only when the model is structural, UNKNOWN
+ * otherwise or when the search gives up.
+ */
+public class TestCardinalityPreSolver {
+
+	private static final List<String> NO_INVARIANTS = Collections.emptyList();
+
+	private EPackage p;
+	private Resource resource;
+	private Map<String, String> domains;
+
+	@Before
+	public void setUp() {
+		p = EcoreFactory.eINSTANCE.createEPackage();
+		p.setName("p");
+		p.setNsPrefix("p");
+		p.setNsURI("http://emftocsp/tests/cardinalities");
+		resource = new ResourceImpl(URI.createURI("test:/cardinalities.ecore"));
+		resource.getContents().add(p);
+		domains = new HashMap<String, String>();
+	}
+
+	@After
+	public void tearDown() {
+		EPackage.Registry.INSTANCE.remove(p.getNsURI());
+	}
+
+	@Test
+	public void testMultiplicitiesBeyondTheDomainsAreUnsat() {
+		EClass a = createClass("A", "0..5");
+		EClass b = createClass("B", "0..2");
+		createReference(a, "b", b, 3, 3);
+		domains.put("A_b", "0..100");
+		assertEquals(SolverVerdict.UNSAT, createSolver(strongSatisfiability(), NO_INVARIANTS).solve(-1));
+	}
+
+	@Test
+	public void testFeasibleMultiplicitiesAreSat() {
+		EClass a = createClass("A", "0..5");
+		EClass b = createClass("B", "0..5");
+		createReference(a, "b", b, 3, 3);
+		domains.put("A_b", "0..100");
+		CardinalityPreSolver solver = createSolver(strongSatisfiability(), NO_INVARIANTS);
+		assertEquals(SolverVerdict.SAT, solver.solve(-1));
+		Map<String, Integer> cardinalities = solver.getCardinalities();
+		assertTrue(cardinalities.get("A") >= 1);
+		assertEquals(3 * cardinalities.get("A"), (int) cardinalities.get("A_b"));
+		assertTrue(cardinalities.get("B") >= 3);
+		assertTrue(cardinalities.get("A_b") <= cardinalities.get("A") * cardinalities.get("B"));
+
+		assertEquals(SolverVerdict.UNSAT, solver.solve(2));
+		assertNull(solver.getCardinalities());
+	}
+
+	@Test
+	public void testCompositionSumsAreUnsat() {
+		EClass c = createClass("C", "0..2");
+		EClass part = createClass("P", "3..3");
+		createReference(c, "parts", part, 0, 1).setContainment(true);
+		domains.put("C_parts", "0..10");
+		assertEquals(SolverVerdict.UNSAT, createSolver(strongSatisfiability(), NO_INVARIANTS).solve(-1));
+	}
+
+	@Test
+	public void testGeneralizationsAreUnsat() {
+		EClass s = createClass("S", "0..1");
+		s.setAbstract(true);
+		createClass("C1", "0..5").getESuperTypes().add(s);
+		createClass("C2", "0..5").getESuperTypes().add(s);
+		assertEquals(SolverVerdict.UNSAT, createSolver(strongSatisfiability(), NO_INVARIANTS).solve(-1));
+
+		s.setAbstract(false);
+		assertEquals(SolverVerdict.UNSAT, createSolver(strongSatisfiability(), NO_INVARIANTS).solve(-1));
+	}
+
+	@Test
+	public void testLivelinessOfAnEmptyClassIsUnsat() {
+		EClass a = createClass("A", "0..5");
+		EClass b = createClass("B", "0..0");
+		createReference(a, "b", b, 0, -1);
+		domains.put("A_b", "0..100");
+		List<IModelProperty> livelinessOfB = Collections.<IModelProperty>singletonList(new LivelinessModelProperty(Arrays.asList("B")));
+		assertEquals(SolverVerdict.UNSAT, createSolver(livelinessOfB, NO_INVARIANTS).solve(-1));
+		List<IModelProperty> livelinessOfA = Collections.<IModelProperty>singletonList(new LivelinessModelProperty(Arrays.asList("A")));
+		assertEquals(SolverVerdict.SAT, createSolver(livelinessOfA, NO_INVARIANTS).solve(-1));
+	}
+
+	@Test
+	public void testStructuralModelIsSat() {
+		EClass a = createClass("A", "0..5");
+		EClass b = createClass("B", "0..5");
+		EReference toB = createReference(a, "b", b, 3, 3);
+		EReference toA = createReference(b, "a", a, 1, 1);
+		toB.setEOpposite(toA);
+		toA.setEOpposite(toB);
+		domains.put("a_b", "0..100");
+		EClass s = createClass("S", "0..10");
+		s.setAbstract(true);
+		createClass("C1", "0..5").getESuperTypes().add(s);
+		createClass("C2", "0..5").getESuperTypes().add(s);
+		EClass c = createClass("C", "0..3");
+		EClass part = createClass("P", "0..10");
+		createReference(c, "parts", part, 0, -1).setContainment(true);
+		domains.put("C_parts", "0..10");
+
+		CardinalityPreSolver solver = createSolver(strongSatisfiability(), NO_INVARIANTS);
+		assertEquals(SolverVerdict.SAT, solver.solve(-1));
+		assertNull(solver.getObstacle());
+		Map<String, Integer> cardinalities = solver.getCardinalities();
+		assertEquals(9, cardinalities.size());
+		for (int cardinality : cardinalities.values())
+			assertTrue(cardinality >= 1);
+		assertEquals(3 * cardinalities.get("A"), (int) cardinalities.get("a_b"));
+		assertEquals(cardinalities.get("B"), cardinalities.get("a_b"));
+		assertEquals(cardinalities.get("C1") + cardinalities.get("C2"), (int) cardinalities.get("S"));
+		assertEquals(cardinalities.get("P"), cardinalities.get("C_parts"));
+		assertTrue(cardinalities.get("B") <= 5);
+	}
+
+	@Test
+	public void testInvariantsLeaveTheVerdictUnknown() {
+		EClass a = createClass("A", "0..5");
+		EClass b = createClass("B", "0..5");
+		createReference(a, "b", b, 3, 3);
+		domains.put("A_b", "0..100");
+		CardinalityPreSolver solver = createSolver(strongSatisfiability(), Arrays.asList("inv"));
+		assertEquals(SolverVerdict.UNKNOWN, solver.solve(-1));
+		assertNotNull(solver.getObstacle());
+		assertNotNull(solver.getCardinalities());
+
+		domains.put("p.B", "0..2");
+		assertEquals(SolverVerdict.UNSAT, createSolver(strongSatisfiability(), Arrays.asList("inv")).solve(-1));
+	}
+
+	@Test
+	public void testMultipleInheritanceLeavesTheVerdictUnknown() {
+		EClass c1 = createClass("C1", "0..5");
+		EClass c2 = createClass("C2", "0..5");
+		EClass d = createClass("D", "0..5");
+		d.getESuperTypes().add(c1);
+		d.getESuperTypes().add(c2);
+		CardinalityPreSolver solver = createSolver(strongSatisfiability(), NO_INVARIANTS);
+		assertEquals(SolverVerdict.UNKNOWN, solver.solve(-1));
+		assertNotNull(solver.getObstacle());
+	}
+
+	@Test
+	public void testSeveralCompositionsLeaveTheVerdictUnknown() {
+		EClass c = createClass("C", "0..5");
+		EClass e = createClass("E", "0..5");
+		EClass part = createClass("P", "0..5");
+		createReference(c, "parts", part, 0, -1).setContainment(true);
+		createReference(e, "items", part, 0, -1).setContainment(true);
+		domains.put("C_parts", "0..10");
+		domains.put("E_items", "0..10");
+		CardinalityPreSolver solver = createSolver(strongSatisfiability(), NO_INVARIANTS);
+		assertEquals(SolverVerdict.UNKNOWN, solver.solve(-1));
+		assertNotNull(solver.getObstacle());
+	}
+
+	@Test
+	public void testInstancesOfAbstractClassesWithoutSubtypesLeaveTheVerdictUnknown() {
+		createClass("A", "1..1").setAbstract(true);
+		createClass("B", "0..1");
+		assertEquals(SolverVerdict.UNKNOWN, createSolver(weakSatisfiability(), NO_INVARIANTS).solve(-1));
+	}
+
+	/**
+	 * S = C1 + C2 has no solution with an odd S and even C1 and C2, which the
+	 * bounds do not tell, so the search labels the 17 classes before them in
+	 * every way before giving up.
+	 */
+	@Test
+	public void testNodeLimitLeavesTheVerdictUnknown() {
+		for (int i = 0; i < 17; i++)
+			createClass("X" + i, "0..1");
+		EClass s = createClass("S", "[1,3]");
+		s.setAbstract(true);
+		createClass("C1", "[0,2]").getESuperTypes().add(s);
+		createClass("C2", "[0,2]").getESuperTypes().add(s);
+		CardinalityPreSolver solver = createSolver(weakSatisfiability(), NO_INVARIANTS);
+		assertEquals(CardinalityPreSolver.DEFAULT_NODE_LIMIT, solver.getNodeLimit());
+		assertEquals(SolverVerdict.UNKNOWN, solver.solve(-1));
+		assertNull(solver.getCardinalities());
+
+		solver.setNodeLimit(Integer.MAX_VALUE);
+		assertEquals(SolverVerdict.UNSAT, solver.solve(-1));
+	}
+
+	private EClass createClass(String name, String domain) {
+		EClass c = EcoreFactory.eINSTANCE.createEClass();
+		c.setName(name);
+		p.getEClassifiers().add(c);
+		domains.put("p." + name, domain);
+		return c;
+	}
+
+	private static EReference createReference(EClass owner, String name, EClass type, int lowerBound, int upperBound) {
+		EReference ref = EcoreFactory.eINSTANCE.createEReference();
+		ref.setName(name);
+		ref.setEType(type);
+		ref.setLowerBound(lowerBound);
+		ref.setUpperBound(upperBound);
+		owner.getEStructuralFeatures().add(ref);
+		return ref;
+	}
+
+	private CardinalityPreSolver createSolver(List<IModelProperty> properties, List<String> invariants) {
+		return new CardinalityPreSolver(new EmfModelReader(resource), domains, properties, invariants);
+	}
+
+	private static List<IModelProperty> strongSatisfiability() {
+		return Collections.<IModelProperty>singletonList(new StrongSatisfiabilityModelProperty());
+	}
+
+	private static List<IModelProperty> weakSatisfiability() {
+		return Collections.<IModelProperty>singletonList(new WeakSatisfiabilityModelProperty());
+	}
+}
@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright (c) 2015 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp.tests.test.unit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.inria.atlanmod.emftocsp.eclipsecs.EclipseLibraryCache;
+
+/**
+ * Checks where the library cache stores the object files, without ECLiPSe.
+ */
+public class TestEclipseLibraryCache {
+
+	private File cacheDir;
+	private File sourceDir;
+	private EclipseLibraryCache cache;
+
+	@Before
+	public void setUp() throws IOException {
+		cacheDir = createTempDir("eco");
+		sourceDir = createTempDir("ecl");
+		cache = new EclipseLibraryCache(cacheDir, false);
+	}
+
+	@After
+	public void tearDown() {
+		delete(cacheDir);
+		delete(sourceDir);
+	}
+
+	@Test
+	public void testObjectFileIsNamedAfterTheLibrary() throws IOException {
+		File objectFile = cache.getObjectFile(writeLibrary("ocl_basicops", "a."), "6.1", false);
+		assertEquals("ocl_basicops.eco", objectFile.getName());
+		assertEquals(cacheDir, objectFile.getParentFile().getParentFile());
+		assertTrue(objectFile.getParentFile().getName().startsWith("ocl_basicops-dbg-"));
+	}
+
+	@Test
+	public void testKeyIsStableForTheSameLibrary() throws IOException {
+		File lib = writeLibrary("ocl_basicops", "a.");
+		assertEquals(cache.getObjectFile(lib, "6.1", false), cache.getObjectFile(lib, "6.1", false));
+		File copy = writeLibrary("copy/ocl_basicops", "a.");
+		assertEquals(cache.getObjectFile(lib, "6.1", false), cache.getObjectFile(copy, "6.1", false));
+	}
+
+	@Test
+	public void testKeyDependsOnTheSource() throws IOException {
+		File lib = writeLibrary("ocl_basicops", "a.");
+		File before = cache.getObjectFile(lib, "6.1", false);
+		writeLibrary("ocl_basicops", "b.");
+		assertNotEquals(before, cache.getObjectFile(lib, "6.1", false));
+	}
+
+	@Test
+	public void testKeyDependsOnTheEclipseVersion() throws IOException {
+		File lib = writeLibrary("ocl_basicops", "a.");
+		assertNotEquals(cache.getObjectFile(lib, "6.1", false), cache.getObjectFile(lib, "7.0", false));
+	}
+
+	@Test
+	public void testKeyDependsOnTheMode() throws IOException {
+		File lib = writeLibrary("ocl_basicops", "a.");
+		File debug = cache.getObjectFile(lib, "6.1", false);
+		File optimized = cache.getObjectFile(lib, "6.1", true);
+		assertNotEquals(debug, optimized);
+		assertTrue(optimized.getParentFile().getName().startsWith("ocl_basicops-opt-"));
+	}
+
+	@Test
+	public void testRemovesOutdatedEntries() throws IOException {
+		File lib = writeLibrary("ocl_basicops", "a.");
+		File outdated = store(cache.getObjectFile(lib, "6.1", false));
+		File otherVersion = store(cache.getObjectFile(lib, "6.0", false));
+		writeLibrary("ocl_basicops", "b.");
+		File current = store(cache.getObjectFile(lib, "6.1", false));
+		File otherMode = store(cache.getObjectFile(lib, "6.1", true));
+		File otherLibrary = store(cache.getObjectFile(writeLibrary("ocl_collections", "a."), "6.1", false));
+
+		cache.removeOutdatedEntries(current);
+
+		assertFalse(outdated.getParentFile().exists());
+		assertFalse(otherVersion.getParentFile().exists());
+		assertTrue(current.isFile());
+		assertTrue(otherMode.isFile());
+		assertTrue(otherLibrary.isFile());
+	}
+
+	@Test
+	public void testKeepsEntriesBeingBuilt() throws IOException {
+		File lib = writeLibrary("ocl_basicops", "a.");
+		File current = store(cache.getObjectFile(lib, "6.1", false));
+		File building = new File(cacheDir, current.getParentFile().getName() + ".tmp1");
+		building.mkdirs();
+
+		cache.removeOutdatedEntries(current);
+
+		assertTrue(building.isDirectory());
+	}
+
+	private File writeLibrary(String name, String contents) throws IOException {
+		File lib = new File(sourceDir, name + ".ecl");
+		lib.getParentFile().mkdirs();
+		FileWriter writer = new FileWriter(lib);
+		try {
+			writer.write(contents);
+		}
+		finally {
+			writer.close();
+		}
+		return lib;
+	}
+
+	private static File store(File objectFile) throws IOException {
+		objectFile.getParentFile().mkdirs();
+		objectFile.createNewFile();
+		return objectFile;
+	}
+
+	private static File createTempDir(String suffix) throws IOException {
+		File dir = File.createTempFile("emftocsp", suffix);
+		dir.delete();
+		dir.mkdirs();
+		return dir;
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null)
+			for (File child : children)
+				delete(child);
+		file.delete();
+	}
+}
@@ -0,0 +1,244 @@
+/*******************************************************************************
+ * Copyright (c) 2015 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp.tests.test.unit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EcoreFactory;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.impl.ResourceImpl;
+import org.junit.After;
+import org.junit.Test;
+
+import fr.inria.atlanmod.emftocsp.emf.impl.EAssociation;
+import fr.inria.atlanmod.emftocsp.emf.impl.EmfModelReader;
+import fr.inria.atlanmod.emftocsp.emf.impl.IndexedEmfModelReader;
+
+/**
+ * Checks that the indexed reader reads random models as the plain reader
+ * does, and that it reads the model again once it changes.
+ */
+public class TestIndexedEmfModelReader {
+
+	private static final int MODELS = 200;
+
+	private final List<String> nsURIs = new ArrayList<String>();
+
+	@After
+	public void tearDown() {
+		for (String nsURI : nsURIs)
+			EPackage.Registry.INSTANCE.remove(nsURI);
+	}
+
+	@Test
+	public void testReadsRandomModelsAsTheModelReader() {
+		for (int seed = 0; seed < MODELS; seed++) {
+			Random random = new Random(seed);
+			Resource resource = createModel(random, "m" + seed);
+			IndexedEmfModelReader indexed = new IndexedEmfModelReader(resource);
+			try {
+				assertSameModel("model " + seed, new EmfModelReader(resource), indexed, random);
+			}
+			finally {
+				indexed.dispose();
+			}
+		}
+	}
+
+	@Test
+	public void testNewClassesRebuildTheIndexes() {
+		Resource resource = createModel(new Random(1), "added");
+		IndexedEmfModelReader indexed = new IndexedEmfModelReader(resource);
+		int classes = indexed.getClasses().size();
+		assertNull(indexed.getClassByLowerCaseName("added"));
+
+		EPackage p = (EPackage) resource.getContents().get(0);
+		EClass added = EcoreFactory.eINSTANCE.createEClass();
+		added.setName("Added");
+		p.getEClassifiers().add(added);
+
+		assertEquals(classes + 1, indexed.getClasses().size());
+		assertSame(added, indexed.getClassByLowerCaseName("added"));
+		assertSameModel("added class", new EmfModelReader(resource), indexed, new Random(1));
+		indexed.dispose();
+	}
+
+	@Test
+	public void testNewSupertypesRebuildTheIndexes() {
+		Resource resource = createModel(new Random(2), "supertype");
+		IndexedEmfModelReader indexed = new IndexedEmfModelReader(resource);
+		List<EClass> classes = indexed.getClasses();
+		EClass superType = classes.get(classes.size() - 1);
+		EClass subType = EcoreFactory.eINSTANCE.createEClass();
+		subType.setName("SubType");
+		((EPackage) resource.getContents().get(0)).getEClassifiers().add(subType);
+		List<EClass> before = indexed.getClassSubtypes(indexed.getClasses(), superType);
+		assertTrue(before == null || !before.contains(subType));
+
+		subType.getESuperTypes().add(superType);
+
+		assertTrue(indexed.getClassSubtypes(indexed.getClasses(), superType).contains(subType));
+		assertSameModel("added supertype", new EmfModelReader(resource), indexed, new Random(2));
+		indexed.dispose();
+	}
+
+	@Test
+	public void testNewReferencesRebuildTheIndexes() {
+		Resource resource = createModel(new Random(3), "reference");
+		IndexedEmfModelReader indexed = new IndexedEmfModelReader(resource);
+		int associations = indexed.getAssociations().size();
+		EClass c = indexed.getClasses().get(0);
+
+		EReference ref = EcoreFactory.eINSTANCE.createEReference();
+		ref.setName("addedReference");
+		ref.setEType(c);
+		c.getEStructuralFeatures().add(ref);
+
+		assertEquals(associations + 1, indexed.getAssociations().size());
+		assertSameModel("added reference", new EmfModelReader(resource), indexed, new Random(3));
+		indexed.dispose();
+	}
+
+	@Test
+	public void testDisposeStopsFollowingTheModel() {
+		Resource resource = createModel(new Random(4), "disposed");
+		IndexedEmfModelReader indexed = new IndexedEmfModelReader(resource);
+		assertEquals(1, resource.eAdapters().size());
+		indexed.dispose();
+		assertTrue(resource.eAdapters().isEmpty());
+	}
+
+	/**
+	 * Creates a model of a package, possibly with subpackages, holding
+	 * classes with random names, multiple inheritance without cycles,
+	 * abstract classes and references, some of them bidirectional or
+	 * containments.
+	 */
+	private Resource createModel(Random random, String name) {
+		EcoreFactory factory = EcoreFactory.eINSTANCE;
+		List<EPackage> packages = new ArrayList<EPackage>();
+		EPackage root = createPackage(name, packages);
+		for (int i = random.nextInt(3); i > 0; i--) {
+			EPackage parent = packages.get(random.nextInt(packages.size()));
+			parent.getESubpackages().add(createPackage(name + "_" + packages.size(), packages));
+		}
+		List<EClass> classes = new ArrayList<EClass>();
+		int count = 1 + random.nextInt(15);
+		for (int i = 0; i < count; i++) {
+			EClass c = factory.createEClass();
+			c.setName((random.nextBoolean() ? "C" : "c") + random.nextInt(count));
+			c.setAbstract(random.nextInt(3) == 0);
+			for (int j = random.nextInt(3); j > 0 && i > 0; j--) {
+				EClass superType = classes.get(random.nextInt(i));
+				if (!c.getESuperTypes().contains(superType))
+					c.getESuperTypes().add(superType);
+			}
+			packages.get(random.nextInt(packages.size())).getEClassifiers().add(c);
+			classes.add(c);
+		}
+		for (EClass c : classes)
+			for (int j = random.nextInt(3); j > 0; j--) {
+				EClass target = classes.get(random.nextInt(classes.size()));
+				EReference ref = createReference("r" + random.nextInt(4), target);
+				c.getEStructuralFeatures().add(ref);
+				if (random.nextInt(3) == 0) {
+					ref.setContainment(random.nextBoolean());
+					EReference opposite = createReference("o" + random.nextInt(4), c);
+					target.getEStructuralFeatures().add(opposite);
+					ref.setEOpposite(opposite);
+					opposite.setEOpposite(ref);
+				}
+			}
+		Resource resource = new ResourceImpl(URI.createURI("test:/" + name + ".ecore"));
+		resource.getContents().add(root);
+		return resource;
+	}
+
+	private EPackage createPackage(String name, List<EPackage> packages) {
+		EPackage p = EcoreFactory.eINSTANCE.createEPackage();
+		p.setName(name);
+		p.setNsPrefix(name);
+		p.setNsURI("http://emftocsp/tests/" + name);
+		nsURIs.add(p.getNsURI());
+		packages.add(p);
+		return p;
+	}
+
+	private static EReference createReference(String name, EClass type) {
+		EReference ref = EcoreFactory.eINSTANCE.createEReference();
+		ref.setName(name);
+		ref.setEType(type);
+		return ref;
+	}
+
+	private static void assertSameModel(String model, EmfModelReader expected, IndexedEmfModelReader actual, Random random) {
+		List<EClass> classes = expected.getClasses();
+		assertEquals(model, expected.getPackages(), actual.getPackages());
+		assertEquals(model, classes, actual.getClasses());
+		assertEquals(model, expected.getClassesNames(), actual.getClassesNames());
+		assertEquals(model, expected.getAssociationsNames(), actual.getAssociationsNames());
+		assertEquals(model, expected.getAssociationNamesOfNonAbsClasses(), actual.getAssociationNamesOfNonAbsClasses());
+		List<EAssociation> associations = expected.getAssociations();
+		assertEquals(model, associations.size(), actual.getAssociations().size());
+		for (int i = 0; i < associations.size(); i++)
+			assertSameAssociation(model, associations.get(i), actual.getAssociations().get(i));
+
+		List<EClass> slice = new ArrayList<EClass>();
+		for (EClass c : classes)
+			if (random.nextBoolean())
+				slice.add(c);
+		List<EClass> shuffled = new ArrayList<EClass>(classes);
+		Collections.shuffle(shuffled, random);
+		List<EClass> withOtherClass = new ArrayList<EClass>(slice);
+		EClass other = EcoreFactory.eINSTANCE.createEClass();
+		other.setName("Other");
+		withOtherClass.add(other);
+		for (EClass c : classes) {
+			String subtypes = model + ", subtypes of " + c.getName();
+			assertEquals(subtypes, expected.getClassSubtypes(classes, c), actual.getClassSubtypes(actual.getClasses(), c));
+			assertEquals(subtypes, expected.getClassSubtypes(slice, c), actual.getClassSubtypes(slice, c));
+			assertEquals(subtypes, expected.getClassSubtypes(shuffled, c), actual.getClassSubtypes(shuffled, c));
+			assertEquals(subtypes, expected.getClassSubtypes(withOtherClass, c), actual.getClassSubtypes(withOtherClass, c));
+			List<EClass> expectedNested = new ArrayList<EClass>();
+			List<EClass> actualNested = new ArrayList<EClass>();
+			expected.getClassSubtypes(slice, c, expectedNested);
+			actual.getClassSubtypes(slice, c, actualNested);
+			assertEquals(subtypes, expectedNested, actualNested);
+			String name = c.getName().toLowerCase();
+			assertSame(model + ", class " + name, expected.getClassByLowerCaseName(name), actual.getClassByLowerCaseName(name));
+		}
+		assertNull(actual.getClassByLowerCaseName("unknown"));
+		for (EAssociation as : associations) {
+			String name = as.getName().toLowerCase();
+			assertSameAssociation(model, expected.getAssociationByLowerCaseName(name), actual.getAssociationByLowerCaseName(name));
+		}
+		assertNull(actual.getAssociationByLowerCaseName("unknown"));
+	}
+
+	private static void assertSameAssociation(String model, EAssociation expected, EAssociation actual) {
+		String association = model + ", association " + expected.getName();
+		assertEquals(association, expected.getName(), actual.getName());
+		assertSame(association, expected.getSourceEnd(), actual.getSourceEnd());
+		assertSame(association, expected.getDestinationEnd(), actual.getDestinationEnd());
+	}
+}
@@ -0,0 +1,229 @@
+/*******************************************************************************
+ * Copyright (c) 2015 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp.tests.test.unit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EClassifier;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EcoreFactory;
+import org.eclipse.emf.ecore.EcorePackage;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.ResourceImpl;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.parctechnologies.eclipse.CompoundTerm;
+
+import fr.inria.atlanmod.emftocsp.IModelProperty;
+import fr.inria.atlanmod.emftocsp.IModelToCspSolver;
+import fr.inria.atlanmod.emftocsp.ProcessingException;
+import fr.inria.atlanmod.emftocsp.emf.impl.EmfModelToCspSolverFactory;
+import fr.inria.atlanmod.emftocsp.emftoecl.EmfToEclCodeGenerator;
+import fr.inria.atlanmod.emftocsp.impl.LackOfConstraintsRedundanciesModelProperty;
+import fr.inria.atlanmod.emftocsp.impl.LivelinessModelProperty;
+import fr.inria.atlanmod.emftocsp.impl.StrongSatisfiabilityModelProperty;
+
+/**
+ * Checks that the code generated with several threads is the code generated
+ * with one, on a model of several classes constrained by OCL invariants.
+ */
+public class TestParallelCodeGeneration {
+
+	private static final int THREADS = 4;
+	private static final int RUNS = 10;
+
+	private static final String CONSTRAINTS = "package shop\n"
+			+ "context Person inv AdultPeople: Person::allInstances()->forAll(p | p.age >= 18)\n"
+			+ "context Customer inv PremiumCustomersOrder: Customer::allInstances()->forAll(c | c.premium implies c.orders->size() > 0)\n"
+			+ "context Employee inv EmployeesEarnMore: Employee::allInstances()->forAll(e | e.salary > e.age)\n"
+			+ "context Order inv PaidOrdersHaveLines: Order::allInstances()->forAll(o | o.paid implies o.lines->notEmpty())\n"
+			+ "context Order inv SomeOrderIsPaid: Order::allInstances()->exists(o | o.paid)\n"
+			+ "context Order inv TotalsCoverLines: Order::allInstances()->forAll(o | o.total >= o.lines->size())\n"
+			+ "context Line inv PositiveQuantities: Line::allInstances()->forAll(l | l.quantity > 0)\n"
+			+ "context Line inv OrderedProducts: Line::allInstances()->forAll(l | l.product.price > 0)\n"
+			+ "context Product inv FewCheapProducts: Product::allInstances()->select(p | p.price < 10)->size() < 3\n"
+			+ "endpackage\n";
+
+	private File dir;
+	private EPackage shop;
+	private Resource resource;
+	private Map<String, String> domains;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = File.createTempFile("emftocsp", "parallel");
+		dir.delete();
+		dir.mkdirs();
+		domains = new HashMap<String, String>();
+		shop = EcoreFactory.eINSTANCE.createEPackage();
+		shop.setName("shop");
+		shop.setNsPrefix("shop");
+		shop.setNsURI("http://emftocsp/tests/parallel");
+		EPackage.Registry.INSTANCE.put(shop.getNsURI(), shop);
+
+		EClass person = createClass("Person");
+		person.setAbstract(true);
+		createAttribute(person, "age", EcorePackage.Literals.EINT, "[0,18,60]");
+		EClass customer = createClass("Customer");
+		customer.getESuperTypes().add(person);
+		createAttribute(customer, "premium", EcorePackage.Literals.EBOOLEAN, "0..1");
+		EClass employee = createClass("Employee");
+		employee.getESuperTypes().add(person);
+		createAttribute(employee, "salary", EcorePackage.Literals.EINT, "[0,100]");
+		EClass order = createClass("Order");
+		createAttribute(order, "total", EcorePackage.Literals.EINT, "[0,100]");
+		createAttribute(order, "paid", EcorePackage.Literals.EBOOLEAN, "0..1");
+		EClass line = createClass("Line");
+		createAttribute(line, "quantity", EcorePackage.Literals.EINT, "[0,10]");
+		EClass product = createClass("Product");
+		createAttribute(product, "price", EcorePackage.Literals.EINT, "[0,50]");
+
+		EReference orders = createReference(customer, "orders", order, 0, -1);
+		EReference orderCustomer = createReference(order, "customer", customer, 1, 1);
+		orders.setEOpposite(orderCustomer);
+		orderCustomer.setEOpposite(orders);
+		createReference(order, "lines", line, 1, -1).setContainment(true);
+		createReference(line, "product", product, 1, 1);
+		domains.put("customer_orders", "0..10");
+		domains.put("lines_Order", "0..10");
+		domains.put("Line_product", "0..10");
+
+		ResourceSet resourceSet = new ResourceSetImpl();
+		resourceSet.setPackageRegistry(EPackage.Registry.INSTANCE);
+		resource = new ResourceImpl(URI.createURI("test:/shop.ecore"));
+		resourceSet.getResources().add(resource);
+		resource.getContents().add(shop);
+	}
+
+	@After
+	public void tearDown() {
+		EPackage.Registry.INSTANCE.remove(shop.getNsURI());
+		File[] children = dir.listFiles();
+		if (children != null)
+			for (File child : children)
+				child.delete();
+		dir.delete();
+	}
+
+	@Test
+	public void testParallelCodeIsTheSequentialCode() throws IOException {
+		List<IModelProperty> properties = new ArrayList<IModelProperty>();
+		properties.add(new StrongSatisfiabilityModelProperty());
+		properties.add(new LivelinessModelProperty(Arrays.asList("Employee")));
+		properties.add(new LackOfConstraintsRedundanciesModelProperty(Arrays.asList("PositiveQuantities,OrderedProducts")));
+		EmfToEclCodeGenerator generator = createGenerator(properties);
+		String sequential = generate(generator, false);
+		assertTrue(sequential.contains("PositiveQuantities"));
+		assertTrue(sequential.contains("FewCheapProducts"));
+
+		generator.setParallelism(THREADS);
+		try {
+			for (int i = 0; i < RUNS; i++)
+				assertEquals("run " + i, sequential, generate(generator, false));
+		}
+		finally {
+			generator.dispose();
+		}
+	}
+
+	@Test
+	public void testParallelParameterizedCodeIsTheSequentialCode() throws IOException {
+		EmfToEclCodeGenerator sequential = createGenerator(new ArrayList<IModelProperty>());
+		EmfToEclCodeGenerator parallel = createGenerator(new ArrayList<IModelProperty>());
+		parallel.setParallelism(THREADS);
+		try {
+			String expected = generate(sequential, true);
+			assertTrue(expected.contains("constraintFirstPredicate(\"SomeOrderIsPaid\""));
+			for (int i = 0; i < RUNS; i++)
+				assertEquals("run " + i, expected, generate(parallel, true));
+		}
+		finally {
+			parallel.dispose();
+		}
+	}
+
+	private EmfToEclCodeGenerator createGenerator(List<IModelProperty> properties) throws IOException {
+		IModelToCspSolver<Resource, CompoundTerm> modelSolver = new EmfModelToCspSolverFactory().getModelToCspSolver();
+		modelSolver.setModelFileName("shop.ecore");
+		modelSolver.setModel(resource);
+		modelSolver.setConstraintsFile(write("shop.ocl", CONSTRAINTS));
+		modelSolver.setModelElementsDomain(domains);
+		modelSolver.setModelProperties(properties);
+		EmfToEclCodeGenerator generator = new EmfToEclCodeGenerator(modelSolver);
+		modelSolver.setCspCodeGenerator(generator);
+		return generator;
+	}
+
+	private static String generate(EmfToEclCodeGenerator generator, boolean parameterized) throws ProcessingException {
+		StringBuilder code = new StringBuilder();
+		if (parameterized)
+			generator.writeParameterizedCspCode(code);
+		else
+			generator.writeCspCode(code);
+		return code.toString();
+	}
+
+	private EClass createClass(String name) {
+		EClass c = EcoreFactory.eINSTANCE.createEClass();
+		c.setName(name);
+		shop.getEClassifiers().add(c);
+		domains.put("shop." + name, "0..5");
+		return c;
+	}
+
+	private void createAttribute(EClass owner, String name, EClassifier type, String domain) {
+		EAttribute at = EcoreFactory.eINSTANCE.createEAttribute();
+		at.setName(name);
+		at.setEType(type);
+		owner.getEStructuralFeatures().add(at);
+		domains.put(owner.getName() + "." + name, domain);
+	}
+
+	private static EReference createReference(EClass owner, String name, EClass type, int lowerBound, int upperBound) {
+		EReference ref = EcoreFactory.eINSTANCE.createEReference();
+		ref.setName(name);
+		ref.setEType(type);
+		ref.setLowerBound(lowerBound);
+		ref.setUpperBound(upperBound);
+		owner.getEStructuralFeatures().add(ref);
+		return ref;
+	}
+
+	private File write(String name, String contents) throws IOException {
+		File file = new File(dir, name);
+		FileWriter writer = new FileWriter(file);
+		try {
+			writer.write(contents);
+		}
+		finally {
+			writer.close();
+		}
+		return file;
+	}
+}
@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright (c) 2015 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp.tests.test.unit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import fr.inria.atlanmod.emftocsp.IPipelineMetricsListener;
+import fr.inria.atlanmod.emftocsp.PhaseMetrics;
+import fr.inria.atlanmod.emftocsp.PipelineMetrics;
+import fr.inria.atlanmod.emftocsp.PipelinePhase;
+
+/**
+ * Checks how the phases are summed up and the format of the JSON report
+ * written next to the generated code.
+ */
+public class TestPipelineMetrics {
+
+	private static final Pattern REPORT = Pattern.compile("\\{\n  \"totalNanos\": (\\d+),\n  \"phases\": \\[\n(.*)\n  \\]\n\\}\n", Pattern.DOTALL);
+	private static final Pattern PHASE = Pattern.compile("    \\{\"phase\": \"(\\w+)\", \"runs\": (\\d+), \"nanos\": (\\d+), \"memoryDelta\": (-?\\d+), \"counts\": \\{(.*)\\}\\}");
+
+	@Test
+	public void testRunsOfAPhaseAreSummedUp() {
+		PipelineMetrics metrics = new PipelineMetrics();
+		metrics.start(PipelinePhase.CODE_GENERATION).count("clauses", 3).count("bytes", 100).stop();
+		metrics.start(PipelinePhase.CODE_GENERATION).count("clauses", 2).stop();
+		PipelineMetrics.Measurement solving = metrics.start(PipelinePhase.SOLVING);
+		solving.stop();
+		solving.stop();
+
+		PhaseMetrics generation = metrics.getPhase(PipelinePhase.CODE_GENERATION);
+		assertEquals(2, generation.getRuns());
+		assertEquals(Long.valueOf(5), generation.getCounts().get("clauses"));
+		assertEquals(Long.valueOf(100), generation.getCounts().get("bytes"));
+		assertEquals(1, metrics.getPhase(PipelinePhase.SOLVING).getRuns());
+		assertNull(metrics.getPhase(PipelinePhase.COMPILATION));
+	}
+
+	@Test
+	public void testJsonReport() {
+		PipelineMetrics metrics = new PipelineMetrics();
+		metrics.start(PipelinePhase.SOLVING).count("backtracks", 42).stop();
+		metrics.start(PipelinePhase.CODE_GENERATION).count("clauses", 3).count("bytes", 100).stop();
+		metrics.start(PipelinePhase.CODE_GENERATION).stop();
+		metrics.finish();
+
+		String json = metrics.toJson();
+		Matcher report = REPORT.matcher(json);
+		assertTrue(json, report.matches());
+		assertEquals(metrics.getTotalNanos(), Long.parseLong(report.group(1)));
+
+		String[] phases = report.group(2).split(",\n");
+		assertEquals(2, phases.length);
+		Matcher generation = PHASE.matcher(phases[0]);
+		assertTrue(phases[0], generation.matches());
+		assertEquals("code_generation", generation.group(1));
+		assertEquals("2", generation.group(2));
+		assertEquals(metrics.getPhase(PipelinePhase.CODE_GENERATION).getNanos(), Long.parseLong(generation.group(3)));
+		assertEquals("\"clauses\": 3, \"bytes\": 100", generation.group(5));
+		Matcher solving = PHASE.matcher(phases[1]);
+		assertTrue(phases[1], solving.matches());
+		assertEquals("solving", solving.group(1));
+		assertEquals("1", solving.group(2));
+		assertEquals("\"backtracks\": 42", solving.group(5));
+	}
+
+	@Test
+	public void testPhasesWithoutCounts() {
+		PipelineMetrics metrics = new PipelineMetrics();
+		metrics.start(PipelinePhase.COMPILATION).stop();
+		Matcher report = REPORT.matcher(metrics.toJson());
+		assertTrue(report.matches());
+		Matcher compilation = PHASE.matcher(report.group(2));
+		assertTrue(compilation.matches());
+		assertEquals("", compilation.group(5));
+	}
+
+	@Test
+	public void testEmptyReport() {
+		PipelineMetrics metrics = new PipelineMetrics();
+		metrics.finish();
+		assertEquals("{\n  \"totalNanos\": " + metrics.getTotalNanos() + ",\n  \"phases\": [\n  ]\n}\n", metrics.toJson());
+	}
+
+	@Test
+	public void testTotalTimeStopsWhenFinished() throws InterruptedException {
+		PipelineMetrics metrics = new PipelineMetrics();
+		metrics.finish();
+		long total = metrics.getTotalNanos();
+		Thread.sleep(5);
+		metrics.finish();
+		assertEquals(total, metrics.getTotalNanos());
+	}
+
+	@Test
+	public void testWriteJson() throws IOException {
+		PipelineMetrics metrics = new PipelineMetrics();
+		metrics.start(PipelinePhase.OCL_PARSING).count("invariants", 7).stop();
+		metrics.finish();
+		File file = File.createTempFile("emftocsp", ".metrics.json");
+		try {
+			metrics.writeJson(file);
+			assertEquals(metrics.toJson(), read(file));
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testListenerIsToldAboutEveryMeasurement() {
+		final List<PhaseMetrics> measured = new ArrayList<PhaseMetrics>();
+		final List<PipelineMetrics> finished = new ArrayList<PipelineMetrics>();
+		PipelineMetrics metrics = new PipelineMetrics(new IPipelineMetricsListener() {
+			@Override
+			public void phaseMeasured(PhaseMetrics measurement) {
+				measured.add(measurement);
+			}
+
+			@Override
+			public void verificationMeasured(PipelineMetrics metrics) {
+				finished.add(metrics);
+			}
+		});
+		metrics.start(PipelinePhase.SOLVING).count("backtracks", 1).stop();
+		metrics.start(PipelinePhase.SOLVING).count("backtracks", 2).stop();
+		metrics.finish();
+		metrics.finish();
+
+		assertEquals(2, measured.size());
+		assertEquals(Long.valueOf(2), measured.get(1).getCounts().get("backtracks"));
+		assertEquals(1, finished.size());
+		assertSame(metrics, finished.get(0));
+	}
+
+	private static String read(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			for (int n = in.read(buffer); n > 0; n = in.read(buffer))
+				bytes.write(buffer, 0, n);
+			return bytes.toString("UTF-8");
+		}
+		finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2015 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp.tests.test.unit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import fr.inria.atlanmod.emftocsp.emftoecl.SearchConfiguration;
+import fr.inria.atlanmod.emftocsp.emftoecl.SearchConfiguration.Method;
+import fr.inria.atlanmod.emftocsp.emftoecl.SearchConfiguration.Phase;
+import fr.inria.atlanmod.emftocsp.emftoecl.SearchConfiguration.Restarts;
+import fr.inria.atlanmod.emftocsp.emftoecl.SearchConfiguration.ValueChoice;
+import fr.inria.atlanmod.emftocsp.emftoecl.SearchConfiguration.VariableSelection;
+
+/**
+ * Checks the restart sequences and the reading of the search.* entries.
+ */
+public class TestSearchConfiguration {
+
+	@Test
+	public void testLubySequence() {
+		int[] expected = { 1, 1, 2, 1, 1, 2, 4, 1, 1, 2, 1, 1, 2, 4, 8, 1 };
+		for (int i = 0; i < expected.length; i++)
+			assertEquals("term " + (i + 1), expected[i], SearchConfiguration.luby(i + 1));
+	}
+
+	@Test
+	public void testRestartLimits() {
+		SearchConfiguration configuration = new SearchConfiguration();
+		assertTrue(configuration.getRestartLimits(Phase.CARDINALITIES).isEmpty());
+		configuration.setRestarts(Phase.CARDINALITIES, Restarts.LUBY, 100, 7);
+		assertEquals(Arrays.asList(100, 100, 200, 100, 100, 200, 400), configuration.getRestartLimits(Phase.CARDINALITIES));
+		configuration.setRestarts(Phase.ATTRIBUTES, Restarts.GEOMETRIC, 10, 4);
+		assertEquals(Arrays.asList(10, 20, 40, 80), configuration.getRestartLimits(Phase.ATTRIBUTES));
+	}
+
+	@Test
+	public void testGeometricLimitsDoNotOverflow() {
+		SearchConfiguration configuration = new SearchConfiguration();
+		configuration.setRestarts(Phase.CARDINALITIES, Restarts.GEOMETRIC, 1000, 40);
+		assertEquals(Integer.MAX_VALUE, (int) configuration.getRestartLimits(Phase.CARDINALITIES).get(39));
+	}
+
+	@Test
+	public void testDefaults() {
+		SearchConfiguration configuration = new SearchConfiguration();
+		for (Phase phase : Phase.values()) {
+			assertEquals(VariableSelection.INPUT_ORDER, configuration.getVariableSelection(phase));
+			assertEquals(ValueChoice.INDOMAIN, configuration.getValueChoice(phase));
+			assertEquals(Restarts.NONE, configuration.getRestarts(phase));
+		}
+		assertEquals(Method.COMPLETE, configuration.getMethod(Phase.CARDINALITIES));
+		assertEquals(Method.BBS, configuration.getMethod(Phase.STRINGS));
+		assertEquals(10000, configuration.getMethodLimit(Phase.STRINGS));
+	}
+
+	@Test
+	public void testReadProperties() {
+		Properties properties = new Properties();
+		properties.setProperty("search.cardinalities.selection", "first_fail");
+		properties.setProperty("search.cardinalities.choice", "indomain_split");
+		properties.setProperty("search.cardinalities.method", "lds(3)");
+		properties.setProperty("search.cardinalities.restarts", "luby(100, 20)");
+		properties.setProperty("search.attributes.selection", "domDeg");
+		properties.setProperty("search.attributes.method", " credit(50) ");
+		properties.setProperty("search.strings.method", "complete");
+		properties.setProperty("search.strings.choice", "");
+		SearchConfiguration configuration = new SearchConfiguration();
+		configuration.read(properties);
+
+		assertEquals(VariableSelection.FIRST_FAIL, configuration.getVariableSelection(Phase.CARDINALITIES));
+		assertEquals(ValueChoice.INDOMAIN_SPLIT, configuration.getValueChoice(Phase.CARDINALITIES));
+		assertEquals(Method.LDS, configuration.getMethod(Phase.CARDINALITIES));
+		assertEquals(3, configuration.getMethodLimit(Phase.CARDINALITIES));
+		assertEquals(Restarts.LUBY, configuration.getRestarts(Phase.CARDINALITIES));
+		assertEquals(20, configuration.getRestartLimits(Phase.CARDINALITIES).size());
+
+		assertEquals(VariableSelection.DOM_DEG, configuration.getVariableSelection(Phase.ATTRIBUTES));
+		assertEquals(ValueChoice.INDOMAIN, configuration.getValueChoice(Phase.ATTRIBUTES));
+		assertEquals(Method.CREDIT, configuration.getMethod(Phase.ATTRIBUTES));
+		assertEquals(50, configuration.getMethodLimit(Phase.ATTRIBUTES));
+
+		assertEquals(Method.COMPLETE, configuration.getMethod(Phase.STRINGS));
+		assertEquals(ValueChoice.INDOMAIN, configuration.getValueChoice(Phase.STRINGS));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownSelectionIsRejected() {
+		Properties properties = new Properties();
+		properties.setProperty("search.cardinalities.selection", "dom_wdeg");
+		new SearchConfiguration().read(properties);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMethodWithoutLimitIsRejected() {
+		Properties properties = new Properties();
+		properties.setProperty("search.cardinalities.method", "bbs");
+		new SearchConfiguration().read(properties);
+	}
+}
@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * Copyright (c) 2015 INRIA Rennes Bretagne-Atlantique.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     INRIA Rennes Bretagne-Atlantique - initial API and implementation
+ *******************************************************************************/
+package fr.inria.atlanmod.emftocsp.tests.test.unit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.inria.atlanmod.emftocsp.IModelProperty;
+import fr.inria.atlanmod.emftocsp.impl.LivelinessModelProperty;
+import fr.inria.atlanmod.emftocsp.impl.StrongSatisfiabilityModelProperty;
+import fr.inria.atlanmod.emftocsp.impl.VerificationResultCache;
+import fr.inria.atlanmod.emftocsp.impl.WeakSatisfiabilityModelProperty;
+
+/**
+ * Checks the keys of the verification results, computed from the inputs of
+ * the verifications, and when the results stop being found.
+ */
+public class TestVerificationResultCache {
+
+	private static final String SOLVER = "fr.inria.atlanmod.emftocsp.eclipsecs.EclipseSolver";
+	private static final byte[] MODEL = "<ecore:EPackage name=\"a\"/>".getBytes();
+	private static final byte[] OTHER_MODEL = "<ecore:EPackage name=\"b\"/>".getBytes();
+	private static final List<IModelProperty> STRONG = Collections.<IModelProperty>singletonList(new StrongSatisfiabilityModelProperty());
+
+	private File dir;
+	private File cacheDir;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = File.createTempFile("emftocsp", "results");
+		dir.delete();
+		dir.mkdirs();
+		cacheDir = new File(dir, "cache");
+	}
+
+	@After
+	public void tearDown() {
+		delete(dir);
+	}
+
+	@Test
+	public void testSameVerificationsHaveTheSameKey() throws IOException {
+		File constraints = write("a/model.ocl", "context A inv: true");
+		File copy = write("b/model.ocl", "context A inv: true");
+		List<File> libs = Arrays.asList(write("libs/ocl_basicops.ecl", "a."), write("libs/uml_basic.ecl", "b."));
+		List<File> reversedLibs = Arrays.asList(libs.get(1), libs.get(0));
+		Map<String, String> domains = new HashMap<String, String>();
+		domains.put("p.A", "0..5");
+		domains.put("p.B", "1..3");
+		Map<String, String> reversedDomains = new LinkedHashMap<String, String>();
+		reversedDomains.put("p.B", "1..3");
+		reversedDomains.put("p.A", "0..5");
+
+		String key = VerificationResultCache.computeKey(MODEL, constraints, domains, STRONG, 0, libs, SOLVER);
+		assertEquals(key, VerificationResultCache.computeKey(MODEL.clone(), constraints, domains, STRONG, 0, libs, SOLVER));
+		assertEquals(key, VerificationResultCache.computeKey(MODEL, copy, domains, STRONG, 0, libs, SOLVER));
+		assertEquals(key, VerificationResultCache.computeKey(MODEL, constraints, reversedDomains, STRONG, 0, libs, SOLVER));
+		assertEquals(key, VerificationResultCache.computeKey(MODEL, constraints, domains, STRONG, 0, reversedLibs, SOLVER));
+		assertEquals(key, VerificationResultCache.computeKey(MODEL, constraints, domains, Collections.<IModelProperty>singletonList(new StrongSatisfiabilityModelProperty()), 0, libs, SOLVER));
+	}
+
+	@Test
+	public void testKeyDependsOnTheModel() throws IOException {
+		String key = VerificationResultCache.computeKey(MODEL, null, null, STRONG, 0, null, SOLVER);
+		assertNotEquals(key, VerificationResultCache.computeKey(OTHER_MODEL, null, null, STRONG, 0, null, SOLVER));
+	}
+
+	@Test
+	public void testKeyDependsOnTheConstraints() throws IOException {
+		File constraints = write("model.ocl", "context A inv: true");
+		String key = VerificationResultCache.computeKey(MODEL, constraints, null, STRONG, 0, null, SOLVER);
+		assertNotEquals(key, VerificationResultCache.computeKey(MODEL, null, null, STRONG, 0, null, SOLVER));
+		write("model.ocl", "context A inv: false");
+		assertNotEquals(key, VerificationResultCache.computeKey(MODEL, constraints, null, STRONG, 0, null, SOLVER));
+	}
+
+	@Test
+	public void testKeyDependsOnTheDomains() throws IOException {
+		Map<String, String> domains = new HashMap<String, String>();
+		domains.put("p.A", "0..5");
+		String key = VerificationResultCache.computeKey(MODEL, null, domains, STRONG, 0, null, SOLVER);
+		domains.put("p.A", "0..6");
+		assertNotEquals(key, VerificationResultCache.computeKey(MODEL, null, domains, STRONG, 0, null, SOLVER));
+		domains.put("p.A", "0..5");
+		domains.put("p.B", "0..5");
+		assertNotEquals(key, VerificationResultCache.computeKey(MODEL, null, domains, STRONG, 0, null, SOLVER));
+	}
+
+	@Test
+	public void testKeyDependsOnTheProperties() throws IOException {
+		String key = VerificationResultCache.computeKey(MODEL, null, null, STRONG, 0, null, SOLVER);
+		assertNotEquals(key, VerificationResultCache.computeKey(MODEL, null, null, Collections.<IModelProperty>singletonList(new WeakSatisfiabilityModelProperty()), 0, null, SOLVER));
+		List<IModelProperty> livelinessOfA = Collections.<IModelProperty>singletonList(new LivelinessModelProperty(Arrays.asList("A")));
+		List<IModelProperty> livelinessOfB = Collections.<IModelProperty>singletonList(new LivelinessModelProperty(Arrays.asList("B")));
+		assertNotEquals(VerificationResultCache.computeKey(MODEL, null, null, livelinessOfA, 0, null, SOLVER), VerificationResultCache.computeKey(MODEL, null, null, livelinessOfB, 0, null, SOLVER));
+	}
+
+	@Test
+	public void testKeyDependsOnTheScope() throws IOException {
+		assertNotEquals(VerificationResultCache.computeKey(MODEL, null, null, STRONG, 0, null, SOLVER), VerificationResultCache.computeKey(MODEL, null, null, STRONG, 3, null, SOLVER));
+	}
+
+	@Test
+	public void testKeyDependsOnTheLibraries() throws IOException {
+		File lib = write("libs/ocl_basicops.ecl", "a.");
+		String key = VerificationResultCache.computeKey(MODEL, null, null, STRONG, 0, Collections.singletonList(lib), SOLVER);
+		assertNotEquals(key, VerificationResultCache.computeKey(MODEL, null, null, STRONG, 0, null, SOLVER));
+		write("libs/ocl_basicops.ecl", "b.");
+		assertNotEquals(key, VerificationResultCache.computeKey(MODEL, null, null, STRONG, 0, Collections.singletonList(lib), SOLVER));
+	}
+
+	@Test
+	public void testKeyDependsOnTheSolver() throws IOException {
+		assertNotEquals(VerificationResultCache.computeKey(MODEL, null, null, STRONG, 0, null, SOLVER), VerificationResultCache.computeKey(MODEL, null, null, STRONG, 0, null, SOLVER + "/portfolio"));
+	}
+
+	@Test
+	public void testChangedModelMissesTheCache() throws IOException {
+		VerificationResultCache cache = new VerificationResultCache(cacheDir, 8, VerificationResultCache.DEFAULT_DISK_BYTES);
+		String key = VerificationResultCache.computeKey(MODEL, null, null, STRONG, 0, null, SOLVER);
+		cache.put(key, new VerificationResultCache.Entry(true, null, null, null));
+
+		assertNull(cache.get(VerificationResultCache.computeKey(OTHER_MODEL, null, null, STRONG, 0, null, SOLVER)));
+		assertNotNull(cache.get(key));
+	}
+
+	@Test
+	public void testResultsAreReadBackFromDisk() throws IOException {
+		VerificationResultCache cache = new VerificationResultCache(cacheDir, 1, VerificationResultCache.DEFAULT_DISK_BYTES);
+		cache.put("a", new VerificationResultCache.Entry(true, new byte[] { 1, 2 }, new byte[] { 3 }, "png"));
+		cache.put("b", new VerificationResultCache.Entry(false, null, null, null));
+
+		VerificationResultCache.Entry entry = new VerificationResultCache(cacheDir, 1, VerificationResultCache.DEFAULT_DISK_BYTES).get("a");
+		assertNotNull(entry);
+		assertTrue(entry.isSatisfiable());
+		assertArrayEquals(new byte[] { 1, 2 }, entry.getInstance());
+		assertArrayEquals(new byte[] { 3 }, entry.getImage());
+		assertEquals("png", entry.getImageExtension());
+		assertFalse(cache.get("b").isSatisfiable());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedResultsAreEvicted() throws IOException {
+		VerificationResultCache sizing = new VerificationResultCache(new File(dir, "sizing"), 8, VerificationResultCache.DEFAULT_DISK_BYTES);
+		sizing.put("a", newEntry());
+		long entrySize = new File(new File(dir, "sizing"), "a.result").length();
+
+		VerificationResultCache cache = new VerificationResultCache(cacheDir, 8, 2 * entrySize);
+		cache.put("a", newEntry());
+		cache.put("b", newEntry());
+		long now = System.currentTimeMillis();
+		new File(cacheDir, "a.result").setLastModified(now - 20000);
+		new File(cacheDir, "b.result").setLastModified(now - 10000);
+		cache.get("a");
+		cache.put("c", newEntry());
+
+		assertNotNull(cache.get("a"));
+		assertNull(cache.get("b"));
+		assertNotNull(cache.get("c"));
+	}
+
+	@Test
+	public void testUnreadableResultsAreDropped() throws IOException {
+		File file = write("cache/a.result", "not a result");
+		VerificationResultCache cache = new VerificationResultCache(cacheDir, 8, VerificationResultCache.DEFAULT_DISK_BYTES);
+		assertNull(cache.get("a"));
+		assertFalse(file.exists());
+	}
+
+	private static VerificationResultCache.Entry newEntry() {
+		return new VerificationResultCache.Entry(true, new byte[64], null, null);
+	}
+
+	private File write(String name, String contents) throws IOException {
+		File file = new File(dir, name);
+		file.getParentFile().mkdirs();
+		FileWriter writer = new FileWriter(file);
+		try {
+			writer.write(contents);
+		}
+		finally {
+			writer.close();
+		}
+		return file;
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null)
+			for (File child : children)
+				delete(child);
+		file.delete();
+	}
+}